@@ -0,0 +1,68 @@
+package me.bredo.network.benchmark;
+
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.server.Server;
+import me.bredo.network.server.ServerMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many connections per second the server accepts.
+ * <p>
+ * An operation connects a plain socket, waits until the server registered the connection and closes the socket again.
+ * </p>
+ *
+ * @author bredo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AcceptBenchmark {
+
+    @Param({"BLOCKING", "NIO"})
+    public ServerMode serverMode;
+
+    private Server            server;
+    private InetSocketAddress address;
+
+    @Setup
+    public void setup() {
+        this.server  = Loopback.server(this.serverMode, Protocol.FRAMED, new Loopback.ServerHandling());
+        this.address = new InetSocketAddress("127.0.0.1", this.server.getPort());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.server.shutdown();
+    }
+
+    @Benchmark
+    public void accept() throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(this.address);
+            final SocketAddress localAddress = socket.getLocalSocketAddress();
+            while (this.server.getServerClientMatrix().get(localAddress) == null) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
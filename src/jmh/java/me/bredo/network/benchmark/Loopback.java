@@ -0,0 +1,121 @@
+package me.bredo.network.benchmark;
+
+import me.bredo.network.client.Client;
+import me.bredo.network.client.ClientConnection;
+import me.bredo.network.client.IOClientHandling;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.server.IOServerHandling;
+import me.bredo.network.server.Server;
+import me.bredo.network.server.ServerClientConnection;
+import me.bredo.network.server.ServerMode;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sets up servers and clients talking over the loopback interface for the benchmarks.
+ *
+ * @author bredo
+ */
+final class Loopback {
+
+    private Loopback() {
+    }
+
+    /**
+     * Creates, initializes and starts a server on a free port.
+     *
+     * @param serverMode the engine of the server.
+     * @param protocol   the protocol of the server.
+     * @param handling   the handler of the server.
+     * @return the listening server.
+     */
+    static Server server(final ServerMode serverMode, final Protocol protocol, final IOServerHandling handling) {
+        final Server server = new Server(freePort(), false, true);
+        server.setServerMode(serverMode);
+        server.setProtocol(protocol);
+        server.setNoTcpDelay(true);
+        server.setIoServerHandling(handling);
+        server.initialize();
+        return server;
+    }
+
+    /**
+     * Creates a client and connects it to a server.
+     *
+     * @param server   the server to connect to.
+     * @param protocol the protocol of the server.
+     * @param handling the handler of the client.
+     * @return the connected client.
+     */
+    static Client client(final Server server, final Protocol protocol, final IOClientHandling handling) {
+        final Client client = new Client("127.0.0.1", server.getPort(), false);
+        client.setProtocol(protocol);
+        client.setIoClientHandling(handling);
+        client.initialize();
+        return client;
+    }
+
+    /**
+     * Waits until a counter reached a value. Spins briefly and then yields, so the benchmark thread does not starve
+     * the connection threads on machines with few cores.
+     *
+     * @param counter the counter to watch.
+     * @param target  the value to wait for.
+     */
+    static void await(final AtomicLong counter, final long target) {
+        int spins = 0;
+        while (counter.get() < target) {
+            if (++spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Returns a port that is free at the time of the call.
+     *
+     * @return a free port.
+     */
+    private static int freePort() {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * A server handler ignoring the lock-step loop, to be extended by the benchmarks.
+     */
+    static class ServerHandling implements IOServerHandling {
+
+        @Override
+        public void inputStream(final DataInputStream dataInputStream, final ServerClientConnection serverClientConnection) throws IOException {
+        }
+
+        @Override
+        public void outputStream(final DataOutputStream dataOutputStream, final ServerClientConnection serverClientConnection) throws IOException {
+        }
+    }
+
+    /**
+     * A client handler ignoring the lock-step loop, to be extended by the benchmarks.
+     */
+    static class ClientHandling implements IOClientHandling {
+
+        @Override
+        public void inputStream(final DataInputStream dataInputStream, final ClientConnection clientConnection) throws IOException {
+        }
+
+        @Override
+        public void outputStream(final DataOutputStream dataOutputStream, final ClientConnection clientConnection) throws IOException {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package me.bredo.network.benchmark;
+
+import me.bredo.network.client.Client;
+import me.bredo.network.client.ClientConnection;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.server.Server;
+import me.bredo.network.server.ServerClientConnection;
+import me.bredo.network.server.ServerMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the round-trip latency between a single client and the server.
+ * <p>
+ * With `Protocol.SYNC` an operation is one cycle of the lock-step loop, from the client's sync byte to the server's
+ * answer. With `Protocol.FRAMED` an operation is a message sent by the client and echoed back by the server.
+ * </p>
+ *
+ * @author bredo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"BLOCKING", "NIO"})
+    public ServerMode serverMode;
+
+    @Param({"SYNC", "FRAMED"})
+    public Protocol protocol;
+
+    @Param({"64"})
+    public int payloadSize;
+
+    private final AtomicLong received = new AtomicLong();
+    private       Server     server;
+    private       Client     client;
+    private       byte[]     payload;
+
+    @Setup
+    public void setup() {
+        this.payload = new byte[this.payloadSize];
+        this.server  = Loopback.server(this.serverMode, this.protocol, new Loopback.ServerHandling() {
+            @Override
+            public void message(final Frame frame, final ServerClientConnection serverClientConnection) throws IOException {
+                serverClientConnection.send(frame.getType(), frame.getPayload());
+            }
+        });
+        this.client  = Loopback.client(this.server, this.protocol, new Loopback.ClientHandling() {
+            @Override
+            public void inputStream(final DataInputStream dataInputStream, final ClientConnection clientConnection) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void message(final Frame frame, final ClientConnection clientConnection) {
+                received.incrementAndGet();
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.getClientConnection().stopConnection();
+        this.server.shutdown();
+    }
+
+    @Benchmark
+    public long roundTrip() throws IOException {
+        final long target = this.received.get() + 1;
+        if (this.protocol == Protocol.FRAMED) this.client.getClientConnection().send(0, this.payload);
+        Loopback.await(this.received, target);
+        return target;
+    }
+}
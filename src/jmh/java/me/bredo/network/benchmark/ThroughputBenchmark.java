@@ -0,0 +1,96 @@
+package me.bredo.network.benchmark;
+
+import me.bredo.network.client.Client;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.server.Server;
+import me.bredo.network.server.ServerClientConnection;
+import me.bredo.network.server.ServerMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many messages per second the server receives from a number of clients.
+ * <p>
+ * Every invocation spreads a batch of `BATCH` messages over all clients and waits until the server handled each of
+ * them, so a reported operation is one message. Run with `-prof gc` to see the bytes allocated per message.
+ * </p>
+ *
+ * @author bredo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({"BLOCKING", "NIO"})
+    public ServerMode serverMode;
+
+    @Param({"1", "4", "16"})
+    public int clientCount;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    private final AtomicLong received = new AtomicLong();
+    private       Server     server;
+    private       Client[]   clients;
+    private       byte[]     payload;
+
+    @Setup
+    public void setup() {
+        this.payload = new byte[this.payloadSize];
+        this.server  = Loopback.server(this.serverMode, Protocol.FRAMED, new Loopback.ServerHandling() {
+            @Override
+            public void message(final Frame frame, final ServerClientConnection serverClientConnection) {
+                received.incrementAndGet();
+            }
+        });
+        this.clients = new Client[this.clientCount];
+        for (int i = 0; i < this.clientCount; i++) {
+            this.clients[i] = Loopback.client(this.server, Protocol.FRAMED, new Loopback.ClientHandling());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (final Client client : this.clients) {
+            client.getClientConnection().stopConnection();
+        }
+        this.server.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long messages() throws IOException {
+        final long target = this.received.get() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            final Client client = this.clients[i % this.clients.length];
+            while (!client.getClientConnection().send(0, this.payload)) {
+                Thread.onSpinWait();
+            }
+        }
+        Loopback.await(this.received, target);
+        return target;
+    }
+}
@@ -0,0 +1,245 @@
+package me.bredo.network.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of off-heap `ByteBuffer`s used for the receive and send buffers of connections.
+ * <p>
+ * Buffers are grouped in size classes of powers of two from `MIN_SIZE` to `MAX_SIZE` bytes. Released buffers go to
+ * a shared cache, from which every thread allocates. Long-lived threads that allocate and release most buffers, such
+ * as event loops, can enable a small cache of their own per size class with `enableThreadCache`, so that allocating
+ * and releasing on the same thread needs no synchronization at all. Such a thread hands its cached buffers back to the
+ * shared cache with `releaseThreadCache` before it ends; short-lived connection and handler threads never keep
+ * buffers to themselves. Requests larger than `MAX_SIZE` are served by heap buffers that are not pooled.
+ * </p>
+ * <p>
+ * With leak detection enabled, every buffer that is garbage collected without being released is reported together
+ * with the place it was allocated. Leak detection is meant for debugging and costs an allocation per buffer.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class BufferPool {
+
+    /**
+     * The capacity of the smallest pooled buffer in bytes.
+     */
+    public static final int MIN_SIZE = 256;
+    /**
+     * The capacity of the largest pooled buffer in bytes.
+     */
+    public static final int MAX_SIZE = 64 * 1024;
+
+    private static final int        SIZE_CLASSES      = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+    private static final int        LOCAL_CACHE_SIZE  = 32;
+    private static final int        SHARED_CACHE_SIZE = 1024;
+    private static final Cleaner    CLEANER           = Cleaner.create();
+    private static final BufferPool DEFAULT           = new BufferPool();
+
+    private static final ThreadLocal<List<LocalCache>> THREAD_CACHES = new ThreadLocal<>();
+
+    private final    ThreadLocal<LocalCache> localCaches;
+    private final    Queue<PooledBuffer>[]   sharedCaches;
+    private final    AtomicInteger[]         sharedCacheSizes;
+    private final    AtomicInteger           allocated;
+    private volatile boolean                 leakDetection;
+
+    /**
+     * Creates a new, empty BufferPool instance.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool() {
+        this.localCaches      = new ThreadLocal<>();
+        this.sharedCaches     = new Queue[SIZE_CLASSES];
+        this.sharedCacheSizes = new AtomicInteger[SIZE_CLASSES];
+        this.allocated        = new AtomicInteger();
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            this.sharedCaches[i]     = new ConcurrentLinkedQueue<>();
+            this.sharedCacheSizes[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Returns the pool shared by every server and client that was not given a pool of its own.
+     *
+     * @return the default pool.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Lets the calling thread cache released buffers of every pool for itself. Meant for long-lived threads such as
+     * event loops, which must call `releaseThreadCache` before they end.
+     */
+    public static void enableThreadCache() {
+        if (THREAD_CACHES.get() == null) THREAD_CACHES.set(new ArrayList<>());
+    }
+
+    /**
+     * Hands every buffer cached by the calling thread back to the shared cache of its pool, and stops caching buffers
+     * on the calling thread.
+     */
+    public static void releaseThreadCache() {
+        final List<LocalCache> threadCaches = THREAD_CACHES.get();
+        if (threadCaches == null) return;
+        THREAD_CACHES.remove();
+        for (final LocalCache localCache : threadCaches) {
+            localCache.release();
+        }
+    }
+
+    /**
+     * Returns the cache of this pool for the calling thread, creating it if the thread caches buffers.
+     *
+     * @return the cache of the calling thread, or null if the thread does not cache buffers.
+     */
+    private LocalCache localCache() {
+        final List<LocalCache> threadCaches = THREAD_CACHES.get();
+        if (threadCaches == null) return null;
+        LocalCache localCache = this.localCaches.get();
+        if (localCache == null) {
+            localCache = new LocalCache(this);
+            this.localCaches.set(localCache);
+            threadCaches.add(localCache);
+        }
+        return localCache;
+    }
+
+    /**
+     * Returns the size class serving buffers of the given size.
+     *
+     * @param size the requested size in bytes.
+     * @return the size class, or -1 if the size is larger than `MAX_SIZE`.
+     */
+    static int sizeClass(final int size) {
+        if (size <= MIN_SIZE) return 0;
+        if (size > MAX_SIZE) return -1;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+
+    /**
+     * Allocates a buffer of at least the given size. The buffer is cleared, with its limit at its capacity.
+     *
+     * @param size the requested size in bytes.
+     * @return the buffer, holding one reference.
+     */
+    public PooledBuffer allocate(final int size) {
+        final int sizeClass = sizeClass(size);
+        if (sizeClass < 0) return PooledBuffer.wrap(ByteBuffer.allocate(size));
+
+        final LocalCache localCache = localCache();
+        PooledBuffer pooledBuffer = localCache == null ? null : localCache.poll(sizeClass);
+        if (pooledBuffer == null) {
+            pooledBuffer = this.sharedCaches[sizeClass].poll();
+            if (pooledBuffer != null) this.sharedCacheSizes[sizeClass].decrementAndGet();
+        }
+        if (pooledBuffer == null) {
+            pooledBuffer = new PooledBuffer(this, sizeClass, null, ByteBuffer.allocateDirect(MIN_SIZE << sizeClass));
+        } else {
+            pooledBuffer.reset();
+        }
+        this.allocated.incrementAndGet();
+        if (this.leakDetection) pooledBuffer.setLeakDetector(LeakDetector.track(CLEANER, pooledBuffer));
+        return pooledBuffer;
+    }
+
+    /**
+     * Takes back a buffer whose last reference was released.
+     *
+     * @param pooledBuffer the released buffer.
+     */
+    void recycle(final PooledBuffer pooledBuffer) {
+        this.allocated.decrementAndGet();
+        final LocalCache localCache = localCache();
+        if (localCache != null && localCache.offer(pooledBuffer.getSizeClass(), pooledBuffer)) return;
+        share(pooledBuffer);
+    }
+
+    /**
+     * Puts a released buffer into the shared cache, unless the cache of its size class is full.
+     *
+     * @param pooledBuffer the released buffer.
+     */
+    private void share(final PooledBuffer pooledBuffer) {
+        final int sizeClass = pooledBuffer.getSizeClass();
+        if (this.sharedCacheSizes[sizeClass].incrementAndGet() > SHARED_CACHE_SIZE) {
+            this.sharedCacheSizes[sizeClass].decrementAndGet();
+            return;
+        }
+        this.sharedCaches[sizeClass].add(pooledBuffer);
+    }
+
+    /**
+     * Returns the number of pooled buffers currently handed out and not yet released.
+     *
+     * @return the number of buffers in use.
+     */
+    public int getAllocatedCount() {
+        return this.allocated.get();
+    }
+
+    /**
+     * Returns whether buffers garbage collected without being released are reported.
+     *
+     * @return true if leak detection is enabled, false otherwise.
+     */
+    public boolean isLeakDetection() {
+        return this.leakDetection;
+    }
+
+    /**
+     * Sets whether buffers garbage collected without being released are reported.
+     *
+     * @param leakDetection true to enable leak detection.
+     */
+    public void setLeakDetection(final boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * The released buffers of a pool cached by a single thread, one small stack per size class.
+     */
+    private static final class LocalCache {
+
+        private final BufferPool       bufferPool;
+        private final PooledBuffer[][] stacks;
+        private final int[]            sizes;
+
+        private LocalCache(final BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            this.stacks     = new PooledBuffer[SIZE_CLASSES][LOCAL_CACHE_SIZE];
+            this.sizes      = new int[SIZE_CLASSES];
+        }
+
+        private PooledBuffer poll(final int sizeClass) {
+            if (this.sizes[sizeClass] == 0) return null;
+            final int index = --this.sizes[sizeClass];
+            final PooledBuffer pooledBuffer = this.stacks[sizeClass][index];
+            this.stacks[sizeClass][index] = null;
+            return pooledBuffer;
+        }
+
+        private boolean offer(final int sizeClass, final PooledBuffer pooledBuffer) {
+            if (this.sizes[sizeClass] == LOCAL_CACHE_SIZE) return false;
+            this.stacks[sizeClass][this.sizes[sizeClass]++] = pooledBuffer;
+            return true;
+        }
+
+        private void release() {
+            this.bufferPool.localCaches.remove();
+            for (int sizeClass = 0; sizeClass < SIZE_CLASSES; sizeClass++) {
+                PooledBuffer pooledBuffer;
+                while ((pooledBuffer = poll(sizeClass)) != null) {
+                    this.bufferPool.share(pooledBuffer);
+                }
+            }
+        }
+    }
+}
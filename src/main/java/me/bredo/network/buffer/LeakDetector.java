@@ -0,0 +1,51 @@
+package me.bredo.network.buffer;
+
+import java.lang.ref.Cleaner;
+
+/**
+ * Reports a `PooledBuffer` that became unreachable without its last reference being released.
+ * <p>
+ * A detector is registered with a `Cleaner` when the buffer is handed out and is cleaned when the buffer is released.
+ * If the garbage collector finds the buffer first, the detector prints where the buffer was allocated.
+ * </p>
+ *
+ * @author bredo
+ */
+final class LeakDetector implements Runnable {
+
+    private final    Throwable         allocation;
+    private          Cleaner.Cleanable cleanable;
+    private volatile boolean           released;
+
+    private LeakDetector(final Throwable allocation) {
+        this.allocation = allocation;
+    }
+
+    /**
+     * Starts tracking a buffer that is handed out.
+     *
+     * @param cleaner      the cleaner watching the buffer.
+     * @param pooledBuffer the buffer to track.
+     * @return the detector of the buffer.
+     */
+    static LeakDetector track(final Cleaner cleaner, final PooledBuffer pooledBuffer) {
+        final LeakDetector leakDetector = new LeakDetector(new Throwable("Buffer of " + pooledBuffer.getByteBuffer().capacity() + " bytes allocated here"));
+        leakDetector.cleanable = cleaner.register(pooledBuffer, leakDetector);
+        return leakDetector;
+    }
+
+    /**
+     * Stops tracking the buffer, once its last reference was released.
+     */
+    void released() {
+        this.released = true;
+        this.cleanable.clean();
+    }
+
+    @Override
+    public void run() {
+        if (this.released) return;
+        System.err.println("[BufferPool]: A buffer was garbage collected without being released");
+        this.allocation.printStackTrace();
+    }
+}
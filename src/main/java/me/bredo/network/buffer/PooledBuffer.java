@@ -0,0 +1,144 @@
+package me.bredo.network.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted `ByteBuffer` handed out by a `BufferPool`.
+ * <p>
+ * A buffer starts with one reference. Every `retain()` adds a reference and every `release()` removes one; once the
+ * last reference is released the buffer goes back to its pool and must no longer be used. A `duplicate()` shares the
+ * content of the buffer with its own position and limit, and keeps the buffer alive until the duplicate is released.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class PooledBuffer {
+
+    private final    BufferPool    pool;
+    private final    int           sizeClass;
+    private final    PooledBuffer  parent;
+    private final    ByteBuffer    byteBuffer;
+    private final    AtomicInteger references;
+    private volatile LeakDetector  leakDetector;
+
+    /**
+     * Creates a new PooledBuffer instance.
+     *
+     * @param pool       the pool the buffer returns to, or null if the buffer is not pooled.
+     * @param sizeClass  the size class of the buffer within its pool.
+     * @param parent     the buffer this buffer is a duplicate of, or null.
+     * @param byteBuffer the underlying buffer.
+     */
+    PooledBuffer(final BufferPool pool, final int sizeClass, final PooledBuffer parent, final ByteBuffer byteBuffer) {
+        this.pool       = pool;
+        this.sizeClass  = sizeClass;
+        this.parent     = parent;
+        this.byteBuffer = byteBuffer;
+        this.references = new AtomicInteger(1);
+    }
+
+    /**
+     * Wraps a buffer that does not belong to any pool. Releasing it only drops the reference.
+     *
+     * @param byteBuffer the buffer to wrap.
+     * @return the wrapped buffer.
+     */
+    public static PooledBuffer wrap(final ByteBuffer byteBuffer) {
+        return new PooledBuffer(null, -1, null, byteBuffer);
+    }
+
+    /**
+     * Adds a reference to this buffer.
+     *
+     * @return this buffer.
+     * @throws IllegalStateException if the buffer was already released.
+     */
+    public PooledBuffer retain() {
+        int current;
+        do {
+            current = this.references.get();
+            if (current <= 0) throw new IllegalStateException("Buffer was already released");
+        } while (!this.references.compareAndSet(current, current + 1));
+        return this;
+    }
+
+    /**
+     * Removes a reference from this buffer, and returns it to its pool once no reference is left.
+     *
+     * @return true if this released the last reference, false otherwise.
+     * @throws IllegalStateException if the buffer was already released.
+     */
+    public boolean release() {
+        final int remaining = this.references.decrementAndGet();
+        if (remaining < 0) {
+            this.references.incrementAndGet();
+            throw new IllegalStateException("Buffer was already released");
+        }
+        if (remaining > 0) return false;
+        final LeakDetector leakDetector = this.leakDetector;
+        this.leakDetector = null;
+        if (leakDetector != null) leakDetector.released();
+        if (this.parent != null) {
+            this.parent.release();
+        } else if (this.pool != null) {
+            this.pool.recycle(this);
+        }
+        return true;
+    }
+
+    /**
+     * Creates a view sharing the content of this buffer with its own position and limit. The view holds a reference to
+     * this buffer until the view is released.
+     *
+     * @return the duplicate.
+     */
+    public PooledBuffer duplicate() {
+        retain();
+        return new PooledBuffer(null, -1, this, this.byteBuffer.duplicate());
+    }
+
+    /**
+     * Prepares a recycled buffer for its next use.
+     */
+    void reset() {
+        this.byteBuffer.clear();
+        this.references.set(1);
+    }
+
+    /**
+     * Returns the underlying buffer. It must not be used after the last reference was released.
+     *
+     * @return the underlying buffer.
+     */
+    public ByteBuffer getByteBuffer() {
+        return this.byteBuffer;
+    }
+
+    /**
+     * Returns the number of references held on this buffer.
+     *
+     * @return the reference count.
+     */
+    public int getReferenceCount() {
+        return this.references.get();
+    }
+
+    /**
+     * Returns the size class of this buffer within its pool.
+     *
+     * @return the size class, or -1 if the buffer is not pooled.
+     */
+    int getSizeClass() {
+        return this.sizeClass;
+    }
+
+    /**
+     * Sets the leak detector tracking this buffer while it is in use.
+     *
+     * @param leakDetector the leak detector, or null.
+     */
+    void setLeakDetector(final LeakDetector leakDetector) {
+        this.leakDetector = leakDetector;
+    }
+}
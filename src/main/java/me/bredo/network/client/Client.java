@@ -1,7 +1,25 @@
 package me.bredo.network.client;
 
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.codec.CodecRegistry;
+import me.bredo.network.metrics.NetworkMetrics;
+import me.bredo.network.protocol.Compression;
+import me.bredo.network.protocol.FlushPolicy;
+import me.bredo.network.protocol.HashedWheelTimer;
+import me.bredo.network.protocol.OutboundQueue;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.SocketOptions;
+
+import javax.management.JMException;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The `Client` class represents a client in a network communication setup.
@@ -13,27 +31,143 @@ public final class Client {
     /**
      * Object for managing the connection between the client and the server
      */
-    private final    ClientConnection clientConnection;
+    private final    ClientConnection     clientConnection;
     /**
      * IP address of the server to connect to
      */
-    private          String           ip;
+    private          String               ip;
     /**
      * Port number of the server to connect to
      */
-    private          int              port;
+    private          int                  port;
     /**
      * Flag indicating whether to print debug messages
      */
-    private          boolean          debugMode;
+    private          boolean              debugMode;
     /**
      * `Socket` object for communication with the server
      */
-    private          Socket           socket;
+    private volatile Socket               socket;
     /**
      * Object for handling input/output for the client
      */
-    private volatile IOClientHandling ioClientHandling;
+    private volatile IOClientHandling     ioClientHandling;
+    /**
+     * Factory creating the thread of the connection to the server
+     */
+    private          ThreadFactory        threadFactory;
+    /**
+     * Engine driving the connection to the server
+     */
+    private          ClientMode           clientMode;
+    /**
+     * Event loops driving the connection in `ClientMode.NIO`, or null to use the default group
+     */
+    private          ClientEventLoopGroup eventLoopGroup;
+    /**
+     * Socket options of the connection to the server, including the connect timeout and the receive buffer sizes
+     */
+    private          SocketOptions        socketOptions;
+    /**
+     * Flag indicating whether the client reconnects once the connection to the server was lost
+     */
+    private          boolean              reconnect;
+    /**
+     * Time in milliseconds to wait before the first attempt to reconnect
+     */
+    private          long                 reconnectDelay;
+    /**
+     * Longest time in milliseconds to wait between two attempts to reconnect
+     */
+    private          long                 maxReconnectDelay;
+    /**
+     * Number of failed attempts to reconnect after which the client gives up
+     */
+    private          int                  maxReconnectAttempts;
+    /**
+     * Number of failed attempts to reconnect since the connection was lost
+     */
+    private final    AtomicInteger        reconnectAttempts;
+    /**
+     * Flag indicating whether a lost connection resumes its session with the server
+     */
+    private          boolean              sessionResumption;
+    /**
+     * Maximum number of sent messages kept until the server acknowledged them
+     */
+    private          int                  replayBufferCapacity;
+    /**
+     * Flag indicating whether the client exchanges datagrams with the server besides the connection
+     */
+    private          boolean              datagrams;
+    /**
+     * Flag indicating whether datagrams of the server arriving after a newer one are dropped
+     */
+    private          boolean              dropStaleDatagrams;
+    /**
+     * Wire protocol spoken with the server
+     */
+    private          Protocol             protocol;
+    /**
+     * Size in bytes of the write buffer of the connection
+     */
+    private          int                  writeBufferSize;
+    /**
+     * Policy deciding when sent messages are flushed to the server
+     */
+    private          FlushPolicy          flushPolicy;
+    /**
+     * Delay in milliseconds used by the delayed flush policies
+     */
+    private          long                 flushInterval;
+    /**
+     * Maximum number of sent messages waiting to be written to the server
+     */
+    private          int                  outboundQueueCapacity;
+    /**
+     * Number of queued bytes at or below which the connection accepts messages again
+     */
+    private          long                 outboundLowWatermark;
+    /**
+     * Number of queued bytes above which sending to the server blocks
+     */
+    private          long                 outboundHighWatermark;
+    /**
+     * Flag indicating whether the lock-step loop of `Protocol.SYNC` waits between cycles until there is data to send
+     */
+    private          boolean              idleMode;
+    /**
+     * Idle time in milliseconds after which a heartbeat is sent to the server
+     */
+    private          long                 heartbeatInterval;
+    /**
+     * Time in milliseconds a request waits for its response by default
+     */
+    private          long                 requestTimeout;
+    /**
+     * Algorithm messages to the server are compressed with
+     */
+    private          Compression          compression;
+    /**
+     * Smallest payload size in bytes that is compressed
+     */
+    private          int                  compressionThreshold;
+    /**
+     * Pool the buffers of the connection are allocated from
+     */
+    private          BufferPool           bufferPool;
+    /**
+     * Codecs messages are encoded and decoded with
+     */
+    private          CodecRegistry        codecRegistry;
+    /**
+     * Metrics of the connection to the server
+     */
+    private final    NetworkMetrics       metrics;
+    /**
+     * Flag indicating whether the metrics are exported over JMX
+     */
+    private          boolean              jmxEnabled;
 
     /**
      * Constructor for `Client`
@@ -46,30 +180,192 @@ public final class Client {
         setIp(ip);
         setPort(port);
         setDebugMode(debugMode);
+        setThreadFactory(Thread::new);
+        setClientMode(ClientMode.BLOCKING);
+        setSocketOptions(new SocketOptions());
+        setReconnectDelay(100);
+        setMaxReconnectDelay(30000);
+        setReplayBufferCapacity(1024);
+        setProtocol(Protocol.SYNC);
+        setWriteBufferSize(8192);
+        setFlushPolicy(FlushPolicy.PER_MESSAGE);
+        setFlushInterval(1);
+        setOutboundQueueCapacity(4096);
+        setOutboundLowWatermark(512 * 1024);
+        setOutboundHighWatermark(1024 * 1024);
+        setCompression(Compression.NONE);
+        setCompressionThreshold(1024);
+        setRequestTimeout(30000);
+        setBufferPool(BufferPool.getDefault());
+        setCodecRegistry(new CodecRegistry());
+        this.metrics = new NetworkMetrics();
+        this.reconnectAttempts = new AtomicInteger();
         this.clientConnection = new ClientConnection(this);
+        this.metrics.setGauges(() -> getSocket() != null && getClientConnection().isConnected() ? 1 : 0, () -> getClientConnection().getQueuedMessages());
     }
 
     /**
      * Initializes the `Client` object, including creating the `Socket` object
      * and starting the connection with the server.
+     * If the server cannot be reached and reconnecting is enabled, the client keeps trying in the background.
      */
     public void initialize() {
         if (debugMode()) print("Initializing Client");
-        initializeClientSocket();
+        getClientConnection().setStopped(false);
+        if (getClientMode() == ClientMode.NIO) {
+            try {
+                connect().join();
+            } catch (final CompletionException exception) {
+                warning("Could not connect to " + ip + ":" + port);
+                exception.getCause().printStackTrace();
+                if (isReconnect()) scheduleReconnect();
+            }
+            return;
+        }
+        if (debugMode()) getBufferPool().setLeakDetection(true);
+        final Socket socket = initializeClientSocket();
+        if (socket == null) {
+            if (isReconnect()) scheduleReconnect();
+            return;
+        }
+        connected(socket);
+    }
 
+    /**
+     * Connects to the server without blocking, when using `ClientMode.NIO`, and starts the connection once connected.
+     * <p>
+     * The connection is driven by the next event loop of the event loop group of the client, so any number of clients
+     * can connect at once from a single thread. Must not be waited for on an event loop thread.
+     * </p>
+     *
+     * @return A future completed with this client once the connection was started, or exceptionally if the server
+     * could not be reached within the connect timeout.
+     * @throws IllegalStateException If the client does not use `ClientMode.NIO`.
+     */
+    public CompletableFuture<Client> connect() {
+        if (getClientMode() != ClientMode.NIO) throw new IllegalStateException("Connecting without blocking requires ClientMode.NIO");
+        getClientConnection().setStopped(false);
+        return connectChannel();
+    }
+
+    /**
+     * Connects the channel of `ClientMode.NIO` on the next event loop of the client.
+     *
+     * @return A future completed with this client once the connection was started, or exceptionally if connecting
+     * failed.
+     */
+    private CompletableFuture<Client> connectChannel() {
+        if (debugMode()) print("Connecting to " + getIp() + ":" + getPort());
+        if (debugMode()) getBufferPool().setLeakDetection(true);
+        final ClientEventLoopGroup eventLoopGroup = getEventLoopGroup() != null ? getEventLoopGroup() : ClientEventLoopGroup.getDefault();
+        return getClientConnection().connect(eventLoopGroup.next(), new InetSocketAddress(getIp(), getPort()), getConnectTimeout()).thenApply(connection -> this);
+    }
+
+    /**
+     * Starts the connection once the socket is connected. Called on the event loop thread in `ClientMode.NIO`.
+     *
+     * @param socket The connected socket.
+     */
+    void connected(final Socket socket) {
+        this.socket = socket;
+        this.reconnectAttempts.set(0);
+        if (isJmxEnabled()) registerMetrics();
         getClientConnection().startConnection();
     }
 
+    /**
+     * Schedules the next attempt to reconnect to the server, or gives up once the maximum number of attempts failed.
+     * <p>
+     * The attempts back off exponentially from the reconnect delay up to the maximum reconnect delay, and every wait
+     * is chosen at random between half and all of its delay, so that many clients losing the same server do not all
+     * reconnect at the same time.
+     * </p>
+     */
+    void scheduleReconnect() {
+        final int attempt = this.reconnectAttempts.getAndIncrement();
+        if (getMaxReconnectAttempts() > 0 && attempt >= getMaxReconnectAttempts()) {
+            warning("Giving up reconnecting to " + ip + ":" + port + " after " + attempt + " attempts");
+            getClientConnection().stopConnection();
+            return;
+        }
+        final long delay = Math.min(getMaxReconnectDelay(), getReconnectDelay() << Math.min(attempt, 30));
+        final long wait = delay / 2 + ThreadLocalRandom.current().nextLong(delay - delay / 2 + 1);
+        if (debugMode()) print("Reconnecting to " + ip + ":" + port + " in " + wait + " ms");
+        HashedWheelTimer.getDefault().newTimeout(this::reconnect, wait, TimeUnit.MILLISECONDS, this::timeoutFailed);
+    }
+
+    /**
+     * Makes an attempt to reconnect to the server, and schedules the next one if it failed. Called on the timer
+     * thread, which only starts connecting a channel of `ClientMode.NIO`; a blocking socket is connected on a thread
+     * of its own.
+     */
+    private void reconnect() {
+        if (getClientConnection().isStopped() || getClientConnection().isConnected()) return;
+        if (getClientMode() == ClientMode.NIO) {
+            connectChannel().whenComplete((client, exception) -> {
+                if (exception == null) return;
+                if (debugMode()) print("Could not reconnect to " + ip + ":" + port + ": " + exception.getCause());
+                scheduleReconnect();
+            });
+            return;
+        }
+        final Thread thread = getThreadFactory().newThread(this::reconnectSocket);
+        thread.setName("Client-Reconnect-Thread");
+        thread.start();
+    }
+
+    /**
+     * Makes an attempt to reconnect the blocking socket to the server, and schedules the next one if it failed.
+     */
+    private void reconnectSocket() {
+        final Socket socket = initializeClientSocket();
+        if (socket == null) {
+            scheduleReconnect();
+        } else {
+            connected(socket);
+        }
+    }
+
+    /**
+     * Exports the metrics of the client over JMX, named after the local port of the socket.
+     */
+    private void registerMetrics() {
+        try {
+            getMetrics().register("me.bredo.network:type=Client,port=" + getSocket().getLocalPort());
+        } catch (final JMException exception) {
+            warning("Could not register client metrics with JMX");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes the metrics of the client from JMX once the connection is stopped.
+     */
+    void unregisterMetrics() {
+        try {
+            getMetrics().unregister();
+        } catch (final JMException exception) {
+            warning("Could not unregister client metrics from JMX");
+            exception.printStackTrace();
+        }
+    }
+
     /**
      * Initializes the `Socket` object for communication with the server.
+     *
+     * @return The connected socket, or null if the server could not be reached.
      */
-    private void initializeClientSocket() {
+    private Socket initializeClientSocket() {
         try {
             if (debugMode()) print("Initializing Client Socket on " + getIp() + ":" + getPort());
-            this.socket = new Socket(ip, port);
+            final Socket socket = new Socket();
+            getSocketOptions().configure(socket);
+            socket.connect(new InetSocketAddress(ip, port), (int) Math.min(getConnectTimeout(), Integer.MAX_VALUE));
+            return socket;
         } catch (final IOException exception) {
             warning("Could not create client socket for " + ip + ":" + port);
-            exception.printStackTrace();
+            if (debugMode() || !isReconnect()) exception.printStackTrace();
+            return null;
         }
     }
 
@@ -91,6 +387,16 @@ public final class Client {
         System.err.println("[Client]: " + message.toString());
     }
 
+    /**
+     * Reports a task scheduled by the client on the `HashedWheelTimer` that failed.
+     *
+     * @param failure the exception or error thrown by the task
+     */
+    void timeoutFailed(final Throwable failure) {
+        warning("A timer task failed: " + failure);
+        failure.printStackTrace();
+    }
+
     /**
      * Gets the IP address of the server to connect to.
      *
@@ -172,6 +478,579 @@ public final class Client {
         return socket;
     }
 
+    /**
+     * Get the factory creating the thread of the connection to the server.
+     *
+     * @return The `ThreadFactory` object.
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Set the factory creating the thread of the connection to the server.
+     * Defaults to platform threads; on Java 21 and later `Thread.ofVirtual().factory()` runs the connection on a
+     * virtual thread. Must be called before `initialize()`.
+     *
+     * @param threadFactory The `ThreadFactory` object.
+     */
+    public void setThreadFactory(final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Get the engine driving the connection to the server.
+     *
+     * @return The `ClientMode` of the client.
+     */
+    public ClientMode getClientMode() {
+        return clientMode;
+    }
+
+    /**
+     * Set the engine driving the connection to the server. Must be set before the client is initialized.
+     *
+     * @param clientMode The `ClientMode` to use.
+     */
+    public void setClientMode(final ClientMode clientMode) {
+        this.clientMode = clientMode;
+    }
+
+    /**
+     * Get the event loops driving the connection in `ClientMode.NIO`.
+     *
+     * @return The event loop group of the client, or null if it uses the default group.
+     */
+    public ClientEventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Set the event loops driving the connection in `ClientMode.NIO`. A group is meant to be shared by many clients.
+     *
+     * @param eventLoopGroup The event loop group to use, or null to use `ClientEventLoopGroup.getDefault()`.
+     */
+    public void setEventLoopGroup(final ClientEventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * Get the time to wait for the connection to the server.
+     *
+     * @return The connect timeout in milliseconds, or 0 if connecting waits indefinitely.
+     */
+    public long getConnectTimeout() {
+        return socketOptions.getConnectTimeout();
+    }
+
+    /**
+     * Set the time to wait for the connection to the server.
+     *
+     * @param connectTimeout The connect timeout in milliseconds, or 0 to wait indefinitely.
+     */
+    public void setConnectTimeout(final long connectTimeout) {
+        this.socketOptions.setConnectTimeout(connectTimeout);
+    }
+
+    /**
+     * Get the socket options of the connection to the server.
+     *
+     * @return The socket options.
+     */
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    /**
+     * Set the socket options of the connection to the server, including the connect timeout and the sizes of the
+     * receive buffer. The options are applied every time the client connects, before the connection is established.
+     *
+     * @param socketOptions The socket options.
+     */
+    public void setSocketOptions(final SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    /**
+     * Get whether the client reconnects once the connection to the server was lost.
+     *
+     * @return True if reconnecting is enabled.
+     */
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    /**
+     * Set whether the client reconnects once the connection to the server was lost, or the server could not be reached
+     * by `initialize()`. Only `ClientConnection.stopConnection()` stops the client for good.
+     * <p>
+     * Without session resumption, requests waiting for their response fail when the connection is lost, and messages
+     * cannot be sent until the client reconnected. `IOClientHandling.reconnected` is called once it did.
+     * </p>
+     *
+     * @param reconnect True to enable reconnecting.
+     */
+    public void setReconnect(final boolean reconnect) {
+        this.reconnect = reconnect;
+    }
+
+    /**
+     * Get the time to wait before the first attempt to reconnect.
+     *
+     * @return The reconnect delay in milliseconds.
+     */
+    public long getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    /**
+     * Set the time to wait before the first attempt to reconnect. The delay doubles with every failed attempt, up to
+     * the maximum reconnect delay, and every wait is shortened by a random amount of up to half of its delay.
+     *
+     * @param reconnectDelay The reconnect delay in milliseconds.
+     */
+    public void setReconnectDelay(final long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Get the longest time to wait between two attempts to reconnect.
+     *
+     * @return The maximum reconnect delay in milliseconds.
+     */
+    public long getMaxReconnectDelay() {
+        return maxReconnectDelay;
+    }
+
+    /**
+     * Set the longest time to wait between two attempts to reconnect.
+     *
+     * @param maxReconnectDelay The maximum reconnect delay in milliseconds.
+     */
+    public void setMaxReconnectDelay(final long maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    /**
+     * Get the number of failed attempts to reconnect after which the client gives up.
+     *
+     * @return The maximum number of attempts, or 0 if the client never gives up.
+     */
+    public int getMaxReconnectAttempts() {
+        return maxReconnectAttempts;
+    }
+
+    /**
+     * Set the number of failed attempts to reconnect after which the client gives up and stops the connection.
+     *
+     * @param maxReconnectAttempts The maximum number of attempts, or 0 to never give up.
+     */
+    public void setMaxReconnectAttempts(final int maxReconnectAttempts) {
+        this.maxReconnectAttempts = maxReconnectAttempts;
+    }
+
+    /**
+     * Get whether a lost connection resumes its session with the server.
+     *
+     * @return True if session resumption is enabled.
+     */
+    public boolean isSessionResumption() {
+        return sessionResumption;
+    }
+
+    /**
+     * Set whether a lost connection resumes its session with the server, when using `Protocol.FRAMED` and reconnecting.
+     * <p>
+     * Sent messages are kept until the server acknowledged them, and after reconnecting both ends send the messages
+     * the other did not receive again, in order, so a dropped connection loses no message and requests keep waiting
+     * for their response. Messages can be sent while the client reconnects, and are written once the session is
+     * resumed. The server must enable sessions with `Server.setSessionTimeout`, and resumes a session only within that
+     * timeout; otherwise the client starts a new session and `IOClientHandling.reconnected` is told that it was not
+     * resumed. Files cannot be sent on a resumable session. Must be set before the client is initialized.
+     * </p>
+     *
+     * @param sessionResumption True to enable session resumption.
+     */
+    public void setSessionResumption(final boolean sessionResumption) {
+        this.sessionResumption = sessionResumption;
+    }
+
+    /**
+     * Get the maximum number of sent messages kept until the server acknowledged them.
+     *
+     * @return The capacity of the replay buffer.
+     */
+    public int getReplayBufferCapacity() {
+        return replayBufferCapacity;
+    }
+
+    /**
+     * Set the maximum number of sent messages kept until the server acknowledged them, when session resumption is
+     * enabled. Once the buffer is full, `send` refuses further messages like with a full outbound queue. Should be
+     * below the outbound queue capacity, so that all kept messages can be queued again when the session is resumed.
+     *
+     * @param replayBufferCapacity The capacity of the replay buffer.
+     */
+    public void setReplayBufferCapacity(final int replayBufferCapacity) {
+        this.replayBufferCapacity = replayBufferCapacity;
+    }
+
+    /**
+     * Get whether the client exchanges datagrams with the server besides the connection.
+     *
+     * @return True if datagrams are enabled.
+     */
+    public boolean isDatagrams() {
+        return datagrams;
+    }
+
+    /**
+     * Set whether the client exchanges datagrams with the server besides the connection, when using `Protocol.FRAMED`.
+     * <p>
+     * The client announces datagrams in its hello, and once the server offered them, it connects a datagram channel to
+     * the port of the server and sends empty datagrams until one came back. Datagrams of the server are handed to the
+     * same `IOClientHandling` as the messages of the connection, on the datagram thread of the client and flagged with
+     * `Frame.FLAG_DATAGRAM`, and are sent with `ClientConnection.sendDatagram`. They may be lost, duplicated or
+     * reordered, but a lost datagram does not hold back the ones after it, so use the connection for messages that
+     * must arrive and datagrams for frequent ones that are outdated by the next. The server must enable datagrams with
+     * `Server.setDatagrams`. Must be set before the client is initialized.
+     * </p>
+     *
+     * @param datagrams True to enable datagrams.
+     */
+    public void setDatagrams(final boolean datagrams) {
+        this.datagrams = datagrams;
+    }
+
+    /**
+     * Get whether datagrams of the server arriving after a newer one are dropped.
+     *
+     * @return True if stale datagrams are dropped.
+     */
+    public boolean isDropStaleDatagrams() {
+        return dropStaleDatagrams;
+    }
+
+    /**
+     * Set whether datagrams of the server arriving after a newer one are dropped, by their sequence number, instead of
+     * being handed to the handler out of order. Duplicates are dropped as well.
+     *
+     * @param dropStaleDatagrams True to drop stale datagrams.
+     */
+    public void setDropStaleDatagrams(final boolean dropStaleDatagrams) {
+        this.dropStaleDatagrams = dropStaleDatagrams;
+    }
+
+    /**
+     * Get the wire protocol spoken with the server.
+     *
+     * @return The `Protocol` used.
+     */
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Set the wire protocol spoken with the server. The server must use the same protocol.
+     * Must be called before `initialize()`.
+     *
+     * @param protocol The `Protocol` to use.
+     */
+    public void setProtocol(final Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Get the size in bytes of the write buffer of the connection.
+     *
+     * @return The size of the write buffer.
+     */
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * Set the size in bytes of the write buffer of the connection. Writes of the handler and sent messages are
+     * collected in this buffer, so that small writes share a single write call.
+     *
+     * @param writeBufferSize The size of the write buffer.
+     */
+    public void setWriteBufferSize(final int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    /**
+     * Get the policy deciding when sent messages are flushed to the server.
+     *
+     * @return The `FlushPolicy` used.
+     */
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Set the policy deciding when sent messages are flushed to the server, when using `Protocol.FRAMED`.
+     * In `ClientMode.NIO` every policy but `FlushPolicy.PER_MESSAGE` flushes once per event loop iteration.
+     *
+     * @param flushPolicy The `FlushPolicy` to use.
+     */
+    public void setFlushPolicy(final FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Get the delay in milliseconds used by the delayed flush policies.
+     *
+     * @return The flush interval in milliseconds.
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Set the delay in milliseconds used by the delayed flush policies.
+     * The interval only applies in `ClientMode.BLOCKING`. In `ClientMode.NIO` the delayed policies flush once per event
+     * loop iteration instead, and the interval has no effect.
+     *
+     * @param flushInterval The flush interval in milliseconds.
+     */
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Get the maximum number of sent messages waiting to be written to the server.
+     *
+     * @return The capacity of the outbound queue.
+     */
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    /**
+     * Set the maximum number of sent messages waiting to be written to the server. Once the queue is full, `send`
+     * refuses further messages until the writer caught up.
+     *
+     * @param outboundQueueCapacity The capacity of the outbound queue.
+     */
+    public void setOutboundQueueCapacity(final int outboundQueueCapacity) {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    /**
+     * Get the number of queued bytes at or below which the connection accepts messages again.
+     *
+     * @return The low watermark of the outbound queue in bytes.
+     */
+    public long getOutboundLowWatermark() {
+        return outboundLowWatermark;
+    }
+
+    /**
+     * Set the number of queued bytes at or below which the connection accepts messages again, once it exceeded its
+     * high watermark.
+     *
+     * @param outboundLowWatermark The low watermark of the outbound queue in bytes.
+     */
+    public void setOutboundLowWatermark(final long outboundLowWatermark) {
+        this.outboundLowWatermark = outboundLowWatermark;
+    }
+
+    /**
+     * Get the number of queued bytes above which sending to the server blocks.
+     *
+     * @return The high watermark of the outbound queue in bytes, or 0 if sending never blocks.
+     */
+    public long getOutboundHighWatermark() {
+        return outboundHighWatermark;
+    }
+
+    /**
+     * Set the number of queued bytes above which sending to the server blocks. Once the messages waiting to be written
+     * exceed the high watermark, `send` blocks the calling thread until the writer drained them down to the low
+     * watermark, so a producer cannot outrun the connection. Must be set before the client is initialized.
+     *
+     * @param outboundHighWatermark The high watermark of the outbound queue in bytes, or 0 to never block.
+     */
+    public void setOutboundHighWatermark(final long outboundHighWatermark) {
+        this.outboundHighWatermark = outboundHighWatermark;
+    }
+
+    /**
+     * Creates the outbound queue of the connection, bounded by the capacity and watermarks of the client.
+     *
+     * @return The outbound queue.
+     */
+    OutboundQueue createOutboundQueue() {
+        if (getOutboundHighWatermark() <= 0) return new OutboundQueue(getOutboundQueueCapacity());
+        return new OutboundQueue(getOutboundQueueCapacity(), getOutboundLowWatermark(), getOutboundHighWatermark());
+    }
+
+    /**
+     * Get whether the lock-step loop of `Protocol.SYNC` waits between cycles until there is data to send.
+     *
+     * @return True if idle mode is enabled.
+     */
+    public boolean isIdleMode() {
+        return idleMode;
+    }
+
+    /**
+     * Set whether the lock-step loop of `Protocol.SYNC` waits between cycles until there is data to send.
+     * <p>
+     * In idle mode the connection thread parks after every cycle instead of starting the next one at once, until
+     * `ClientConnection.wakeUp()` is called or the heartbeat interval elapsed. An idle client then neither sends sync
+     * bytes nor uses any CPU, while the heartbeat cycles keep the connection alive.
+     * </p>
+     *
+     * @param idleMode True to enable idle mode.
+     */
+    public void setIdleMode(final boolean idleMode) {
+        this.idleMode = idleMode;
+    }
+
+    /**
+     * Get the idle time after which a heartbeat is sent to the server.
+     *
+     * @return The heartbeat interval in milliseconds, or 0 if no heartbeats are sent.
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Set the idle time after which a heartbeat is sent to the server. With `Protocol.FRAMED` the heartbeat is an
+     * empty control frame; in idle mode of `Protocol.SYNC` it is a single cycle of the lock-step loop.
+     *
+     * @param heartbeatInterval The heartbeat interval in milliseconds, or 0 to send no heartbeats.
+     */
+    public void setHeartbeatInterval(final long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Get the time a request waits for its response, unless it is sent with a timeout of its own.
+     *
+     * @return The request timeout in milliseconds, or 0 if requests wait until the connection is closed.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Set the time a request waits for its response, unless it is sent with a timeout of its own. A request that
+     * timed out completes exceptionally with a `TimeoutException`, and its late response is dropped.
+     *
+     * @param requestTimeout The request timeout in milliseconds, or 0 to wait until the connection is closed.
+     */
+    public void setRequestTimeout(final long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Get the algorithm messages to the server are compressed with, when using `Protocol.FRAMED`.
+     *
+     * @return The compression of the client.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the algorithm messages to the server are compressed with, when using `Protocol.FRAMED`. The connection only
+     * compresses once the server announced that it can decompress the algorithm, and only messages of at least the
+     * compression threshold. Compressed messages from the server are decompressed regardless of this setting.
+     *
+     * @param compression The compression of the client, or `Compression.NONE` to send every message uncompressed.
+     */
+    public void setCompression(final Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Get the smallest payload size that is compressed.
+     *
+     * @return The compression threshold in bytes.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the smallest payload size that is compressed. Smaller messages are always sent as they are, since
+     * compressing them costs more time than it saves bandwidth.
+     *
+     * @param compressionThreshold The compression threshold in bytes.
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Get the pool the buffers of the connection are allocated from.
+     *
+     * @return The buffer pool.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Set the pool the buffers of the connection are allocated from.
+     *
+     * @param bufferPool The buffer pool.
+     */
+    public void setBufferPool(final BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Get the codecs messages sent with `ClientConnection.send(Object)` are encoded with, and received frames of a
+     * registered type are decoded with.
+     *
+     * @return The codec registry.
+     */
+    public CodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    /**
+     * Set the codecs messages are encoded and decoded with. A registry may be shared between clients and servers.
+     *
+     * @param codecRegistry The codec registry.
+     */
+    public void setCodecRegistry(final CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+    }
+
+    /**
+     * Get the metrics of the connection to the server.
+     *
+     * @return The client metrics.
+     */
+    public NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get whether the metrics are exported over JMX.
+     *
+     * @return True if JMX export is enabled.
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Set whether the metrics are exported over JMX as `me.bredo.network:type=Client,port=<local port>`. Must be set
+     * before the client is initialized.
+     *
+     * @param jmxEnabled True to enable JMX export.
+     */
+    public void setJmxEnabled(final boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
     /**
      * Set the `debugMode` flag.
      *
@@ -0,0 +1,153 @@
+package me.bredo.network.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A logical channel multiplexed over the connection of a client, when using `Protocol.FRAMED`.
+ * <p>
+ * Every frame sent on a channel carries its stream id, and the server answers with the same stream id, so the
+ * answers are handed to the `IOChannelHandling` of the channel instead of the handler of the client. Many concurrent
+ * request flows can share one socket this way, without paying for a connection each. Channels are cheap: opening one
+ * only reserves a stream id, and nothing is sent until the first message.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ClientChannel {
+
+    /**
+     * The connection the channel is multiplexed over.
+     */
+    private final    ClientConnection  clientConnection;
+    /**
+     * The stream id of the channel, unique among the open channels of its connection.
+     */
+    private final    int               streamId;
+    /**
+     * Object for handling the messages received on the channel
+     */
+    private volatile IOChannelHandling ioChannelHandling;
+    /**
+     * Flag indicating whether the channel was closed
+     */
+    private volatile boolean           closed;
+
+    /**
+     * Creates a new channel. Channels are opened through `ClientConnection.openChannel`.
+     *
+     * @param clientConnection  The connection the channel is multiplexed over.
+     * @param streamId          The stream id of the channel.
+     * @param ioChannelHandling The handler of the messages received on the channel.
+     */
+    ClientChannel(final ClientConnection clientConnection, final int streamId, final IOChannelHandling ioChannelHandling) {
+        this.clientConnection  = clientConnection;
+        this.streamId          = streamId;
+        this.ioChannelHandling = ioChannelHandling;
+    }
+
+    /**
+     * Queues a message for the server on this channel. Can be called from any thread.
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the channel or the connection is closed.
+     */
+    public boolean send(final int type, final byte[] payload) throws IOException {
+        checkOpen();
+        return getClientConnection().sendOnStream(this.streamId, type, payload);
+    }
+
+    /**
+     * Queues a message for the server on this channel. Can be called from any thread. The given buffer is neither
+     * consumed nor kept.
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message, between its position and limit.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the channel or the connection is closed.
+     */
+    public boolean send(final int type, final ByteBuffer payload) throws IOException {
+        checkOpen();
+        return getClientConnection().sendOnStream(this.streamId, type, payload);
+    }
+
+    /**
+     * Queues a message for the server on this channel, encoded by the codec registered for its class. Can be called
+     * from any thread.
+     *
+     * @param message The message to send.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the channel or the connection is closed.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     */
+    public boolean send(final Object message) throws IOException {
+        checkOpen();
+        return getClientConnection().sendOnStream(this.streamId, message);
+    }
+
+    /**
+     * Closes this channel, so its stream id can be reused. Messages the server still sends with the stream id are
+     * handed to the handler of the client.
+     */
+    public void close() {
+        if (this.closed) return;
+        this.closed = true;
+        getClientConnection().removeChannel(this);
+    }
+
+    /**
+     * Returns whether this channel is open.
+     *
+     * @return True if neither the channel nor its connection was closed, false otherwise.
+     */
+    public boolean isOpen() {
+        return !this.closed && getClientConnection().isConnected();
+    }
+
+    /**
+     * Checks that messages can be sent on this channel.
+     *
+     * @throws IOException If the channel is closed.
+     */
+    private void checkOpen() throws IOException {
+        if (this.closed) throw new IOException("Channel " + this.streamId + " is closed");
+    }
+
+    /**
+     * Returns the stream id of this channel.
+     *
+     * @return The stream id.
+     */
+    public int getStreamId() {
+        return this.streamId;
+    }
+
+    /**
+     * Returns the connection this channel is multiplexed over.
+     *
+     * @return The client connection.
+     */
+    public ClientConnection getClientConnection() {
+        return this.clientConnection;
+    }
+
+    /**
+     * Returns the handler of the messages received on this channel.
+     *
+     * @return The channel handler.
+     */
+    public IOChannelHandling getIoChannelHandling() {
+        return this.ioChannelHandling;
+    }
+
+    /**
+     * Sets the handler of the messages received on this channel.
+     *
+     * @param ioChannelHandling The channel handler.
+     */
+    public void setIoChannelHandling(final IOChannelHandling ioChannelHandling) {
+        this.ioChannelHandling = ioChannelHandling;
+    }
+}
@@ -0,0 +1,574 @@
+package me.bredo.network.client;
+
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.protocol.ByteBufferInputStream;
+import me.bredo.network.protocol.FileRegion;
+import me.bredo.network.protocol.FlushPolicy;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameCodec;
+import me.bredo.network.protocol.OutboundQueue;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.ReceiveBufferSizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives a single `ClientConnection` on a `ClientEventLoop` when the client runs in `ClientMode.NIO`.
+ * <p>
+ * The handler connects the channel without blocking, failing the connect future once the connect timeout elapsed,
+ * and then speaks the same protocol as the blocking connection thread. With `Protocol.SYNC` every cycle writes a sync
+ * byte followed by `IOClientHandling.outputStream`, and the next cycle starts once the sync byte of the server and its
+ * `IOClientHandling.inputStream` were read completely; in idle mode the next cycle waits for `wakeUp` or the heartbeat
+ * interval. With `Protocol.FRAMED` every complete frame in the input is handed to the connection, and frames sent
+ * through it are put into an `OutboundQueue` drained by the event loop.
+ * Unless the flush policy is `FlushPolicy.PER_MESSAGE`, queued output is written once at the end of the event loop
+ * iteration, so that all frames produced during the iteration share a single gathering write.
+ * The inbound buffer and all queued output are pooled buffers of the client's `BufferPool`, and are released when the
+ * connection is closed.
+ * All methods except `send`, `flush`, `wakeUp`, `pausedChanged` and `close` are called on the event loop thread only.
+ * </p>
+ */
+final class ClientChannelHandler {
+
+    private static final int    INITIAL_BUFFER_SIZE = 1024;
+    private static final byte[] EMPTY               = new byte[0];
+
+    private final ClientConnection        clientConnection;
+    private final SocketChannel           socketChannel;
+    private final CompletableFuture<Void> connectFuture;
+    private final ByteBufferInputStream   byteBufferInputStream;
+    private final DataInputStream         dataInputStream;
+    private final ByteArrayOutputStream   byteArrayOutputStream;
+    private final DataOutputStream        dataOutputStream;
+    private final Queue<Object>           outbound;
+    private final OutboundQueue           outboundQueue;
+    private final AtomicBoolean           sendScheduled;
+    private final AtomicBoolean           wakeUpScheduled;
+    private final ByteBuffer[]            gather;
+    private final Frame                   frame;
+    private final ReceiveBufferSizer      receiveBufferSizer;
+    private       PooledBuffer            inbound;
+    private       SelectionKey            selectionKey;
+    private       ClientEventLoop         eventLoop;
+    private       boolean                 flushPending;
+    private       boolean                 connecting;
+    private       long                    connectDeadline;
+    private       long                    lastWrite;
+    private       boolean                 cycleRunning;
+    private       boolean                 cycleRequested;
+
+    /**
+     * Creates a new ClientChannelHandler instance.
+     *
+     * @param clientConnection the connection driven by this handler.
+     * @param socketChannel    the unconnected channel of the connection.
+     */
+    ClientChannelHandler(final ClientConnection clientConnection, final SocketChannel socketChannel) {
+        this.clientConnection      = clientConnection;
+        this.socketChannel         = socketChannel;
+        this.connectFuture         = new CompletableFuture<>();
+        this.receiveBufferSizer    = clientConnection.getClient().getSocketOptions().newReceiveBufferSizer();
+        this.inbound               = clientConnection.getClient().getBufferPool().allocate(this.receiveBufferSizer.getSize());
+        this.byteBufferInputStream = new ByteBufferInputStream(this.inbound.getByteBuffer());
+        this.dataInputStream       = new DataInputStream(this.byteBufferInputStream);
+        this.byteArrayOutputStream = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        this.dataOutputStream      = new DataOutputStream(this.byteArrayOutputStream);
+        this.outbound              = new ArrayDeque<>();
+        this.outboundQueue         = clientConnection.getClient().createOutboundQueue();
+        this.sendScheduled         = new AtomicBoolean();
+        this.wakeUpScheduled       = new AtomicBoolean();
+        this.gather                = new ByteBuffer[64];
+        this.frame                 = new Frame(0, (byte) 0, this.inbound.getByteBuffer());
+        this.lastWrite             = System.nanoTime();
+    }
+
+    /**
+     * Applies the socket options, switches the channel to non-blocking mode, registers it and starts connecting it to
+     * the server.
+     *
+     * @param selector the selector of the event loop.
+     * @param address  the address of the server.
+     * @param timeout  the time in milliseconds to wait for the connection, or 0 to wait indefinitely.
+     */
+    void connect(final Selector selector, final SocketAddress address, final long timeout) {
+        try {
+            getClient().getSocketOptions().configure(this.socketChannel.socket());
+            this.socketChannel.configureBlocking(false);
+            this.selectionKey = this.socketChannel.register(selector, 0, this);
+            this.connecting = true;
+            this.connectDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            if (timeout <= 0) this.connectDeadline = Long.MAX_VALUE;
+            if (this.socketChannel.connect(address)) {
+                connected();
+            } else {
+                this.selectionKey.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (final IOException | RuntimeException exception) {
+            connectFailed(exception);
+        }
+    }
+
+    /**
+     * Completes a pending connect once the selector reported the channel as connectable.
+     *
+     * @throws IOException if the connection was refused or failed.
+     */
+    private void finishConnect() throws IOException {
+        if (this.socketChannel.finishConnect()) connected();
+    }
+
+    /**
+     * Starts the connection once the channel is connected, and completes the connect future.
+     */
+    private void connected() {
+        this.connecting = false;
+        this.lastWrite = System.nanoTime();
+        this.selectionKey.interestOps(0);
+        getClient().connected(this.socketChannel.socket());
+        this.connectFuture.complete(null);
+    }
+
+    /**
+     * Fails the connect future, and closes the channel and releases the buffers of this handler. Can be called from
+     * any thread.
+     *
+     * @param exception the reason the connection could not be made.
+     */
+    void connectFailed(final Throwable exception) {
+        this.connecting = false;
+        try {
+            this.socketChannel.close();
+        } catch (final IOException ignored) {
+            // The connection was never established, so nothing is lost.
+        }
+        this.outboundQueue.close();
+        release();
+        this.connectFuture.completeExceptionally(exception);
+    }
+
+    /**
+     * Starts reading from the channel once the connection was started, and starts the first cycle of the lock-step
+     * loop when using `Protocol.SYNC`. Must be called on the event loop thread.
+     */
+    void started() {
+        try {
+            if (getClient().getProtocol() == Protocol.SYNC) cycle();
+            write();
+        } catch (final IOException | RuntimeException exception) {
+            lost(exception);
+        }
+    }
+
+    /**
+     * Queues an encoded frame for writing. Can be called from any thread; frames queued from other threads wake up the
+     * event loop once for the whole batch.
+     *
+     * @param frame the encoded frame, released once it was written.
+     * @return true if the frame was queued, false if the outbound queue is full or the connection is closed.
+     */
+    boolean send(final PooledBuffer frame) {
+        if (!this.outboundQueue.offer(frame)) return false;
+        queued();
+        return true;
+    }
+
+    /**
+     * Queues a file region for writing. Can be called from any thread.
+     *
+     * @param fileRegion the file region, released once it was written.
+     * @return true if the region was queued, false if the outbound queue is full or the connection is closed.
+     */
+    boolean send(final FileRegion fileRegion) {
+        if (!this.outboundQueue.offer(fileRegion)) return false;
+        queued();
+        return true;
+    }
+
+    /**
+     * Schedules the output queued by `send`. Output queued from other threads wakes up the event loop once for the
+     * whole batch, as does output queued while the channel is still connecting, which is then written once connected.
+     */
+    private void queued() {
+        if (this.eventLoop.inEventLoop() && !this.connecting && this.selectionKey != null) {
+            sent();
+        } else if (this.sendScheduled.compareAndSet(false, true)) {
+            this.eventLoop.execute(() -> {
+                this.sendScheduled.set(false);
+                if (!this.connecting) sent();
+            });
+        }
+    }
+
+    /**
+     * Writes the queued frames either at once or at the end of the event loop iteration.
+     */
+    private void sent() {
+        if (getClient().getFlushPolicy() == FlushPolicy.PER_MESSAGE) {
+            flush();
+        } else if (!this.flushPending) {
+            this.flushPending = true;
+            this.eventLoop.flushLater(this);
+        }
+    }
+
+    /**
+     * Writes as much queued output as the channel accepts. Can be called from any thread.
+     */
+    void flush() {
+        if (!this.eventLoop.inEventLoop()) {
+            this.eventLoop.execute(this::flush);
+            return;
+        }
+        this.flushPending = false;
+        if (this.connecting) return;
+        try {
+            write();
+        } catch (final IOException | RuntimeException exception) {
+            lost(exception);
+        }
+    }
+
+    /**
+     * Starts the next cycle of the lock-step loop when using `Protocol.SYNC` in idle mode, or right after the running
+     * cycle. Can be called from any thread; calls made before the event loop got to it start a single cycle.
+     */
+    void wakeUp() {
+        if (this.eventLoop == null || !this.wakeUpScheduled.compareAndSet(false, true)) return;
+        this.eventLoop.execute(() -> {
+            this.wakeUpScheduled.set(false);
+            if (this.connecting || this.selectionKey == null || !this.clientConnection.isConnected()) return;
+            if (this.cycleRunning) {
+                this.cycleRequested = true;
+                return;
+            }
+            try {
+                cycle();
+                write();
+            } catch (final IOException | RuntimeException exception) {
+                lost(exception);
+            }
+        });
+    }
+
+    /**
+     * Fails the connect once its timeout elapsed, and otherwise sends a heartbeat if the connection was idle for the
+     * heartbeat interval. With `Protocol.FRAMED` the heartbeat is an empty control frame; in idle mode of
+     * `Protocol.SYNC` it is a single cycle of the lock-step loop.
+     *
+     * @param now the current time in nanoseconds.
+     */
+    void tick(final long now) {
+        if (this.connecting) {
+            if (now - this.connectDeadline >= 0) {
+                connectFailed(new ConnectException("Connecting to " + getClient().getIp() + ":" + getClient().getPort() + " timed out"));
+            }
+            return;
+        }
+        final long heartbeatInterval = TimeUnit.MILLISECONDS.toNanos(getClient().getHeartbeatInterval());
+        if (heartbeatInterval <= 0 || now - this.lastWrite < heartbeatInterval || !this.clientConnection.isConnected()) return;
+        if (getClient().getProtocol() == Protocol.FRAMED) {
+            final PooledBuffer heartbeat = FrameCodec.encode(getClient().getBufferPool(), FrameCodec.HEARTBEAT_TYPE, (byte) 0, EMPTY, 0, 0);
+            if (!send(heartbeat)) heartbeat.release();
+            flush();
+        } else if (getClient().isIdleMode() && !this.cycleRunning) {
+            try {
+                cycle();
+                write();
+            } catch (final IOException | RuntimeException exception) {
+                lost(exception);
+            }
+        }
+    }
+
+    /**
+     * Applies a pause or resume of the connection on the event loop. Can be called from any thread. Reading is stopped
+     * or restarted, and a resumed connection hands on the messages that were left in the inbound buffer.
+     */
+    void pausedChanged() {
+        if (this.eventLoop == null) return;
+        this.eventLoop.execute(() -> {
+            if (this.inbound == null || this.selectionKey == null || this.connecting) return;
+            try {
+                if (!this.clientConnection.isPaused()) {
+                    final ByteBuffer buffer = this.inbound.getByteBuffer();
+                    buffer.flip();
+                    process();
+                    buffer.compact();
+                }
+                write();
+            } catch (final IOException | RuntimeException exception) {
+                lost(exception);
+            }
+        });
+    }
+
+    /**
+     * Handles the readiness of the channel reported by the selector.
+     *
+     * @param selectionKey the selected key of the channel.
+     */
+    void handle(final SelectionKey selectionKey) {
+        if (this.connecting) {
+            try {
+                if (selectionKey.isValid() && selectionKey.isConnectable()) finishConnect();
+            } catch (final IOException | RuntimeException exception) {
+                connectFailed(exception);
+            }
+            return;
+        }
+        try {
+            if (selectionKey.isValid() && selectionKey.isReadable()) read();
+            if (selectionKey.isValid() && selectionKey.isWritable()) write();
+        } catch (final IOException | RuntimeException exception) {
+            lost(exception);
+        }
+    }
+
+    /**
+     * Reports the loss of the connection after an error on the channel or in the handler.
+     *
+     * @param exception the error.
+     */
+    private void lost(final Exception exception) {
+        this.clientConnection.connectionLost(this.socketChannel.socket(), exception);
+    }
+
+    /**
+     * Reads the available bytes from the channel and hands every complete message to the connection.
+     *
+     * @throws IOException if there is an error reading from the channel or in the handler.
+     */
+    private void read() throws IOException {
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        final int read = this.socketChannel.read(buffer);
+        if (read < 0) {
+            this.clientConnection.connectionLost(this.socketChannel.socket(), null);
+            return;
+        }
+        this.clientConnection.getMetrics().bytesRead(read);
+        this.receiveBufferSizer.record(read, !buffer.hasRemaining());
+        buffer.flip();
+        process();
+        buffer.compact();
+        resizeInbound();
+        write();
+    }
+
+    /**
+     * Hands every message in the inbound buffer to the connection, and rolls the buffer back to the start of a message
+     * the handler could not read completely. With `Protocol.SYNC` every completely read answer of the server ends the
+     * running cycle and starts the next one, unless the client is in idle mode and nobody asked for it.
+     *
+     * @throws IOException if a frame is invalid or there is an error in the handler.
+     */
+    private void process() throws IOException {
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        if (getClient().getProtocol() == Protocol.FRAMED) {
+            while (this.clientConnection.isConnected() && !this.clientConnection.isPaused() && FrameCodec.decode(buffer, this.frame) != null) {
+                this.clientConnection.message(this.socketChannel.socket(), this.frame);
+            }
+            return;
+        }
+        while (buffer.hasRemaining() && this.clientConnection.isConnected() && !this.clientConnection.isPaused()) {
+            final int mark = buffer.position();
+            try {
+                this.clientConnection.inputStream(this.dataInputStream);
+            } catch (final EOFException exception) {
+                buffer.position(mark);
+                break;
+            }
+            this.cycleRunning = false;
+            if (!getClient().isIdleMode() || this.cycleRequested) cycle();
+        }
+    }
+
+    /**
+     * Starts a cycle of the lock-step loop by producing the sync byte and the output of the handler.
+     *
+     * @throws IOException if there is an error in the handler.
+     */
+    private void cycle() throws IOException {
+        this.cycleRequested = false;
+        this.cycleRunning = true;
+        this.clientConnection.outputStream(this.dataOutputStream);
+        this.outbound.add(PooledBuffer.wrap(ByteBuffer.wrap(this.byteArrayOutputStream.toByteArray())));
+        this.byteArrayOutputStream.reset();
+    }
+
+    /**
+     * Writes as much of the queued output as the channel accepts with gathering writes, and only keeps the channel
+     * registered for writing while output is left. File regions are handed to the channel with
+     * `FileChannel.transferTo` once every frame queued before them was written. The channel stays registered for
+     * reading unless the connection is paused.
+     *
+     * @throws IOException if there is an error writing to the channel or reading a file.
+     */
+    private void write() throws IOException {
+        if (!this.clientConnection.isConnected()) return;
+        while (true) {
+            Object element;
+            while (this.outbound.size() < this.gather.length && (element = this.outboundQueue.poll()) != null) this.outbound.add(element);
+            if (this.outbound.isEmpty()) break;
+            if (this.outbound.peek() instanceof FileRegion) {
+                final FileRegion fileRegion = (FileRegion) this.outbound.peek();
+                final long bytes = fileRegion.transferTo(this.socketChannel);
+                this.clientConnection.getMetrics().bytesWritten(bytes);
+                if (bytes > 0) this.lastWrite = System.nanoTime();
+                if (!fileRegion.isDone()) break;
+                this.outbound.poll();
+                fileRegion.release();
+                continue;
+            }
+            int count = 0;
+            for (final Object buffer : this.outbound) {
+                if (count == this.gather.length || buffer instanceof FileRegion) break;
+                this.gather[count++] = ((PooledBuffer) buffer).getByteBuffer();
+            }
+            final long bytes = this.socketChannel.write(this.gather, 0, count);
+            this.clientConnection.getMetrics().bytesWritten(bytes);
+            if (bytes > 0) this.lastWrite = System.nanoTime();
+            int written = 0;
+            while (written < count && !this.gather[written].hasRemaining()) {
+                ((PooledBuffer) this.outbound.poll()).release();
+                written++;
+            }
+            Arrays.fill(this.gather, 0, count, null);
+            if (written < count) break;
+        }
+        final int reading = this.clientConnection.isPaused() ? 0 : SelectionKey.OP_READ;
+        setInterest(this.outbound.isEmpty() && this.outboundQueue.isEmpty() ? reading : reading | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Resizes the inbound buffer to the capacity the receive buffer sizer asks for, or to fit a single message that
+     * does not fit into it, and releases the old buffer. The size of a pending frame is known from its header, while
+     * a buffer holding part of a message of `Protocol.SYNC` is never shrunk.
+     */
+    private void resizeInbound() {
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        final int pending = buffer.position();
+        final int required = getClient().getProtocol() == Protocol.FRAMED && pending >= FrameCodec.HEADER_SIZE ? FrameCodec.HEADER_SIZE + buffer.getInt(0) : 0;
+        final int capacity = this.receiveBufferSizer.capacity(buffer.capacity(), pending, required);
+        if (capacity == buffer.capacity()) return;
+        final PooledBuffer resized = getClient().getBufferPool().allocate(capacity);
+        resized.getByteBuffer().put(buffer.flip());
+        this.inbound.release();
+        this.inbound = resized;
+        this.byteBufferInputStream.setByteBuffer(resized.getByteBuffer());
+    }
+
+    /**
+     * Closes the channel and releases the buffers of this handler once the connection is closed. Can be called from
+     * any thread; the buffers are released on the event loop after the current event is handled, since the handler may
+     * still be reading them.
+     */
+    void close() {
+        try {
+            this.socketChannel.close();
+        } catch (final IOException exception) {
+            getClient().warning("Could not close client");
+            exception.printStackTrace();
+        }
+        this.outboundQueue.close();
+        if (this.eventLoop != null && this.eventLoop.isRunning()) {
+            this.eventLoop.execute(this::release);
+        } else {
+            release();
+        }
+    }
+
+    /**
+     * Closes the connection, or fails it if it is still connecting, once its event loop is shut down.
+     */
+    void eventLoopClosed() {
+        if (this.connecting) {
+            connectFailed(new IOException("Event loop '" + this.eventLoop.getThread().getName() + "' is shut down"));
+        } else if (this.clientConnection.isConnected()) {
+            this.clientConnection.stopConnection();
+        }
+    }
+
+    /**
+     * Releases the inbound buffer and every frame waiting to be written.
+     */
+    private void release() {
+        if (this.inbound == null) return;
+        this.inbound.release();
+        this.inbound = null;
+        Object element;
+        while ((element = this.outbound.poll()) != null) {
+            OutboundQueue.release(element);
+        }
+        this.outboundQueue.clear();
+    }
+
+    /**
+     * Updates the operations the selector watches for.
+     *
+     * @param interestOps the operations to watch for.
+     */
+    private void setInterest(final int interestOps) {
+        if (this.selectionKey.isValid() && this.selectionKey.interestOps() != interestOps) this.selectionKey.interestOps(interestOps);
+    }
+
+    /**
+     * Returns the future completed once the channel is connected, or completed exceptionally if connecting failed.
+     *
+     * @return the connect future.
+     */
+    CompletableFuture<Void> getConnectFuture() {
+        return this.connectFuture;
+    }
+
+    /**
+     * Returns whether the calling thread is the thread of the event loop driving this handler.
+     *
+     * @return true if called from the event loop thread, false otherwise.
+     */
+    boolean inEventLoop() {
+        return this.eventLoop != null && this.eventLoop.inEventLoop();
+    }
+
+    /**
+     * Returns the queue of frames waiting to be written.
+     *
+     * @return the outbound queue.
+     */
+    OutboundQueue getOutboundQueue() {
+        return this.outboundQueue;
+    }
+
+    /**
+     * Sets the event loop this handler is registered with.
+     *
+     * @param eventLoop the event loop.
+     */
+    void setEventLoop(final ClientEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Returns the client object associated with this handler.
+     *
+     * @return The client object.
+     */
+    Client getClient() {
+        return this.clientConnection.getClient();
+    }
+}
@@ -1,9 +1,45 @@
 package me.bredo.network.client;
 
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.codec.BinaryReader;
+import me.bredo.network.metrics.ConnectionMetrics;
+import me.bredo.network.metrics.MeteredInputStream;
+import me.bredo.network.metrics.MeteredOutputStream;
+import me.bredo.network.protocol.DatagramCodec;
+import me.bredo.network.protocol.DatagramTransport;
+import me.bredo.network.protocol.FileRegion;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameCodec;
+import me.bredo.network.protocol.FrameCompressor;
+import me.bredo.network.protocol.FrameReader;
+import me.bredo.network.protocol.FrameWriter;
+import me.bredo.network.protocol.HashedWheelTimer;
+import me.bredo.network.protocol.OutboundQueue;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.Session;
+
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Class responsible for handling the client connection to a server.
@@ -12,6 +48,16 @@ import java.net.Socket;
  */
 public final class ClientConnection {
 
+    /**
+     * Number of empty datagrams sent to the server until one came back, before datagrams are given up on.
+     */
+    private static final int  DATAGRAM_REGISTRATION_ATTEMPTS = 10;
+
+    /**
+     * Time in milliseconds between two empty datagrams sent to the server until one came back.
+     */
+    private static final long DATAGRAM_REGISTRATION_INTERVAL = 200;
+
     /**
      * Reference to the client object.
      */
@@ -20,12 +66,123 @@ public final class ClientConnection {
     /**
      * The thread object that is responsible for handling the connection to the server.
      */
-    private final Thread thread;
+    private volatile Thread thread;
 
     /**
      * Indicates whether the connection is currently paused or not.
      */
-    private boolean paused;
+    private volatile boolean paused;
+
+    /**
+     * The buffered writer frames are sent through, when using `Protocol.FRAMED` in `ClientMode.BLOCKING`.
+     */
+    private FrameWriter frameWriter;
+
+    /**
+     * The handler driving the connection on an event loop, when using `ClientMode.NIO`.
+     */
+    private volatile ClientChannelHandler channelHandler;
+
+    /**
+     * Set by `wakeUp` to start the next cycle of the lock-step loop in idle mode.
+     */
+    private final AtomicBoolean wakeUpRequested;
+
+    /**
+     * The metrics of this connection, added up into the metrics of the client.
+     */
+    private final ConnectionMetrics metrics;
+
+    /**
+     * The reader received messages are decoded with, reused for every message.
+     */
+    private final BinaryReader binaryReader;
+
+    /**
+     * Compresses sent frames and decompresses received frames, once negotiated with the server. Created when the
+     * connection is started, with the compression settings of the client at that time.
+     */
+    private FrameCompressor frameCompressor;
+
+    /**
+     * The open logical channels of this connection, by stream id.
+     */
+    private final Map<Integer, ClientChannel> channels;
+
+    /**
+     * The requests waiting for their response, by correlation id.
+     */
+    private final Map<Integer, PendingRequest> requests;
+
+    /**
+     * The last stream id handed out to a channel or request.
+     */
+    private final AtomicInteger lastStreamId;
+
+    /**
+     * The resumable session of this connection, when session resumption is enabled and the server supports it.
+     */
+    private volatile Session session;
+
+    /**
+     * The socket the session was last established on. Guarded by the lock of the session.
+     */
+    private Socket sessionSocket;
+
+    /**
+     * Set once the connection was stopped for good, so that it is not reconnected.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Set while the connection is lost and the client reconnects.
+     */
+    private volatile boolean reconnecting;
+
+    /**
+     * The transport datagrams are exchanged with the server on, once the server offered them.
+     */
+    private volatile DatagramTransport datagramTransport;
+
+    /**
+     * The address the server receives datagrams on.
+     */
+    private volatile SocketAddress datagramAddress;
+
+    /**
+     * The token the server offered for this connection, sent with every datagram.
+     */
+    private volatile long datagramToken;
+
+    /**
+     * Set once a datagram of the server was received, which shows that datagrams reach the server and back.
+     */
+    private volatile boolean datagramReady;
+
+    /**
+     * The sequence number of the last sent datagram.
+     */
+    private final AtomicInteger datagramSequence;
+
+    /**
+     * The reader received datagrams are decoded with, on the datagram thread.
+     */
+    private final BinaryReader datagramReader;
+
+    /**
+     * The highest sequence number of the received datagrams. Only used by the datagram thread.
+     */
+    private int lastDatagramSequence;
+
+    /**
+     * Set once a datagram was received on the current datagram transport. Only used by the datagram thread.
+     */
+    private boolean datagramReceived;
+
+    /**
+     * The number of datagrams of the server that were dropped.
+     */
+    private volatile long droppedDatagrams;
 
     /**
      * Creates a new instance of the client connection for the given client.
@@ -34,25 +191,62 @@ public final class ClientConnection {
      */
     public ClientConnection(final Client client) {
         this.client = client;
-        this.thread = new Thread(this::connection, "Client-Thread");
+        this.metrics = new ConnectionMetrics(client.getMetrics());
+        this.wakeUpRequested = new AtomicBoolean();
+        this.binaryReader = new BinaryReader();
+        this.channels = new ConcurrentHashMap<>();
+        this.requests = new ConcurrentHashMap<>();
+        this.lastStreamId = new AtomicInteger();
+        this.datagramSequence = new AtomicInteger();
+        this.datagramReader = new BinaryReader();
     }
 
     /**
      * Handles the connection to the server by opening input and output streams.
      */
     public void connection() {
+        if (getClient().getProtocol() == Protocol.FRAMED) {
+            framedConnection();
+            return;
+        }
+        final Socket socket = getSocket();
         try {
-            final DataOutputStream dataOutputStream = new DataOutputStream(getSocket().getOutputStream());
-            final DataInputStream dataInputStream = new DataInputStream(getSocket().getInputStream());
+            final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new MeteredOutputStream(socket.getOutputStream(), this.metrics), getClient().getWriteBufferSize()));
+            final DataInputStream dataInputStream = new DataInputStream(new MeteredInputStream(socket.getInputStream(), this.metrics));
 
-            while (isConnected()) {
+            while (!socket.isClosed()) {
                 try {
+                    awaitResume(socket);
                     outputStream(dataOutputStream);
+                    dataOutputStream.flush();
                     inputStream(dataInputStream);
+                    if (getClient().isIdleMode()) awaitWakeUp(socket);
+                } catch (final IOException exception) {
+                    connectionLost(socket, exception);
+                }
+            }
+
+        } catch (final IOException exception) {
+            getClient().warning("Could not create IO stream");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Receives frames from the server and hands them to the handler until the connection is closed,
+     * when using `Protocol.FRAMED`.
+     */
+    private void framedConnection() {
+        final Socket socket = getSocket();
+        try {
+            final FrameReader frameReader = new FrameReader(new MeteredInputStream(socket.getInputStream(), this.metrics), getClient().getSocketOptions().newReceiveBufferSizer());
+
+            while (!socket.isClosed()) {
+                try {
+                    awaitResume(socket);
+                    message(socket, frameReader.read());
                 } catch (final IOException exception) {
-                    getClient().warning("Lost connection to server");
-                    exception.printStackTrace();
-                    stopConnection();
+                    connectionLost(socket, exception);
                 }
             }
 
@@ -62,16 +256,872 @@ public final class ClientConnection {
         }
     }
 
+    /**
+     * Parks the connection thread while the connection is paused, so that nothing is read from the socket and the
+     * server is slowed down once the TCP window is full.
+     *
+     * @param socket The socket read by the connection thread.
+     */
+    private void awaitResume(final Socket socket) {
+        while (this.paused && !socket.isClosed()) {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Hands a received frame to the handler, decompressed and decoded if a codec is registered for its type. Control
+     * frames of the protocol are handled by the connection and not handed on.
+     *
+     * @param socket   The socket the frame was received on.
+     * @param received The received frame.
+     * @throws IOException If the frame could not be decompressed or decoded, or there is an error in the handler.
+     */
+    void message(final Socket socket, final Frame received) throws IOException {
+        if (received.getType() < 0) {
+            control(socket, received);
+            return;
+        }
+        final Session session = this.session;
+        if (session != null && !sessionReceived(session, socket)) return;
+        this.metrics.messageReceived();
+        if (received.isResponse()) {
+            response(received);
+            return;
+        }
+        final ClientChannel channel = received.hasStreamId() ? this.channels.get(received.getStreamId()) : null;
+        final IOChannelHandling ioChannelHandling = channel == null ? null : channel.getIoChannelHandling();
+        final IOClientHandling ioClientHandling = getClient().getIoClientHandling();
+        if (ioChannelHandling == null && ioClientHandling == null) return;
+        final Frame frame = this.frameCompressor.decompress(received);
+        final long start = System.nanoTime();
+        final Object message = getClient().getCodecRegistry().decode(frame, this.binaryReader);
+        if (ioChannelHandling != null) {
+            if (message != null) {
+                ioChannelHandling.decoded(message, channel);
+            } else {
+                ioChannelHandling.message(frame, channel);
+            }
+        } else if (message != null) {
+            ioClientHandling.decoded(message, this);
+        } else {
+            ioClientHandling.message(frame, this);
+        }
+        this.metrics.messageHandled(System.nanoTime() - start);
+    }
+
+    /**
+     * Counts a message received on the session, and acknowledges the received messages once they are due.
+     * <p>
+     * Messages still read from a lost socket after the session was suspended are dropped, since the server sends them
+     * again once the session is resumed. Messages the server sent on a new socket before it resumed the session were
+     * not kept by the server, and are handed on without being counted.
+     * </p>
+     *
+     * @param session The session of the connection.
+     * @param socket  The socket the message was received on.
+     * @return True if the message is handed on, false if it is dropped.
+     */
+    private boolean sessionReceived(final Session session, final Socket socket) {
+        final PooledBuffer ack;
+        synchronized (session) {
+            if (!session.isEstablished()) return socket != this.sessionSocket;
+            if (socket != this.sessionSocket) return false;
+            if (!session.received()) return true;
+            ack = session.acknowledgement(getClient().getBufferPool());
+        }
+        if (!queueFrame(ack)) ack.release();
+        return true;
+    }
+
+    /**
+     * Handles a control frame of the protocol.
+     *
+     * @param socket The socket the frame was received on.
+     * @param frame  The received control frame.
+     * @throws IOException If the messages of a resumed session could not be queued again.
+     */
+    private void control(final Socket socket, final Frame frame) throws IOException {
+        if (socket != getSocket()) return;
+        switch (frame.getType()) {
+            case FrameCodec.HELLO_TYPE:
+                this.frameCompressor.helloReceived(frame);
+                if (this.session != null && (this.frameCompressor.getPeerFeatures() & FrameCodec.FEATURE_SESSIONS) == 0) sessionUnsupported();
+                break;
+            case FrameCodec.RESUME_TYPE:
+                resumed(socket, frame);
+                break;
+            case FrameCodec.ACK_TYPE:
+                final Session session = this.session;
+                if (session != null) session.acknowledged(frame);
+                break;
+            case FrameCodec.DATAGRAM_TYPE:
+                datagramsOffered(socket, frame);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Connects a datagram channel to the port the server offered, replacing the one of a previous connection, and
+     * starts sending empty datagrams until one came back.
+     *
+     * @param socket The socket the offer was received on.
+     * @param frame  The `FrameCodec.DATAGRAM_TYPE` frame of the server.
+     */
+    private void datagramsOffered(final Socket socket, final Frame frame) {
+        final long token = DatagramCodec.getOfferedToken(frame);
+        final int port = DatagramCodec.getOfferedPort(frame);
+        if (!getClient().isDatagrams() || token == 0 || port == 0) return;
+        closeDatagrams();
+        try {
+            final InetSocketAddress address = new InetSocketAddress(socket.getInetAddress(), port);
+            final DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.connect(address);
+            final DatagramTransport datagramTransport = new DatagramTransport(datagramChannel, this::datagramReceived, exception -> {
+                if (!getClient().debugMode()) return;
+                getClient().warning("Could not receive datagram");
+                exception.printStackTrace();
+            });
+            this.datagramToken = token;
+            this.datagramAddress = address;
+            this.datagramReceived = false;
+            this.datagramTransport = datagramTransport;
+            datagramTransport.start(getClient().getThreadFactory(), "Client-Datagram-Thread");
+            registerDatagrams(datagramTransport, 0);
+        } catch (final IOException exception) {
+            getClient().warning("Could not open datagram channel");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends an empty datagram, which tells the server the address datagrams reach the client on, and schedules the
+     * next one until the server answered or the attempts are used up.
+     *
+     * @param datagramTransport The transport the datagrams are sent on.
+     * @param attempt           The number of datagrams sent so far.
+     */
+    private void registerDatagrams(final DatagramTransport datagramTransport, final int attempt) {
+        if (this.datagramTransport != datagramTransport || this.datagramReady || !datagramTransport.isRunning()) return;
+        if (attempt == DATAGRAM_REGISTRATION_ATTEMPTS) {
+            getClient().warning("Datagrams do not reach the server and back");
+            return;
+        }
+        try {
+            datagramTransport.send(DatagramCodec.heartbeat(getClient().getBufferPool(), this.datagramToken, this.datagramSequence.incrementAndGet()), this.datagramAddress);
+        } catch (final IOException exception) {
+            if (getClient().debugMode()) exception.printStackTrace();
+        }
+        HashedWheelTimer.getDefault().newTimeout(() -> registerDatagrams(datagramTransport, attempt + 1), DATAGRAM_REGISTRATION_INTERVAL, TimeUnit.MILLISECONDS, getClient()::timeoutFailed);
+    }
+
+    /**
+     * Hands a datagram of the server to the handler of the client, on the datagram thread. Datagrams arriving after a
+     * newer one are dropped if the client drops stale datagrams, and so are datagrams arriving while the connection is
+     * paused. Empty `FrameCodec.HEARTBEAT_TYPE` datagrams only show that datagrams reach the server and back.
+     *
+     * @param token    The token the datagram was sent with.
+     * @param sequence The sequence number of the datagram.
+     * @param frame    The frame of the datagram.
+     * @param sender   The address the datagram was sent from.
+     */
+    private void datagramReceived(final long token, final int sequence, final Frame frame, final SocketAddress sender) {
+        if (token != this.datagramToken) return;
+        if (!this.datagramReceived || DatagramCodec.isNewer(sequence, this.lastDatagramSequence)) {
+            this.datagramReceived = true;
+            this.lastDatagramSequence = sequence;
+        } else if (getClient().isDropStaleDatagrams()) {
+            this.droppedDatagrams++;
+            return;
+        }
+        this.datagramReady = true;
+        final IOClientHandling ioClientHandling = getClient().getIoClientHandling();
+        if (frame.getType() < 0 || frame.isCompressed() || ioClientHandling == null) return;
+        if (this.paused) {
+            this.droppedDatagrams++;
+            return;
+        }
+        this.metrics.messageReceived();
+        final long start = System.nanoTime();
+        try {
+            final Object message = getClient().getCodecRegistry().decode(frame, this.datagramReader);
+            if (message != null) {
+                ioClientHandling.decoded(message, this);
+            } else {
+                ioClientHandling.message(frame, this);
+            }
+        } catch (final IOException | RuntimeException exception) {
+            connectionLost(getSocket(), exception);
+            return;
+        }
+        this.metrics.messageHandled(System.nanoTime() - start);
+    }
+
+    /**
+     * Stops the datagram transport of the connection, if the server offered datagrams.
+     */
+    private void closeDatagrams() {
+        final DatagramTransport datagramTransport = this.datagramTransport;
+        this.datagramTransport = null;
+        this.datagramReady = false;
+        if (datagramTransport != null) datagramTransport.stop();
+    }
+
+    /**
+     * Resumes the session once the server answered its resumption, and writes the messages the server did not receive
+     * yet. A session the server could not resume is started over: the messages kept for it are dropped, and the
+     * requests waiting for their response fail.
+     *
+     * @param socket The socket the session is resumed on.
+     * @param frame  The `FrameCodec.RESUME_TYPE` frame of the server.
+     * @throws IOException If the messages to send again could not be queued.
+     */
+    private void resumed(final Socket socket, final Frame frame) throws IOException {
+        final Session session = this.session;
+        if (session == null || frame.getPayloadSize() < 2 * Long.BYTES + 1) return;
+        final ByteBuffer source = frame.getSource();
+        final long id = source.getLong(frame.getOffset());
+        final long received = source.getLong(frame.getOffset() + Long.BYTES);
+        final boolean resumed = source.get(frame.getOffset() + 2 * Long.BYTES) != 0;
+        final boolean lost;
+        synchronized (session) {
+            List<PooledBuffer> frames = resumed || session.getId() == 0 ? session.resume(received) : null;
+            lost = frames == null;
+            if (lost) {
+                session.reset(id);
+                frames = session.resume(0);
+            }
+            session.setId(id);
+            this.sessionSocket = socket;
+            replay(frames);
+        }
+        if (getClient().debugMode()) getClient().print((resumed && !lost ? "Resumed" : "Started") + " session " + id);
+        if (lost) failRequests("Session with server was lost");
+        reconnected(!lost);
+    }
+
+    /**
+     * Ends the session once the hello of the server shows that it does not support sessions, and writes the messages
+     * sent so far, which were only kept.
+     *
+     * @throws IOException If the kept messages could not be queued.
+     */
+    private void sessionUnsupported() throws IOException {
+        final Session session = this.session;
+        this.session = null;
+        final List<PooledBuffer> frames;
+        synchronized (session) {
+            frames = session.resume(0);
+            try {
+                if (frames != null) replay(frames);
+            } finally {
+                session.close();
+            }
+        }
+        if (frames == null) failRequests("Session with server was lost");
+        reconnected(false);
+    }
+
+    /**
+     * Queues the messages of a resumed session again, in order. Must be called while the session is locked.
+     *
+     * @param frames The messages to send again, owned by this method.
+     * @throws IOException If the outbound queue is full, in which case the remaining messages are released.
+     */
+    private void replay(final List<PooledBuffer> frames) throws IOException {
+        for (int i = 0; i < frames.size(); i++) {
+            if (queueFrame(frames.get(i))) continue;
+            for (int j = i; j < frames.size(); j++) frames.get(j).release();
+            throw new IOException("Outbound queue to server is full");
+        }
+    }
+
+    /**
+     * Opens a logical channel multiplexed over this connection, when using `Protocol.FRAMED`. Can be called from any
+     * thread.
+     * <p>
+     * Messages the server sends with the stream id of the channel are handed to the given handler, on the connection
+     * thread, instead of the handler of the client.
+     * </p>
+     *
+     * @param ioChannelHandling The handler of the messages received on the channel, or null to hand them to the
+     *                          handler of the client.
+     * @return The opened channel.
+     * @throws IOException If the connection is closed.
+     */
+    public ClientChannel openChannel(final IOChannelHandling ioChannelHandling) throws IOException {
+        if (getClient().getProtocol() != Protocol.FRAMED) throw new IllegalStateException("Channels require Protocol.FRAMED");
+        if (!isConnected()) throw new IOException("Connection to server is closed");
+        while (true) {
+            final int streamId = nextStreamId();
+            if (this.requests.containsKey(streamId)) continue;
+            final ClientChannel channel = new ClientChannel(this, streamId, ioChannelHandling);
+            if (this.channels.putIfAbsent(streamId, channel) == null) return channel;
+        }
+    }
+
+    /**
+     * Returns the next candidate stream id for a channel or request, skipping 0 and negative ids.
+     *
+     * @return A positive stream id, possibly still in use after the ids wrapped around.
+     */
+    private int nextStreamId() {
+        while (true) {
+            final int streamId = this.lastStreamId.incrementAndGet() & Integer.MAX_VALUE;
+            if (streamId != 0) return streamId;
+        }
+    }
+
+    /**
+     * Sends a request to the server and returns a future completed with the response, when using `Protocol.FRAMED`,
+     * waiting at most the request timeout of the client. Can be called from any thread.
+     * <p>
+     * Every request carries a correlation id the server answers with, so any number of requests can be in flight on
+     * the connection and their responses may arrive in any order. The future is completed on the connection thread;
+     * use the `Async` methods of the future for work that should not hold up reading the next messages.
+     * </p>
+     *
+     * @param type    The type id of the request, must not be negative.
+     * @param payload The payload of the request.
+     * @return A future completed with a copy of the response frame, or exceptionally with a `TimeoutException` once
+     * the timeout elapsed or an `IOException` if the connection was closed or the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     */
+    public CompletableFuture<Frame> request(final int type, final byte[] payload) throws IOException {
+        return request(type, payload, getClient().getRequestTimeout());
+    }
+
+    /**
+     * Sends a request to the server and returns a future completed with the response, when using `Protocol.FRAMED`.
+     * Can be called from any thread.
+     *
+     * @param type    The type id of the request, must not be negative.
+     * @param payload The payload of the request.
+     * @param timeout The time in milliseconds to wait for the response, or 0 to wait until the connection is closed.
+     * @return A future completed with a copy of the response frame, or exceptionally with a `TimeoutException` once
+     * the timeout elapsed or an `IOException` if the connection was closed or the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @see #request(int, byte[])
+     */
+    public CompletableFuture<Frame> request(final int type, final byte[] payload, final long timeout) throws IOException {
+        checkSend(type);
+        final CompletableFuture<Frame> future = new CompletableFuture<>();
+        final int correlationId = addRequest(future, false, timeout);
+        sendRequest(correlationId, future, () -> FrameCodec.encode(getClient().getBufferPool(), type, Frame.FLAG_REQUEST, correlationId, payload, 0, payload.length));
+        return future;
+    }
+
+    /**
+     * Sends a request to the server, encoded by the codec registered for its class, and returns a future completed
+     * with the response, when using `Protocol.FRAMED`, waiting at most the request timeout of the client. Can be
+     * called from any thread.
+     * <p>
+     * The response is decoded by the codec registered for its type, which must not decode it as a flyweight, since
+     * the response outlives the receive buffer. Responses of types without a codec complete the future with a copy of
+     * the response frame.
+     * </p>
+     *
+     * @param message The request to send.
+     * @return A future completed with the decoded response, or exceptionally with a `TimeoutException` once the
+     * timeout elapsed or an `IOException` if the connection was closed or the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     * @see #request(int, byte[])
+     */
+    public CompletableFuture<Object> request(final Object message) throws IOException {
+        return request(message, getClient().getRequestTimeout());
+    }
+
+    /**
+     * Sends a request to the server, encoded by the codec registered for its class, and returns a future completed
+     * with the response, when using `Protocol.FRAMED`. Can be called from any thread.
+     *
+     * @param message The request to send.
+     * @param timeout The time in milliseconds to wait for the response, or 0 to wait until the connection is closed.
+     * @return A future completed with the decoded response, or exceptionally with a `TimeoutException` once the
+     * timeout elapsed or an `IOException` if the connection was closed or the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     * @see #request(Object)
+     */
+    public CompletableFuture<Object> request(final Object message, final long timeout) throws IOException {
+        checkSend(getClient().getCodecRegistry().getType(message.getClass()));
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final int correlationId = addRequest(future, true, timeout);
+        sendRequest(correlationId, future, () -> getClient().getCodecRegistry().encode(getClient().getBufferPool(), message, Frame.FLAG_REQUEST, correlationId));
+        return future;
+    }
+
+    /**
+     * Registers a request waiting for its response under a new correlation id.
+     *
+     * @param future  The future completed with the response.
+     * @param decode  Whether the response is decoded by its codec.
+     * @param timeout The time in milliseconds to wait for the response, or 0 to wait until the connection is closed.
+     * @return The correlation id of the request.
+     */
+    private int addRequest(final CompletableFuture<?> future, final boolean decode, final long timeout) {
+        final PendingRequest pendingRequest = new PendingRequest(future, decode);
+        int correlationId;
+        do {
+            correlationId = nextStreamId();
+        } while (this.channels.containsKey(correlationId) || this.requests.putIfAbsent(correlationId, pendingRequest) != null);
+        final int id = correlationId;
+        final HashedWheelTimer.Timeout expiry = timeout > 0 ? HashedWheelTimer.getDefault().newTimeout(() -> future.completeExceptionally(new TimeoutException()), timeout, TimeUnit.MILLISECONDS, getClient()::timeoutFailed) : null;
+        future.whenComplete((response, exception) -> {
+            this.requests.remove(id, pendingRequest);
+            if (expiry != null) expiry.cancel();
+        });
+        return id;
+    }
+
+    /**
+     * Encodes and queues a registered request, and completes its future exceptionally if it could not be queued.
+     *
+     * @param correlationId The correlation id of the request.
+     * @param future        The future of the request.
+     * @param encoder       Encodes the request frame.
+     */
+    private void sendRequest(final int correlationId, final CompletableFuture<?> future, final RequestEncoder encoder) {
+        final PooledBuffer encoded;
+        try {
+            encoded = encoder.encode();
+        } catch (final RuntimeException exception) {
+            this.requests.remove(correlationId);
+            throw exception;
+        }
+        if (!sendEncoded(encoded)) future.completeExceptionally(new IOException("Outbound queue to server is full"));
+    }
+
+    /**
+     * Completes the request a received response answers. Responses to requests that already timed out are dropped.
+     *
+     * @param received The received response.
+     * @throws IOException If the response could not be decompressed or decoded.
+     */
+    private void response(final Frame received) throws IOException {
+        final PendingRequest pendingRequest = this.requests.get(received.getStreamId());
+        if (pendingRequest == null) return;
+        final Frame frame = this.frameCompressor.decompress(received);
+        final Object message = pendingRequest.decode ? getClient().getCodecRegistry().decode(frame, this.binaryReader) : null;
+        pendingRequest.future.complete(message != null ? message : frame.copy());
+    }
+
+    /**
+     * Returns the number of requests waiting for their response.
+     *
+     * @return The number of pending requests.
+     */
+    public int getPendingRequests() {
+        return this.requests.size();
+    }
+
+    /**
+     * Removes a closed channel, so its stream id can be reused.
+     *
+     * @param channel The closed channel.
+     */
+    void removeChannel(final ClientChannel channel) {
+        this.channels.remove(channel.getStreamId(), channel);
+    }
+
+    /**
+     * Returns the open channel with the given stream id.
+     *
+     * @param streamId The stream id of the channel.
+     * @return The channel, or null if no channel with the stream id is open.
+     */
+    public ClientChannel getChannel(final int streamId) {
+        return this.channels.get(streamId);
+    }
+
+    /**
+     * Returns the number of open channels of this connection.
+     *
+     * @return The number of open channels.
+     */
+    public int getChannelCount() {
+        return this.channels.size();
+    }
+
+    /**
+     * Queues a message for the server, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The message is written by the writer thread of the connection, which batches all queued messages into as few
+     * writes as possible. The caller does not wait for the message to be written, but is blocked while the messages
+     * waiting to be written exceed the high watermark of the client.
+     * </p>
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     */
+    public boolean send(final int type, final byte[] payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getClient().getBufferPool(), type, (byte) 0, payload, 0, payload.length));
+    }
+
+    /**
+     * Queues a message for the server, encoded by the codec registered for its class, when using `Protocol.FRAMED`.
+     * Can be called from any thread.
+     * <p>
+     * The message is encoded straight into a pooled buffer, without an intermediate payload array, and is sent as a
+     * frame of the type id its codec is registered for.
+     * </p>
+     *
+     * @param message The message to send.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     */
+    public boolean send(final Object message) throws IOException {
+        checkSend(getClient().getCodecRegistry().getType(message.getClass()));
+        return sendEncoded(getClient().getCodecRegistry().encode(getClient().getBufferPool(), message));
+    }
+
+    /**
+     * Queues a message for the server, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The payload is copied into a pooled buffer together with the frame header, so the given buffer, which may be
+     * direct, is neither consumed nor kept.
+     * </p>
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message, between its position and limit.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     */
+    public boolean send(final int type, final ByteBuffer payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getClient().getBufferPool(), type, (byte) 0, payload));
+    }
+
+    /**
+     * Queues a message for the server on a logical channel, when using `Protocol.FRAMED`. Can be called from any
+     * thread. Use `ClientChannel.send` to send on a channel opened by this connection.
+     *
+     * @param streamId The stream id of the channel, or 0 to send on none.
+     * @param type     The type id of the message, must not be negative.
+     * @param payload  The payload of the message.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     */
+    public boolean sendOnStream(final int streamId, final int type, final byte[] payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getClient().getBufferPool(), type, (byte) 0, streamId, payload, 0, payload.length));
+    }
+
+    /**
+     * Queues a message for the server on a logical channel, when using `Protocol.FRAMED`. Can be called from any
+     * thread. The given buffer is neither consumed nor kept.
+     *
+     * @param streamId The stream id of the channel, or 0 to send on none.
+     * @param type     The type id of the message, must not be negative.
+     * @param payload  The payload of the message, between its position and limit.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     */
+    public boolean sendOnStream(final int streamId, final int type, final ByteBuffer payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getClient().getBufferPool(), type, (byte) 0, streamId, payload));
+    }
+
+    /**
+     * Queues a message for the server on a logical channel, encoded by the codec registered for its class, when using
+     * `Protocol.FRAMED`. Can be called from any thread.
+     *
+     * @param streamId The stream id of the channel, or 0 to send on none.
+     * @param message  The message to send.
+     * @return True if the message was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     */
+    public boolean sendOnStream(final int streamId, final Object message) throws IOException {
+        checkSend(getClient().getCodecRegistry().getType(message.getClass()));
+        return sendEncoded(getClient().getCodecRegistry().encode(getClient().getBufferPool(), message, streamId));
+    }
+
+    /**
+     * Sends a message to the server as a datagram, when datagrams are enabled. Can be called from any thread.
+     * <p>
+     * The datagram is handed to the kernel right away, and may be lost, duplicated or reordered; it is not kept for a
+     * resumable session either. Datagrams can be sent once the server offered them on the connection, shortly after
+     * connecting. Keep the payload below the MTU of the path, around 1400 bytes.
+     * </p>
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message, at most `DatagramCodec.MAX_PAYLOAD_SIZE` bytes.
+     * @return True if the datagram was sent, false if the server did not offer datagrams.
+     * @throws IOException If the connection is closed or the datagram could not be sent.
+     */
+    public boolean sendDatagram(final int type, final byte[] payload) throws IOException {
+        final DatagramTransport datagramTransport = checkDatagram(type);
+        if (datagramTransport == null) return false;
+        datagramTransport.send(DatagramCodec.encode(getClient().getBufferPool(), this.datagramToken, this.datagramSequence.incrementAndGet(), type, payload, 0, payload.length), this.datagramAddress);
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Sends a message to the server as a datagram, encoded by the codec registered for its class, when datagrams are
+     * enabled. Can be called from any thread.
+     *
+     * @param message The message to send.
+     * @return True if the datagram was sent, false if the server did not offer datagrams.
+     * @throws IOException If the connection is closed or the datagram could not be sent.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message, or it does not fit into
+     *                                  a datagram.
+     */
+    public boolean sendDatagram(final Object message) throws IOException {
+        final DatagramTransport datagramTransport = checkDatagram(getClient().getCodecRegistry().getType(message.getClass()));
+        if (datagramTransport == null) return false;
+        final PooledBuffer frame = getClient().getCodecRegistry().encode(getClient().getBufferPool(), message);
+        final PooledBuffer datagram;
+        try {
+            datagram = DatagramCodec.encode(getClient().getBufferPool(), this.datagramToken, this.datagramSequence.incrementAndGet(), frame);
+        } finally {
+            frame.release();
+        }
+        datagramTransport.send(datagram, this.datagramAddress);
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Checks that a datagram of the given type can be sent to the server.
+     *
+     * @param type The type id of the message.
+     * @return The datagram transport, or null if the server did not offer datagrams.
+     * @throws IOException If the connection is closed.
+     */
+    private DatagramTransport checkDatagram(final int type) throws IOException {
+        if (type < 0) throw new IllegalArgumentException("Negative message types are reserved: " + type);
+        if (!isConnected()) throw new IOException("Connection to server is closed");
+        return this.datagramTransport;
+    }
+
+    /**
+     * Queues a whole file for the server, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The file is sent as a sequence of frames of the given type, all but the last flagged with
+     * `Frame.FLAG_CONTINUED`, and is closed once it was sent. The writer thread reads the file straight into its write
+     * buffer, without allocating a payload array.
+     * </p>
+     *
+     * @param type The type id of the frames, must not be negative.
+     * @param path The file to send.
+     * @return True if the file was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed or the file could not be opened.
+     * @throws IllegalStateException If session resumption is enabled, since files cannot be sent again.
+     */
+    public boolean sendFile(final int type, final Path path) throws IOException {
+        checkSend(type);
+        final FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        return sendRegion(new FileRegion(type, fileChannel, 0, fileChannel.size(), true));
+    }
+
+    /**
+     * Queues a part of a file for the server, when using `Protocol.FRAMED`. Can be called from any thread. The file
+     * stays open and must not be closed before the region was written.
+     *
+     * @param type        The type id of the frames, must not be negative.
+     * @param fileChannel The file to send.
+     * @param position    The position of the region within the file.
+     * @param count       The number of bytes to send.
+     * @return True if the region was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @throws IllegalStateException If session resumption is enabled, since files cannot be sent again.
+     */
+    public boolean sendFile(final int type, final FileChannel fileChannel, final long position, final long count) throws IOException {
+        checkSend(type);
+        return sendRegion(new FileRegion(type, fileChannel, position, count, false));
+    }
+
+    /**
+     * Queues a memory-mapped segment of a file, or any other large buffer, for the server, when using
+     * `Protocol.FRAMED`. Can be called from any thread. The buffer is not consumed, and must not be modified before
+     * it was written.
+     *
+     * @param type         The type id of the frames, must not be negative.
+     * @param mappedBuffer The buffer to send, between its position and limit.
+     * @return True if the buffer was queued, false if the outbound queue is full.
+     * @throws IOException If the connection is closed.
+     * @throws IllegalStateException If session resumption is enabled, since files cannot be sent again.
+     */
+    public boolean sendMapped(final int type, final ByteBuffer mappedBuffer) throws IOException {
+        checkSend(type);
+        return sendRegion(new FileRegion(type, mappedBuffer));
+    }
+
+    /**
+     * Checks that a message of the given type can be sent through this connection, and waits while the outbound queue
+     * is above its high watermark.
+     *
+     * @param type The type id of the message.
+     * @throws IOException If the connection is closed.
+     */
+    private void checkSend(final int type) throws IOException {
+        if (getClient().getProtocol() != Protocol.FRAMED) throw new IllegalStateException("Sending messages requires Protocol.FRAMED");
+        if (type < 0) throw new IllegalArgumentException("Negative message types are reserved: " + type);
+        if (!isConnected() && this.session == null) throw new IOException("Connection to server is closed");
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        if (channelHandler != null && channelHandler.inEventLoop()) return;
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        if (outboundQueue != null) outboundQueue.awaitWritable();
+    }
+
+    /**
+     * Queues a file region, and releases it if it could not be queued.
+     *
+     * @param fileRegion The file region.
+     * @return True if the region was queued, false if the outbound queue is full.
+     */
+    private boolean sendRegion(final FileRegion fileRegion) {
+        if (this.session != null) {
+            fileRegion.release();
+            throw new IllegalStateException("Files cannot be sent on a resumable session");
+        }
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        final boolean queued = channelHandler != null ? channelHandler.send(fileRegion) : this.frameWriter.send(fileRegion);
+        if (!queued) {
+            fileRegion.release();
+            return false;
+        }
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Queues an encoded frame, compressed if it is large enough, and releases it if it could not be queued.
+     *
+     * @param encoded The encoded frame.
+     * @return True if the frame was queued, false if the outbound queue is full.
+     */
+    private boolean sendEncoded(final PooledBuffer encoded) {
+        final PooledBuffer frame = this.frameCompressor.compress(getClient().getBufferPool(), encoded);
+        if (!sendFrame(frame)) {
+            frame.release();
+            return false;
+        }
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Sends an encoded frame, through the session of the connection if it has one. While the session is not
+     * established the frame is only kept, and written once the session is resumed.
+     *
+     * @param frame The encoded frame, released once it was written and, on a session, acknowledged.
+     * @return True if the frame was queued, false if the outbound queue or replay buffer is full or the connection is
+     * closed.
+     */
+    private boolean sendFrame(final PooledBuffer frame) {
+        final Session session = this.session;
+        if (session == null) return queueFrame(frame);
+        synchronized (session) {
+            if (session.isClosed()) return queueFrame(frame);
+            return session.send(frame, this::queueFrame);
+        }
+    }
+
+    /**
+     * Queues an encoded frame with the writer or the event loop driving the connection.
+     *
+     * @param frame The encoded frame, released once it was written.
+     * @return True if the frame was queued, false if the outbound queue is full or the connection is closed.
+     */
+    private boolean queueFrame(final PooledBuffer frame) {
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        if (channelHandler != null) return channelHandler.send(frame);
+        final FrameWriter frameWriter = this.frameWriter;
+        return frameWriter != null && frameWriter.send(frame);
+    }
+
+    /**
+     * Handles the loss of the connection to the server, reported by the thread or event loop that noticed it. The
+     * connection is stopped, unless the client reconnects: then the socket is closed, the session is suspended, and
+     * the next attempt to reconnect is scheduled. Losses of a socket that was already closed are ignored, so that the
+     * reader and writer noticing the same loss reconnect once.
+     *
+     * @param socket    The socket that was lost.
+     * @param exception The error on the socket, or null if the server closed the connection.
+     */
+    synchronized void connectionLost(final Socket socket, final Exception exception) {
+        if (socket != getSocket() || socket.isClosed()) return;
+        if (exception != null) {
+            getClient().warning("Lost connection to server");
+            exception.printStackTrace();
+        }
+        if (this.stopped || !getClient().isReconnect()) {
+            stopConnection();
+            return;
+        }
+        if (getClient().debugMode()) getClient().print("Reconnecting to server");
+        this.reconnecting = true;
+        final Session session = this.session;
+        if (session != null) {
+            session.suspend();
+        } else {
+            failRequests("Connection to server is closed");
+        }
+        closeTransport();
+        wakeUp();
+        getClient().scheduleReconnect();
+    }
+
+    /**
+     * Completes every request waiting for its response exceptionally.
+     *
+     * @param message The message of the `IOException` the requests fail with.
+     */
+    private void failRequests(final String message) {
+        for (final PendingRequest pendingRequest : this.requests.values()) {
+            pendingRequest.future.completeExceptionally(new IOException(message));
+        }
+    }
+
+    /**
+     * Tells the handler of the client that the connection was reconnected, once after every loss.
+     *
+     * @param resumed Whether the session of the connection was resumed without losing a message.
+     */
+    private void reconnected(final boolean resumed) {
+        if (!this.reconnecting) return;
+        this.reconnecting = false;
+        if (getClient().debugMode()) getClient().print("Reconnected to server");
+        final IOClientHandling ioClientHandling = getClient().getIoClientHandling();
+        if (ioClientHandling != null) ioClientHandling.reconnected(this, resumed);
+    }
+
+    /**
+     * Flushes the messages written so far to the server, regardless of the flush policy of the client.
+     *
+     * @throws IOException If there is an issue with writing to the socket.
+     */
+    public void flush() throws IOException {
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        if (channelHandler != null) {
+            channelHandler.flush();
+            return;
+        }
+        if (this.frameWriter != null) this.frameWriter.flush();
+    }
+
     /**
      * Handles incoming data from the input stream.
      *
      * @param dataInputStream The input stream that the data is coming from.
      * @throws IOException If there is an issue with reading from the input stream.
      */
-    private void inputStream(final DataInputStream dataInputStream) throws IOException {
+    void inputStream(final DataInputStream dataInputStream) throws IOException {
         dataInputStream.readByte();
+        this.metrics.messageReceived();
         if (getClient().getIoClientHandling() == null) return;
+        final long start = System.nanoTime();
         getClient().getIoClientHandling().inputStream(dataInputStream, this);
+        this.metrics.inputStreamHandled(System.nanoTime() - start);
     }
 
     /**
@@ -80,10 +1130,49 @@ public final class ClientConnection {
      * @param dataOutputStream The output stream that the data is being written to.
      * @throws IOException If there is an issue with writing to the output stream.
      */
-    private void outputStream(final DataOutputStream dataOutputStream) throws IOException {
+    void outputStream(final DataOutputStream dataOutputStream) throws IOException {
         dataOutputStream.writeByte((byte) (0));
+        this.metrics.messageSent();
         if (getClient().getIoClientHandling() == null) return;
+        final long start = System.nanoTime();
         getClient().getIoClientHandling().outputStream(dataOutputStream, this);
+        this.metrics.outputStreamHandled(System.nanoTime() - start);
+    }
+
+    /**
+     * Parks the connection thread after a cycle of the lock-step loop in idle mode, until `wakeUp` is called, the
+     * heartbeat interval elapsed or the connection is closed.
+     *
+     * @param socket The socket of the lock-step loop.
+     */
+    private void awaitWakeUp(final Socket socket) {
+        final long heartbeatInterval = TimeUnit.MILLISECONDS.toNanos(getClient().getHeartbeatInterval());
+        final long deadline = System.nanoTime() + heartbeatInterval;
+        while (!this.wakeUpRequested.getAndSet(false) && !socket.isClosed()) {
+            if (heartbeatInterval <= 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Starts the next cycle of the lock-step loop, when the client is in idle mode. Call this whenever the
+     * `outputStream` handler has data to send. Can be called from any thread; calls made while a cycle is running
+     * start one more cycle right after it.
+     */
+    public void wakeUp() {
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        if (channelHandler != null) {
+            channelHandler.wakeUp();
+            return;
+        }
+        this.wakeUpRequested.set(true);
+        final Thread thread = this.thread;
+        if (thread != null) LockSupport.unpark(thread);
     }
 
     /**
@@ -92,11 +1181,34 @@ public final class ClientConnection {
      * @return A boolean indicating the connection status.
      */
     public boolean isConnected() {
-        return !getSocket().isClosed();
+        final Socket socket = getSocket();
+        return socket != null && !socket.isClosed();
+    }
+
+    /**
+     * Connects to the server on the given event loop without blocking, and starts the connection once connected, when
+     * using `ClientMode.NIO`.
+     *
+     * @param eventLoop The event loop driving the connection.
+     * @param address   The address of the server.
+     * @param timeout   The time in milliseconds to wait for the connection, or 0 to wait indefinitely.
+     * @return A future completed once the connection was started, or exceptionally if connecting failed.
+     */
+    CompletableFuture<ClientConnection> connect(final ClientEventLoop eventLoop, final SocketAddress address, final long timeout) {
+        final ClientChannelHandler channelHandler;
+        try {
+            channelHandler = new ClientChannelHandler(this, SocketChannel.open());
+        } catch (final IOException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+        this.channelHandler = channelHandler;
+        eventLoop.connect(channelHandler, address, timeout);
+        return channelHandler.getConnectFuture().thenApply(connected -> this);
     }
 
     /**
      * This method starts the client connection by starting the thread that manages the connection.
+     * The thread is created by the thread factory of the client.
      * If the debug mode is enabled, a message will be printed to the console indicating that the
      * connection is starting.
      */
@@ -104,16 +1216,83 @@ public final class ClientConnection {
         if (getClient().debugMode()) {
             getClient().print("Starting connection");
         }
+        if (this.stopped) {
+            closeTransport();
+            return;
+        }
+        final Socket socket = getSocket();
+        final boolean framed = getClient().getProtocol() == Protocol.FRAMED;
+        this.frameCompressor = new FrameCompressor(getClient().getCompression(), getClient().getCompressionThreshold());
+        if (framed && getClient().isSessionResumption() && this.session == null) {
+            this.session = new Session(0, getClient().getReplayBufferCapacity());
+        }
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        if (channelHandler != null) {
+            if (framed) sendHello();
+            channelHandler.started();
+            if (this.session == null) reconnected(false);
+            return;
+        }
+        if (framed) {
+            try {
+                this.frameWriter = new FrameWriter(new MeteredOutputStream(socket.getOutputStream(), this.metrics), getClient().createOutboundQueue(), getClient().getWriteBufferSize(),
+                        getClient().getFlushPolicy(), getClient().getFlushInterval(), getClient().getHeartbeatInterval(), exception -> connectionLost(socket, exception));
+                this.frameWriter.start(getClient().getThreadFactory(), "Client-Writer-Thread");
+                sendHello();
+            } catch (final IOException exception) {
+                getClient().warning("Could not create IO stream");
+                exception.printStackTrace();
+            }
+        }
+        this.thread = getClient().getThreadFactory().newThread(this::connection);
+        getThread().setName("Client-Thread");
         getThread().start();
+        if (this.session == null) reconnected(false);
     }
 
     /**
-     * This method stops the client connection. If the debug mode is enabled, a message will be printed
-     * to the console indicating that the connection is stopping.
+     * Queues the hello frame of this connection, followed by the resumption of its session if it has one.
      */
-    public void stopConnection() {
+    private void sendHello() {
+        final Session session = this.session;
+        int features = session != null ? FrameCodec.FEATURE_SESSIONS : 0;
+        if (getClient().isDatagrams()) features |= FrameCodec.FEATURE_DATAGRAMS;
+        final PooledBuffer hello = this.frameCompressor.hello(getClient().getBufferPool(), features);
+        if (!queueFrame(hello)) hello.release();
+        if (session == null) return;
+        final PooledBuffer resume = session.resumption(getClient().getBufferPool(), false);
+        if (!queueFrame(resume)) resume.release();
+    }
+
+    /**
+     * This method stops the client connection for good, without reconnecting. If the debug mode is enabled, a message
+     * will be printed to the console indicating that the connection is stopping.
+     * Requests waiting for their response fail, and the messages kept for the session are dropped.
+     */
+    public synchronized void stopConnection() {
         if (getClient().debugMode()) getClient().print("Stopping connection");
-        closeConnection();
+        this.stopped = true;
+        this.reconnecting = false;
+        closeTransport();
+        final Session session = this.session;
+        this.session = null;
+        if (session != null) session.close();
+        failRequests("Connection to server is closed");
+        wakeUp();
+    }
+
+    /**
+     * Stops the writer and closes the socket or channel of the connection, without stopping the connection.
+     */
+    private void closeTransport() {
+        if (this.frameWriter != null) this.frameWriter.stop();
+        closeDatagrams();
+        getClient().unregisterMetrics();
+        if (this.channelHandler != null) {
+            this.channelHandler.close();
+        } else {
+            closeConnection();
+        }
     }
 
     /**
@@ -123,8 +1302,10 @@ public final class ClientConnection {
      * </p>
      */
     private void closeConnection() {
+        final Socket socket = getSocket();
+        if (socket == null) return;
         try {
-            getSocket().close();
+            socket.close();
         } catch (final IOException exception) {
             getClient().warning("Could not close client");
             exception.printStackTrace();
@@ -136,6 +1317,11 @@ public final class ClientConnection {
      * If the `pause` parameter is `true`, the connection will be paused. If `false`, the connection
      * will be unpaused. If the debug mode is enabled, a message indicating whether the connection is
      * being paused or unpaused will be printed to the console.
+     * <p>
+     * While paused, the connection thread stops reading from the socket and no further messages are handed to the
+     * handler, so the server is slowed down once the TCP window is full. Messages sent to the server are still
+     * written. Can be called from any thread, including the handler.
+     * </p>
      *
      * @param pause a boolean value indicating whether to pause or unpause the connection
      */
@@ -144,6 +1330,49 @@ public final class ClientConnection {
         if (getClient().debugMode()) {
             getClient().print((pause ? "Pausing" : "UnPausing") + " connection");
         }
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        final Thread thread = this.thread;
+        if (channelHandler != null) {
+            channelHandler.pausedChanged();
+        } else if (!pause && thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns whether the connection was lost and the client is reconnecting.
+     *
+     * @return True while reconnecting, false otherwise.
+     */
+    public boolean isReconnecting() {
+        return this.reconnecting;
+    }
+
+    /**
+     * Returns whether the connection was stopped for good.
+     *
+     * @return True if the connection was stopped, false otherwise.
+     */
+    boolean isStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Sets whether the connection was stopped for good. Cleared when the client is initialized again.
+     *
+     * @param stopped True if the connection was stopped.
+     */
+    void setStopped(final boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    /**
+     * Returns whether the connection is paused.
+     *
+     * @return True if the connection is paused, false otherwise.
+     */
+    public boolean isPaused() {
+        return this.paused;
     }
 
     /**
@@ -164,12 +1393,114 @@ public final class ClientConnection {
         return getClient().getSocket();
     }
 
+    /**
+     * Returns the metrics of this connection.
+     *
+     * @return The connection metrics.
+     */
+    public ConnectionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns whether datagrams reach the server and back, because the server answered the first datagram of the
+     * connection.
+     *
+     * @return True if datagrams are known to work, false otherwise.
+     */
+    public boolean isDatagramReady() {
+        return this.datagramReady;
+    }
+
+    /**
+     * Returns the number of datagrams of the server that were dropped, because they were stale or the connection was
+     * paused.
+     *
+     * @return The number of dropped datagrams.
+     */
+    public long getDroppedDatagrams() {
+        return this.droppedDatagrams;
+    }
+
+    /**
+     * Returns the number of sent messages waiting to be written to the server.
+     *
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessages() {
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        return outboundQueue == null ? 0 : outboundQueue.size();
+    }
+
+    /**
+     * Returns the number of bytes of the sent messages waiting to be written to the server.
+     *
+     * @return The number of queued bytes.
+     */
+    public long getQueuedBytes() {
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        return outboundQueue == null ? 0 : outboundQueue.getQueuedBytes();
+    }
+
+    /**
+     * Returns whether messages can be sent to the server without waiting, because the messages already waiting to be
+     * written are below the high watermark of the client.
+     *
+     * @return True if the connection is writable, false otherwise.
+     */
+    public boolean isWritable() {
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        return outboundQueue == null || outboundQueue.isWritable();
+    }
+
+    /**
+     * Returns the queue of messages waiting to be written to the server.
+     *
+     * @return The outbound queue, or null if the connection does not use `Protocol.FRAMED` or was not started.
+     */
+    private OutboundQueue getOutboundQueue() {
+        final ClientChannelHandler channelHandler = this.channelHandler;
+        if (channelHandler != null) return channelHandler.getOutboundQueue();
+        final FrameWriter frameWriter = this.frameWriter;
+        return frameWriter == null ? null : frameWriter.getOutboundQueue();
+    }
+
     /**
      * This method returns the `Thread` object associated with this connection.
      *
-     * @return the `Thread` object associated with this connection
+     * @return the `Thread` object associated with this connection, or null if the connection was not started or is
+     * driven by an event loop
      */
     public Thread getThread() {
         return thread;
     }
+
+    /**
+     * Encodes the frame of a request once its correlation id is known.
+     */
+    @FunctionalInterface
+    private interface RequestEncoder {
+
+        /**
+         * Encodes the request frame.
+         *
+         * @return The encoded frame, owned by the caller.
+         */
+        PooledBuffer encode();
+    }
+
+    /**
+     * A request waiting for its response.
+     */
+    private static final class PendingRequest {
+
+        private final CompletableFuture<Object> future;
+        private final boolean                   decode;
+
+        @SuppressWarnings("unchecked")
+        private PendingRequest(final CompletableFuture<?> future, final boolean decode) {
+            this.future = (CompletableFuture<Object>) future;
+            this.decode = decode;
+        }
+    }
 }
@@ -0,0 +1,235 @@
+package me.bredo.network.client;
+
+import me.bredo.network.buffer.BufferPool;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single thread of the NIO client engine.
+ * <p>
+ * Each event loop owns one `Selector` and drives any number of non-blocking connections to servers, of any number of
+ * clients. Work submitted from other threads is queued and executed by the loop between two selections, so the state
+ * of a connection is only ever touched by the thread of its event loop. Connect timeouts and heartbeats are checked
+ * every `TICK` milliseconds.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ClientEventLoop {
+
+    /**
+     * The interval in milliseconds at which connect timeouts and heartbeats are checked.
+     */
+    public static final long TICK = 100;
+
+    private final    Selector                    selector;
+    private final    Thread                      thread;
+    private final    Queue<Runnable>             tasks;
+    private final    Queue<ClientChannelHandler> pendingFlushes;
+    private volatile boolean                     running;
+    private          long                        nextTick;
+
+    /**
+     * Creates a new ClientEventLoop instance.
+     *
+     * @param name   the name of the event loop thread.
+     * @param daemon whether the event loop thread is a daemon thread.
+     * @throws IOException if the selector could not be opened.
+     */
+    ClientEventLoop(final String name, final boolean daemon) throws IOException {
+        this.selector       = Selector.open();
+        this.thread         = new Thread(this::loop, name);
+        this.tasks          = new ConcurrentLinkedQueue<>();
+        this.pendingFlushes = new ArrayDeque<>();
+        this.thread.setDaemon(daemon);
+    }
+
+    /**
+     * Starts the event loop thread.
+     */
+    void start() {
+        this.running = true;
+        getThread().start();
+    }
+
+    /**
+     * Stops the event loop. All connections still registered with it are closed by the loop thread before it exits.
+     */
+    public void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    /**
+     * Queues a task to be executed on the event loop thread.
+     *
+     * @param task the task to execute.
+     */
+    public void execute(final Runnable task) {
+        this.tasks.add(task);
+        if (!inEventLoop()) this.selector.wakeup();
+    }
+
+    /**
+     * Returns whether the calling thread is the thread of this event loop.
+     *
+     * @return true if called from the event loop thread, false otherwise.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == getThread();
+    }
+
+    /**
+     * Returns whether the event loop is running and still executes queued tasks.
+     *
+     * @return true if the event loop is running, false otherwise.
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Registers the channel of a connection with this event loop and starts connecting it.
+     *
+     * @param clientChannelHandler the handler of the connection to register.
+     * @param address              the address of the server.
+     * @param timeout              the time in milliseconds to wait for the connection, or 0 to wait indefinitely.
+     */
+    void connect(final ClientChannelHandler clientChannelHandler, final SocketAddress address, final long timeout) {
+        clientChannelHandler.setEventLoop(this);
+        if (!isRunning()) {
+            clientChannelHandler.connectFailed(new IOException("Event loop '" + getThread().getName() + "' is shut down"));
+            return;
+        }
+        execute(() -> clientChannelHandler.connect(this.selector, address, timeout));
+    }
+
+    /**
+     * The method that is executed in the thread to continuously select and dispatch ready connections.
+     */
+    private void loop() {
+        BufferPool.enableThreadCache();
+        this.nextTick = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TICK);
+        while (this.running) {
+            try {
+                select();
+                runTasks();
+                processSelectedKeys();
+                flushPending();
+                tick();
+            } catch (final IOException exception) {
+                System.err.println("[Client]: Event loop '" + getThread().getName() + "' could not select");
+                exception.printStackTrace();
+            }
+        }
+        closeConnections();
+        BufferPool.releaseThreadCache();
+    }
+
+    /**
+     * Waits for ready connections or queued tasks, but never longer than until the next tick is due. Tasks queued by the
+     * loop thread itself do not wake up the selector, so the loop only polls while such tasks are waiting.
+     *
+     * @throws IOException if the selector fails.
+     */
+    private void select() throws IOException {
+        final long timeout = TimeUnit.NANOSECONDS.toMillis(this.nextTick - System.nanoTime());
+        if (timeout > 0 && this.tasks.isEmpty()) {
+            this.selector.select(timeout);
+        } else {
+            this.selector.selectNow();
+        }
+    }
+
+    /**
+     * Lets every connection check its connect timeout and heartbeat, once per tick.
+     */
+    private void tick() {
+        final long now = System.nanoTime();
+        if (now - this.nextTick < 0) return;
+        this.nextTick = now + TimeUnit.MILLISECONDS.toNanos(TICK);
+        for (final SelectionKey selectionKey : this.selector.keys()) {
+            ((ClientChannelHandler) selectionKey.attachment()).tick(now);
+        }
+    }
+
+    /**
+     * Marks a connection to be flushed at the end of the current loop iteration, so that all output produced during the
+     * iteration is written together. Must be called on the event loop thread.
+     *
+     * @param clientChannelHandler the handler of the connection to flush.
+     */
+    void flushLater(final ClientChannelHandler clientChannelHandler) {
+        this.pendingFlushes.add(clientChannelHandler);
+    }
+
+    /**
+     * Flushes every connection that produced output during the current loop iteration.
+     */
+    private void flushPending() {
+        ClientChannelHandler clientChannelHandler;
+        while ((clientChannelHandler = this.pendingFlushes.poll()) != null) clientChannelHandler.flush();
+    }
+
+    /**
+     * Executes all tasks queued since the last selection.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (final RuntimeException exception) {
+                System.err.println("[Client]: Event loop '" + getThread().getName() + "' could not run task");
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Dispatches every selected key to the handler of its connection.
+     */
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            final SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+            ((ClientChannelHandler) selectionKey.attachment()).handle(selectionKey);
+        }
+    }
+
+    /**
+     * Closes every connection still registered with this event loop, fails the connections still connecting, runs the
+     * tasks left behind by closing them, and closes the selector itself.
+     */
+    private void closeConnections() {
+        runTasks();
+        for (final SelectionKey selectionKey : this.selector.keys()) {
+            ((ClientChannelHandler) selectionKey.attachment()).eventLoopClosed();
+        }
+        runTasks();
+        try {
+            this.selector.close();
+        } catch (final IOException exception) {
+            System.err.println("[Client]: Could not close selector of event loop '" + getThread().getName() + "'");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the thread object associated with this event loop.
+     *
+     * @return The thread object.
+     */
+    public Thread getThread() {
+        return this.thread;
+    }
+}
@@ -0,0 +1,109 @@
+package me.bredo.network.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of `ClientEventLoop`s shared by any number of clients running in `ClientMode.NIO`.
+ * <p>
+ * The event loops are started when the group is created, and new connections are spread over them in round-robin
+ * order. Clients without a group of their own use the default group, whose daemon threads are created on first use,
+ * one per available processor.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ClientEventLoopGroup {
+
+    private static volatile ClientEventLoopGroup defaultGroup;
+
+    private final ClientEventLoop[] eventLoops;
+    private final AtomicInteger     index;
+
+    /**
+     * Creates a new ClientEventLoopGroup instance and starts its event loops.
+     *
+     * @param threads the number of event loops in the group.
+     * @throws IOException if the selector of an event loop could not be opened.
+     */
+    public ClientEventLoopGroup(final int threads) throws IOException {
+        this(threads, "Client-EventLoop-", false);
+    }
+
+    /**
+     * Creates a new ClientEventLoopGroup instance and starts its event loops.
+     *
+     * @param threads the number of event loops in the group.
+     * @param name    the prefix of the names of the event loop threads.
+     * @param daemon  whether the event loop threads are daemon threads.
+     * @throws IOException if the selector of an event loop could not be opened.
+     */
+    private ClientEventLoopGroup(final int threads, final String name, final boolean daemon) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("An event loop group needs at least one thread");
+        this.eventLoops = new ClientEventLoop[threads];
+        this.index      = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            this.eventLoops[i] = new ClientEventLoop(name + i, daemon);
+        }
+        for (final ClientEventLoop eventLoop : this.eventLoops) eventLoop.start();
+    }
+
+    /**
+     * Returns the group used by clients that were not given a group of their own.
+     *
+     * @return the default event loop group.
+     * @throws UncheckedIOException if the selector of an event loop could not be opened.
+     */
+    public static ClientEventLoopGroup getDefault() {
+        ClientEventLoopGroup group = defaultGroup;
+        if (group != null) return group;
+        synchronized (ClientEventLoopGroup.class) {
+            if (defaultGroup == null) {
+                try {
+                    defaultGroup = new ClientEventLoopGroup(Runtime.getRuntime().availableProcessors(), "Client-EventLoop-Default-", true);
+                } catch (final IOException exception) {
+                    throw new UncheckedIOException("Could not open the default client event loops", exception);
+                }
+            }
+            return defaultGroup;
+        }
+    }
+
+    /**
+     * Stops every event loop of the group. The connections still driven by the group are closed.
+     */
+    public void shutdown() {
+        for (final ClientEventLoop eventLoop : this.eventLoops) eventLoop.shutdown();
+    }
+
+    /**
+     * Returns the event loop the next connection should be registered with.
+     *
+     * @return the next event loop.
+     */
+    public ClientEventLoop next() {
+        return this.eventLoops[Math.floorMod(this.index.getAndIncrement(), this.eventLoops.length)];
+    }
+
+    /**
+     * Returns whether the calling thread is the thread of any event loop of this group.
+     *
+     * @return true if called from an event loop thread, false otherwise.
+     */
+    public boolean inEventLoop() {
+        for (final ClientEventLoop eventLoop : this.eventLoops) {
+            if (eventLoop.inEventLoop()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the event loops of this group.
+     *
+     * @return the event loops of this group.
+     */
+    public ClientEventLoop[] getEventLoops() {
+        return this.eventLoops;
+    }
+}
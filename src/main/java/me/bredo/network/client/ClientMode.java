@@ -0,0 +1,27 @@
+package me.bredo.network.client;
+
+/**
+ * The engine a `Client` uses to drive its connection to the server.
+ *
+ * @author bredo
+ */
+public enum ClientMode {
+
+    /**
+     * The client connects with a blocking `Socket` and gets a thread of its own, which blocks on the socket streams.
+     * This is the classic model and the default.
+     */
+    BLOCKING,
+
+    /**
+     * The client connects with a non-blocking `SocketChannel` driven by a `ClientEventLoop` of a shared
+     * `ClientEventLoopGroup`, so a handful of threads drive thousands of connections.
+     * <p>
+     * The `IOClientHandling` callbacks run on the event loop thread and must therefore never block. With
+     * `Protocol.SYNC` the input is only handed to the handler once bytes are available; when the handler reads past the
+     * bytes received so far, the read is rolled back and `inputStream` is called again with the same data once more
+     * bytes have arrived.
+     * </p>
+     */
+    NIO
+}
@@ -0,0 +1,334 @@
+package me.bredo.network.client;
+
+import me.bredo.network.protocol.Frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The `ClientPool` class maintains a fixed number of clients connected to the same server, and spreads the messages
+ * and channels of the application over their connections, when using `Protocol.FRAMED`.
+ * <p>
+ * Every client of the pool is a regular `Client` with a connection of its own. They are configured by the client
+ * settings of the pool, applied to each of them before it is initialized, so protocol, handlers, codecs and buffer
+ * settings are set up once for all. Together with the logical channels of `ClientChannel`, a few pooled connections
+ * carry the concurrent request flows of a service, instead of a connection being opened for each.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ClientPool {
+
+    /**
+     * IP address of the server to connect to
+     */
+    private final    String           ip;
+    /**
+     * Port number of the server to connect to
+     */
+    private final    int              port;
+    /**
+     * Number of clients in the pool
+     */
+    private final    int              size;
+    /**
+     * Flag indicating whether to print debug messages
+     */
+    private final    boolean          debugMode;
+    /**
+     * Index of the client used next by `LoadBalancing.ROUND_ROBIN`
+     */
+    private final    AtomicInteger    index;
+    /**
+     * The clients of the pool, null until the pool is initialized
+     */
+    private volatile Client[]         clients;
+    /**
+     * Settings applied to every client before it is initialized
+     */
+    private          Consumer<Client> clientSettings;
+    /**
+     * Strategy deciding which connection a message or channel is assigned to
+     */
+    private          LoadBalancing    loadBalancing;
+
+    /**
+     * Constructor for `ClientPool`
+     *
+     * @param ip        IP address of the server to connect to
+     * @param port      Port number of the server to connect to
+     * @param size      Number of clients in the pool, at least one
+     * @param debugMode Flag indicating whether to print debug messages
+     */
+    public ClientPool(final String ip, final int port, final int size, final boolean debugMode) {
+        if (size < 1) throw new IllegalArgumentException("A client pool needs at least one client: " + size);
+        this.ip             = ip;
+        this.port           = port;
+        this.size           = size;
+        this.debugMode      = debugMode;
+        this.index          = new AtomicInteger();
+        this.clientSettings = client -> {
+        };
+        this.loadBalancing  = LoadBalancing.ROUND_ROBIN;
+    }
+
+    /**
+     * Initializes the pool by creating its clients, applying the client settings to each of them and connecting them
+     * to the server. Clients in `ClientMode.NIO` connect all at once, and the pool waits until every connect is done.
+     */
+    public void initialize() {
+        if (this.debugMode) System.out.println("[ClientPool]: Initializing " + this.size + " client(s) for " + this.ip + ":" + this.port);
+        final Client[] clients = new Client[this.size];
+        final List<CompletableFuture<Client>> connects = new ArrayList<>();
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Client(this.ip, this.port, this.debugMode);
+            getClientSettings().accept(clients[i]);
+            if (clients[i].getClientMode() == ClientMode.NIO) {
+                connects.add(clients[i].connect());
+            } else {
+                clients[i].initialize();
+            }
+        }
+        for (final CompletableFuture<Client> connect : connects) {
+            try {
+                connect.join();
+            } catch (final CompletionException exception) {
+                System.err.println("[ClientPool]: Could not connect to " + this.ip + ":" + this.port);
+                exception.getCause().printStackTrace();
+            }
+        }
+        this.clients = clients;
+    }
+
+    /**
+     * Stops the connections of all clients of the pool, including those reconnecting.
+     */
+    public void shutdown() {
+        final Client[] clients = this.clients;
+        if (clients == null) return;
+        for (final Client client : clients) {
+            if (!client.getClientConnection().isStopped()) client.getClientConnection().stopConnection();
+        }
+    }
+
+    /**
+     * Returns the connection the next message or channel is assigned to, as decided by the load balancing of the
+     * pool. Closed connections are skipped.
+     *
+     * @return An open connection of the pool.
+     * @throws IOException If no connection of the pool is open.
+     */
+    public ClientConnection next() throws IOException {
+        final Client[] clients = this.clients;
+        if (clients == null) throw new IllegalStateException("Client pool is not initialized");
+        final int first = this.index.getAndIncrement();
+        if (getLoadBalancing() == LoadBalancing.LEAST_QUEUED) {
+            // Scanning from the round-robin index spreads ties, such as idle connections, evenly.
+            ClientConnection least = null;
+            long leastQueued = Long.MAX_VALUE;
+            for (int i = 0; i < clients.length; i++) {
+                final Client client = clients[Math.floorMod(first + i, clients.length)];
+                if (!isConnected(client)) continue;
+                final long queued = client.getClientConnection().getQueuedBytes();
+                if (queued < leastQueued) {
+                    least = client.getClientConnection();
+                    leastQueued = queued;
+                }
+            }
+            if (least != null) return least;
+        } else {
+            for (int i = 0; i < clients.length; i++) {
+                final Client client = clients[Math.floorMod(first + i, clients.length)];
+                if (isConnected(client)) return client.getClientConnection();
+            }
+        }
+        throw new IOException("No connection to " + this.ip + ":" + this.port + " is open");
+    }
+
+    /**
+     * Queues a message for the server on the next connection of the pool. Can be called from any thread.
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message.
+     * @return True if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException If no connection of the pool is open.
+     */
+    public boolean send(final int type, final byte[] payload) throws IOException {
+        return next().send(type, payload);
+    }
+
+    /**
+     * Queues a message for the server on the next connection of the pool. Can be called from any thread. The given
+     * buffer is neither consumed nor kept.
+     *
+     * @param type    The type id of the message, must not be negative.
+     * @param payload The payload of the message, between its position and limit.
+     * @return True if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException If no connection of the pool is open.
+     */
+    public boolean send(final int type, final ByteBuffer payload) throws IOException {
+        return next().send(type, payload);
+    }
+
+    /**
+     * Queues a message for the server on the next connection of the pool, encoded by the codec registered for its
+     * class. Can be called from any thread.
+     *
+     * @param message The message to send.
+     * @return True if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException If no connection of the pool is open.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     */
+    public boolean send(final Object message) throws IOException {
+        return next().send(message);
+    }
+
+    /**
+     * Sends a request to the server on the next connection of the pool and returns a future completed with the
+     * response. Can be called from any thread.
+     *
+     * @param type    The type id of the request, must not be negative.
+     * @param payload The payload of the request.
+     * @return A future completed with a copy of the response frame.
+     * @throws IOException If no connection of the pool is open.
+     * @see ClientConnection#request(int, byte[])
+     */
+    public CompletableFuture<Frame> request(final int type, final byte[] payload) throws IOException {
+        return next().request(type, payload);
+    }
+
+    /**
+     * Sends a request to the server on the next connection of the pool, encoded by the codec registered for its
+     * class, and returns a future completed with the decoded response. Can be called from any thread.
+     *
+     * @param message The request to send.
+     * @return A future completed with the decoded response.
+     * @throws IOException If no connection of the pool is open.
+     * @throws IllegalArgumentException If no codec is registered for the class of the message.
+     * @see ClientConnection#request(Object)
+     */
+    public CompletableFuture<Object> request(final Object message) throws IOException {
+        return next().request(message);
+    }
+
+    /**
+     * Opens a logical channel on the next connection of the pool. All messages of the channel are sent through that
+     * connection, so they keep their order.
+     *
+     * @param ioChannelHandling The handler of the messages received on the channel, or null to hand them to the
+     *                          handler of the client.
+     * @return The opened channel.
+     * @throws IOException If no connection of the pool is open.
+     */
+    public ClientChannel openChannel(final IOChannelHandling ioChannelHandling) throws IOException {
+        return next().openChannel(ioChannelHandling);
+    }
+
+    /**
+     * Returns whether the connection of a client is open.
+     *
+     * @param client The client.
+     * @return True if the client is connected to the server, false otherwise.
+     */
+    private static boolean isConnected(final Client client) {
+        return client.getSocket() != null && client.getClientConnection().isConnected();
+    }
+
+    /**
+     * Returns the number of clients of the pool whose connection is open.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectedCount() {
+        final Client[] clients = this.clients;
+        if (clients == null) return 0;
+        int connected = 0;
+        for (final Client client : clients) {
+            if (isConnected(client)) connected++;
+        }
+        return connected;
+    }
+
+    /**
+     * Returns the clients of the pool.
+     *
+     * @return The clients, empty if the pool is not initialized.
+     */
+    public List<Client> getClients() {
+        final Client[] clients = this.clients;
+        return clients == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(clients));
+    }
+
+    /**
+     * Returns the IP address of the server the pool connects to.
+     *
+     * @return The IP address of the server.
+     */
+    public String getIp() {
+        return this.ip;
+    }
+
+    /**
+     * Returns the port number of the server the pool connects to.
+     *
+     * @return The port number of the server.
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Returns the number of clients of the pool.
+     *
+     * @return The size of the pool.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the settings applied to every client before it is initialized.
+     *
+     * @return The client settings.
+     */
+    public Consumer<Client> getClientSettings() {
+        return this.clientSettings;
+    }
+
+    /**
+     * Sets the settings applied to every client before it is initialized, for example its protocol, handler and
+     * codecs. Must be called before `initialize()`.
+     *
+     * @param clientSettings The client settings.
+     */
+    public void setClientSettings(final Consumer<Client> clientSettings) {
+        this.clientSettings = clientSettings;
+    }
+
+    /**
+     * Returns the strategy deciding which connection a message or channel is assigned to.
+     *
+     * @return The load balancing of the pool.
+     */
+    public LoadBalancing getLoadBalancing() {
+        return this.loadBalancing;
+    }
+
+    /**
+     * Sets the strategy deciding which connection a message or channel is assigned to. Defaults to
+     * `LoadBalancing.ROUND_ROBIN`.
+     *
+     * @param loadBalancing The load balancing of the pool.
+     */
+    public void setLoadBalancing(final LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing;
+    }
+}
@@ -0,0 +1,35 @@
+package me.bredo.network.client;
+
+import me.bredo.network.protocol.Frame;
+
+import java.io.IOException;
+
+/**
+ * The interface IOChannelHandling provides methods to handle the messages received on a logical channel of a client
+ * connection.
+ *
+ * @author Bredo
+ */
+public interface IOChannelHandling {
+
+    /**
+     * Handles a message received from the server on the channel.
+     *
+     * @param frame         The received message.
+     * @param clientChannel The channel that the message was received on.
+     * @throws IOException If an input or output exception occurs.
+     */
+    void message(final Frame frame, final ClientChannel clientChannel) throws IOException;
+
+    /**
+     * Handles a message received from the server on the channel, whose type id has a codec in the `CodecRegistry` of
+     * the client. Such messages are handed to this method instead of `message`, already decoded.
+     *
+     * @param message       The decoded message, only valid until this method returns if its codec decodes it as a
+     *                      flyweight.
+     * @param clientChannel The channel that the message was received on.
+     * @throws IOException If an input or output exception occurs.
+     */
+    default void decoded(final Object message, final ClientChannel clientChannel) throws IOException {
+    }
+}
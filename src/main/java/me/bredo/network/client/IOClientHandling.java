@@ -1,5 +1,7 @@
 package me.bredo.network.client;
 
+import me.bredo.network.protocol.Frame;
+
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -28,4 +30,42 @@ public interface IOClientHandling {
      * @throws IOException If an input or output exception occurs.
      */
     void outputStream(final DataOutputStream dataOutputStream, final ClientConnection clientConnection) throws IOException;
+
+    /**
+     * Handles a message received from the server when using `Protocol.FRAMED`.
+     * The stream callbacks are not used in that protocol.
+     *
+     * @param frame            The received message.
+     * @param clientConnection The client connection that the message was received on.
+     * @throws IOException If an input or output exception occurs.
+     */
+    default void message(final Frame frame, final ClientConnection clientConnection) throws IOException {
+    }
+
+    /**
+     * Handles a message received from the server when using `Protocol.FRAMED`, whose type id has a codec in the
+     * `CodecRegistry` of the client. Such messages are handed to this method instead of `message`, already decoded.
+     *
+     * @param message          The decoded message, only valid until this method returns if its codec decodes it as a
+     *                         flyweight.
+     * @param clientConnection The client connection that the message was received on.
+     * @throws IOException If an input or output exception occurs.
+     */
+    default void decoded(final Object message, final ClientConnection clientConnection) throws IOException {
+    }
+
+    /**
+     * Called once the client reconnected after the connection to the server was lost, when reconnecting is enabled.
+     * <p>
+     * If the session of the connection was resumed, no message was lost in either direction and nothing needs to be
+     * done. Otherwise messages sent around the loss may not have arrived, messages sent while reconnecting were
+     * dropped, and requests waiting for their response failed, so the state shared with the server should be
+     * synchronized again.
+     * </p>
+     *
+     * @param clientConnection The client connection that was reconnected.
+     * @param resumed          Whether the session of the connection was resumed.
+     */
+    default void reconnected(final ClientConnection clientConnection, final boolean resumed) {
+    }
 }
@@ -0,0 +1,24 @@
+package me.bredo.network.client;
+
+/**
+ * Decides which connection of a `ClientPool` a message or channel is assigned to.
+ * <p>
+ * Closed connections are always skipped. Both strategies only look at the state of the pool at the time of the call,
+ * so neither needs coordination between the threads sending through the pool.
+ * </p>
+ *
+ * @author bredo
+ */
+public enum LoadBalancing {
+
+    /**
+     * The connections are used in turn. This is the default, and spreads evenly sized messages evenly.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The connection with the fewest bytes waiting to be written is used, so a connection slowed down by a large
+     * message or a congested socket is avoided until it caught up.
+     */
+    LEAST_QUEUED
+}
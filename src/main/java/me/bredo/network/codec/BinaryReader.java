@@ -0,0 +1,346 @@
+package me.bredo.network.codec;
+
+import me.bredo.network.protocol.Frame;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Reads primitives and strings from the payload of a received frame, in place.
+ * <p>
+ * A reader is a flyweight: `wrap` points it at a payload within the receive buffer of a connection, and every read
+ * uses absolute indices into that buffer, so neither the buffer nor the payload is copied or sliced. Each connection
+ * reuses a single reader for every message it receives. Besides the sequential `read` methods, the `get` methods read
+ * a value at an index within the payload, which lets a decoder hand out a flyweight reading its fields on demand.
+ * </p>
+ * <p>
+ * Values are read in network byte order, matching `BinaryWriter` and `DataOutputStream`. A wrapped payload is only
+ * valid until the handler callback of its frame returns.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class BinaryReader {
+
+    private final StringBuilder chars;
+    private       ByteBuffer    source;
+    private       int           offset;
+    private       int           limit;
+    private       int           index;
+
+    /**
+     * Creates a new BinaryReader instance, wrapping no payload.
+     */
+    public BinaryReader() {
+        this.chars = new StringBuilder();
+    }
+
+    /**
+     * Points the reader at the payload of a frame.
+     *
+     * @param frame the frame to read.
+     * @return this reader.
+     */
+    public BinaryReader wrap(final Frame frame) {
+        return wrap(frame.getSource(), frame.getOffset(), frame.getPayloadSize());
+    }
+
+    /**
+     * Points the reader at the bytes of a buffer between its position and limit. The buffer is not consumed.
+     *
+     * @param buffer the buffer to read.
+     * @return this reader.
+     */
+    public BinaryReader wrap(final ByteBuffer buffer) {
+        return wrap(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Points the reader at a range of a buffer.
+     *
+     * @param source the buffer holding the payload.
+     * @param offset the index of the payload in the buffer.
+     * @param length the length of the payload.
+     * @return this reader.
+     */
+    public BinaryReader wrap(final ByteBuffer source, final int offset, final int length) {
+        Objects.checkFromIndexSize(offset, length, source.limit());
+        this.source = source;
+        this.offset = offset;
+        this.limit  = offset + length;
+        this.index  = offset;
+        return this;
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @return the value read.
+     * @throws EOFException if the payload has no bytes left.
+     */
+    public byte readByte() throws EOFException {
+        require(1);
+        return this.source.get(this.index++);
+    }
+
+    /**
+     * Reads a byte as an unsigned value.
+     *
+     * @return the value read, from 0 to 255.
+     * @throws EOFException if the payload has no bytes left.
+     */
+    public int readUnsignedByte() throws EOFException {
+        return readByte() & 0xFF;
+    }
+
+    /**
+     * Reads a boolean written as a single byte.
+     *
+     * @return the value read.
+     * @throws EOFException if the payload has no bytes left.
+     */
+    public boolean readBoolean() throws EOFException {
+        return readByte() != 0;
+    }
+
+    /**
+     * Reads a short.
+     *
+     * @return the value read.
+     * @throws EOFException if fewer than two bytes are left.
+     */
+    public short readShort() throws EOFException {
+        require(Short.BYTES);
+        final short value = this.source.getShort(this.index);
+        this.index += Short.BYTES;
+        return value;
+    }
+
+    /**
+     * Reads a char.
+     *
+     * @return the value read.
+     * @throws EOFException if fewer than two bytes are left.
+     */
+    public char readChar() throws EOFException {
+        require(Character.BYTES);
+        final char value = this.source.getChar(this.index);
+        this.index += Character.BYTES;
+        return value;
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @return the value read.
+     * @throws EOFException if fewer than four bytes are left.
+     */
+    public int readInt() throws EOFException {
+        require(Integer.BYTES);
+        final int value = this.source.getInt(this.index);
+        this.index += Integer.BYTES;
+        return value;
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @return the value read.
+     * @throws EOFException if fewer than eight bytes are left.
+     */
+    public long readLong() throws EOFException {
+        require(Long.BYTES);
+        final long value = this.source.getLong(this.index);
+        this.index += Long.BYTES;
+        return value;
+    }
+
+    /**
+     * Reads a float.
+     *
+     * @return the value read.
+     * @throws EOFException if fewer than four bytes are left.
+     */
+    public float readFloat() throws EOFException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    /**
+     * Reads a double.
+     *
+     * @return the value read.
+     * @throws EOFException if fewer than eight bytes are left.
+     */
+    public double readDouble() throws EOFException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Reads bytes into a range of an array.
+     *
+     * @param bytes  the array to read into.
+     * @param offset the offset of the range in the array.
+     * @param length the number of bytes to read.
+     * @throws EOFException if fewer than `length` bytes are left.
+     */
+    public void readBytes(final byte[] bytes, final int offset, final int length) throws EOFException {
+        require(length);
+        this.source.get(this.index, bytes, offset, length);
+        this.index += length;
+    }
+
+    /**
+     * Reads a string written by `BinaryWriter.writeString`.
+     * <p>
+     * The characters are decoded into a builder reused by this reader, so the only allocation is the returned string.
+     * </p>
+     *
+     * @return the string read.
+     * @throws EOFException if the payload ends within the string.
+     */
+    public String readString() throws EOFException {
+        this.chars.setLength(0);
+        readString(this.chars);
+        return this.chars.toString();
+    }
+
+    /**
+     * Reads a string written by `BinaryWriter.writeString` and appends its characters to the given builder, without
+     * allocating. Malformed UTF-8 sequences are decoded as the replacement character.
+     *
+     * @param builder the builder to append to.
+     * @throws EOFException if the payload ends within the string.
+     */
+    public void readString(final StringBuilder builder) throws EOFException {
+        final int length = readInt();
+        if (length < 0) throw new EOFException("Invalid string length: " + length);
+        require(length);
+        final int end = this.index + length;
+        int i = this.index;
+        while (i < end) {
+            final int b = this.source.get(i++);
+            if (b >= 0) {
+                builder.append((char) b);
+            } else if ((b & 0xE0) == 0xC0 && i < end) {
+                builder.append((char) ((b & 0x1F) << 6 | this.source.get(i++) & 0x3F));
+            } else if ((b & 0xF0) == 0xE0 && i + 1 < end) {
+                builder.append((char) ((b & 0x0F) << 12 | (this.source.get(i++) & 0x3F) << 6 | this.source.get(i++) & 0x3F));
+            } else if ((b & 0xF8) == 0xF0 && i + 2 < end) {
+                builder.appendCodePoint((b & 0x07) << 18 | (this.source.get(i++) & 0x3F) << 12 | (this.source.get(i++) & 0x3F) << 6 | this.source.get(i++) & 0x3F);
+            } else {
+                builder.append('\uFFFD');
+            }
+        }
+        this.index = end;
+    }
+
+    /**
+     * Skips bytes of the payload.
+     *
+     * @param length the number of bytes to skip.
+     * @throws EOFException if fewer than `length` bytes are left.
+     */
+    public void skip(final int length) throws EOFException {
+        require(length);
+        this.index += length;
+    }
+
+    /**
+     * Returns the byte at an index of the payload, without moving the reader.
+     *
+     * @param index the index within the payload.
+     * @return the value at the index.
+     */
+    public byte getByte(final int index) {
+        return this.source.get(checkIndex(index, 1));
+    }
+
+    /**
+     * Returns the short at an index of the payload, without moving the reader.
+     *
+     * @param index the index within the payload.
+     * @return the value at the index.
+     */
+    public short getShort(final int index) {
+        return this.source.getShort(checkIndex(index, Short.BYTES));
+    }
+
+    /**
+     * Returns the int at an index of the payload, without moving the reader.
+     *
+     * @param index the index within the payload.
+     * @return the value at the index.
+     */
+    public int getInt(final int index) {
+        return this.source.getInt(checkIndex(index, Integer.BYTES));
+    }
+
+    /**
+     * Returns the long at an index of the payload, without moving the reader.
+     *
+     * @param index the index within the payload.
+     * @return the value at the index.
+     */
+    public long getLong(final int index) {
+        return this.source.getLong(checkIndex(index, Long.BYTES));
+    }
+
+    /**
+     * Returns the double at an index of the payload, without moving the reader.
+     *
+     * @param index the index within the payload.
+     * @return the value at the index.
+     */
+    public double getDouble(final int index) {
+        return this.source.getDouble(checkIndex(index, Double.BYTES));
+    }
+
+    /**
+     * Returns the position of the reader within the payload.
+     *
+     * @return the number of bytes read so far.
+     */
+    public int getPosition() {
+        return this.index - this.offset;
+    }
+
+    /**
+     * Moves the reader to a position within the payload.
+     *
+     * @param position the new position.
+     */
+    public void setPosition(final int position) {
+        this.index = checkIndex(position, 0);
+    }
+
+    /**
+     * Returns the number of payload bytes left to read.
+     *
+     * @return the number of remaining bytes.
+     */
+    public int remaining() {
+        return this.limit - this.index;
+    }
+
+    /**
+     * Checks that the given number of bytes is left to read.
+     *
+     * @param length the number of bytes about to be read.
+     * @throws EOFException if fewer bytes are left.
+     */
+    private void require(final int length) throws EOFException {
+        if (length < 0 || this.limit - this.index < length) throw new EOFException("Payload ends after " + getPosition() + " bytes, " + length + " more expected");
+    }
+
+    /**
+     * Converts an index within the payload to an index of the source buffer.
+     *
+     * @param index  the index within the payload.
+     * @param length the number of bytes read at the index.
+     * @return the index in the source buffer.
+     */
+    private int checkIndex(final int index, final int length) {
+        return this.offset + Objects.checkFromIndexSize(index, length, this.limit - this.offset);
+    }
+}
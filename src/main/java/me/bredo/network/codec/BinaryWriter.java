@@ -0,0 +1,285 @@
+package me.bredo.network.codec;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.protocol.FrameCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes primitives and strings into the pooled buffer of an outgoing frame.
+ * <p>
+ * The writer allocates a buffer of the pool with room for the frame header and the expected payload, and writes every
+ * value straight into it in network byte order, the same layout `DataOutputStream` produces. When the payload outgrows
+ * the buffer, a buffer twice as large is taken from the pool and the old one is released. `finish` fills in the header,
+ * so the buffer can be queued without copying the payload again. Room for a stream id is reserved in front of the
+ * payload as well, so a message can be finished for a logical channel without moving it.
+ * </p>
+ * <p>
+ * Strings are written as the length of their UTF-8 encoding as an int followed by the encoded bytes, encoded char by
+ * char without an intermediate byte array.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class BinaryWriter {
+
+    private static final int PREFIX_SIZE = FrameCodec.HEADER_SIZE + FrameCodec.STREAM_ID_SIZE;
+
+    private final BufferPool   bufferPool;
+    private       PooledBuffer frame;
+    private       ByteBuffer   buffer;
+
+    /**
+     * Creates a new BinaryWriter instance, writing into a new buffer of the pool.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param sizeHint   the expected payload size in bytes.
+     */
+    public BinaryWriter(final BufferPool bufferPool, final int sizeHint) {
+        this.bufferPool = bufferPool;
+        this.frame      = bufferPool.allocate(PREFIX_SIZE + Math.max(sizeHint, 0));
+        this.buffer     = this.frame.getByteBuffer();
+        this.buffer.position(PREFIX_SIZE);
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeByte(final int value) {
+        ensure(1);
+        this.buffer.put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes a boolean as a single byte.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeBoolean(final boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a short.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeShort(final int value) {
+        ensure(Short.BYTES);
+        this.buffer.putShort((short) value);
+        return this;
+    }
+
+    /**
+     * Writes a char.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeChar(final char value) {
+        ensure(Character.BYTES);
+        this.buffer.putChar(value);
+        return this;
+    }
+
+    /**
+     * Writes an int.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeInt(final int value) {
+        ensure(Integer.BYTES);
+        this.buffer.putInt(value);
+        return this;
+    }
+
+    /**
+     * Writes a long.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeLong(final long value) {
+        ensure(Long.BYTES);
+        this.buffer.putLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a float.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeFloat(final float value) {
+        ensure(Float.BYTES);
+        this.buffer.putFloat(value);
+        return this;
+    }
+
+    /**
+     * Writes a double.
+     *
+     * @param value the value to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeDouble(final double value) {
+        ensure(Double.BYTES);
+        this.buffer.putDouble(value);
+        return this;
+    }
+
+    /**
+     * Writes a range of a byte array, without a length prefix.
+     *
+     * @param bytes  the bytes to write.
+     * @param offset the offset of the range in the array.
+     * @param length the length of the range.
+     * @return this writer.
+     */
+    public BinaryWriter writeBytes(final byte[] bytes, final int offset, final int length) {
+        ensure(length);
+        this.buffer.put(bytes, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes the bytes of a buffer between its position and limit, without a length prefix. The buffer is not
+     * consumed.
+     *
+     * @param bytes the bytes to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeBytes(final ByteBuffer bytes) {
+        final int length = bytes.remaining();
+        ensure(length);
+        this.buffer.put(this.buffer.position(), bytes, bytes.position(), length);
+        this.buffer.position(this.buffer.position() + length);
+        return this;
+    }
+
+    /**
+     * Writes a string as the length of its UTF-8 encoding followed by the encoded bytes.
+     *
+     * @param value the string to write.
+     * @return this writer.
+     */
+    public BinaryWriter writeString(final CharSequence value) {
+        final int length = value.length();
+        ensure(Integer.BYTES + length);
+        final int start = this.buffer.position();
+        this.buffer.position(start + Integer.BYTES);
+        int i = 0;
+        while (i < length) {
+            final char c = value.charAt(i);
+            if (c >= 0x80) break;
+            this.buffer.put((byte) c);
+            i++;
+        }
+        if (i < length) ensure(3 * (length - i));
+        while (i < length) {
+            final char c = value.charAt(i++);
+            if (c < 0x80) {
+                this.buffer.put((byte) c);
+            } else if (c < 0x800) {
+                this.buffer.put((byte) (0xC0 | c >> 6));
+                this.buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(value.charAt(i))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(i++));
+                this.buffer.put((byte) (0xF0 | codePoint >> 18));
+                this.buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                this.buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                this.buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                this.buffer.put((byte) '?');
+            } else {
+                this.buffer.put((byte) (0xE0 | c >> 12));
+                this.buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                this.buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        this.buffer.putInt(start, this.buffer.position() - start - Integer.BYTES);
+        return this;
+    }
+
+    /**
+     * Makes room for the given number of bytes, moving the content into a larger buffer of the pool if needed.
+     *
+     * @param length the number of bytes about to be written.
+     */
+    private void ensure(final int length) {
+        if (this.buffer.remaining() >= length) return;
+        final int required = this.buffer.position() + length;
+        final PooledBuffer grown = this.bufferPool.allocate(Math.max(required, this.buffer.capacity() * 2));
+        grown.getByteBuffer().put(this.buffer.flip());
+        this.frame.release();
+        this.frame  = grown;
+        this.buffer = grown.getByteBuffer();
+    }
+
+    /**
+     * Returns the number of payload bytes written so far.
+     *
+     * @return the size of the payload.
+     */
+    public int getSize() {
+        return this.buffer.position() - PREFIX_SIZE;
+    }
+
+    /**
+     * Completes the frame by writing its header in front of the payload. The writer must not be used afterwards.
+     *
+     * @param type  the type id of the frame.
+     * @param flags the flags of the frame.
+     * @return the encoded frame, flipped for reading and owned by the caller.
+     * @throws IllegalArgumentException if the payload is larger than `FrameCodec.MAX_PAYLOAD_SIZE`.
+     */
+    public PooledBuffer finish(final int type, final byte flags) {
+        return finish(type, flags, 0);
+    }
+
+    /**
+     * Completes the frame by writing its header and stream id in front of the payload. The writer must not be used
+     * afterwards.
+     *
+     * @param type     the type id of the frame.
+     * @param flags    the flags of the frame.
+     * @param streamId the stream id of the logical channel the frame is sent on, or 0 to send it on none.
+     * @return the encoded frame, flipped for reading and owned by the caller.
+     * @throws IllegalArgumentException if the payload is larger than `FrameCodec.MAX_PAYLOAD_SIZE`.
+     */
+    public PooledBuffer finish(final int type, final byte flags, final int streamId) {
+        final int length = getSize();
+        final int start = streamId != 0 ? 0 : FrameCodec.STREAM_ID_SIZE;
+        if (length + FrameCodec.STREAM_ID_SIZE - start > FrameCodec.MAX_PAYLOAD_SIZE) {
+            release();
+            throw new IllegalArgumentException("Frame payload too large: " + length);
+        }
+        this.buffer.limit(this.buffer.position());
+        this.buffer.position(start);
+        FrameCodec.writeHeader(this.buffer, type, flags, streamId, length);
+        this.buffer.position(start);
+        final PooledBuffer frame = this.frame;
+        this.frame  = null;
+        this.buffer = null;
+        return frame;
+    }
+
+    /**
+     * Releases the buffer of a frame that is not going to be finished, for example because encoding failed.
+     */
+    public void release() {
+        if (this.frame == null) return;
+        this.frame.release();
+        this.frame  = null;
+        this.buffer = null;
+    }
+}
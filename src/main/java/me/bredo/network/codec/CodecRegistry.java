@@ -0,0 +1,194 @@
+package me.bredo.network.codec;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.protocol.Frame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The codecs of a server or client, registered per message type id and message class.
+ * <p>
+ * Sending a message looks up the codec by the class of the message, and receiving a frame looks it up by the type id
+ * of the frame. Type ids below `INDEXED_TYPES` are looked up in an array, so the receive path neither boxes the type
+ * id nor hashes it; larger type ids fall back to a map. Codecs should be registered before connections are started,
+ * but registering later is safe.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class CodecRegistry {
+
+    /**
+     * The number of type ids, counted from 0, whose codecs are looked up in an array.
+     */
+    public static final int INDEXED_TYPES = 1024;
+
+    private final    Map<Integer, Registration<?>>  largeTypes;
+    private final    Map<Class<?>, Registration<?>> classes;
+    private volatile Registration<?>[]              types;
+
+    /**
+     * Creates a new, empty CodecRegistry instance.
+     */
+    public CodecRegistry() {
+        this.largeTypes = new ConcurrentHashMap<>();
+        this.classes    = new ConcurrentHashMap<>();
+        this.types      = new Registration<?>[0];
+    }
+
+    /**
+     * Registers the codec of a message type.
+     *
+     * @param type         the type id of the frames carrying the messages, must not be negative.
+     * @param messageClass the exact class of the messages.
+     * @param codec        the codec of the messages.
+     * @param <T>          the class of the messages.
+     * @throws IllegalArgumentException if the type id is negative, or the type id or class is already registered.
+     */
+    public synchronized <T> void register(final int type, final Class<T> messageClass, final MessageCodec<T> codec) {
+        if (type < 0) throw new IllegalArgumentException("Negative message types are reserved: " + type);
+        if (getRegistration(type) != null) throw new IllegalArgumentException("Message type " + type + " is already registered");
+        if (this.classes.containsKey(messageClass)) throw new IllegalArgumentException(messageClass.getName() + " is already registered");
+        final Registration<T> registration = new Registration<>(type, codec);
+        if (type < INDEXED_TYPES) {
+            final Registration<?>[] types = this.types.length > type ? this.types.clone() : Arrays.copyOf(this.types, type + 1);
+            types[type] = registration;
+            this.types = types;
+        } else {
+            this.largeTypes.put(type, registration);
+        }
+        this.classes.put(messageClass, registration);
+    }
+
+    /**
+     * Returns whether a codec is registered for the given type id.
+     *
+     * @param type the type id of a frame.
+     * @return true if frames of the type are decoded, false otherwise.
+     */
+    public boolean isRegistered(final int type) {
+        return getRegistration(type) != null;
+    }
+
+    /**
+     * Returns the type id messages of the given class are sent with.
+     *
+     * @param messageClass the class of the messages.
+     * @return the type id of the messages.
+     * @throws IllegalArgumentException if no codec is registered for the class.
+     */
+    public int getType(final Class<?> messageClass) {
+        return getRegistration(messageClass).type;
+    }
+
+    /**
+     * Encodes a message into a buffer of the pool, ready to be written as a frame of its type.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param message    the message to encode.
+     * @return the encoded frame, owned by the caller.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message, or the encoded payload
+     *                                  is larger than `FrameCodec.MAX_PAYLOAD_SIZE`.
+     */
+    public PooledBuffer encode(final BufferPool bufferPool, final Object message) {
+        return encode(bufferPool, message, 0);
+    }
+
+    /**
+     * Encodes a message into a buffer of the pool, ready to be written as a frame of its type on a logical channel.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param message    the message to encode.
+     * @param streamId   the stream id of the logical channel the frame is sent on, or 0 to send it on none.
+     * @return the encoded frame, owned by the caller.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message, or the encoded payload
+     *                                  is larger than `FrameCodec.MAX_PAYLOAD_SIZE`.
+     */
+    public PooledBuffer encode(final BufferPool bufferPool, final Object message, final int streamId) {
+        return encode(bufferPool, message, (byte) 0, streamId);
+    }
+
+    /**
+     * Encodes a message into a buffer of the pool, ready to be written as a frame of its type with the given flags.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param message    the message to encode.
+     * @param flags      the flags of the frame.
+     * @param streamId   the stream id of the logical channel the frame is sent on, or 0 to send it on none.
+     * @return the encoded frame, owned by the caller.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message, or the encoded payload
+     *                                  is larger than `FrameCodec.MAX_PAYLOAD_SIZE`.
+     */
+    @SuppressWarnings("unchecked")
+    public PooledBuffer encode(final BufferPool bufferPool, final Object message, final byte flags, final int streamId) {
+        final Registration<Object> registration = (Registration<Object>) getRegistration(message.getClass());
+        final BinaryWriter writer = new BinaryWriter(bufferPool, registration.codec.sizeHint(message));
+        try {
+            registration.codec.encode(message, writer);
+        } catch (final RuntimeException exception) {
+            writer.release();
+            throw exception;
+        }
+        return writer.finish(registration.type, flags, streamId);
+    }
+
+    /**
+     * Decodes the payload of a received frame with the codec registered for its type.
+     *
+     * @param frame  the received frame.
+     * @param reader the reader to wrap around the payload, reused by the connection for every message.
+     * @return the decoded message, or null if no codec is registered for the type of the frame.
+     * @throws IOException if the payload is not a valid message.
+     */
+    public Object decode(final Frame frame, final BinaryReader reader) throws IOException {
+        final Registration<?> registration = getRegistration(frame.getType());
+        if (registration == null) return null;
+        return registration.codec.decode(reader.wrap(frame));
+    }
+
+    /**
+     * Returns the registration of a type id.
+     *
+     * @param type the type id.
+     * @return the registration, or null if the type id is not registered.
+     */
+    private Registration<?> getRegistration(final int type) {
+        if (type < 0) return null;
+        if (type >= INDEXED_TYPES) return this.largeTypes.get(type);
+        final Registration<?>[] types = this.types;
+        return type < types.length ? types[type] : null;
+    }
+
+    /**
+     * Returns the registration of a message class.
+     *
+     * @param messageClass the class of the messages.
+     * @return the registration.
+     * @throws IllegalArgumentException if the class is not registered.
+     */
+    private Registration<?> getRegistration(final Class<?> messageClass) {
+        final Registration<?> registration = this.classes.get(messageClass);
+        if (registration == null) throw new IllegalArgumentException("No codec registered for " + messageClass.getName());
+        return registration;
+    }
+
+    /**
+     * A codec together with the type id it is registered for.
+     *
+     * @param <T> the class of the messages.
+     */
+    private static final class Registration<T> {
+
+        private final int             type;
+        private final MessageCodec<T> codec;
+
+        private Registration(final int type, final MessageCodec<T> codec) {
+            this.type  = type;
+            this.codec = codec;
+        }
+    }
+}
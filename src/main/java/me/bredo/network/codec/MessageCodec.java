@@ -0,0 +1,49 @@
+package me.bredo.network.codec;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the messages of a single type id of the framed protocol.
+ * <p>
+ * A codec is registered with a `CodecRegistry` for a type id and a message class. It writes the fields of a message
+ * straight into the pooled buffer of the outgoing frame, and reads them straight from the receive buffer of the
+ * connection, so neither side copies the payload into an intermediate array.
+ * </p>
+ * <p>
+ * A decoder may return a flyweight that keeps the `BinaryReader` and reads its fields in place on demand. Such a
+ * message is only valid until the handler callback returns, just like the `Frame` it was decoded from.
+ * </p>
+ *
+ * @param <T> the class of the messages.
+ * @author bredo
+ */
+public interface MessageCodec<T> {
+
+    /**
+     * Writes the payload of a message.
+     *
+     * @param message the message to encode.
+     * @param writer  the writer of the frame payload.
+     */
+    void encode(final T message, final BinaryWriter writer);
+
+    /**
+     * Reads a message from the payload of a received frame.
+     *
+     * @param reader the reader of the frame payload, positioned at its start.
+     * @return the decoded message.
+     * @throws IOException if the payload is not a valid message.
+     */
+    T decode(final BinaryReader reader) throws IOException;
+
+    /**
+     * Returns an estimate of the payload size of a message, used to size the buffer it is encoded into. The writer
+     * grows the buffer when the estimate is too small.
+     *
+     * @param message the message to encode.
+     * @return the expected payload size in bytes.
+     */
+    default int sizeHint(final T message) {
+        return 64;
+    }
+}
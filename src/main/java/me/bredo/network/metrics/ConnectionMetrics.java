@@ -0,0 +1,202 @@
+package me.bredo.network.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single connection.
+ * <p>
+ * Every value recorded here is also added to the `NetworkMetrics` of the server or client owning the connection. To
+ * keep a connection cheap, handler latencies are only kept as total and maximum per connection, while the full
+ * histograms live in the `NetworkMetrics`. Comparing the mean and maximum handler time of the connections shows which
+ * clients are slow to handle.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ConnectionMetrics {
+
+    private final NetworkMetrics  networkMetrics;
+    private final LongAdder       bytesIn;
+    private final LongAdder       bytesOut;
+    private final LongAdder       messagesIn;
+    private final LongAdder       messagesOut;
+    private final LongAdder       handlerCalls;
+    private final LongAdder       handlerTime;
+    private final LongAccumulator maxHandlerTime;
+
+    /**
+     * Creates a new ConnectionMetrics instance.
+     *
+     * @param networkMetrics the metrics of the server or client owning the connection.
+     */
+    public ConnectionMetrics(final NetworkMetrics networkMetrics) {
+        this.networkMetrics = networkMetrics;
+        this.bytesIn        = new LongAdder();
+        this.bytesOut       = new LongAdder();
+        this.messagesIn     = new LongAdder();
+        this.messagesOut    = new LongAdder();
+        this.handlerCalls   = new LongAdder();
+        this.handlerTime    = new LongAdder();
+        this.maxHandlerTime = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Counts bytes read from the socket.
+     *
+     * @param count the number of bytes.
+     */
+    public void bytesRead(final int count) {
+        this.bytesIn.add(count);
+        this.networkMetrics.bytesRead(count);
+    }
+
+    /**
+     * Counts bytes written to the socket.
+     *
+     * @param count the number of bytes.
+     */
+    public void bytesWritten(final long count) {
+        this.bytesOut.add(count);
+        this.networkMetrics.bytesWritten(count);
+    }
+
+    /**
+     * Counts a received message.
+     */
+    public void messageReceived() {
+        this.messagesIn.increment();
+        this.networkMetrics.messageReceived();
+    }
+
+    /**
+     * Counts a message that was queued or written for the peer.
+     */
+    public void messageSent() {
+        this.messagesOut.increment();
+        this.networkMetrics.messageSent();
+    }
+
+    /**
+     * Records a call to the `inputStream` handler.
+     *
+     * @param nanos the duration of the call.
+     */
+    public void inputStreamHandled(final long nanos) {
+        handled(nanos);
+        this.networkMetrics.getInputStreamHistogram().record(nanos);
+    }
+
+    /**
+     * Records a call to the `outputStream` handler.
+     *
+     * @param nanos the duration of the call.
+     */
+    public void outputStreamHandled(final long nanos) {
+        handled(nanos);
+        this.networkMetrics.getOutputStreamHistogram().record(nanos);
+    }
+
+    /**
+     * Records a call to the `message` handler.
+     *
+     * @param nanos the duration of the call.
+     */
+    public void messageHandled(final long nanos) {
+        handled(nanos);
+        this.networkMetrics.getMessageHistogram().record(nanos);
+    }
+
+    /**
+     * Records a call to the `messages` handler with a batch of messages. The message latency histogram stays per
+     * message: the duration of the call is split evenly across the messages of the batch.
+     *
+     * @param nanos    the duration of the call.
+     * @param messages the number of messages in the batch.
+     */
+    public void messagesHandled(final long nanos, final int messages) {
+        handled(nanos);
+        if (messages > 0) this.networkMetrics.getMessageHistogram().record(nanos / messages, messages);
+    }
+
+    /**
+     * Adds a handler call to the totals of this connection.
+     *
+     * @param nanos the duration of the call.
+     */
+    private void handled(final long nanos) {
+        this.handlerCalls.increment();
+        this.handlerTime.add(nanos);
+        this.maxHandlerTime.accumulate(nanos);
+    }
+
+    /**
+     * Returns the number of bytes read from the socket of this connection.
+     *
+     * @return the number of bytes read.
+     */
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    /**
+     * Returns the number of bytes written to the socket of this connection.
+     *
+     * @return the number of bytes written.
+     */
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    /**
+     * Returns the number of messages received through this connection.
+     *
+     * @return the number of messages received.
+     */
+    public long getMessagesIn() {
+        return this.messagesIn.sum();
+    }
+
+    /**
+     * Returns the number of messages sent through this connection.
+     *
+     * @return the number of messages sent.
+     */
+    public long getMessagesOut() {
+        return this.messagesOut.sum();
+    }
+
+    /**
+     * Returns the number of handler calls for this connection.
+     *
+     * @return the number of handler calls.
+     */
+    public long getHandlerCalls() {
+        return this.handlerCalls.sum();
+    }
+
+    /**
+     * Returns the mean duration of the handler calls for this connection.
+     *
+     * @return the mean duration in nanoseconds, or 0 if the handler was not called yet.
+     */
+    public double getMeanHandlerTime() {
+        final long calls = getHandlerCalls();
+        return calls == 0 ? 0 : (double) this.handlerTime.sum() / calls;
+    }
+
+    /**
+     * Returns the longest handler call for this connection.
+     *
+     * @return the longest duration in nanoseconds.
+     */
+    public long getMaxHandlerTime() {
+        return this.maxHandlerTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return "bytesIn=" + getBytesIn() + ", bytesOut=" + getBytesOut() + ", messagesIn=" + getMessagesIn() + ", messagesOut=" + getMessagesOut()
+                + ", handlerCalls=" + getHandlerCalls() + ", meanHandlerTime=" + (long) getMeanHandlerTime() + "ns, maxHandlerTime=" + getMaxHandlerTime() + "ns";
+    }
+}
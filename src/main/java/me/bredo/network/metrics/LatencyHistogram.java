@@ -0,0 +1,159 @@
+package me.bredo.network.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds with a bounded relative error.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split into `SUB_BUCKETS` linear buckets, so that a
+ * recorded value is known within about 6 percent, from single nanoseconds up to hours, with a fixed amount of memory.
+ * Recording is lock-free and can be done from any number of threads.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS         = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder       count;
+    private final LongAdder       sum;
+    private final LongAccumulator max;
+
+    /**
+     * Creates a new, empty LatencyHistogram instance.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count   = new LongAdder();
+        this.sum     = new LongAdder();
+        this.max     = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        this.buckets.incrementAndGet(bucket(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Records the same duration a number of times, such as the mean duration of every message of a batch.
+     *
+     * @param nanos the duration in nanoseconds. Negative values are recorded as zero.
+     * @param times the number of times the duration is recorded.
+     */
+    public void record(final long nanos, final int times) {
+        if (times <= 0) return;
+        final long value = Math.max(nanos, 0);
+        this.buckets.addAndGet(bucket(value), times);
+        this.count.add(times);
+        this.sum.add(value * times);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Returns the bucket counting the given value.
+     *
+     * @param value the value, not negative.
+     * @return the index of the bucket.
+     */
+    private static int bucket(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the value in the middle of a bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the value the bucket stands for.
+     */
+    private static long value(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >>> 1);
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values lie.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the value at the percentile in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long total = getCount();
+        if (total == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) return Math.min(value(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        final long total = getCount();
+        return total == 0 ? 0 : (double) this.sum.sum() / total;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest value in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns a summary of the recorded values.
+     *
+     * @return the summary.
+     */
+    public LatencySnapshot snapshot() {
+        return new LatencySnapshot(getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), getMax());
+    }
+
+    /**
+     * Removes every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+}
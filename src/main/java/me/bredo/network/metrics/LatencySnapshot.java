@@ -0,0 +1,113 @@
+package me.bredo.network.metrics;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * A summary of a `LatencyHistogram` at a point in time. All durations are in nanoseconds.
+ * <p>
+ * Over JMX the summary is exported as a composite value with one item per getter.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class LatencySnapshot {
+
+    private final long   count;
+    private final double mean;
+    private final long   p50;
+    private final long   p90;
+    private final long   p99;
+    private final long   p999;
+    private final long   max;
+
+    /**
+     * Creates a new LatencySnapshot instance.
+     *
+     * @param count the number of recorded values.
+     * @param mean  the mean of the recorded values.
+     * @param p50   the median.
+     * @param p90   the 90th percentile.
+     * @param p99   the 99th percentile.
+     * @param p999  the 99.9th percentile.
+     * @param max   the largest recorded value.
+     */
+    @ConstructorParameters({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public LatencySnapshot(final long count, final double mean, final long p50, final long p90, final long p99, final long p999, final long max) {
+        this.count = count;
+        this.mean  = mean;
+        this.p50   = p50;
+        this.p90   = p90;
+        this.p99   = p99;
+        this.p999  = p999;
+        this.max   = max;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds.
+     */
+    public double getMean() {
+        return this.mean;
+    }
+
+    /**
+     * Returns the median of the recorded values.
+     *
+     * @return the median in nanoseconds.
+     */
+    public long getP50() {
+        return this.p50;
+    }
+
+    /**
+     * Returns the 90th percentile of the recorded values.
+     *
+     * @return the 90th percentile in nanoseconds.
+     */
+    public long getP90() {
+        return this.p90;
+    }
+
+    /**
+     * Returns the 99th percentile of the recorded values.
+     *
+     * @return the 99th percentile in nanoseconds.
+     */
+    public long getP99() {
+        return this.p99;
+    }
+
+    /**
+     * Returns the 99.9th percentile of the recorded values.
+     *
+     * @return the 99.9th percentile in nanoseconds.
+     */
+    public long getP999() {
+        return this.p999;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest value in nanoseconds.
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + this.count + ", mean=" + (long) this.mean + "ns, p50=" + this.p50 + "ns, p90=" + this.p90 + "ns, p99=" + this.p99
+                + "ns, p99.9=" + this.p999 + "ns, max=" + this.max + "ns";
+    }
+}
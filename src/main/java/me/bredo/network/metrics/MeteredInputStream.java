@@ -0,0 +1,40 @@
+package me.bredo.network.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream counting the bytes read from a socket into the metrics of its connection.
+ *
+ * @author bredo
+ */
+public final class MeteredInputStream extends FilterInputStream {
+
+    private final ConnectionMetrics connectionMetrics;
+
+    /**
+     * Creates a new MeteredInputStream instance.
+     *
+     * @param inputStream       the socket stream to read from.
+     * @param connectionMetrics the metrics of the connection.
+     */
+    public MeteredInputStream(final InputStream inputStream, final ConnectionMetrics connectionMetrics) {
+        super(inputStream);
+        this.connectionMetrics = connectionMetrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int value = super.read();
+        if (value >= 0) this.connectionMetrics.bytesRead(1);
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        final int read = super.read(bytes, offset, length);
+        if (read > 0) this.connectionMetrics.bytesRead(read);
+        return read;
+    }
+}
@@ -0,0 +1,38 @@
+package me.bredo.network.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream counting the bytes written to a socket into the metrics of its connection.
+ *
+ * @author bredo
+ */
+public final class MeteredOutputStream extends FilterOutputStream {
+
+    private final ConnectionMetrics connectionMetrics;
+
+    /**
+     * Creates a new MeteredOutputStream instance.
+     *
+     * @param outputStream      the socket stream to write to.
+     * @param connectionMetrics the metrics of the connection.
+     */
+    public MeteredOutputStream(final OutputStream outputStream, final ConnectionMetrics connectionMetrics) {
+        super(outputStream);
+        this.connectionMetrics = connectionMetrics;
+    }
+
+    @Override
+    public void write(final int value) throws IOException {
+        this.out.write(value);
+        this.connectionMetrics.bytesWritten(1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        this.out.write(bytes, offset, length);
+        this.connectionMetrics.bytesWritten(length);
+    }
+}
@@ -0,0 +1,219 @@
+package me.bredo.network.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a whole server or client.
+ * <p>
+ * Counters are striped `LongAdder`s, so that connection threads and event loops record without contending with each
+ * other, and handler latencies are kept in `LatencyHistogram`s. The metrics of every connection add up here, while
+ * the number of open connections and queued messages are read from the owner when asked for. The metrics can be
+ * exported over JMX with `register`.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class NetworkMetrics implements NetworkMetricsMXBean {
+
+    private final    LongAdder        acceptedConnections;
+    private final    LongAdder        bytesIn;
+    private final    LongAdder        bytesOut;
+    private final    LongAdder        messagesIn;
+    private final    LongAdder        messagesOut;
+    private final    LatencyHistogram inputStreamLatency;
+    private final    LatencyHistogram outputStreamLatency;
+    private final    LatencyHistogram messageLatency;
+    private volatile IntSupplier      activeConnections;
+    private volatile LongSupplier     queuedMessages;
+    private volatile ObjectName       objectName;
+
+    /**
+     * Creates a new NetworkMetrics instance with every counter at zero.
+     */
+    public NetworkMetrics() {
+        this.acceptedConnections = new LongAdder();
+        this.bytesIn             = new LongAdder();
+        this.bytesOut            = new LongAdder();
+        this.messagesIn          = new LongAdder();
+        this.messagesOut         = new LongAdder();
+        this.inputStreamLatency  = new LatencyHistogram();
+        this.outputStreamLatency = new LatencyHistogram();
+        this.messageLatency      = new LatencyHistogram();
+        this.activeConnections   = () -> 0;
+        this.queuedMessages      = () -> 0;
+    }
+
+    /**
+     * Sets where the number of open connections and queued messages are read from.
+     *
+     * @param activeConnections returns the number of open connections.
+     * @param queuedMessages    returns the number of messages waiting in outbound queues.
+     */
+    public void setGauges(final IntSupplier activeConnections, final LongSupplier queuedMessages) {
+        this.activeConnections = activeConnections;
+        this.queuedMessages    = queuedMessages;
+    }
+
+    /**
+     * Exports these metrics over JMX under the given name.
+     *
+     * @param name the object name, e.g. `me.bredo.network:type=Server,port=8080`.
+     * @throws JMException if the name is invalid or already taken.
+     */
+    public void register(final String name) throws JMException {
+        final ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Removes these metrics from JMX, if they were exported.
+     *
+     * @throws JMException if the metrics could not be removed.
+     */
+    public void unregister() throws JMException {
+        final ObjectName objectName = this.objectName;
+        if (objectName == null) return;
+        this.objectName = null;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    /**
+     * Counts an accepted connection.
+     */
+    public void connectionAccepted() {
+        this.acceptedConnections.increment();
+    }
+
+    /**
+     * Counts bytes read from a socket.
+     *
+     * @param count the number of bytes.
+     */
+    void bytesRead(final int count) {
+        this.bytesIn.add(count);
+    }
+
+    /**
+     * Counts bytes written to a socket.
+     *
+     * @param count the number of bytes.
+     */
+    void bytesWritten(final long count) {
+        this.bytesOut.add(count);
+    }
+
+    /**
+     * Counts a received message.
+     */
+    void messageReceived() {
+        this.messagesIn.increment();
+    }
+
+    /**
+     * Counts a sent message.
+     */
+    void messageSent() {
+        this.messagesOut.increment();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return this.acceptedConnections.sum();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return this.activeConnections.getAsInt();
+    }
+
+    @Override
+    public long getQueuedMessages() {
+        return this.queuedMessages.getAsLong();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return this.messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return this.messagesOut.sum();
+    }
+
+    @Override
+    public LatencySnapshot getInputStreamLatency() {
+        return this.inputStreamLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getOutputStreamLatency() {
+        return this.outputStreamLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getMessageLatency() {
+        return this.messageLatency.snapshot();
+    }
+
+    /**
+     * Returns the histogram of the calls to the `inputStream` handler.
+     *
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getInputStreamHistogram() {
+        return this.inputStreamLatency;
+    }
+
+    /**
+     * Returns the histogram of the calls to the `outputStream` handler.
+     *
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getOutputStreamHistogram() {
+        return this.outputStreamLatency;
+    }
+
+    /**
+     * Returns the histogram of the calls to the `message` handler.
+     *
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getMessageHistogram() {
+        return this.messageLatency;
+    }
+
+    @Override
+    public void reset() {
+        this.acceptedConnections.reset();
+        this.bytesIn.reset();
+        this.bytesOut.reset();
+        this.messagesIn.reset();
+        this.messagesOut.reset();
+        this.inputStreamLatency.reset();
+        this.outputStreamLatency.reset();
+        this.messageLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "accepted=" + getAcceptedConnections() + ", active=" + getActiveConnections() + ", queued=" + getQueuedMessages() + ", bytesIn="
+                + getBytesIn() + ", bytesOut=" + getBytesOut() + ", messagesIn=" + getMessagesIn() + ", messagesOut=" + getMessagesOut();
+    }
+}
@@ -0,0 +1,85 @@
+package me.bredo.network.metrics;
+
+/**
+ * The management interface through which the metrics of a server or client are exported over JMX.
+ *
+ * @author bredo
+ */
+public interface NetworkMetricsMXBean {
+
+    /**
+     * Returns the number of connections accepted since the start.
+     *
+     * @return the number of accepted connections.
+     */
+    long getAcceptedConnections();
+
+    /**
+     * Returns the number of currently open connections.
+     *
+     * @return the number of open connections.
+     */
+    int getActiveConnections();
+
+    /**
+     * Returns the number of sent messages waiting in the outbound queues of all connections.
+     *
+     * @return the number of queued messages.
+     */
+    long getQueuedMessages();
+
+    /**
+     * Returns the number of bytes read from all sockets.
+     *
+     * @return the number of bytes read.
+     */
+    long getBytesIn();
+
+    /**
+     * Returns the number of bytes written to all sockets.
+     *
+     * @return the number of bytes written.
+     */
+    long getBytesOut();
+
+    /**
+     * Returns the number of messages received from all connections.
+     *
+     * @return the number of messages received.
+     */
+    long getMessagesIn();
+
+    /**
+     * Returns the number of messages sent through all connections.
+     *
+     * @return the number of messages sent.
+     */
+    long getMessagesOut();
+
+    /**
+     * Returns the duration of the calls to the `inputStream` handler.
+     *
+     * @return a summary of the handler latency.
+     */
+    LatencySnapshot getInputStreamLatency();
+
+    /**
+     * Returns the duration of the calls to the `outputStream` handler.
+     *
+     * @return a summary of the handler latency.
+     */
+    LatencySnapshot getOutputStreamLatency();
+
+    /**
+     * Returns the duration of the calls to the `message` handler. Batches handed to the `messages` handler count as
+     * one call per message, each taking an equal share of the batch.
+     *
+     * @return a summary of the handler latency.
+     */
+    LatencySnapshot getMessageLatency();
+
+    /**
+     * Resets every counter and histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,63 @@
+package me.bredo.network.protocol;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An `InputStream` reading the remaining bytes of a `ByteBuffer`.
+ * <p>
+ * Reading past the limit of the buffer reports end of stream, which a `DataInputStream` on top of it turns into
+ * an `EOFException`. The NIO engine uses this to detect that a handler needs more bytes than have been received.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+    private ByteBuffer byteBuffer;
+
+    /**
+     * Creates a new ByteBufferInputStream reading from the given buffer.
+     *
+     * @param byteBuffer the buffer to read from.
+     */
+    public ByteBufferInputStream(final ByteBuffer byteBuffer) {
+        setByteBuffer(byteBuffer);
+    }
+
+    @Override
+    public int read() {
+        if (!byteBuffer.hasRemaining()) return -1;
+        return byteBuffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) return 0;
+        if (!byteBuffer.hasRemaining()) return -1;
+        final int count = Math.min(length, byteBuffer.remaining());
+        byteBuffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) {
+        final int skipped = (int) Math.min(Math.max(count, 0), byteBuffer.remaining());
+        byteBuffer.position(byteBuffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return byteBuffer.remaining();
+    }
+
+    /**
+     * Sets the buffer this stream reads from.
+     *
+     * @param byteBuffer the buffer to read from.
+     */
+    public void setByteBuffer(final ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+}
@@ -0,0 +1,202 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the datagrams a server and its clients exchange besides their connections.
+ * <p>
+ * Every datagram holds a single frame. It starts with a header of `HEADER_SIZE` bytes: the token of the connection as
+ * a long and the sequence number of the datagram as an int, followed by the frame as encoded by `FrameCodec`. The
+ * token is handed to the client on its connection with a `FrameCodec.DATAGRAM_TYPE` frame, and tells which connection
+ * a datagram belongs to regardless of the address it was sent from. Sequence numbers count up per connection and
+ * direction, and wrap around, so the receiver can tell a stale datagram that arrived after a newer one.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class DatagramCodec {
+
+    /**
+     * The size of the datagram header in front of the frame in bytes.
+     */
+    public static final int HEADER_SIZE       = Long.BYTES + Integer.BYTES;
+    /**
+     * The largest datagram that can be sent over IPv4.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+    /**
+     * The largest payload a datagram may carry. Payloads above the MTU of the path, around 1400 bytes, are fragmented
+     * by IP and lost as a whole once any fragment is lost.
+     */
+    public static final int MAX_PAYLOAD_SIZE  = MAX_DATAGRAM_SIZE - HEADER_SIZE - FrameCodec.HEADER_SIZE;
+    /**
+     * The size of the payload of a `FrameCodec.DATAGRAM_TYPE` frame: the token as a long and the port as an int.
+     */
+    private static final int OFFER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private DatagramCodec() {
+    }
+
+    /**
+     * Encodes a datagram into a buffer of the pool, ready to be sent.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param token      the token of the connection.
+     * @param sequence   the sequence number of the datagram.
+     * @param type       the type id of the frame.
+     * @param payload    the payload of the frame.
+     * @param offset     the offset of the payload in the array.
+     * @param length     the length of the payload.
+     * @return the encoded datagram, flipped for reading.
+     * @throws IllegalArgumentException if the payload is larger than `MAX_PAYLOAD_SIZE`.
+     */
+    public static PooledBuffer encode(final BufferPool bufferPool, final long token, final int sequence, final int type, final byte[] payload, final int offset, final int length) {
+        if (length > MAX_PAYLOAD_SIZE) throw new IllegalArgumentException("Datagram payload too large: " + length);
+        final PooledBuffer datagram = bufferPool.allocate(HEADER_SIZE + FrameCodec.HEADER_SIZE + length);
+        final ByteBuffer buffer = datagram.getByteBuffer();
+        buffer.putLong(token);
+        buffer.putInt(sequence);
+        FrameCodec.writeHeader(buffer, type, Frame.FLAG_DATAGRAM, length);
+        buffer.put(payload, offset, length);
+        buffer.flip();
+        return datagram;
+    }
+
+    /**
+     * Encodes an empty `FrameCodec.HEARTBEAT_TYPE` datagram, which tells the peer the address datagrams reach the
+     * sender on and is never handed to a handler.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param token      the token of the connection.
+     * @param sequence   the sequence number of the datagram.
+     * @return the encoded datagram, flipped for reading.
+     */
+    public static PooledBuffer heartbeat(final BufferPool bufferPool, final long token, final int sequence) {
+        final PooledBuffer datagram = bufferPool.allocate(HEADER_SIZE + FrameCodec.HEADER_SIZE);
+        final ByteBuffer buffer = datagram.getByteBuffer();
+        buffer.putLong(token);
+        buffer.putInt(sequence);
+        FrameCodec.writeHeader(buffer, FrameCodec.HEARTBEAT_TYPE, Frame.FLAG_DATAGRAM, 0);
+        buffer.flip();
+        return datagram;
+    }
+
+    /**
+     * Encodes a datagram around a frame encoded by `FrameCodec` or a `CodecRegistry`, ready to be sent.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param token      the token of the connection.
+     * @param sequence   the sequence number of the datagram.
+     * @param frame      the encoded frame, which is copied and not consumed.
+     * @return the encoded datagram, flipped for reading.
+     * @throws IllegalArgumentException if the frame does not fit into a datagram.
+     */
+    public static PooledBuffer encode(final BufferPool bufferPool, final long token, final int sequence, final PooledBuffer frame) {
+        final ByteBuffer source = frame.getByteBuffer();
+        final int length = source.remaining();
+        if (length > MAX_DATAGRAM_SIZE - HEADER_SIZE) throw new IllegalArgumentException("Datagram payload too large: " + (length - FrameCodec.HEADER_SIZE));
+        final PooledBuffer datagram = bufferPool.allocate(HEADER_SIZE + length);
+        final ByteBuffer buffer = datagram.getByteBuffer();
+        buffer.putLong(token);
+        buffer.putInt(sequence);
+        buffer.put(buffer.position(), source, source.position(), length);
+        final int flags = buffer.position() + 2 * Integer.BYTES;
+        buffer.put(flags, (byte) (buffer.get(flags) | Frame.FLAG_DATAGRAM));
+        buffer.position(HEADER_SIZE + length);
+        buffer.flip();
+        return datagram;
+    }
+
+    /**
+     * Decodes the frame of a received datagram.
+     * <p>
+     * The given frame is pointed at the header values and the payload within the buffer, without copying, and carries
+     * `Frame.FLAG_DATAGRAM`. The position of the buffer is left untouched.
+     * </p>
+     *
+     * @param datagram the received datagram, between its position and limit.
+     * @param frame    the frame to reuse for the result.
+     * @return the decoded frame, or null if the datagram is truncated.
+     * @throws StreamCorruptedException if the frame announces an invalid payload length.
+     */
+    public static Frame decode(final ByteBuffer datagram, final Frame frame) throws StreamCorruptedException {
+        if (datagram.remaining() < HEADER_SIZE) return null;
+        final ByteBuffer buffer = datagram.duplicate();
+        buffer.position(datagram.position() + HEADER_SIZE);
+        if (FrameCodec.decode(buffer, frame) == null) return null;
+        return frame.set(frame.getType(), (byte) (frame.getFlags() | Frame.FLAG_DATAGRAM), frame.getStreamId(), frame.getSource(), frame.getOffset(), frame.getPayloadSize());
+    }
+
+    /**
+     * Returns the token of the connection a received datagram belongs to.
+     *
+     * @param datagram the received datagram, holding at least `HEADER_SIZE` bytes between its position and limit.
+     * @return the token.
+     */
+    public static long getToken(final ByteBuffer datagram) {
+        return datagram.getLong(datagram.position());
+    }
+
+    /**
+     * Returns the sequence number of a received datagram.
+     *
+     * @param datagram the received datagram, holding at least `HEADER_SIZE` bytes between its position and limit.
+     * @return the sequence number.
+     */
+    public static int getSequence(final ByteBuffer datagram) {
+        return datagram.getInt(datagram.position() + Long.BYTES);
+    }
+
+    /**
+     * Returns whether a sequence number was sent after another, allowing for the sequence numbers to wrap around.
+     *
+     * @param sequence the sequence number of a received datagram.
+     * @param last     the highest sequence number received before.
+     * @return true if the datagram is newer, false if it is stale or a duplicate.
+     */
+    public static boolean isNewer(final int sequence, final int last) {
+        return sequence - last > 0;
+    }
+
+    /**
+     * Encodes the `FrameCodec.DATAGRAM_TYPE` frame a server offers datagrams to a client with.
+     *
+     * @param bufferPool the pool to allocate the frame from.
+     * @param token      the token of the connection, sent with every datagram.
+     * @param port       the port the server receives datagrams on.
+     * @return the encoded frame, owned by the caller.
+     */
+    public static PooledBuffer offer(final BufferPool bufferPool, final long token, final int port) {
+        final PooledBuffer offer = bufferPool.allocate(FrameCodec.HEADER_SIZE + OFFER_SIZE);
+        final ByteBuffer buffer = offer.getByteBuffer();
+        FrameCodec.writeHeader(buffer, FrameCodec.DATAGRAM_TYPE, (byte) 0, OFFER_SIZE);
+        buffer.putLong(token);
+        buffer.putInt(port);
+        buffer.flip();
+        return offer;
+    }
+
+    /**
+     * Returns the token offered by a `FrameCodec.DATAGRAM_TYPE` frame.
+     *
+     * @param offer the received frame.
+     * @return the token, or 0 if the frame is truncated.
+     */
+    public static long getOfferedToken(final Frame offer) {
+        return offer.getPayloadSize() >= OFFER_SIZE ? offer.getSource().getLong(offer.getOffset()) : 0;
+    }
+
+    /**
+     * Returns the port offered by a `FrameCodec.DATAGRAM_TYPE` frame.
+     *
+     * @param offer the received frame.
+     * @return the port, or 0 if the frame is truncated.
+     */
+    public static int getOfferedPort(final Frame offer) {
+        return offer.getPayloadSize() >= OFFER_SIZE ? offer.getSource().getInt(offer.getOffset() + Long.BYTES) : 0;
+    }
+}
@@ -0,0 +1,170 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Sends and receives the datagrams of a server or client, as encoded by `DatagramCodec`, on a `DatagramChannel`.
+ * <p>
+ * A single receiver thread reads the channel into one receive buffer and hands every datagram to the receiver as a
+ * frame, which is only valid until the receiver returns, like the frames of a connection. Truncated and corrupted
+ * datagrams are dropped. Datagrams can be sent from any thread, and are handed to the kernel right away, without
+ * being queued or batched.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class DatagramTransport {
+
+    private final    DatagramChannel       channel;
+    private final    ByteBuffer            buffer;
+    private final    Frame                 frame;
+    private final    Receiver              receiver;
+    private final    Consumer<IOException> failureHandler;
+    private volatile boolean               running;
+    private          Thread                thread;
+
+    /**
+     * Creates a new DatagramTransport instance.
+     *
+     * @param channel        the bound or connected channel, owned by the transport from now on.
+     * @param receiver       called on the receiver thread for every received datagram.
+     * @param failureHandler called on the receiver thread when receiving fails, which does not stop the transport.
+     */
+    public DatagramTransport(final DatagramChannel channel, final Receiver receiver, final Consumer<IOException> failureHandler) {
+        this.channel        = channel;
+        this.buffer         = ByteBuffer.allocateDirect(DatagramCodec.MAX_DATAGRAM_SIZE);
+        this.frame          = new Frame();
+        this.receiver       = receiver;
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Starts the receiver thread.
+     *
+     * @param threadFactory the factory creating the receiver thread.
+     * @param name          the name of the receiver thread.
+     */
+    public void start(final ThreadFactory threadFactory, final String name) {
+        this.running = true;
+        this.thread = threadFactory.newThread(this::receiving);
+        this.thread.setName(name);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the receiver thread and closes the channel.
+     */
+    public void stop() {
+        this.running = false;
+        try {
+            this.channel.close();
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends an encoded datagram. Can be called from any thread. The datagram is released once it was sent.
+     *
+     * @param datagram the encoded datagram.
+     * @param target   the address to send the datagram to.
+     * @throws IOException if the datagram could not be sent or the transport was stopped.
+     */
+    public void send(final PooledBuffer datagram, final SocketAddress target) throws IOException {
+        try {
+            this.channel.send(datagram.getByteBuffer(), target);
+        } finally {
+            datagram.release();
+        }
+    }
+
+    /**
+     * Receives datagrams and hands them to the receiver until the transport is stopped.
+     */
+    private void receiving() {
+        while (this.running) {
+            final SocketAddress sender;
+            try {
+                this.buffer.clear();
+                sender = this.channel.receive(this.buffer);
+            } catch (final ClosedChannelException exception) {
+                return;
+            } catch (final IOException exception) {
+                if (this.running) this.failureHandler.accept(exception);
+                continue;
+            }
+            this.buffer.flip();
+            received(sender);
+        }
+    }
+
+    /**
+     * Decodes the datagram in the receive buffer and hands it to the receiver, unless it is truncated or corrupted.
+     *
+     * @param sender the address the datagram was sent from.
+     */
+    private void received(final SocketAddress sender) {
+        final Frame frame;
+        try {
+            frame = DatagramCodec.decode(this.buffer, this.frame);
+        } catch (final StreamCorruptedException exception) {
+            return;
+        }
+        if (frame == null) return;
+        try {
+            this.receiver.received(DatagramCodec.getToken(this.buffer), DatagramCodec.getSequence(this.buffer), frame, sender);
+        } catch (final RuntimeException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns whether the transport was started and not stopped yet.
+     *
+     * @return true if datagrams are received, false otherwise.
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Returns the port the channel is bound to.
+     *
+     * @return the local port, or 0 if the channel is closed.
+     */
+    public int getLocalPort() {
+        try {
+            final SocketAddress localAddress = this.channel.getLocalAddress();
+            return localAddress instanceof InetSocketAddress ? ((InetSocketAddress) localAddress).getPort() : 0;
+        } catch (final IOException exception) {
+            return 0;
+        }
+    }
+
+    /**
+     * Receives the datagrams of a `DatagramTransport`.
+     */
+    @FunctionalInterface
+    public interface Receiver {
+
+        /**
+         * Handles a received datagram, on the receiver thread of the transport.
+         *
+         * @param token    the token of the connection the datagram belongs to.
+         * @param sequence the sequence number of the datagram.
+         * @param frame    the frame of the datagram, only valid until this method returns.
+         * @param sender   the address the datagram was sent from.
+         */
+        void received(long token, int sequence, Frame frame, SocketAddress sender);
+    }
+}
@@ -0,0 +1,194 @@
+package me.bredo.network.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A region of a file, or of a memory-mapped segment, queued to be sent as a sequence of frames.
+ * <p>
+ * The region is split into chunks of at most `CHUNK_SIZE` bytes, each sent as a frame of the same type. Every chunk
+ * except the last carries `Frame.FLAG_CONTINUED`, so the receiver can put the chunks back together. Since the region
+ * is queued as a single element, the chunks are never interleaved with other messages of the same connection.
+ * </p>
+ * <p>
+ * Connections of the NIO engine hand the file to the socket with `FileChannel.transferTo`, so its content never
+ * passes through the Java heap. Blocking connections read the file straight into the write buffer of their writer.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class FileRegion {
+
+    /**
+     * The maximum payload size of a single chunk in bytes.
+     */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final int         type;
+    private final FileChannel fileChannel;
+    private final ByteBuffer  mappedBuffer;
+    private final boolean     closeOnRelease;
+    private final ByteBuffer  header;
+    private final long        end;
+    private       long        position;
+    private       int         chunkRemaining;
+
+    /**
+     * Creates a new FileRegion instance sending a part of a file.
+     *
+     * @param type           the type id of the frames.
+     * @param fileChannel    the file to send.
+     * @param position       the position of the region within the file.
+     * @param count          the number of bytes to send.
+     * @param closeOnRelease whether the file is closed once the region was sent or dropped.
+     */
+    public FileRegion(final int type, final FileChannel fileChannel, final long position, final long count, final boolean closeOnRelease) {
+        this(type, fileChannel, null, position, position + count, closeOnRelease);
+    }
+
+    /**
+     * Creates a new FileRegion instance sending the content of a buffer, usually a memory-mapped segment of a file. The
+     * buffer is sent from its position to its limit and is not consumed.
+     *
+     * @param type         the type id of the frames.
+     * @param mappedBuffer the buffer to send.
+     */
+    public FileRegion(final int type, final ByteBuffer mappedBuffer) {
+        this(type, null, mappedBuffer.duplicate(), mappedBuffer.position(), mappedBuffer.limit(), false);
+    }
+
+    private FileRegion(final int type, final FileChannel fileChannel, final ByteBuffer mappedBuffer, final long position, final long end,
+                       final boolean closeOnRelease) {
+        if (position < 0 || end < position) throw new IllegalArgumentException("Invalid region: " + position + " to " + end);
+        this.type           = type;
+        this.fileChannel    = fileChannel;
+        this.mappedBuffer   = mappedBuffer;
+        this.closeOnRelease = closeOnRelease;
+        this.header         = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+        this.end            = end;
+        this.position       = position;
+        nextChunk();
+    }
+
+    /**
+     * Writes as much of the region as the channel accepts. Called by the event loop of a non-blocking connection.
+     *
+     * @param channel the channel to write to.
+     * @return the number of bytes written.
+     * @throws IOException if there is an error writing to the channel or reading the file.
+     */
+    public long transferTo(final WritableByteChannel channel) throws IOException {
+        long written = 0;
+        while (!isDone()) {
+            if (this.header.hasRemaining()) {
+                written += channel.write(this.header);
+                if (this.header.hasRemaining()) break;
+                continue;
+            }
+            final long transferred;
+            if (this.fileChannel != null) {
+                transferred = this.fileChannel.transferTo(this.position, this.chunkRemaining, channel);
+                if (transferred == 0 && this.position >= this.fileChannel.size()) throw new EOFException("File ended before the region was sent");
+            } else {
+                this.mappedBuffer.limit((int) this.position + this.chunkRemaining).position((int) this.position);
+                transferred = channel.write(this.mappedBuffer);
+            }
+            if (transferred == 0) break;
+            written += transferred;
+            advance((int) transferred);
+        }
+        return written;
+    }
+
+    /**
+     * Copies the next bytes of the region, frame headers included, into an array. Called by the writer of a blocking
+     * connection to fill its write buffer.
+     *
+     * @param bytes  the array to copy into.
+     * @param offset the index to copy to.
+     * @param length the maximum number of bytes to copy.
+     * @return the number of bytes copied.
+     * @throws IOException if there is an error reading the file.
+     */
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (this.header.hasRemaining()) {
+            final int count = Math.min(length, this.header.remaining());
+            this.header.get(bytes, offset, count);
+            return count;
+        }
+        final int count = Math.min(length, this.chunkRemaining);
+        if (this.fileChannel != null) {
+            final int read = this.fileChannel.read(ByteBuffer.wrap(bytes, offset, count), this.position);
+            if (read < 0) throw new EOFException("File ended before the region was sent");
+            advance(read);
+            return read;
+        }
+        this.mappedBuffer.get((int) this.position, bytes, offset, count);
+        advance(count);
+        return count;
+    }
+
+    /**
+     * Moves past bytes of the current chunk that were sent, and starts the next chunk once the current one is complete.
+     *
+     * @param count the number of payload bytes sent.
+     */
+    private void advance(final int count) {
+        this.position       += count;
+        this.chunkRemaining -= count;
+        if (this.chunkRemaining == 0 && this.position < this.end) nextChunk();
+    }
+
+    /**
+     * Prepares the header of the next chunk.
+     */
+    private void nextChunk() {
+        this.chunkRemaining = (int) Math.min(this.end - this.position, CHUNK_SIZE);
+        final byte flags = this.position + this.chunkRemaining < this.end ? Frame.FLAG_CONTINUED : 0;
+        this.header.clear();
+        FrameCodec.writeHeader(this.header, this.type, flags, this.chunkRemaining);
+        this.header.flip();
+    }
+
+    /**
+     * Returns whether the whole region was sent.
+     *
+     * @return true if the region was sent, false otherwise.
+     */
+    public boolean isDone() {
+        return !this.header.hasRemaining() && this.chunkRemaining == 0;
+    }
+
+    /**
+     * Releases the region once it was sent or dropped, closing the file if the region owns it.
+     */
+    public void release() {
+        if (!this.closeOnRelease) return;
+        try {
+            this.fileChannel.close();
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the type id of the frames of this region.
+     *
+     * @return the type id.
+     */
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the number of bytes of the region that were not sent yet, frame headers excluded.
+     *
+     * @return the remaining number of bytes.
+     */
+    public long getRemaining() {
+        return this.end - this.position;
+    }
+}
@@ -0,0 +1,32 @@
+package me.bredo.network.protocol;
+
+/**
+ * Decides when the buffered frames of a connection are flushed to the socket when using `Protocol.FRAMED`.
+ * <p>
+ * Buffering lets many small messages share a single write call and TCP segment, at the cost of latency for the
+ * messages waiting in the buffer. With `Protocol.SYNC` the output of every loop iteration is always flushed at once,
+ * since the peer waits for it before answering.
+ * </p>
+ *
+ * @author bredo
+ */
+public enum FlushPolicy {
+
+    /**
+     * Messages are flushed as soon as the writer has no further message queued, so no message waits for later ones.
+     * Messages queued at the same time still share a write. This is the default.
+     */
+    PER_MESSAGE,
+
+    /**
+     * Messages are flushed once the write buffer is full. Messages left in the buffer are flushed at the latest when
+     * the flush interval has passed since the writer ran out of queued messages.
+     */
+    SIZE_THRESHOLD,
+
+    /**
+     * Messages are flushed once no further message has been queued for the flush interval, or once the write buffer
+     * is full. This coalesces bursts of messages into as few writes as possible.
+     */
+    IDLE
+}
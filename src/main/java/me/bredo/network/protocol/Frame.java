@@ -0,0 +1,246 @@
+package me.bredo.network.protocol;
+
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A single message of the framed protocol.
+ * <p>
+ * A frame consists of a type id chosen by the application, a flags byte, and the payload. Negative type ids are
+ * reserved for control frames of the protocol itself and are never handed to the application.
+ * </p>
+ * <p>
+ * A received frame is a flyweight over the receive buffer of its connection: the connection reuses the same frame
+ * object for every message, and its payload is only valid until the `message` callback returns. Use `toByteArray()`
+ * to keep the payload longer.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class Frame {
+
+    /**
+     * Set on every chunk of a `FileRegion` except the last, telling the receiver that the payload continues in the
+     * next frame.
+     */
+    public static final byte FLAG_CONTINUED  = 0x01;
+    /**
+     * Set on a frame whose payload is compressed. Compressed frames are decompressed by the receiving connection before
+     * they are handed to the application, so handlers never see this flag.
+     */
+    public static final byte FLAG_COMPRESSED = 0x02;
+    /**
+     * Set on a frame sent on a logical channel. The payload of such a frame starts with the stream id of the channel as
+     * an int, which is stripped by the receiving connection and made available through `getStreamId()`.
+     */
+    public static final byte FLAG_STREAM     = 0x04;
+    /**
+     * Set on a request expecting a response. A request carries `FLAG_STREAM`, and its stream id is the correlation id
+     * the response is sent with.
+     */
+    public static final byte FLAG_REQUEST    = 0x08;
+    /**
+     * Set on the response to a request. A response carries `FLAG_STREAM`, and its stream id is the correlation id of
+     * the request it answers.
+     */
+    public static final byte FLAG_RESPONSE   = 0x10;
+    /**
+     * Set on a frame received as a datagram instead of on the connection. Datagrams may be lost, duplicated or arrive
+     * out of order, and are never sent on a logical channel or as a request.
+     */
+    public static final byte FLAG_DATAGRAM   = 0x20;
+
+    private int        type;
+    private byte       flags;
+    private int        streamId;
+    private ByteBuffer source;
+    private int        offset;
+    private int        length;
+
+    /**
+     * Creates a new Frame instance.
+     *
+     * @param type    the type id of the frame.
+     * @param flags   the flags of the frame.
+     * @param payload the payload of the frame, between its position and limit.
+     */
+    public Frame(final int type, final byte flags, final ByteBuffer payload) {
+        set(type, flags, 0, payload, payload.position(), payload.remaining());
+    }
+
+    /**
+     * Creates an empty frame, to be reused by a reader.
+     */
+    Frame() {
+    }
+
+    /**
+     * Points this frame at the next message.
+     *
+     * @param type     the type id of the frame.
+     * @param flags    the flags of the frame.
+     * @param streamId the stream id of the frame, or 0 if it was not sent on a logical channel.
+     * @param source   the buffer holding the payload.
+     * @param offset   the index of the payload in the buffer.
+     * @param length   the length of the payload.
+     * @return this frame.
+     */
+    Frame set(final int type, final byte flags, final int streamId, final ByteBuffer source, final int offset, final int length) {
+        this.type     = type;
+        this.flags    = flags;
+        this.streamId = streamId;
+        this.source   = source;
+        this.offset   = offset;
+        this.length   = length;
+        return this;
+    }
+
+    /**
+     * Returns whether the payload of this frame is compressed.
+     *
+     * @return true if `FLAG_COMPRESSED` is set, false otherwise.
+     */
+    public boolean isCompressed() {
+        return (this.flags & FLAG_COMPRESSED) != 0;
+    }
+
+    /**
+     * Returns a `DataInputStream` reading the payload of this frame.
+     *
+     * @return a new `DataInputStream` over the payload.
+     */
+    public DataInputStream getDataInputStream() {
+        return new DataInputStream(new ByteBufferInputStream(getPayload()));
+    }
+
+    /**
+     * Copies this frame together with its payload into a new heap buffer, so the copy stays valid after the callback
+     * of the frame returned.
+     *
+     * @return a new frame holding a copy of the payload.
+     */
+    public Frame copy() {
+        return new Frame().set(this.type, this.flags, this.streamId, ByteBuffer.wrap(toByteArray()), 0, this.length);
+    }
+
+    /**
+     * Copies the payload of this frame into a new byte array.
+     *
+     * @return the payload as a byte array.
+     */
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[this.length];
+        this.source.get(this.offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the type id of this frame.
+     *
+     * @return the type id.
+     */
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the flags of this frame.
+     *
+     * @return the flags.
+     */
+    public byte getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * Returns whether the payload of this frame continues in the next frame of the same type.
+     *
+     * @return true if `FLAG_CONTINUED` is set, false otherwise.
+     */
+    public boolean isContinued() {
+        return (this.flags & FLAG_CONTINUED) != 0;
+    }
+
+    /**
+     * Returns whether this frame was sent on a logical channel.
+     *
+     * @return true if `FLAG_STREAM` is set, false otherwise.
+     */
+    public boolean hasStreamId() {
+        return (this.flags & FLAG_STREAM) != 0;
+    }
+
+    /**
+     * Returns whether this frame is a request expecting a response.
+     *
+     * @return true if `FLAG_REQUEST` is set, false otherwise.
+     */
+    public boolean isRequest() {
+        return (this.flags & FLAG_REQUEST) != 0;
+    }
+
+    /**
+     * Returns whether this frame is the response to a request.
+     *
+     * @return true if `FLAG_RESPONSE` is set, false otherwise.
+     */
+    public boolean isResponse() {
+        return (this.flags & FLAG_RESPONSE) != 0;
+    }
+
+    /**
+     * Returns whether this frame was received as a datagram.
+     *
+     * @return true if `FLAG_DATAGRAM` is set, false otherwise.
+     */
+    public boolean isDatagram() {
+        return (this.flags & FLAG_DATAGRAM) != 0;
+    }
+
+    /**
+     * Returns the stream id of the logical channel this frame was sent on. Replies to the frame should be sent with the
+     * same stream id, so they reach the channel that sent it. For requests and responses, the stream id is the
+     * correlation id of the request.
+     *
+     * @return the stream id, or 0 if the frame was not sent on a logical channel.
+     */
+    public int getStreamId() {
+        return this.streamId;
+    }
+
+    /**
+     * Returns the payload of this frame as a new view of the receive buffer, so reading it does not consume the payload.
+     *
+     * @return the payload, between position and limit of the returned buffer.
+     */
+    public ByteBuffer getPayload() {
+        return this.source.slice(this.offset, this.length);
+    }
+
+    /**
+     * Returns the size of the payload of this frame in bytes.
+     *
+     * @return the size of the payload.
+     */
+    public int getPayloadSize() {
+        return this.length;
+    }
+
+    /**
+     * Returns the buffer holding the payload, for reading it in place with absolute indices.
+     *
+     * @return the buffer holding the payload.
+     */
+    public ByteBuffer getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the index of the first payload byte in the source buffer.
+     *
+     * @return the offset of the payload.
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+}
@@ -0,0 +1,161 @@
+package me.bredo.network.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The messages received from a connection in one read, handed to the handler together.
+ * <p>
+ * A batch only records where the frames are within the receive buffer of its connection, and is itself reused for
+ * every read. Its frames are read through a single `Frame` flyweight, which `get` and the iterator point at the
+ * requested frame, so a frame is only valid until the next frame of the batch is requested, and the batch only until
+ * the callback it was handed to returns. Use `Frame.copy()` or `copy()` to keep messages longer.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class FrameBatch implements Iterable<Frame> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Frame      frame;
+    private       ByteBuffer source;
+    private       int[]      types;
+    private       byte[]     flags;
+    private       int[]      streamIds;
+    private       int[]      offsets;
+    private       int[]      lengths;
+    private       int        size;
+
+    /**
+     * Creates a new, empty FrameBatch instance.
+     */
+    public FrameBatch() {
+        this.frame     = new Frame();
+        this.types     = new int[INITIAL_CAPACITY];
+        this.flags     = new byte[INITIAL_CAPACITY];
+        this.streamIds = new int[INITIAL_CAPACITY];
+        this.offsets   = new int[INITIAL_CAPACITY];
+        this.lengths   = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a received frame. Every frame of a batch must lie in the same buffer, which must not change until the
+     * batch is cleared.
+     *
+     * @param frame the received frame.
+     * @throws IllegalArgumentException if the frame lies in another buffer than the frames added before.
+     */
+    public void add(final Frame frame) {
+        if (this.size == 0) {
+            this.source = frame.getSource();
+        } else if (frame.getSource() != this.source) {
+            throw new IllegalArgumentException("The frames of a batch must share their buffer");
+        }
+        if (this.size == this.types.length) grow();
+        this.types[this.size]     = frame.getType();
+        this.flags[this.size]     = frame.getFlags();
+        this.streamIds[this.size] = frame.getStreamId();
+        this.offsets[this.size]   = frame.getOffset();
+        this.lengths[this.size]   = frame.getPayloadSize();
+        this.size++;
+    }
+
+    /**
+     * Doubles the capacity of the batch.
+     */
+    private void grow() {
+        final int capacity = this.types.length * 2;
+        this.types     = Arrays.copyOf(this.types, capacity);
+        this.flags     = Arrays.copyOf(this.flags, capacity);
+        this.streamIds = Arrays.copyOf(this.streamIds, capacity);
+        this.offsets   = Arrays.copyOf(this.offsets, capacity);
+        this.lengths   = Arrays.copyOf(this.lengths, capacity);
+    }
+
+    /**
+     * Removes every frame, and lets go of the buffer they lie in.
+     */
+    public void clear() {
+        this.size   = 0;
+        this.source = null;
+    }
+
+    /**
+     * Points the flyweight frame of this batch at a frame of the batch.
+     *
+     * @param index the index of the frame, in the order the frames were received.
+     * @return the flyweight frame, valid until another frame of the batch is requested.
+     * @throws IndexOutOfBoundsException if the index is negative or not below `size()`.
+     */
+    public Frame get(final int index) {
+        if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for batch of " + this.size);
+        return this.frame.set(this.types[index], this.flags[index], this.streamIds[index], this.source, this.offsets[index], this.lengths[index]);
+    }
+
+    /**
+     * Returns the number of frames in this batch.
+     *
+     * @return the number of frames.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns whether this batch holds no frame.
+     *
+     * @return true if the batch is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Copies this batch together with the payloads of its frames into a single new heap buffer, so the copy stays
+     * valid after the callback of the batch returned.
+     *
+     * @return a new batch holding a copy of the frames.
+     */
+    public FrameBatch copy() {
+        int total = 0;
+        for (int i = 0; i < this.size; i++) total += this.lengths[i];
+        final byte[] bytes = new byte[total];
+        final FrameBatch copy = new FrameBatch();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int offset = 0;
+        for (int i = 0; i < this.size; i++) {
+            this.source.get(this.offsets[i], bytes, offset, this.lengths[i]);
+            copy.add(copy.frame.set(this.types[i], this.flags[i], this.streamIds[i], buffer, offset, this.lengths[i]));
+            offset += this.lengths[i];
+        }
+        return copy;
+    }
+
+    /**
+     * Returns an iterator over the frames of this batch, in the order they were received, which points the flyweight
+     * frame of this batch at every frame in turn.
+     *
+     * @return an iterator over the frames.
+     */
+    @Override
+    public Iterator<Frame> iterator() {
+        return new Iterator<>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < FrameBatch.this.size;
+            }
+
+            @Override
+            public Frame next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return get(this.index++);
+            }
+        };
+    }
+}
@@ -0,0 +1,230 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the frames of the framed protocol.
+ * <p>
+ * Every frame starts with a header of `HEADER_SIZE` bytes: the payload length as an int, the type id as an int and
+ * the flags as a byte, all in network byte order. The payload follows the header.
+ * </p>
+ * <p>
+ * A frame sent on a logical channel carries `Frame.FLAG_STREAM`, and its payload starts with the stream id of the
+ * channel as an int. The stream id counts towards the payload length on the wire, but is stripped when decoding.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class FrameCodec {
+
+    /**
+     * The size of the frame header in bytes.
+     */
+    public static final int HEADER_SIZE       = 9;
+    /**
+     * The size in bytes of the stream id in front of the payload of a frame carrying `Frame.FLAG_STREAM`.
+     */
+    public static final int STREAM_ID_SIZE    = 4;
+    /**
+     * The largest payload a frame may carry. Larger lengths are treated as a corrupted stream.
+     */
+    public static final int MAX_PAYLOAD_SIZE  = 16 * 1024 * 1024;
+    /**
+     * The type id of the empty control frame sent by an idle connection to show that it is still alive.
+     */
+    public static final int HEARTBEAT_TYPE    = -1;
+    /**
+     * The type id of the control frame every connection sends first, announcing the protocol features it supports.
+     */
+    public static final int HELLO_TYPE        = -2;
+    /**
+     * The type id of the control frame acknowledging the messages received on a resumable `Session`.
+     */
+    public static final int ACK_TYPE          = -3;
+    /**
+     * The type id of the control frame a client sends to start or resume a `Session`, and the server answers with.
+     */
+    public static final int RESUME_TYPE       = -4;
+    /**
+     * The type id of the control frame a server offers datagrams to a client with, see `DatagramCodec`.
+     */
+    public static final int DATAGRAM_TYPE     = -5;
+    /**
+     * The bit of the features announced in a hello frame telling that the peer keeps resumable sessions.
+     */
+    public static final int FEATURE_SESSIONS  = 0x01;
+    /**
+     * The bit of the features announced in a hello frame telling that the peer exchanges datagrams besides the
+     * connection.
+     */
+    public static final int FEATURE_DATAGRAMS = 0x02;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Encodes a frame into a buffer of the pool, ready to be written.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param type       the type id of the frame.
+     * @param flags      the flags of the frame.
+     * @param payload    the payload of the frame.
+     * @param offset     the offset of the payload in the array.
+     * @param length     the length of the payload.
+     * @return the encoded frame, flipped for reading.
+     * @throws IllegalArgumentException if the payload is larger than `MAX_PAYLOAD_SIZE`.
+     */
+    public static PooledBuffer encode(final BufferPool bufferPool, final int type, final byte flags, final byte[] payload, final int offset, final int length) {
+        return encode(bufferPool, type, flags, 0, payload, offset, length);
+    }
+
+    /**
+     * Encodes a frame into a buffer of the pool, ready to be written.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param type       the type id of the frame.
+     * @param flags      the flags of the frame.
+     * @param streamId   the stream id of the logical channel the frame is sent on, or 0 to send it on none.
+     * @param payload    the payload of the frame.
+     * @param offset     the offset of the payload in the array.
+     * @param length     the length of the payload.
+     * @return the encoded frame, flipped for reading.
+     * @throws IllegalArgumentException if the payload is larger than `MAX_PAYLOAD_SIZE`.
+     */
+    public static PooledBuffer encode(final BufferPool bufferPool, final int type, final byte flags, final int streamId, final byte[] payload, final int offset, final int length) {
+        final int prefix = streamId != 0 ? STREAM_ID_SIZE : 0;
+        if (length + prefix > MAX_PAYLOAD_SIZE) throw new IllegalArgumentException("Frame payload too large: " + length);
+        final PooledBuffer frame = bufferPool.allocate(HEADER_SIZE + prefix + length);
+        final ByteBuffer buffer = frame.getByteBuffer();
+        writeHeader(buffer, type, flags, streamId, length);
+        buffer.put(payload, offset, length);
+        buffer.flip();
+        return frame;
+    }
+
+    /**
+     * Encodes a frame into a buffer of the pool, ready to be written. The payload buffer is not consumed.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param type       the type id of the frame.
+     * @param flags      the flags of the frame.
+     * @param payload    the payload of the frame, between its position and limit.
+     * @return the encoded frame, flipped for reading.
+     * @throws IllegalArgumentException if the payload is larger than `MAX_PAYLOAD_SIZE`.
+     */
+    public static PooledBuffer encode(final BufferPool bufferPool, final int type, final byte flags, final ByteBuffer payload) {
+        return encode(bufferPool, type, flags, 0, payload);
+    }
+
+    /**
+     * Encodes a frame into a buffer of the pool, ready to be written. The payload buffer is not consumed.
+     *
+     * @param bufferPool the pool to allocate the buffer from.
+     * @param type       the type id of the frame.
+     * @param flags      the flags of the frame.
+     * @param streamId   the stream id of the logical channel the frame is sent on, or 0 to send it on none.
+     * @param payload    the payload of the frame, between its position and limit.
+     * @return the encoded frame, flipped for reading.
+     * @throws IllegalArgumentException if the payload is larger than `MAX_PAYLOAD_SIZE`.
+     */
+    public static PooledBuffer encode(final BufferPool bufferPool, final int type, final byte flags, final int streamId, final ByteBuffer payload) {
+        final int length = payload.remaining();
+        final int prefix = streamId != 0 ? STREAM_ID_SIZE : 0;
+        if (length + prefix > MAX_PAYLOAD_SIZE) throw new IllegalArgumentException("Frame payload too large: " + length);
+        final PooledBuffer frame = bufferPool.allocate(HEADER_SIZE + prefix + length);
+        final ByteBuffer buffer = frame.getByteBuffer();
+        writeHeader(buffer, type, flags, streamId, length);
+        buffer.put(HEADER_SIZE + prefix, payload, payload.position(), length);
+        buffer.position(HEADER_SIZE + prefix + length);
+        buffer.flip();
+        return frame;
+    }
+
+    /**
+     * Writes a frame header into the given buffer.
+     *
+     * @param buffer  the buffer to write to.
+     * @param type    the type id of the frame.
+     * @param flags   the flags of the frame.
+     * @param length  the length of the payload following the header.
+     */
+    public static void writeHeader(final ByteBuffer buffer, final int type, final byte flags, final int length) {
+        buffer.putInt(length);
+        buffer.putInt(type);
+        buffer.put(flags);
+    }
+
+    /**
+     * Writes a frame header into the given buffer, followed by the stream id if the frame is sent on a logical
+     * channel.
+     *
+     * @param buffer   the buffer to write to.
+     * @param type     the type id of the frame.
+     * @param flags    the flags of the frame, `Frame.FLAG_STREAM` is added if a stream id is given.
+     * @param streamId the stream id of the logical channel the frame is sent on, or 0 to send it on none.
+     * @param length   the length of the payload following the stream id.
+     */
+    public static void writeHeader(final ByteBuffer buffer, final int type, final byte flags, final int streamId, final int length) {
+        if (streamId == 0) {
+            writeHeader(buffer, type, flags, length);
+            return;
+        }
+        writeHeader(buffer, type, (byte) (flags | Frame.FLAG_STREAM), STREAM_ID_SIZE + length);
+        buffer.putInt(streamId);
+    }
+
+    /**
+     * Decodes the next frame from the given buffer into a new frame.
+     *
+     * @param buffer the buffer to decode from, between its position and limit.
+     * @return the decoded frame, or null if the buffer does not hold a complete frame yet.
+     * @throws StreamCorruptedException if the frame announces an invalid payload length.
+     * @see #decode(ByteBuffer, Frame)
+     */
+    public static Frame decode(final ByteBuffer buffer) throws StreamCorruptedException {
+        return decode(buffer, new Frame());
+    }
+
+    /**
+     * Decodes the next frame from the given buffer.
+     * <p>
+     * If the buffer holds a complete frame, its position is moved past the frame and the given frame is pointed at
+     * the header values and the payload within the buffer, without copying. Otherwise the buffer is left untouched
+     * and null is returned.
+     * </p>
+     *
+     * @param buffer the buffer to decode from, between its position and limit.
+     * @param frame  the frame to reuse for the result.
+     * @return the decoded frame, or null if the buffer does not hold a complete frame yet.
+     * @throws StreamCorruptedException if the frame announces an invalid payload length.
+     */
+    public static Frame decode(final ByteBuffer buffer, final Frame frame) throws StreamCorruptedException {
+        if (buffer.remaining() < HEADER_SIZE) return null;
+        final int position = buffer.position();
+        final int length = buffer.getInt(position);
+        checkPayloadSize(length);
+        if (buffer.remaining() < HEADER_SIZE + length) return null;
+
+        final int type = buffer.getInt(position + 4);
+        final byte flags = buffer.get(position + 8);
+        buffer.position(position + HEADER_SIZE + length);
+        if ((flags & Frame.FLAG_STREAM) == 0) return frame.set(type, flags, 0, buffer, position + HEADER_SIZE, length);
+        if (length < STREAM_ID_SIZE) throw new StreamCorruptedException("Frame payload too short for its stream id: " + length);
+        final int streamId = buffer.getInt(position + HEADER_SIZE);
+        return frame.set(type, flags, streamId, buffer, position + HEADER_SIZE + STREAM_ID_SIZE, length - STREAM_ID_SIZE);
+    }
+
+    /**
+     * Checks that a payload length is within the bounds of the protocol.
+     *
+     * @param length the payload length.
+     * @throws StreamCorruptedException if the length is negative or larger than `MAX_PAYLOAD_SIZE`.
+     */
+    private static void checkPayloadSize(final int length) throws StreamCorruptedException {
+        if (length < 0 || length > MAX_PAYLOAD_SIZE) throw new StreamCorruptedException("Invalid frame payload length: " + length);
+    }
+}
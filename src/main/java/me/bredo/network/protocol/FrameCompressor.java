@@ -0,0 +1,219 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses the frames sent through a connection and decompresses the frames it receives, when using
+ * `Protocol.FRAMED`.
+ * <p>
+ * Compression is negotiated per connection: both ends send a `FrameCodec.HELLO_TYPE` frame first, announcing the
+ * algorithms they can decompress, and a connection only compresses once the hello of its peer announced its algorithm.
+ * Peers that never send a hello, or send it late, simply receive uncompressed frames. Only payloads of at least the
+ * threshold are compressed, so small messages never pay for it.
+ * </p>
+ * <p>
+ * The threshold adapts to the data: a payload that does not shrink by at least an eighth is sent uncompressed, and
+ * the next payloads of the connection are sent uncompressed without trying, for a number of messages doubling with
+ * every further miss. One payload compressing well ends the back-off again. The back-off is a heuristic and is not
+ * synchronized between concurrent senders.
+ * </p>
+ * <p>
+ * A compressed payload starts with the algorithm as a byte and the uncompressed length as an int, followed by the
+ * compressed data, and its frame carries `Frame.FLAG_COMPRESSED`. The stream id of a frame sent on a logical channel
+ * stays uncompressed in front of it.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class FrameCompressor {
+
+    private static final int PREFIX_SIZE = 5;
+    private static final int MAX_BACKOFF = 64;
+    private static final int SUPPORTED   = Compression.DEFLATE.getMask() | Compression.LZ4.getMask();
+
+    private final    Compression compression;
+    private final    int         threshold;
+    private final    Frame       frame;
+    private volatile int         peerSupported;
+    private volatile int         peerFeatures;
+    private volatile int         backoff;
+    private volatile int         skipped;
+    private          ByteBuffer  decompressed;
+
+    /**
+     * Creates a new FrameCompressor instance.
+     *
+     * @param compression the algorithm sent frames are compressed with, or `Compression.NONE`.
+     * @param threshold   the smallest payload size in bytes that is compressed.
+     */
+    public FrameCompressor(final Compression compression, final int threshold) {
+        this.compression = compression;
+        this.threshold   = threshold;
+        this.frame       = new Frame();
+    }
+
+    /**
+     * Encodes the hello frame of this connection, announcing the algorithms it can decompress.
+     *
+     * @param bufferPool the pool to allocate the frame from.
+     * @return the encoded hello frame, owned by the caller.
+     */
+    public PooledBuffer hello(final BufferPool bufferPool) {
+        return hello(bufferPool, 0);
+    }
+
+    /**
+     * Encodes the hello frame of this connection, announcing the algorithms it can decompress followed by the other
+     * protocol features it supports.
+     *
+     * @param bufferPool the pool to allocate the frame from.
+     * @param features   the bits of the supported features, such as `FrameCodec.FEATURE_SESSIONS`.
+     * @return the encoded hello frame, owned by the caller.
+     */
+    public PooledBuffer hello(final BufferPool bufferPool, final int features) {
+        final PooledBuffer hello = bufferPool.allocate(FrameCodec.HEADER_SIZE + 2 * Integer.BYTES);
+        final ByteBuffer buffer = hello.getByteBuffer();
+        FrameCodec.writeHeader(buffer, FrameCodec.HELLO_TYPE, (byte) 0, 2 * Integer.BYTES);
+        buffer.putInt(SUPPORTED);
+        buffer.putInt(features);
+        buffer.flip();
+        return hello;
+    }
+
+    /**
+     * Takes note of the hello frame of the peer. Bytes following the known fields are ignored, so later versions of
+     * the protocol may announce more, and fields missing from the hello of an earlier version count as unsupported.
+     *
+     * @param hello the received hello frame.
+     */
+    public void helloReceived(final Frame hello) {
+        if (hello.getPayloadSize() >= 2 * Integer.BYTES) this.peerFeatures = hello.getSource().getInt(hello.getOffset() + Integer.BYTES);
+        if (hello.getPayloadSize() >= Integer.BYTES) this.peerSupported = hello.getSource().getInt(hello.getOffset());
+    }
+
+    /**
+     * Returns the protocol features the peer announced in its hello frame, besides compression.
+     *
+     * @return the bits of the features supported by the peer, or 0 if it announced none.
+     */
+    public int getPeerFeatures() {
+        return this.peerFeatures;
+    }
+
+    /**
+     * Returns whether a payload of the given size is compressed for this connection, regardless of the back-off.
+     *
+     * @param payloadSize the size of the payload in bytes.
+     * @return true if the payload should be compressed, false otherwise.
+     */
+    public boolean accepts(final int payloadSize) {
+        return this.compression != Compression.NONE && payloadSize >= this.threshold && (this.peerSupported & this.compression.getMask()) != 0;
+    }
+
+    /**
+     * Compresses an encoded frame if the connection accepts its size and compressing it pays off. Can be called from
+     * any thread.
+     *
+     * @param bufferPool the pool to allocate the compressed frame from.
+     * @param frame      the encoded frame, owned by the caller.
+     * @return either the given frame, or a compressed copy of it, in which case the given frame was released.
+     */
+    public PooledBuffer compress(final BufferPool bufferPool, final PooledBuffer frame) {
+        if (!accepts(frame.getByteBuffer().remaining() - FrameCodec.HEADER_SIZE)) return frame;
+        if (this.skipped > 0) {
+            this.skipped--;
+            return frame;
+        }
+        final PooledBuffer compressed = compress(bufferPool, this.compression, frame);
+        if (compressed == null) {
+            this.backoff = Math.min(Math.max(this.backoff * 2, 1), MAX_BACKOFF);
+            this.skipped = this.backoff;
+            return frame;
+        }
+        this.backoff = 0;
+        frame.release();
+        return compressed;
+    }
+
+    /**
+     * Compresses an encoded frame with the given algorithm into a new buffer of the pool.
+     *
+     * @param bufferPool  the pool to allocate the compressed frame from.
+     * @param compression the algorithm to compress with.
+     * @param frame       the encoded frame, between its position and limit. It is neither consumed nor released.
+     * @return the compressed frame, owned by the caller, or null if the payload does not shrink by at least an eighth.
+     */
+    public static PooledBuffer compress(final BufferPool bufferPool, final Compression compression, final PooledBuffer frame) {
+        final ByteBuffer source = frame.getByteBuffer();
+        final int position = source.position();
+        final byte flags = (byte) (source.get(position + 8) | Frame.FLAG_COMPRESSED);
+        final int streamId = (flags & Frame.FLAG_STREAM) != 0 ? source.getInt(position + FrameCodec.HEADER_SIZE) : 0;
+        final int header = FrameCodec.HEADER_SIZE + (streamId != 0 ? FrameCodec.STREAM_ID_SIZE : 0);
+        final int length = source.remaining() - header;
+        final int limit = length - (length >> 3) - PREFIX_SIZE;
+        if (limit <= 0) return null;
+        final PooledBuffer compressed = bufferPool.allocate(header + PREFIX_SIZE + limit);
+        final ByteBuffer target = compressed.getByteBuffer();
+        final int compressedLength = compression.compress(source, position + header, length, target, header + PREFIX_SIZE, limit);
+        if (compressedLength < 0) {
+            compressed.release();
+            return null;
+        }
+        FrameCodec.writeHeader(target, source.getInt(position + 4), flags, streamId, PREFIX_SIZE + compressedLength);
+        target.put((byte) compression.ordinal());
+        target.putInt(length);
+        target.position(header + PREFIX_SIZE + compressedLength);
+        target.flip();
+        return compressed;
+    }
+
+    /**
+     * Decompresses a received frame. Must only be called by the reader of the connection.
+     * <p>
+     * The payload is decompressed into a buffer reused for every message, and the returned frame is only valid until
+     * the next call.
+     * </p>
+     *
+     * @param frame the received frame.
+     * @return the given frame if it is not compressed, otherwise a frame holding the decompressed payload.
+     * @throws StreamCorruptedException if the compressed payload is malformed.
+     */
+    public Frame decompress(final Frame frame) throws StreamCorruptedException {
+        if (!frame.isCompressed()) return frame;
+        final int compressedLength = frame.getPayloadSize() - PREFIX_SIZE;
+        if (compressedLength < 0) throw new StreamCorruptedException("Compressed payload too short: " + frame.getPayloadSize());
+        final ByteBuffer source = frame.getSource();
+        final int offset = frame.getOffset();
+        final int algorithm = source.get(offset);
+        final int length = source.getInt(offset + 1);
+        if (algorithm <= 0 || algorithm >= Compression.values().length) throw new StreamCorruptedException("Unknown compression: " + algorithm);
+        if (length < 0 || length > FrameCodec.MAX_PAYLOAD_SIZE) throw new StreamCorruptedException("Invalid decompressed payload length: " + length);
+        if (this.decompressed == null || this.decompressed.capacity() < length) {
+            this.decompressed = ByteBuffer.allocate(Math.max(length, this.decompressed == null ? 0 : Math.min(this.decompressed.capacity() * 2, FrameCodec.MAX_PAYLOAD_SIZE)));
+        }
+        Compression.values()[algorithm].decompress(source, offset + PREFIX_SIZE, compressedLength, this.decompressed, 0, length);
+        return this.frame.set(frame.getType(), (byte) (frame.getFlags() & ~Frame.FLAG_COMPRESSED), frame.getStreamId(), this.decompressed, 0, length);
+    }
+
+    /**
+     * Returns the algorithm sent frames are compressed with.
+     *
+     * @return the compression of this connection.
+     */
+    public Compression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Returns whether the peer announced that it can decompress the algorithm of this connection.
+     *
+     * @return true if compression was negotiated, false otherwise.
+     */
+    public boolean isNegotiated() {
+        return this.compression != Compression.NONE && (this.peerSupported & this.compression.getMask()) != 0;
+    }
+}
@@ -0,0 +1,124 @@
+package me.bredo.network.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads frames from the socket stream of a blocking connection using `Protocol.FRAMED`.
+ * <p>
+ * The reader fills a single receive buffer with as many bytes as the socket has available and decodes frames in
+ * place, so that reading a frame neither allocates nor copies its payload. The same `Frame` object is returned for
+ * every message, and its payload is only valid until the next call to `read()`. The size of the receive buffer is
+ * adapted to the observed reads by a `ReceiveBufferSizer`, and the buffer grows when a frame does not fit into it.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class FrameReader {
+
+    /**
+     * The initial size of the receive buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final InputStream        inputStream;
+    private final Frame              frame;
+    private final ReceiveBufferSizer receiveBufferSizer;
+    private       ByteBuffer         buffer;
+
+    /**
+     * Creates a new FrameReader instance.
+     *
+     * @param inputStream the socket stream to read from.
+     */
+    public FrameReader(final InputStream inputStream) {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new FrameReader instance with a receive buffer of a fixed size, which only grows while a frame does
+     * not fit into it.
+     *
+     * @param inputStream the socket stream to read from.
+     * @param bufferSize  the size of the receive buffer in bytes.
+     */
+    public FrameReader(final InputStream inputStream, final int bufferSize) {
+        this(inputStream, fixedSize(Math.max(bufferSize, FrameCodec.HEADER_SIZE)));
+    }
+
+    /**
+     * Creates a new FrameReader instance.
+     *
+     * @param inputStream        the socket stream to read from.
+     * @param receiveBufferSizer the sizer adapting the receive buffer, owned by the reader.
+     */
+    public FrameReader(final InputStream inputStream, final ReceiveBufferSizer receiveBufferSizer) {
+        this.inputStream        = inputStream;
+        this.frame              = new Frame();
+        this.receiveBufferSizer = receiveBufferSizer;
+        this.buffer             = ByteBuffer.allocate(Math.max(receiveBufferSizer.getSize(), FrameCodec.HEADER_SIZE)).flip();
+    }
+
+    /**
+     * Creates a sizer keeping the receive buffer at a fixed size.
+     *
+     * @param bufferSize the size of the receive buffer in bytes.
+     * @return the sizer.
+     */
+    private static ReceiveBufferSizer fixedSize(final int bufferSize) {
+        return new ReceiveBufferSizer(bufferSize, bufferSize, bufferSize);
+    }
+
+    /**
+     * Reads the next frame, blocking until it was received completely.
+     *
+     * @return the frame, valid until the next call to this method.
+     * @throws IOException if there is an error reading from the socket, or the stream ended.
+     */
+    public Frame read() throws IOException {
+        Frame decoded;
+        while ((decoded = FrameCodec.decode(this.buffer, this.frame)) == null) {
+            fill();
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the next frame if it was received completely already, without reading from the socket. Frames returned
+     * before stay valid until `read()` has to read from the socket again.
+     *
+     * @return the frame, valid until the next call to `read()` or this method, or null if no complete frame is
+     * buffered.
+     * @throws StreamCorruptedException if the frame announces an invalid payload length.
+     */
+    public Frame poll() throws StreamCorruptedException {
+        return FrameCodec.decode(this.buffer, this.frame);
+    }
+
+    /**
+     * Reads more bytes from the socket into the receive buffer, resizing the buffer first if the pending frame does not
+     * fit into it or the sizer asks for another size.
+     *
+     * @throws IOException if there is an error reading from the socket, or the stream ended.
+     */
+    private void fill() throws IOException {
+        this.buffer.compact();
+        final int pending = this.buffer.position();
+        final int required = pending >= FrameCodec.HEADER_SIZE ? FrameCodec.HEADER_SIZE + this.buffer.getInt(0) : 0;
+        final int capacity = Math.max(this.receiveBufferSizer.capacity(this.buffer.capacity(), pending, required), FrameCodec.HEADER_SIZE);
+        if (capacity != this.buffer.capacity()) {
+            final ByteBuffer resized = ByteBuffer.allocate(capacity);
+            resized.put(this.buffer.flip());
+            this.buffer = resized;
+        }
+
+        final int read = this.inputStream.read(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), this.buffer.remaining());
+        if (read < 0) throw new EOFException();
+        this.buffer.position(this.buffer.position() + read);
+        this.receiveBufferSizer.record(read, !this.buffer.hasRemaining());
+        this.buffer.flip();
+    }
+}
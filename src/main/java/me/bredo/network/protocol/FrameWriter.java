@@ -0,0 +1,326 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The dedicated writer of a blocking connection using `Protocol.FRAMED`.
+ * <p>
+ * Frames sent from any thread are put into an `OutboundQueue`. The writer thread drains the queue into a write
+ * buffer, so that frames queued together share as few write calls as possible, and flushes the buffer according to a
+ * `FlushPolicy`. While the queue is empty the writer thread is parked. Flushes that are due after a delay are timed by
+ * a single shared timer thread, which only wakes up the writer thread of the connection; it never writes to a socket
+ * itself, so a peer that stops reading can only block its own writer.
+ * </p>
+ * <p>
+ * With a heartbeat interval, the writer sends an empty `FrameCodec.HEARTBEAT_TYPE` frame whenever nothing was written
+ * for that long, so the peer can tell an idle connection from a dead one.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class FrameWriter {
+
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Frame-Flush-Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final    OutboundQueue         outboundQueue;
+    private final    OutputStream          outputStream;
+    private final    byte[]                buffer;
+    private final    FlushPolicy           flushPolicy;
+    private final    long                  flushInterval;
+    private final    long                  heartbeatInterval;
+    private final    Consumer<IOException> failureHandler;
+    private final    ReentrantLock         lock;
+    private final    AtomicBoolean         parked;
+    private volatile boolean               running;
+    private volatile boolean               flushDue;
+    private volatile long                  lastOffer;
+    private          long                  lastWrite;
+    private          Thread                thread;
+    private          boolean               flushScheduled;
+    private          int                   count;
+
+    /**
+     * Creates a new FrameWriter instance.
+     *
+     * @param outputStream    the socket stream to write to.
+     * @param outboundQueue   the queue of frames waiting to be written, owned by the writer from now on.
+     * @param writeBufferSize the size of the write buffer in bytes.
+     * @param flushPolicy     the policy deciding when the buffer is flushed.
+     * @param flushInterval     the delay in milliseconds used by the delayed flush policies.
+     * @param heartbeatInterval the idle time in milliseconds after which a heartbeat is sent, or 0 for none.
+     * @param failureHandler    called on the writer thread when writing to the socket fails.
+     */
+    public FrameWriter(final OutputStream outputStream, final OutboundQueue outboundQueue, final int writeBufferSize, final FlushPolicy flushPolicy,
+                       final long flushInterval, final long heartbeatInterval, final Consumer<IOException> failureHandler) {
+        this.outboundQueue     = outboundQueue;
+        this.outputStream      = outputStream;
+        this.buffer            = new byte[writeBufferSize];
+        this.flushPolicy       = flushPolicy;
+        this.flushInterval     = flushInterval;
+        this.heartbeatInterval = TimeUnit.MILLISECONDS.toNanos(heartbeatInterval);
+        this.failureHandler    = failureHandler;
+        this.lock              = new ReentrantLock();
+        this.parked            = new AtomicBoolean();
+        this.lastWrite         = System.nanoTime();
+    }
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param threadFactory the factory creating the writer thread.
+     * @param name          the name of the writer thread.
+     */
+    public void start(final ThreadFactory threadFactory, final String name) {
+        this.running = true;
+        this.thread = threadFactory.newThread(this::writing);
+        this.thread.setName(name);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the writer thread. Frames still waiting in the queue are released without being written.
+     */
+    public void stop() {
+        this.running = false;
+        this.outboundQueue.close();
+        if (this.thread != null) LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Queues an encoded frame for writing. Can be called from any thread. The frame is released once it was written.
+     *
+     * @param frame the encoded frame.
+     * @return true if the frame was queued, false if the queue is full or the writer was stopped.
+     */
+    public boolean send(final PooledBuffer frame) {
+        if (!this.outboundQueue.offer(frame)) return false;
+        wakeUp();
+        return true;
+    }
+
+    /**
+     * Queues a file region for writing. Can be called from any thread. The region is released once it was written.
+     *
+     * @param fileRegion the file region.
+     * @return true if the region was queued, false if the queue is full or the writer was stopped.
+     */
+    public boolean send(final FileRegion fileRegion) {
+        if (!this.outboundQueue.offer(fileRegion)) return false;
+        wakeUp();
+        return true;
+    }
+
+    /**
+     * Wakes up the writer thread after an element was queued.
+     */
+    private void wakeUp() {
+        this.lastOffer = System.nanoTime();
+        if (this.parked.get() && this.parked.compareAndSet(true, false)) LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Flushes the write buffer to the socket. Frames still waiting in the queue are not written.
+     *
+     * @throws IOException if there is an error writing to the socket.
+     */
+    public void flush() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.count == 0) return;
+            writeBuffer();
+            this.outputStream.flush();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The method that is executed in the writer thread to continuously drain the queue. Any failure stops the writer
+     * and is reported to the failure handler, so that the connection is closed rather than left without a writer.
+     */
+    private void writing() {
+        try {
+            while (this.running) {
+                if (this.flushDue) timedFlush();
+                final Object element = this.outboundQueue.poll();
+                if (element instanceof FileRegion) {
+                    write((FileRegion) element);
+                    continue;
+                }
+                if (element != null) {
+                    write((PooledBuffer) element);
+                    continue;
+                }
+                drained();
+                this.parked.set(true);
+                if (this.outboundQueue.isEmpty() && this.running) park();
+                this.parked.set(false);
+            }
+        } catch (final IOException exception) {
+            this.running = false;
+            this.failureHandler.accept(exception);
+        } catch (final RuntimeException exception) {
+            this.running = false;
+            this.failureHandler.accept(new IOException("Writer thread failed", exception));
+        }
+        this.outboundQueue.close();
+    }
+
+    /**
+     * Parks the writer thread until a frame is queued, or until the next heartbeat is due and sends it.
+     *
+     * @throws IOException if there is an error writing to the socket.
+     */
+    private void park() throws IOException {
+        if (this.heartbeatInterval <= 0) {
+            LockSupport.park(this);
+            return;
+        }
+        final long idle = System.nanoTime() - this.lastWrite;
+        if (idle < this.heartbeatInterval) {
+            LockSupport.parkNanos(this, this.heartbeatInterval - idle);
+            return;
+        }
+        this.lock.lock();
+        try {
+            if (this.buffer.length - this.count < FrameCodec.HEADER_SIZE) writeBuffer();
+            FrameCodec.writeHeader(ByteBuffer.wrap(this.buffer, this.count, FrameCodec.HEADER_SIZE), FrameCodec.HEARTBEAT_TYPE, (byte) 0, 0);
+            this.count += FrameCodec.HEADER_SIZE;
+            this.lastWrite = System.nanoTime();
+        } finally {
+            this.lock.unlock();
+        }
+        flush();
+    }
+
+    /**
+     * Copies a frame into the write buffer and releases it. The buffer writes through to the socket whenever it is full.
+     *
+     * @param frame the encoded frame.
+     * @throws IOException if there is an error writing to the socket.
+     */
+    private void write(final PooledBuffer frame) throws IOException {
+        this.lock.lock();
+        try {
+            final ByteBuffer bytes = frame.getByteBuffer();
+            int position = bytes.position();
+            while (position < bytes.limit()) {
+                if (this.count == this.buffer.length) writeBuffer();
+                final int length = Math.min(bytes.limit() - position, this.buffer.length - this.count);
+                bytes.get(position, this.buffer, this.count, length);
+                this.count += length;
+                position += length;
+            }
+            this.lastWrite = System.nanoTime();
+        } finally {
+            this.lock.unlock();
+            frame.release();
+        }
+    }
+
+    /**
+     * Reads a file region into the write buffer chunk by chunk and releases it. The buffer writes through to the socket
+     * whenever it is full.
+     *
+     * @param fileRegion the file region.
+     * @throws IOException if there is an error reading the file or writing to the socket.
+     */
+    private void write(final FileRegion fileRegion) throws IOException {
+        this.lock.lock();
+        try {
+            while (!fileRegion.isDone()) {
+                if (this.count == this.buffer.length) writeBuffer();
+                this.count += fileRegion.read(this.buffer, this.count, this.buffer.length - this.count);
+            }
+            this.lastWrite = System.nanoTime();
+        } finally {
+            this.lock.unlock();
+            fileRegion.release();
+        }
+    }
+
+    /**
+     * Writes the content of the write buffer to the socket stream.
+     *
+     * @throws IOException if there is an error writing to the socket.
+     */
+    private void writeBuffer() throws IOException {
+        this.outputStream.write(this.buffer, 0, this.count);
+        this.count = 0;
+    }
+
+    /**
+     * Applies the flush policy once the writer has written every queued frame.
+     *
+     * @throws IOException if there is an error writing to the socket.
+     */
+    private void drained() throws IOException {
+        if (this.flushPolicy == FlushPolicy.PER_MESSAGE) {
+            flush();
+            return;
+        }
+        this.lock.lock();
+        try {
+            if (this.count == 0 || this.flushScheduled) return;
+            this.flushScheduled = true;
+            FLUSH_TIMER.schedule(this::flushDue, this.flushInterval, TimeUnit.MILLISECONDS);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a delayed flush as due and wakes up the writer thread to run it. Called on the timer thread.
+     */
+    private void flushDue() {
+        this.flushDue = true;
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Runs a delayed flush on the writer thread. With `FlushPolicy.IDLE` the flush is postponed as long as frames keep
+     * being queued.
+     *
+     * @throws IOException if there is an error writing to the socket.
+     */
+    private void timedFlush() throws IOException {
+        this.flushDue = false;
+        this.lock.lock();
+        try {
+            final long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.lastOffer);
+            if (this.flushPolicy == FlushPolicy.IDLE && this.count > 0 && idle < this.flushInterval) {
+                FLUSH_TIMER.schedule(this::flushDue, this.flushInterval - idle, TimeUnit.MILLISECONDS);
+                return;
+            }
+            this.flushScheduled = false;
+            flush();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queue of frames waiting to be written.
+     *
+     * @return the outbound queue.
+     */
+    public OutboundQueue getOutboundQueue() {
+        return this.outboundQueue;
+    }
+}
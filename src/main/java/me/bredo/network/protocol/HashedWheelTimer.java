@@ -0,0 +1,376 @@
+package me.bredo.network.protocol;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A timer for large numbers of timeouts that are mostly cancelled before they expire, such as idle checks, request
+ * timeouts and reconnect delays.
+ * <p>
+ * The timer keeps a wheel of buckets, each covering one tick. A new timeout is put into the bucket of the tick it
+ * expires in, together with the number of full turns of the wheel still left until then, and cancelling a timeout
+ * unlinks it from its bucket. Both take constant time, regardless of the number of pending timeouts. A single timer
+ * thread advances the wheel once per tick and runs the timeouts of the bucket it reaches, so timeouts expire up to one
+ * tick late. The thread is started with the first timeout, and is parked while no timeout is pending.
+ * </p>
+ * <p>
+ * Timeouts run on the timer thread and must be short, since they delay every other timeout. Work that may block is
+ * handed on to another thread. A task that throws is reported to the failure handler of its timeout, and the timer
+ * thread keeps running the other timeouts.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class HashedWheelTimer {
+
+    private static final int INIT      = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED   = 2;
+
+    private static volatile HashedWheelTimer defaultTimer;
+
+    private final    ThreadFactory          threadFactory;
+    private final    String                 name;
+    private final    long                   tickDuration;
+    private final    Bucket[]               wheel;
+    private final    int                    mask;
+    private final    Queue<Timeout>         pending;
+    private final    Queue<Timeout>         cancelled;
+    private final    AtomicInteger          count;
+    private volatile boolean                started;
+    private volatile boolean                running;
+    private volatile boolean                idle;
+    private volatile long                   startTime;
+    private volatile Thread                 thread;
+    private          long                   tick;
+
+    /**
+     * Creates a new HashedWheelTimer instance.
+     *
+     * @param threadFactory the factory creating the timer thread.
+     * @param name          the name of the timer thread.
+     * @param tickDuration  the duration of a tick in milliseconds, which is the precision of the timer.
+     * @param ticksPerWheel the number of buckets of the wheel, rounded up to a power of two.
+     */
+    public HashedWheelTimer(final ThreadFactory threadFactory, final String name, final long tickDuration, final int ticksPerWheel) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("The tick duration must be positive: " + tickDuration);
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) throw new IllegalArgumentException("Invalid number of ticks per wheel: " + ticksPerWheel);
+        int size = 1;
+        while (size < ticksPerWheel) size <<= 1;
+        this.threadFactory = threadFactory;
+        this.name          = name;
+        this.tickDuration  = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheel         = new Bucket[size];
+        this.mask          = size - 1;
+        this.pending       = new ConcurrentLinkedQueue<>();
+        this.cancelled     = new ConcurrentLinkedQueue<>();
+        this.count         = new AtomicInteger();
+        for (int i = 0; i < size; i++) this.wheel[i] = new Bucket();
+    }
+
+    /**
+     * Returns the timer shared by every server and client that does not bring its own, ticking every 10 milliseconds
+     * on a daemon thread.
+     * <p>
+     * The thread is not created by the thread factory of a server or client: it is shared by all of them, outlives the
+     * one that happens to schedule the first timeout, and must be a daemon thread so that an idle timer never keeps the
+     * JVM alive. Failures of its tasks are still reported to the server or client that scheduled them.
+     * </p>
+     *
+     * @return the default timer.
+     */
+    public static HashedWheelTimer getDefault() {
+        HashedWheelTimer timer = defaultTimer;
+        if (timer != null) return timer;
+        synchronized (HashedWheelTimer.class) {
+            if (defaultTimer == null) {
+                defaultTimer = new HashedWheelTimer(runnable -> {
+                    final Thread thread = new Thread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                }, "Network-Timer", 10, 512);
+            }
+            return defaultTimer;
+        }
+    }
+
+    /**
+     * Schedules a task to run once after the given delay. Can be called from any thread. Failures of the task are
+     * printed to the standard error stream.
+     *
+     * @param task  the task, run on the timer thread.
+     * @param delay the delay after which the task runs.
+     * @param unit  the unit of the delay.
+     * @return the timeout, which can be cancelled until the task ran.
+     * @throws IllegalStateException if the timer was stopped.
+     */
+    public Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+        return newTimeout(task, delay, unit, Throwable::printStackTrace);
+    }
+
+    /**
+     * Schedules a task to run once after the given delay. Can be called from any thread.
+     *
+     * @param task           the task, run on the timer thread.
+     * @param delay          the delay after which the task runs.
+     * @param unit           the unit of the delay.
+     * @param failureHandler called on the timer thread with anything thrown by the task.
+     * @return the timeout, which can be cancelled until the task ran.
+     * @throws IllegalStateException if the timer was stopped.
+     */
+    public Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit, final Consumer<Throwable> failureHandler) {
+        start();
+        if (!this.running) throw new IllegalStateException("Timer '" + this.name + "' was stopped");
+        final Timeout timeout = new Timeout(this, task, failureHandler, System.nanoTime() - this.startTime + Math.max(unit.toNanos(delay), 0));
+        this.pending.add(timeout);
+        this.count.incrementAndGet();
+        if (this.idle) LockSupport.unpark(this.thread);
+        return timeout;
+    }
+
+    /**
+     * Starts the timer thread, unless it is already running.
+     */
+    private void start() {
+        if (this.started) return;
+        synchronized (this) {
+            if (this.started) return;
+            this.startTime = System.nanoTime();
+            this.running   = true;
+            this.thread    = this.threadFactory.newThread(this::run);
+            this.thread.setName(this.name);
+            this.thread.start();
+            this.started   = true;
+        }
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts never run, and no new timeouts can be scheduled.
+     */
+    public synchronized void stop() {
+        this.started = true;
+        this.running = false;
+        if (this.thread != null) LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Advances the wheel once per tick and runs the timeouts that expired, until the timer is stopped.
+     */
+    private void run() {
+        while (this.running) {
+            if (this.count.get() == 0) {
+                awaitTimeout();
+                continue;
+            }
+            final long deadline = awaitNextTick();
+            if (deadline < 0) return;
+            removeCancelled();
+            transferPending();
+            this.wheel[(int) (this.tick & this.mask)].expire(deadline);
+            this.tick++;
+        }
+    }
+
+    /**
+     * Parks the timer thread while no timeout is pending, and skips the ticks that passed in the meantime.
+     */
+    private void awaitTimeout() {
+        this.idle = true;
+        if (this.count.get() == 0 && this.running) LockSupport.park(this);
+        this.idle = false;
+        this.tick = Math.max(this.tick, (System.nanoTime() - this.startTime) / this.tickDuration);
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     *
+     * @return the time since the start of the timer in nanoseconds, or -1 if the timer was stopped.
+     */
+    private long awaitNextTick() {
+        final long deadline = (this.tick + 1) * this.tickDuration;
+        long now;
+        while ((now = System.nanoTime() - this.startTime) < deadline) {
+            if (!this.running) return -1;
+            LockSupport.parkNanos(this, deadline - now);
+        }
+        return now;
+    }
+
+    /**
+     * Unlinks the timeouts cancelled since the last tick from their buckets.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * Puts the timeouts scheduled since the last tick into the buckets of the ticks they expire in.
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = this.pending.poll()) != null) {
+            if (timeout.state.get() == CANCELLED) {
+                this.count.decrementAndGet();
+                continue;
+            }
+            final long ticks = timeout.deadline / this.tickDuration;
+            timeout.remainingRounds = (ticks - this.tick) / this.wheel.length;
+            this.wheel[(int) (Math.max(ticks, this.tick) & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Returns the number of timeouts that neither ran nor were removed after being cancelled.
+     *
+     * @return the number of pending timeouts.
+     */
+    public int getPendingTimeouts() {
+        return this.count.get();
+    }
+
+    /**
+     * A task scheduled with a `HashedWheelTimer`.
+     */
+    public static final class Timeout {
+
+        private final HashedWheelTimer    timer;
+        private final Runnable            task;
+        private final Consumer<Throwable> failureHandler;
+        private final long                deadline;
+        private final AtomicInteger       state;
+        private       long                remainingRounds;
+        private       Bucket              bucket;
+        private       Timeout             previous;
+        private       Timeout             next;
+
+        private Timeout(final HashedWheelTimer timer, final Runnable task, final Consumer<Throwable> failureHandler, final long deadline) {
+            this.timer          = timer;
+            this.task           = task;
+            this.failureHandler = failureHandler;
+            this.deadline       = deadline;
+            this.state          = new AtomicInteger(INIT);
+        }
+
+        /**
+         * Cancels the timeout, so that its task does not run. Can be called from any thread.
+         *
+         * @return true if the timeout was cancelled, false if its task already ran or it was cancelled before.
+         */
+        public boolean cancel() {
+            if (!this.state.compareAndSet(INIT, CANCELLED)) return false;
+            this.timer.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Returns whether the timeout was cancelled.
+         *
+         * @return true if the timeout was cancelled, false otherwise.
+         */
+        public boolean isCancelled() {
+            return this.state.get() == CANCELLED;
+        }
+
+        /**
+         * Returns whether the task of the timeout ran.
+         *
+         * @return true if the timeout expired, false otherwise.
+         */
+        public boolean isExpired() {
+            return this.state.get() == EXPIRED;
+        }
+
+        /**
+         * Runs the task, unless the timeout was cancelled. Anything the task throws is handed to the failure handler,
+         * so that the timer thread survives it.
+         */
+        private void expire() {
+            if (!this.state.compareAndSet(INIT, EXPIRED)) return;
+            try {
+                this.task.run();
+            } catch (final Throwable failure) {
+                try {
+                    this.failureHandler.accept(failure);
+                } catch (final Throwable ignored) {
+                    // The failure handler must not stop the timer thread either.
+                }
+            }
+        }
+    }
+
+    /**
+     * The timeouts expiring in one tick of the wheel, as a doubly linked list. Only used by the timer thread.
+     */
+    private final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        /**
+         * Appends a timeout.
+         *
+         * @param timeout the timeout.
+         */
+        private void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.previous = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        /**
+         * Runs the timeouts of this bucket that expire in the current turn of the wheel, and removes cancelled ones.
+         *
+         * @param deadline the time since the start of the timer in nanoseconds.
+         */
+        private void expire(final long deadline) {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.state.get() == CANCELLED) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        /**
+         * Unlinks a timeout.
+         *
+         * @param timeout the timeout, which must be in this bucket.
+         */
+        private void remove(final Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                this.head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                this.tail = timeout.previous;
+            }
+            timeout.bucket   = null;
+            timeout.previous = null;
+            timeout.next     = null;
+            HashedWheelTimer.this.count.decrementAndGet();
+        }
+    }
+}
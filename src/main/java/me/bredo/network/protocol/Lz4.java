@@ -0,0 +1,191 @@
+package me.bredo.network.protocol;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A pure-Java implementation of the LZ4 block format, used by `Compression.LZ4`.
+ * <p>
+ * The compressor finds matches of at least four bytes through a single hash table of recent positions, without
+ * chaining, which trades some ratio for speed. Both directions work with absolute indices on the given buffers, so
+ * pooled direct buffers are compressed in place without copying them to the heap first.
+ * </p>
+ *
+ * @author bredo
+ */
+final class Lz4 {
+
+    private static final int MIN_MATCH     = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT      = 12;
+    private static final int MAX_OFFSET    = 65535;
+    private static final int HASH_BITS     = 12;
+
+    private static final ThreadLocal<int[]> HASH_TABLES = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    private Lz4() {
+    }
+
+    /**
+     * Compresses a range of a buffer into another buffer.
+     *
+     * @param source       the buffer to compress.
+     * @param sourceOffset the index of the first byte to compress.
+     * @param sourceLength the number of bytes to compress.
+     * @param target       the buffer to write the compressed block to.
+     * @param targetOffset the index to write the block at.
+     * @param targetLength the space available for the block.
+     * @return the length of the compressed block, or -1 if it does not fit into the available space.
+     */
+    static int compress(final ByteBuffer source, final int sourceOffset, final int sourceLength, final ByteBuffer target, final int targetOffset, final int targetLength) {
+        final int[] table = HASH_TABLES.get();
+        Arrays.fill(table, 0);
+        final int end = sourceOffset + sourceLength;
+        final int matchLimit = end - LAST_LITERALS;
+        final int mfLimit = end - MF_LIMIT;
+        final int targetEnd = targetOffset + targetLength;
+        int anchor = sourceOffset;
+        int input = sourceOffset;
+        int output = targetOffset;
+        int misses = 0;
+
+        while (input < mfLimit) {
+            final int sequence = source.getInt(input);
+            final int hash = hash(sequence);
+            int candidate = table[hash] - 1;
+            table[hash] = input + 1;
+            if (candidate < 0 || input - candidate > MAX_OFFSET || source.getInt(candidate) != sequence) {
+                input += 1 + (misses++ >> 6);
+                continue;
+            }
+            misses = 0;
+            while (input > anchor && candidate > sourceOffset && source.get(input - 1) == source.get(candidate - 1)) {
+                input--;
+                candidate--;
+            }
+            int matchLength = MIN_MATCH;
+            while (input + matchLength < matchLimit && source.get(input + matchLength) == source.get(candidate + matchLength)) matchLength++;
+
+            final int literalLength = input - anchor;
+            if (output + 1 + literalLength / 255 + 1 + literalLength + 2 + (matchLength - MIN_MATCH) / 255 + 1 > targetEnd) return -1;
+            final int token = output++;
+            output = writeLength(target, output, literalLength);
+            target.put(output, source, anchor, literalLength);
+            output += literalLength;
+            final int offset = input - candidate;
+            target.put(output++, (byte) offset);
+            target.put(output++, (byte) (offset >>> 8));
+            output = writeLength(target, output, matchLength - MIN_MATCH);
+            target.put(token, (byte) (Math.min(literalLength, 15) << 4 | Math.min(matchLength - MIN_MATCH, 15)));
+
+            input += matchLength;
+            anchor = input;
+            if (input < mfLimit) table[hash(source.getInt(input - 2))] = input - 1;
+        }
+
+        final int literalLength = end - anchor;
+        if (output + 1 + literalLength / 255 + 1 + literalLength > targetEnd) return -1;
+        target.put(output++, (byte) (Math.min(literalLength, 15) << 4));
+        output = writeLength(target, output, literalLength);
+        target.put(output, source, anchor, literalLength);
+        return output + literalLength - targetOffset;
+    }
+
+    /**
+     * Decompresses a block into a range of a buffer.
+     *
+     * @param source       the buffer holding the compressed block.
+     * @param sourceOffset the index of the block.
+     * @param sourceLength the length of the block.
+     * @param target       the buffer to decompress into.
+     * @param targetOffset the index to decompress to.
+     * @param targetLength the exact length of the decompressed data.
+     * @throws StreamCorruptedException if the block is malformed or does not decompress to `targetLength` bytes.
+     */
+    static void decompress(final ByteBuffer source, final int sourceOffset, final int sourceLength, final ByteBuffer target, final int targetOffset, final int targetLength) throws StreamCorruptedException {
+        final int end = sourceOffset + sourceLength;
+        final int targetEnd = targetOffset + targetLength;
+        int input = sourceOffset;
+        int output = targetOffset;
+        while (input < end) {
+            final int token = source.get(input++) & 0xFF;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int length;
+                do {
+                    if (input == end) throw corrupted();
+                    length = source.get(input++) & 0xFF;
+                    literalLength += length;
+                } while (length == 255);
+            }
+            if (literalLength > end - input || literalLength > targetEnd - output) throw corrupted();
+            target.put(output, source, input, literalLength);
+            input += literalLength;
+            output += literalLength;
+            if (input == end) break;
+
+            if (end - input < 2) throw corrupted();
+            final int offset = source.get(input) & 0xFF | (source.get(input + 1) & 0xFF) << 8;
+            input += 2;
+            if (offset == 0 || offset > output - targetOffset) throw corrupted();
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int length;
+                do {
+                    if (input == end) throw corrupted();
+                    length = source.get(input++) & 0xFF;
+                    matchLength += length;
+                } while (length == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > targetEnd - output) throw corrupted();
+            final int match = output - offset;
+            if (offset >= matchLength) {
+                target.put(output, target, match, matchLength);
+            } else {
+                for (int i = 0; i < matchLength; i++) target.put(output + i, target.get(match + i));
+            }
+            output += matchLength;
+        }
+        if (output != targetEnd) throw corrupted();
+    }
+
+    /**
+     * Writes the bytes extending a length that does not fit into its four bits of the token.
+     *
+     * @param target the buffer to write to.
+     * @param index  the index to write at.
+     * @param length the full length.
+     * @return the index after the written bytes.
+     */
+    private static int writeLength(final ByteBuffer target, int index, final int length) {
+        if (length < 15) return index;
+        int remaining = length - 15;
+        while (remaining >= 255) {
+            target.put(index++, (byte) 255);
+            remaining -= 255;
+        }
+        target.put(index++, (byte) remaining);
+        return index;
+    }
+
+    /**
+     * Returns the slot of the hash table for a sequence of four bytes.
+     *
+     * @param sequence the four bytes.
+     * @return the slot in the hash table.
+     */
+    private static int hash(final int sequence) {
+        return sequence * -1640531535 >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Creates the exception thrown for a malformed block.
+     *
+     * @return the exception.
+     */
+    private static StreamCorruptedException corrupted() {
+        return new StreamCorruptedException("Malformed LZ4 block");
+    }
+}
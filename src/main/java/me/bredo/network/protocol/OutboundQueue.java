@@ -0,0 +1,247 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue of encoded frames and file regions waiting to be written to a connection.
+ * <p>
+ * Any number of threads may offer frames concurrently without locking, while a single writer polls them. The bound is
+ * enforced by reserving a slot before a frame is added, so the queue never holds more than its capacity.
+ * </p>
+ * <p>
+ * The queue owns the elements it holds: elements removed by `clear()` or refused after `close()` are released, while
+ * elements returned by `poll()` must be released by the writer once they are written. A `FileRegion` takes a single
+ * slot of the queue regardless of its size.
+ * </p>
+ * <p>
+ * Besides the number of elements, the queue counts the bytes they hold. Once these exceed the high watermark the queue
+ * becomes unwritable, and stays so until the writer drained it down to the low watermark. Producers that may block
+ * call `awaitWritable()` before offering, so that a connection falling behind slows its producers down instead of
+ * growing without bound.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class OutboundQueue {
+
+    private final    Queue<Object> elements;
+    private final    AtomicInteger size;
+    private final    AtomicLong    bytes;
+    private final    int           capacity;
+    private final    long          lowWatermark;
+    private final    long          highWatermark;
+    private volatile boolean       writable;
+    private volatile boolean       closed;
+
+    /**
+     * Creates a new OutboundQueue instance that never becomes unwritable.
+     *
+     * @param capacity the maximum number of frames the queue holds.
+     */
+    public OutboundQueue(final int capacity) {
+        this(capacity, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new OutboundQueue instance.
+     *
+     * @param capacity      the maximum number of frames the queue holds.
+     * @param lowWatermark  the number of queued bytes at or below which an unwritable queue becomes writable again.
+     * @param highWatermark the number of queued bytes above which the queue becomes unwritable.
+     */
+    public OutboundQueue(final int capacity, final long lowWatermark, final long highWatermark) {
+        if (capacity < 1) throw new IllegalArgumentException("An outbound queue needs a capacity of at least one frame");
+        if (lowWatermark < 0 || lowWatermark > highWatermark) throw new IllegalArgumentException("Invalid watermarks: low " + lowWatermark + ", high " + highWatermark);
+        this.elements      = new ConcurrentLinkedQueue<>();
+        this.size          = new AtomicInteger();
+        this.bytes         = new AtomicLong();
+        this.capacity      = capacity;
+        this.lowWatermark  = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.writable      = true;
+    }
+
+    /**
+     * Adds a frame to the queue, unless the queue is full. Can be called from any thread.
+     *
+     * @param frame the encoded frame.
+     * @return true if the frame was added, false if the queue is full or closed. The caller keeps the ownership of a
+     * frame that was not added.
+     */
+    public boolean offer(final PooledBuffer frame) {
+        return add(frame);
+    }
+
+    /**
+     * Adds a file region to the queue, unless the queue is full. Can be called from any thread.
+     *
+     * @param fileRegion the file region.
+     * @return true if the region was added, false if the queue is full or closed. The caller keeps the ownership of a
+     * region that was not added.
+     */
+    public boolean offer(final FileRegion fileRegion) {
+        return add(fileRegion);
+    }
+
+    /**
+     * Reserves a slot and adds an element to the queue.
+     *
+     * @param element the frame or file region.
+     * @return true if the element was added, false if the queue is full or closed.
+     */
+    private boolean add(final Object element) {
+        if (this.closed) return false;
+        int current;
+        do {
+            current = this.size.get();
+            if (current >= this.capacity) return false;
+        } while (!this.size.compareAndSet(current, current + 1));
+        final long length = length(element);
+        this.elements.add(element);
+        if (this.bytes.addAndGet(length) > this.highWatermark && this.writable) updateWritable();
+        if (this.closed) clear();
+        return true;
+    }
+
+    /**
+     * Removes the oldest element from the queue. Must only be called by the writer of the connection.
+     *
+     * @return the oldest element, either a `PooledBuffer` or a `FileRegion`, or null if the queue is empty.
+     */
+    public Object poll() {
+        final Object element = this.elements.poll();
+        if (element == null) return null;
+        this.size.decrementAndGet();
+        if (this.bytes.addAndGet(-length(element)) <= this.lowWatermark && !this.writable) updateWritable();
+        return element;
+    }
+
+    /**
+     * Returns the number of bytes an element writes to the connection. Queued elements are not consumed before they are
+     * polled, so the length is the same when the element is added and removed.
+     *
+     * @param element the frame or file region.
+     * @return the number of bytes of the element.
+     */
+    private static long length(final Object element) {
+        if (element instanceof FileRegion) return ((FileRegion) element).getRemaining();
+        return ((PooledBuffer) element).getByteBuffer().remaining();
+    }
+
+    /**
+     * Updates whether the queue is writable after the number of queued bytes crossed a watermark, and wakes up the
+     * producers waiting in `awaitWritable()`. Both watermarks are checked again under the lock, so that a producer and
+     * the writer crossing them at the same time cannot leave the queue unwritable while it is drained.
+     */
+    private synchronized void updateWritable() {
+        if (this.writable && this.bytes.get() > this.highWatermark) this.writable = false;
+        if (!this.writable && this.bytes.get() <= this.lowWatermark) {
+            this.writable = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks the calling thread while the queue is unwritable, until the writer drained it down to the low watermark
+     * or the queue is closed. Must not be called by the writer of the connection.
+     */
+    public void awaitWritable() {
+        if (this.writable || this.closed) return;
+        synchronized (this) {
+            while (!this.writable && !this.closed) {
+                try {
+                    wait();
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every element from the queue and releases it.
+     */
+    public void clear() {
+        Object element;
+        while ((element = poll()) != null) {
+            release(element);
+        }
+    }
+
+    /**
+     * Releases an element of the queue that was written or dropped.
+     *
+     * @param element the frame or file region.
+     */
+    public static void release(final Object element) {
+        if (element instanceof FileRegion) {
+            ((FileRegion) element).release();
+        } else {
+            ((PooledBuffer) element).release();
+        }
+    }
+
+    /**
+     * Closes the queue once its connection is closed. Every element still queued is released and later offers are
+     * refused.
+     */
+    public void close() {
+        this.closed = true;
+        clear();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns whether the queue holds no frames.
+     *
+     * @return true if the queue is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return this.elements.isEmpty();
+    }
+
+    /**
+     * Returns the number of frames in the queue.
+     *
+     * @return the number of frames in the queue.
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Returns the number of bytes held by the frames and file regions in the queue.
+     *
+     * @return the number of queued bytes.
+     */
+    public long getQueuedBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Returns whether the queued bytes stayed below the high watermark, or were drained down to the low watermark
+     * since they exceeded it.
+     *
+     * @return true if producers may send without waiting, false otherwise.
+     */
+    public boolean isWritable() {
+        return this.writable;
+    }
+
+    /**
+     * Returns the maximum number of frames the queue holds.
+     *
+     * @return the capacity of the queue.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+}
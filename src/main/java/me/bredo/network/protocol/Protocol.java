@@ -0,0 +1,23 @@
+package me.bredo.network.protocol;
+
+/**
+ * The wire protocol spoken between a server and its clients. Both sides of a connection must use the same protocol.
+ *
+ * @author bredo
+ */
+public enum Protocol {
+
+    /**
+     * The lock-step protocol: every loop iteration each side sends a sync byte and then calls the
+     * `inputStream`/`outputStream` callbacks of its handler, so a side can only send after the peer has sent.
+     * This is the default.
+     */
+    SYNC,
+
+    /**
+     * The framed protocol: every message is sent as a `Frame` with a length prefix and a type id. Reading and writing
+     * are independent, so either side can send any number of messages at any time through `send`, and every
+     * received frame is handed to the `message` callback of the handler.
+     */
+    FRAMED
+}
@@ -0,0 +1,117 @@
+package me.bredo.network.protocol;
+
+/**
+ * Adapts the size of the receive buffer of a connection to the amount of data it reads at once.
+ * <p>
+ * The size doubles, up to the maximum, whenever a read fills the buffer, since more data was likely waiting, and
+ * halves, down to the minimum, after `SHRINK_READS` reads in a row that would have fit into half of it. Connections
+ * exchanging few small messages thus keep small buffers, while bulk transfers read in large chunks. A buffer only
+ * grows beyond the maximum to hold a single message that does not fit otherwise, and shrinks back once the message
+ * was handed on. Sizes are rounded up to powers of two, matching the size classes of `BufferPool`.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ReceiveBufferSizer {
+
+    /**
+     * The number of reads in a row that would have fit into half of the buffer, after which the buffer shrinks.
+     */
+    public static final int SHRINK_READS = 8;
+
+    private final int minimum;
+    private final int maximum;
+    private       int size;
+    private       int smallReads;
+
+    /**
+     * Creates a new ReceiveBufferSizer instance.
+     *
+     * @param minimum the smallest size in bytes the buffer shrinks to.
+     * @param initial the size in bytes of the buffer before the first read.
+     * @param maximum the largest size in bytes the buffer grows to, unless a single message needs more.
+     * @throws IllegalArgumentException if the minimum is not positive, or the sizes are not in ascending order.
+     */
+    public ReceiveBufferSizer(final int minimum, final int initial, final int maximum) {
+        if (minimum <= 0) throw new IllegalArgumentException("Minimum receive buffer size must be positive: " + minimum);
+        if (initial < minimum || maximum < initial) throw new IllegalArgumentException("Receive buffer sizes must be ascending: " + minimum + ", " + initial + ", " + maximum);
+        this.minimum = roundUp(minimum);
+        this.size    = roundUp(initial);
+        this.maximum = roundUp(maximum);
+    }
+
+    /**
+     * Rounds a size up to the next power of two.
+     *
+     * @param size the size in bytes.
+     * @return the rounded size in bytes.
+     */
+    private static int roundUp(final int size) {
+        final int rounded = Integer.highestOneBit(size);
+        return rounded == size || rounded == 1 << 30 ? rounded : rounded << 1;
+    }
+
+    /**
+     * Records the outcome of a read, growing the size if the read filled the buffer and shrinking it after enough
+     * small reads.
+     *
+     * @param read   the number of bytes read.
+     * @param filled whether the read filled the buffer.
+     */
+    public void record(final int read, final boolean filled) {
+        if (filled) {
+            this.size = Math.min(this.size * 2, this.maximum);
+            this.smallReads = 0;
+        } else if (read <= this.size / 2 && this.size > this.minimum) {
+            if (++this.smallReads < SHRINK_READS) return;
+            this.size = Math.max(this.size / 2, this.minimum);
+            this.smallReads = 0;
+        } else {
+            this.smallReads = 0;
+        }
+    }
+
+    /**
+     * Returns the capacity a receive buffer should have once its unread bytes were moved to its start. A buffer
+     * holding part of a message of unknown size is never shrunk, so the message is not moved back and forth.
+     *
+     * @param capacity the current capacity of the buffer.
+     * @param pending  the number of unread bytes in the buffer.
+     * @param required the size of the message at the start of the unread bytes, or 0 if it is unknown.
+     * @return the capacity to resize the buffer to, which is the current capacity if the buffer is to be kept.
+     */
+    public int capacity(final int capacity, final int pending, final int required) {
+        if (pending >= capacity) return Math.max(Math.max(required, capacity * 2), this.size);
+        if (required > capacity) return Math.max(required, this.size);
+        if (this.size > capacity) return this.size;
+        if (this.size < capacity && (pending == 0 || required > 0 && required <= this.size)) return this.size;
+        return capacity;
+    }
+
+    /**
+     * Returns the size the buffer should have.
+     *
+     * @return the size in bytes.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the smallest size the buffer shrinks to.
+     *
+     * @return the minimum size in bytes.
+     */
+    public int getMinimum() {
+        return this.minimum;
+    }
+
+    /**
+     * Returns the largest size the buffer grows to, unless a single message needs more.
+     *
+     * @return the maximum size in bytes.
+     */
+    public int getMaximum() {
+        return this.maximum;
+    }
+}
@@ -0,0 +1,260 @@
+package me.bredo.network.protocol;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * One end of a resumable session of the framed protocol, which outlives the connections it is carried by.
+ * <p>
+ * Every message sent on the session is numbered implicitly by its position in the stream and kept in a replay buffer
+ * until the peer acknowledges it. The peer acknowledges with a `FrameCodec.ACK_TYPE` frame carrying the number of
+ * messages it received so far, sent after every `ACK_INTERVAL` messages. When a connection drops, the client
+ * reconnects and sends a `FrameCodec.RESUME_TYPE` frame with the id of the session and the number of messages it
+ * received; the server answers with the same, and both ends send the messages the other has not received yet again,
+ * before anything new. Control frames are neither numbered nor replayed.
+ * </p>
+ * <p>
+ * The replay buffer holds at most `capacity` messages, and sending fails like with a full outbound queue once it is
+ * full. Messages sent while the session is not established, because its connection is not resumed yet, are only
+ * recorded, and written once it is. All methods are thread-safe; senders lock the session to record and queue a
+ * message atomically, so that the order of the replay buffer is the order on the wire.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class Session {
+
+    /**
+     * The number of received messages after which they are acknowledged.
+     */
+    public static final int ACK_INTERVAL = 32;
+
+    private static final int RESUME_SIZE = 2 * Long.BYTES + 1;
+
+    private final ArrayDeque<PooledBuffer> replay;
+    private final int                      capacity;
+    private       long                     id;
+    private       long                     sent;
+    private       long                     acknowledged;
+    private       long                     received;
+    private       long                     acknowledgedReceived;
+    private       boolean                  established;
+    private       boolean                  closed;
+
+    /**
+     * Creates a new Session instance, not established yet.
+     *
+     * @param id       the id of the session, or 0 if the server did not assign one yet.
+     * @param capacity the largest number of unacknowledged messages kept for replay.
+     */
+    public Session(final long id, final int capacity) {
+        if (capacity <= ACK_INTERVAL) throw new IllegalArgumentException("A session needs a replay capacity above " + ACK_INTERVAL + ": " + capacity);
+        this.replay   = new ArrayDeque<>();
+        this.capacity = capacity;
+        this.id       = id;
+    }
+
+    /**
+     * Sends a message on the session: records it for replay and, if the session is established, queues a duplicate of
+     * it for writing. The caller must lock the session, so that no message is replayed before its predecessors.
+     *
+     * @param frame the encoded message, not consumed by writing it. The session takes over the reference once the
+     *              message was recorded.
+     * @param queue queues a frame for writing, and returns false if it could not be queued.
+     * @return true if the message was recorded, false if the replay buffer is full or the message could not be queued.
+     */
+    public synchronized boolean send(final PooledBuffer frame, final Predicate<PooledBuffer> queue) {
+        if (this.replay.size() >= this.capacity) return false;
+        if (this.established) {
+            final PooledBuffer duplicate = frame.duplicate();
+            if (!queue.test(duplicate)) {
+                duplicate.release();
+                return false;
+            }
+        }
+        this.replay.add(frame);
+        this.sent++;
+        return true;
+    }
+
+    /**
+     * Counts a received message, if the session is established.
+     *
+     * @return true if the received messages are due to be acknowledged, false otherwise.
+     */
+    public synchronized boolean received() {
+        if (!this.established) return false;
+        this.received++;
+        return this.received - this.acknowledgedReceived >= ACK_INTERVAL;
+    }
+
+    /**
+     * Encodes the acknowledgement of every message received so far.
+     *
+     * @param bufferPool the pool to allocate the frame from.
+     * @return the encoded `FrameCodec.ACK_TYPE` frame, owned by the caller.
+     */
+    public synchronized PooledBuffer acknowledgement(final BufferPool bufferPool) {
+        this.acknowledgedReceived = this.received;
+        final PooledBuffer ack = bufferPool.allocate(FrameCodec.HEADER_SIZE + Long.BYTES);
+        final ByteBuffer buffer = ack.getByteBuffer();
+        FrameCodec.writeHeader(buffer, FrameCodec.ACK_TYPE, (byte) 0, Long.BYTES);
+        buffer.putLong(this.received);
+        buffer.flip();
+        return ack;
+    }
+
+    /**
+     * Takes note of an acknowledgement of the peer, and releases the messages it received.
+     *
+     * @param ack the received `FrameCodec.ACK_TYPE` frame.
+     */
+    public synchronized void acknowledged(final Frame ack) {
+        if (ack.getPayloadSize() >= Long.BYTES) acknowledge(ack.getSource().getLong(ack.getOffset()));
+    }
+
+    /**
+     * Releases the recorded messages up to the given number.
+     *
+     * @param count the number of messages the peer received.
+     */
+    private void acknowledge(final long count) {
+        while (this.acknowledged < count && !this.replay.isEmpty()) {
+            this.replay.poll().release();
+            this.acknowledged++;
+        }
+    }
+
+    /**
+     * Encodes the frame starting or resuming this session, and the answer of the server to it.
+     *
+     * @param bufferPool the pool to allocate the frame from.
+     * @param resumed    whether the server resumed the session the client asked for.
+     * @return the encoded `FrameCodec.RESUME_TYPE` frame, owned by the caller.
+     */
+    public synchronized PooledBuffer resumption(final BufferPool bufferPool, final boolean resumed) {
+        final PooledBuffer resume = bufferPool.allocate(FrameCodec.HEADER_SIZE + RESUME_SIZE);
+        final ByteBuffer buffer = resume.getByteBuffer();
+        FrameCodec.writeHeader(buffer, FrameCodec.RESUME_TYPE, (byte) 0, RESUME_SIZE);
+        buffer.putLong(this.id);
+        buffer.putLong(this.received);
+        buffer.put((byte) (resumed ? 1 : 0));
+        buffer.flip();
+        return resume;
+    }
+
+    /**
+     * Establishes the session on a new connection, once the peer told how many messages it received. The caller must
+     * lock the session while it queues the returned messages.
+     *
+     * @param count the number of messages the peer received.
+     * @return duplicates of the messages to send again, in order, owned by the caller, or null if the count does not
+     * match the messages of this session, which can then not be resumed.
+     */
+    public synchronized List<PooledBuffer> resume(final long count) {
+        if (this.closed || count < this.acknowledged || count > this.sent) return null;
+        acknowledge(count);
+        final List<PooledBuffer> frames = new ArrayList<>(this.replay.size());
+        for (final PooledBuffer frame : this.replay) frames.add(frame.duplicate());
+        this.established = true;
+        return frames;
+    }
+
+    /**
+     * Stops writing messages once the connection of the session was lost. Messages sent from now on are only recorded.
+     */
+    public synchronized void suspend() {
+        this.established = false;
+    }
+
+    /**
+     * Starts over as a new session, after the peer could not resume this one. Every recorded message is released.
+     *
+     * @param id the id of the new session.
+     */
+    public synchronized void reset(final long id) {
+        release();
+        this.id                   = id;
+        this.sent                 = 0;
+        this.acknowledged         = 0;
+        this.received             = 0;
+        this.acknowledgedReceived = 0;
+    }
+
+    /**
+     * Closes the session for good and releases every recorded message. Messages can no longer be recorded.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        this.established = false;
+        release();
+    }
+
+    /**
+     * Releases every recorded message.
+     */
+    private void release() {
+        PooledBuffer frame;
+        while ((frame = this.replay.poll()) != null) frame.release();
+    }
+
+    /**
+     * Returns the id of this session.
+     *
+     * @return the id assigned by the server, or 0 if none was assigned yet.
+     */
+    public synchronized long getId() {
+        return this.id;
+    }
+
+    /**
+     * Sets the id of this session, once the server assigned one to a new session.
+     *
+     * @param id the id of the session.
+     */
+    public synchronized void setId(final long id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the number of messages received on this session.
+     *
+     * @return the number of received messages.
+     */
+    public synchronized long getReceived() {
+        return this.received;
+    }
+
+    /**
+     * Returns the number of sent messages the peer did not acknowledge yet.
+     *
+     * @return the number of messages kept for replay.
+     */
+    public synchronized int getUnacknowledged() {
+        return this.replay.size();
+    }
+
+    /**
+     * Returns whether messages are written as they are sent.
+     *
+     * @return true if the session is established on a connection, false while it is resumed or closed.
+     */
+    public synchronized boolean isEstablished() {
+        return this.established;
+    }
+
+    /**
+     * Returns whether the session was closed for good.
+     *
+     * @return true if the session is closed, false otherwise.
+     */
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+}
@@ -0,0 +1,295 @@
+package me.bredo.network.protocol;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * The socket options of the connections of a server or client, and the sizes of their receive buffers.
+ * <p>
+ * Options left at their defaults are not set, so the connection keeps the defaults of the operating system, which
+ * tunes the kernel buffers of a connection to its throughput on most platforms. Setting `SO_RCVBUF` disables that
+ * tuning for the connection. The options are applied to every socket before it connects, and to the server socket
+ * before it is bound, since a receive buffer larger than 64 KiB needs TCP window scaling, which is only negotiated
+ * when the connection is established. Accepted sockets inherit the options of the server socket, and are configured
+ * again once accepted. Changes only apply to sockets configured afterwards.
+ * </p>
+ * <p>
+ * Besides the kernel buffers, every connection reading `Protocol.FRAMED` or in `ServerMode.NIO` or `ClientMode.NIO`
+ * reads into a receive buffer of its own, whose size is adapted to the observed reads by a `ReceiveBufferSizer`
+ * between `getMinReadBufferSize()` and `getMaxReadBufferSize()`.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class SocketOptions {
+
+    private int     receiveBufferSize;
+    private int     sendBufferSize;
+    private boolean tcpNoDelay;
+    private boolean keepAlive;
+    private int     trafficClass;
+    private boolean reuseAddress;
+    private int     backlog;
+    private long    connectTimeout;
+    private int     minReadBufferSize;
+    private int     readBufferSize;
+    private int     maxReadBufferSize;
+
+    /**
+     * Creates a new SocketOptions instance with the defaults of the operating system, an accept backlog of 1024, a
+     * connect timeout of 10 seconds and receive buffers between 1 and 64 KiB, starting at 4 KiB.
+     */
+    public SocketOptions() {
+        this.trafficClass      = -1;
+        this.reuseAddress      = true;
+        this.backlog           = 1024;
+        this.connectTimeout    = 10000;
+        this.minReadBufferSize = 1024;
+        this.readBufferSize    = 4096;
+        this.maxReadBufferSize = 64 * 1024;
+    }
+
+    /**
+     * Applies the options to a socket. Must be called before the socket connects for the buffer sizes to take full
+     * effect.
+     *
+     * @param socket the socket to configure.
+     * @throws SocketException if an option could not be set.
+     */
+    public void configure(final Socket socket) throws SocketException {
+        if (this.receiveBufferSize > 0) socket.setReceiveBufferSize(this.receiveBufferSize);
+        if (this.sendBufferSize > 0) socket.setSendBufferSize(this.sendBufferSize);
+        socket.setTcpNoDelay(this.tcpNoDelay);
+        if (this.keepAlive) socket.setKeepAlive(true);
+        if (this.trafficClass >= 0) socket.setTrafficClass(this.trafficClass);
+    }
+
+    /**
+     * Applies the options to a server socket. Must be called before the server socket is bound, so the receive buffer
+     * size is inherited by the accepted sockets.
+     *
+     * @param serverSocket the server socket to configure.
+     * @throws SocketException if an option could not be set.
+     */
+    public void configure(final ServerSocket serverSocket) throws SocketException {
+        serverSocket.setReuseAddress(this.reuseAddress);
+        if (this.receiveBufferSize > 0) serverSocket.setReceiveBufferSize(this.receiveBufferSize);
+    }
+
+    /**
+     * Creates the sizer adapting the receive buffer of a connection.
+     *
+     * @return a new sizer, owned by the connection.
+     */
+    public ReceiveBufferSizer newReceiveBufferSizer() {
+        return new ReceiveBufferSizer(this.minReadBufferSize, this.readBufferSize, this.maxReadBufferSize);
+    }
+
+    /**
+     * Returns the size of the kernel receive buffer (`SO_RCVBUF`).
+     *
+     * @return the size in bytes, or 0 to keep the default of the operating system.
+     */
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    /**
+     * Sets the size of the kernel receive buffer (`SO_RCVBUF`). It bounds the TCP window, and with it the throughput
+     * of a connection to about its size divided by the round trip time.
+     *
+     * @param receiveBufferSize the size in bytes, or 0 to keep the default of the operating system.
+     */
+    public void setReceiveBufferSize(final int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Returns the size of the kernel send buffer (`SO_SNDBUF`).
+     *
+     * @return the size in bytes, or 0 to keep the default of the operating system.
+     */
+    public int getSendBufferSize() {
+        return this.sendBufferSize;
+    }
+
+    /**
+     * Sets the size of the kernel send buffer (`SO_SNDBUF`), which holds the written bytes the peer did not
+     * acknowledge yet.
+     *
+     * @param sendBufferSize the size in bytes, or 0 to keep the default of the operating system.
+     */
+    public void setSendBufferSize(final int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Returns whether Nagle's algorithm is disabled (`TCP_NODELAY`).
+     *
+     * @return true if small writes are sent right away, false otherwise.
+     */
+    public boolean isTcpNoDelay() {
+        return this.tcpNoDelay;
+    }
+
+    /**
+     * Sets whether Nagle's algorithm is disabled (`TCP_NODELAY`), so small writes are sent right away instead of
+     * waiting for the acknowledgement of earlier ones. Lowers the latency of request and response traffic.
+     *
+     * @param tcpNoDelay true to send small writes right away, false otherwise.
+     */
+    public void setTcpNoDelay(final boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Returns whether TCP keep-alive probes are sent on idle connections (`SO_KEEPALIVE`).
+     *
+     * @return true if keep-alive is enabled, false otherwise.
+     */
+    public boolean isKeepAlive() {
+        return this.keepAlive;
+    }
+
+    /**
+     * Sets whether TCP keep-alive probes are sent on idle connections (`SO_KEEPALIVE`). The probes are sent after the
+     * idle time of the operating system, usually two hours; the heartbeats of `Protocol.FRAMED` detect a dead peer
+     * much sooner.
+     *
+     * @param keepAlive true to enable keep-alive, false otherwise.
+     */
+    public void setKeepAlive(final boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the traffic class or type of service of the sent packets (`IP_TOS`).
+     *
+     * @return the traffic class, or -1 to keep the default of the operating system.
+     */
+    public int getTrafficClass() {
+        return this.trafficClass;
+    }
+
+    /**
+     * Sets the traffic class or type of service of the sent packets (`IP_TOS`), such as the DSCP value shifted left by
+     * two bits. Networks may ignore it.
+     *
+     * @param trafficClass the traffic class between 0 and 255, or -1 to keep the default of the operating system.
+     */
+    public void setTrafficClass(final int trafficClass) {
+        this.trafficClass = trafficClass;
+    }
+
+    /**
+     * Returns whether a server socket can bind a port still held by closed connections (`SO_REUSEADDR`).
+     *
+     * @return true if the address is reused, false otherwise.
+     */
+    public boolean isReuseAddress() {
+        return this.reuseAddress;
+    }
+
+    /**
+     * Sets whether a server socket can bind a port still held by closed connections (`SO_REUSEADDR`), so a restarted
+     * server does not have to wait for them to time out.
+     *
+     * @param reuseAddress true to reuse the address, false otherwise.
+     */
+    public void setReuseAddress(final boolean reuseAddress) {
+        this.reuseAddress = reuseAddress;
+    }
+
+    /**
+     * Returns the maximum number of pending connections queued by a server socket.
+     *
+     * @return the accept backlog.
+     */
+    public int getBacklog() {
+        return this.backlog;
+    }
+
+    /**
+     * Sets the maximum number of pending connections queued by a server socket, capped by the operating system
+     * (`net.core.somaxconn` on Linux).
+     *
+     * @param backlog the accept backlog, or 0 or less to use the platform default.
+     */
+    public void setBacklog(final int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Returns the time to wait for a connection to be established.
+     *
+     * @return the connect timeout in milliseconds, or 0 to wait indefinitely.
+     */
+    public long getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Sets the time to wait for a connection to be established.
+     *
+     * @param connectTimeout the connect timeout in milliseconds, or 0 to wait indefinitely.
+     */
+    public void setConnectTimeout(final long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the smallest size the receive buffer of a connection shrinks to.
+     *
+     * @return the size in bytes.
+     */
+    public int getMinReadBufferSize() {
+        return this.minReadBufferSize;
+    }
+
+    /**
+     * Sets the smallest size the receive buffer of a connection shrinks to.
+     *
+     * @param minReadBufferSize the size in bytes.
+     */
+    public void setMinReadBufferSize(final int minReadBufferSize) {
+        this.minReadBufferSize = minReadBufferSize;
+    }
+
+    /**
+     * Returns the size of the receive buffer of a new connection.
+     *
+     * @return the size in bytes.
+     */
+    public int getReadBufferSize() {
+        return this.readBufferSize;
+    }
+
+    /**
+     * Sets the size of the receive buffer of a new connection.
+     *
+     * @param readBufferSize the size in bytes.
+     */
+    public void setReadBufferSize(final int readBufferSize) {
+        this.readBufferSize = readBufferSize;
+    }
+
+    /**
+     * Returns the largest size the receive buffer of a connection grows to, unless a single message needs more.
+     *
+     * @return the size in bytes.
+     */
+    public int getMaxReadBufferSize() {
+        return this.maxReadBufferSize;
+    }
+
+    /**
+     * Sets the largest size the receive buffer of a connection grows to, unless a single message needs more. Setting
+     * the minimum, initial and maximum size to the same value turns the adaptive sizing off.
+     *
+     * @param maxReadBufferSize the size in bytes.
+     */
+    public void setMaxReadBufferSize(final int maxReadBufferSize) {
+        this.maxReadBufferSize = maxReadBufferSize;
+    }
+}
@@ -1,26 +1,41 @@
 package me.bredo.network.server;
 
 import java.io.IOException;
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ClientListeningHandler is a class in the package `me.bredo.cmd.server` responsible for
  * listening for incoming client connections to the server.
  * <p>
  * It has the following responsibilities:
- * - Start a thread to listen for incoming client connections
- * - Continuously listen for incoming client connections and accept them
- * - Create and start a ServerClientConnection for each accepted connection
+ * - Start the acceptor threads listening for incoming client connections
+ * - Continuously accept incoming client connections
+ * - Hand every accepted socket off to be set up, so the acceptor threads return to `accept()` right away
+ * <p>
+ * Setting up a socket means applying the socket settings and creating, registering and starting its
+ * ServerClientConnection. In `ServerMode.NIO` this runs as a task of an event loop, otherwise on the setup threads of
+ * this handler, one per acceptor thread, so a burst of reconnects neither waits for thread creation in the accept loop
+ * nor overflows the backlog of the server socket.
  * <p>
  * It has the following properties:
  * - A reference to a Server instance.
- * - A Thread instance for listening for incoming client connections.
+ * - The acceptor threads listening for incoming client connections.
+ * - The executor setting up accepted sockets in `ServerMode.BLOCKING`.
  */
 public final class ClientListeningHandler {
 
-    private final Server server;
-    private final Thread thread;
+    private final    Server          server;
+    private final    List<Thread>    threads;
+    private volatile ExecutorService setupExecutor;
 
     /**
      * Constructs a new ClientListeningHandler instance with the given Server.
@@ -28,44 +43,143 @@ public final class ClientListeningHandler {
      * @param server The Server instance that this ClientListeningHandler is associated with.
      */
     public ClientListeningHandler(final Server server) {
-        this.server = server;
-        this.thread = new Thread(this::listening, "Client-Listening-Thread");
+        this.server  = server;
+        this.threads = new ArrayList<>();
     }
 
     /**
-     * Starts the thread for listening for incoming client connections.
+     * Starts the acceptor threads listening for incoming client connections.
+     * The threads are created by the thread factory of the server.
      */
     public void startListening() {
-        if (getServer().debugMode()) getServer().print("Starting client listening thread");
-        getThread().start();
+        if (getServer().debugMode()) getServer().print("Starting " + getServer().getAcceptorThreads() + " client listening thread(s)");
+        startSetupExecutor();
+        startAcceptors(0);
     }
 
     /**
-     * Runs the thread for listening for incoming client connections.
+     * Runs the listening for incoming client connections on the calling thread, and on further acceptor threads if
+     * more than one is configured.
      */
     public void runListening() {
         if (getServer().debugMode()) getServer().print("Running client listening thread");
-        getThread().run();
+        startSetupExecutor();
+        synchronized (this.threads) {
+            this.threads.add(Thread.currentThread());
+        }
+        startAcceptors(1);
+        listening(getServer().getServerSocket());
+    }
+
+    /**
+     * Stops setting up accepted sockets. Called by the server when shutting down, after closing its server sockets.
+     */
+    void stopListening() {
+        final ExecutorService setupExecutor = this.setupExecutor;
+        if (setupExecutor != null) setupExecutor.shutdown();
+    }
+
+    /**
+     * Starts the acceptor threads from the given index on. Every acceptor listens on its own server socket if the
+     * server opened one per acceptor, otherwise all of them share the first one.
+     *
+     * @param first the index of the first acceptor thread to start.
+     */
+    private void startAcceptors(final int first) {
+        final List<ServerSocket> serverSockets = getServer().getServerSockets();
+        for (int i = first; i < getServer().getAcceptorThreads(); i++) {
+            final ServerSocket serverSocket = serverSockets.get(i < serverSockets.size() ? i : 0);
+            final Thread thread = getServer().getThreadFactory().newThread(() -> listening(serverSocket));
+            thread.setName("Client-Listening-Thread" + (i == 0 ? "" : "-" + i));
+            synchronized (this.threads) {
+                this.threads.add(thread);
+            }
+            thread.start();
+        }
     }
 
     /**
-     * The method that is executed in the thread to continuously listen for incoming client connections.
+     * Creates the executor setting up accepted sockets, in `ServerMode.BLOCKING`.
      */
-    private void listening() {
+    private void startSetupExecutor() {
+        if (getServer().getServerMode() == ServerMode.NIO || this.setupExecutor != null) return;
+        final AtomicInteger index = new AtomicInteger();
+        this.setupExecutor = Executors.newFixedThreadPool(Math.max(getServer().getAcceptorThreads(), 1), runnable -> {
+            final Thread thread = getServer().getThreadFactory().newThread(runnable);
+            thread.setName("Client-Setup-Thread-" + index.getAndIncrement());
+            return thread;
+        });
+    }
+
+    /**
+     * The method that is executed in the acceptor threads to continuously accept incoming client connections.
+     *
+     * @param serverSocket the server socket to accept client connections on.
+     */
+    private void listening(final ServerSocket serverSocket) {
         while (getServer().running()) {
             if (getServer().debugMode()) getServer().print("Listening for new client socket connection...");
-            final Socket socket = listeningForSocket();
+            final Socket socket = listeningForSocket(serverSocket);
+            if (socket == null) continue;
+            getServer().getMetrics().connectionAccepted();
             if (getServer().debugMode()) getServer().print("Connection from client '" + socket.getInetAddress() + "'");
-            setSocketSettings(socket);
-            final ServerClientConnection serverClientConnection = new ServerClientConnection(getServer(), socket);
-            getServer().getServerClientMatrix().add(serverClientConnection);
-            serverClientConnection.startConnection();
+            handOff(socket);
+        }
+    }
+
+    /**
+     * Hands an accepted socket off to be set up, to an event loop in `ServerMode.NIO` and to the setup executor
+     * otherwise.
+     *
+     * @param socket the accepted socket.
+     */
+    private void handOff(final Socket socket) {
+        final ServerEventLoopGroup eventLoopGroup = getServer().getEventLoopGroup();
+        if (eventLoopGroup != null) {
+            eventLoopGroup.next().execute(() -> setUp(socket));
+            return;
+        }
+        try {
+            this.setupExecutor.execute(() -> setUp(socket));
+        } catch (final RejectedExecutionException exception) {
+            closeSocket(socket);
+        }
+    }
+
+    /**
+     * Applies the socket settings to an accepted socket, then creates, registers and starts its connection. With
+     * sessions enabled the connection registers itself once the client started or resumed its session.
+     *
+     * @param socket the accepted socket.
+     */
+    private void setUp(final Socket socket) {
+        if (!getServer().running()) {
+            closeSocket(socket);
+            return;
+        }
+        setSocketSettings(socket);
+        final ServerClientConnection serverClientConnection = new ServerClientConnection(getServer(), socket);
+        if (!serverClientConnection.registersAfterHandshake()) serverClientConnection.register();
+        serverClientConnection.startConnection();
+    }
+
+    /**
+     * Closes an accepted socket that is not set up because the server is shutting down.
+     *
+     * @param socket the accepted socket.
+     */
+    private void closeSocket(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException exception) {
+            getServer().warning("Could not close client socket '" + socket.getInetAddress() + "'");
+            exception.printStackTrace();
         }
     }
 
     private void setSocketSettings(final Socket socket) {
         try {
-            socket.setTcpNoDelay(getServer().isNoTcpDelay());
+            getServer().getSocketOptions().configure(socket);
             if (getServer().getConnectionSoTimeout() > 0) socket.setSoTimeout(getServer().getConnectionSoTimeout());
         } catch (final SocketException exception) {
             getServer().warning("Could not set socket settings");
@@ -76,12 +190,14 @@ public final class ClientListeningHandler {
     /**
      * Waits for an incoming client connection and returns the corresponding Socket.
      *
-     * @return The Socket of the incoming client connection.
+     * @param serverSocket The ServerSocket to accept the client connection on.
+     * @return The Socket of the incoming client connection, or null if none was accepted.
      */
-    private Socket listeningForSocket() {
+    private Socket listeningForSocket(final ServerSocket serverSocket) {
         try {
-            return getServer().getServerSocket().accept();
+            return serverSocket.accept();
         } catch (final IOException exception) {
+            if (!getServer().running()) return null;
             getServer().warning("Could not accept new client socket connection");
             exception.printStackTrace();
         }
@@ -98,11 +214,24 @@ public final class ClientListeningHandler {
     }
 
     /**
-     * Gets the Thread instance for listening for incoming client connections.
+     * Gets the first acceptor Thread listening for incoming client connections.
      *
-     * @return The Thread instance for listening for incoming client connections.
+     * @return The first acceptor Thread, or null if not listening yet.
      */
     public Thread getThread() {
-        return thread;
+        synchronized (this.threads) {
+            return this.threads.isEmpty() ? null : this.threads.get(0);
+        }
+    }
+
+    /**
+     * Gets all acceptor Threads listening for incoming client connections.
+     *
+     * @return A snapshot of the acceptor Threads, empty if not listening yet.
+     */
+    public List<Thread> getThreads() {
+        synchronized (this.threads) {
+            return Collections.unmodifiableList(new ArrayList<>(this.threads));
+        }
     }
 }
@@ -0,0 +1,171 @@
+package me.bredo.network.server;
+
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The registry of the client connections of a server.
+ * <p>
+ * Connections are indexed by their id and by their remote address, and may be added, removed and looked up from any
+ * thread without locking. Iterating the registry walks an immutable snapshot of the connections, which is shared
+ * between all iterations until the registry changes again, so broadcasting to every client neither locks nor copies.
+ * A change is visible in the snapshot before it is visible in `size()`, so a snapshot taken after `size()` reported a
+ * change always contains it.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ConnectionRegistry implements Iterable<ServerClientConnection> {
+
+    private static final ServerClientConnection[] EMPTY = new ServerClientConnection[0];
+
+    private final    ConcurrentHashMap<Long, ServerClientConnection>          connectionsById;
+    private final    ConcurrentHashMap<SocketAddress, ServerClientConnection> connectionsByAddress;
+    private final    AtomicInteger                                            size;
+    private final    AtomicLong                                               version;
+    private final    AtomicLong                                               nextId;
+    private volatile Snapshot                                                 snapshot;
+
+    /**
+     * Creates a new, empty ConnectionRegistry instance.
+     */
+    public ConnectionRegistry() {
+        this.connectionsById      = new ConcurrentHashMap<>();
+        this.connectionsByAddress = new ConcurrentHashMap<>();
+        this.size                 = new AtomicInteger();
+        this.version              = new AtomicLong();
+        this.nextId               = new AtomicLong();
+        this.snapshot             = new Snapshot(0, EMPTY);
+    }
+
+    /**
+     * Returns a new id for a connection of the server.
+     *
+     * @return a connection id unique within this registry.
+     */
+    long nextConnectionId() {
+        return this.nextId.incrementAndGet();
+    }
+
+    /**
+     * Adds a connection to the registry.
+     *
+     * @param serverClientConnection the connection to add.
+     * @return true if the connection was added, false if it was already registered.
+     */
+    public boolean add(final ServerClientConnection serverClientConnection) {
+        if (this.connectionsById.putIfAbsent(serverClientConnection.getId(), serverClientConnection) != null) return false;
+        final SocketAddress remoteAddress = serverClientConnection.getRemoteAddress();
+        if (remoteAddress != null) this.connectionsByAddress.put(remoteAddress, serverClientConnection);
+        this.version.incrementAndGet();
+        this.size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes a connection from the registry.
+     *
+     * @param serverClientConnection the connection to remove.
+     * @return true if the connection was removed, false if it was not registered.
+     */
+    public boolean remove(final ServerClientConnection serverClientConnection) {
+        if (!this.connectionsById.remove(serverClientConnection.getId(), serverClientConnection)) return false;
+        final SocketAddress remoteAddress = serverClientConnection.getRemoteAddress();
+        if (remoteAddress != null) this.connectionsByAddress.remove(remoteAddress, serverClientConnection);
+        this.version.incrementAndGet();
+        this.size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the connection with the given id.
+     *
+     * @param id the id of the connection.
+     * @return the connection, or null if no connection with this id is registered.
+     */
+    public ServerClientConnection get(final long id) {
+        return this.connectionsById.get(id);
+    }
+
+    /**
+     * Returns the connection with the given remote address.
+     *
+     * @param remoteAddress the remote address of the connection.
+     * @return the connection, or null if no connection with this address is registered.
+     */
+    public ServerClientConnection get(final SocketAddress remoteAddress) {
+        return this.connectionsByAddress.get(remoteAddress);
+    }
+
+    /**
+     * Returns whether a connection is registered.
+     *
+     * @param serverClientConnection the connection to look for.
+     * @return true if the connection is registered, false otherwise.
+     */
+    public boolean contains(final ServerClientConnection serverClientConnection) {
+        return this.connectionsById.get(serverClientConnection.getId()) == serverClientConnection;
+    }
+
+    /**
+     * Returns the number of registered connections.
+     *
+     * @return the number of registered connections.
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Returns whether no connection is registered.
+     *
+     * @return true if the registry is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the registered connections at the time of the call. The returned array is shared and must not be
+     * modified.
+     *
+     * @return a snapshot of the registered connections.
+     */
+    public ServerClientConnection[] snapshot() {
+        final long currentVersion = this.version.get();
+        Snapshot current = this.snapshot;
+        if (current.version != currentVersion) {
+            current = new Snapshot(currentVersion, this.connectionsById.values().toArray(EMPTY));
+            this.snapshot = current;
+        }
+        return current.connections;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the registered connections.
+     *
+     * @return an iterator over the registered connections.
+     */
+    @Override
+    public Iterator<ServerClientConnection> iterator() {
+        return Arrays.asList(snapshot()).iterator();
+    }
+
+    /**
+     * The registered connections at a given version of the registry.
+     */
+    private static final class Snapshot {
+
+        private final long                     version;
+        private final ServerClientConnection[] connections;
+
+        private Snapshot(final long version, final ServerClientConnection[] connections) {
+            this.version     = version;
+            this.connections = connections;
+        }
+    }
+}
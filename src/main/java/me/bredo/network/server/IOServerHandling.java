@@ -1,5 +1,8 @@
 package me.bredo.network.server;
 
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameBatch;
+
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -29,4 +32,69 @@ public interface IOServerHandling {
      * @throws IOException if an I/O error occurs during the handling of the output stream
      */
     void outputStream(final DataOutputStream dataOutputStream, final ServerClientConnection serverClientConnection) throws IOException;
+
+    /**
+     * Handles a message received from a server client connection using `Protocol.FRAMED`.
+     * The stream callbacks are not used in that protocol.
+     *
+     * @param frame                  the received message
+     * @param serverClientConnection the server client connection the message was received from
+     * @throws IOException if an I/O error occurs during the handling of the message
+     */
+    default void message(final Frame frame, final ServerClientConnection serverClientConnection) throws IOException {
+    }
+
+    /**
+     * Handles the messages received from a server client connection using `Protocol.FRAMED` in one read, when the
+     * server batches received messages with `Server.setBatchReceive`. Override it to pay for work such as a database
+     * write or taking a lock once per batch instead of once per message. Messages whose type id has a codec, requests
+     * and compressed messages are not batched, but handed on one at a time in order with the batches.
+     * Hands every message to `message` by default.
+     *
+     * @param batch                  the received messages, only valid until this method returns
+     * @param serverClientConnection the server client connection the messages were received from
+     * @throws IOException if an I/O error occurs during the handling of the messages
+     */
+    default void messages(final FrameBatch batch, final ServerClientConnection serverClientConnection) throws IOException {
+        for (final Frame frame : batch) message(frame, serverClientConnection);
+    }
+
+    /**
+     * Handles a message received from a server client connection using `Protocol.FRAMED`, whose type id has a codec in
+     * the `CodecRegistry` of the server. Such messages are handed to this method instead of `message`, already decoded.
+     *
+     * @param message                the decoded message, only valid until this method returns if its codec decodes it
+     *                               as a flyweight
+     * @param serverClientConnection the server client connection the message was received from
+     * @throws IOException if an I/O error occurs during the handling of the message
+     */
+    default void decoded(final Object message, final ServerClientConnection serverClientConnection) throws IOException {
+    }
+
+    /**
+     * Handles a request received from a server client connection using `Protocol.FRAMED`, whose type id has a codec in
+     * the `CodecRegistry` of the server. Answer it with `ServerClientConnection.reply`, passing the correlation id,
+     * either from this method or later from any thread. Requests without a codec are handed to `message`, where
+     * `Frame.isRequest()` tells them apart. By default, requests are handed to `decoded`.
+     *
+     * @param message                the decoded request, only valid until this method returns if its codec decodes it
+     *                               as a flyweight
+     * @param correlationId          the correlation id the response must be sent with
+     * @param serverClientConnection the server client connection the request was received from
+     * @throws IOException if an I/O error occurs during the handling of the request
+     */
+    default void request(final Object message, final int correlationId, final ServerClientConnection serverClientConnection) throws IOException {
+        decoded(message, serverClientConnection);
+    }
+
+    /**
+     * Called once a client that reconnected resumed the session of its previous connection, when sessions are enabled
+     * with `Server.setSessionTimeout`. The new connection took over the user data of the previous one, and every
+     * message the client did not receive yet; messages must be sent through the new connection from now on.
+     *
+     * @param previous               the previous connection of the client, which is closed
+     * @param serverClientConnection the connection that resumed the session
+     */
+    default void sessionResumed(final ServerClientConnection previous, final ServerClientConnection serverClientConnection) {
+    }
 }
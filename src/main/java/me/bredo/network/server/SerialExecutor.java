@@ -0,0 +1,105 @@
+package me.bredo.network.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of a single connection on a shared executor, one at a time and in the order they were submitted.
+ * <p>
+ * At most one task of the connection is queued with or running on the shared executor at any time; it runs the tasks
+ * submitted in the meantime after it. After a batch of tasks the rest is queued with the shared executor again, so a
+ * busy connection does not keep a worker from the other connections. A task throwing an exception does not keep the
+ * tasks after it from running. Once the shared executor rejects the tasks, the queued tasks are dropped, so a later
+ * task is queued with the shared executor again instead of waiting forever.
+ * </p>
+ *
+ * @author bredo
+ */
+final class SerialExecutor implements Executor {
+
+    private static final int BATCH_SIZE = 16;
+
+    private final Executor        executor;
+    private final Queue<Runnable> tasks;
+    private final AtomicInteger   pending;
+
+    /**
+     * Creates a new SerialExecutor instance.
+     *
+     * @param executor the shared executor the tasks run on.
+     */
+    SerialExecutor(final Executor executor) {
+        this.executor = executor;
+        this.tasks    = new ConcurrentLinkedQueue<>();
+        this.pending  = new AtomicInteger();
+    }
+
+    /**
+     * Submits a task, which runs once every task submitted before it has run. Can be called from any thread.
+     *
+     * @param task the task to run.
+     * @throws RejectedExecutionException if the shared executor rejected the tasks, which are dropped.
+     */
+    @Override
+    public void execute(final Runnable task) {
+        this.tasks.add(task);
+        if (this.pending.getAndIncrement() == 0) schedule();
+    }
+
+    /**
+     * Queues the submitted tasks with the shared executor, dropping them if it rejects them.
+     *
+     * @throws RejectedExecutionException if the shared executor rejected the tasks.
+     */
+    private void schedule() {
+        try {
+            this.executor.execute(this::run);
+        } catch (final RejectedExecutionException exception) {
+            drop();
+            throw exception;
+        }
+    }
+
+    /**
+     * Drops the submitted tasks until none is left, including the ones submitted while dropping.
+     */
+    private void drop() {
+        do {
+            this.tasks.poll();
+        } while (this.pending.decrementAndGet() != 0);
+    }
+
+    /**
+     * Runs the submitted tasks until none is left, or queues the rest with the shared executor again after a batch.
+     */
+    private void run() {
+        for (int i = 1; ; i++) {
+            try {
+                this.tasks.poll().run();
+            } catch (final RuntimeException exception) {
+                exception.printStackTrace();
+            }
+            if (this.pending.decrementAndGet() == 0) return;
+            if (i == BATCH_SIZE) {
+                try {
+                    schedule();
+                } catch (final RejectedExecutionException exception) {
+                    exception.printStackTrace();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks submitted and not yet completed, including the running one.
+     *
+     * @return the number of pending tasks.
+     */
+    int getPending() {
+        return this.pending.get();
+    }
+}
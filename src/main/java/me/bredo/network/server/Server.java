@@ -1,26 +1,91 @@
 package me.bredo.network.server;
 
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.codec.CodecRegistry;
+import me.bredo.network.metrics.NetworkMetrics;
+import me.bredo.network.protocol.Compression;
+import me.bredo.network.protocol.DatagramTransport;
+import me.bredo.network.protocol.FlushPolicy;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameCodec;
+import me.bredo.network.protocol.FrameCompressor;
+import me.bredo.network.protocol.HashedWheelTimer;
+import me.bredo.network.protocol.OutboundQueue;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.Session;
+import me.bredo.network.protocol.SocketOptions;
+
+import javax.management.JMException;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.SocketAddress;
 import java.net.SocketException;
-import java.util.HashSet;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * The `Server` class represents a simple server that can handle incoming client connections.
  */
 public final class Server {
-    private final    ClientListeningHandler          clientListeningHandler;
-    private final    HashSet<ServerClientConnection> serverClientMatrix;
-    private          int                             port;
-    private          boolean                         debugMode;
-    private          boolean                         autoStartListening;
-    private          ServerSocket                    serverSocket;
-    private volatile IOServerHandling                ioServerHandling;
-    private          boolean                         reuseAddress;
-    private          int                             receiveBufferSize;
-    private          int                             serverSoTimeout;
-    private          int                             connectionSoTimeout;
-    private          boolean                         noTcpDelay;
+    private final    ClientListeningHandler            clientListeningHandler;
+    private final    ConnectionRegistry                serverClientMatrix;
+    private          int                               port;
+    private          boolean                           debugMode;
+    private          boolean                           autoStartListening;
+    private          ServerSocket                      serverSocket;
+    private final    List<ServerSocket>                serverSockets;
+    private          int                               acceptorThreads;
+    private          boolean                           reusePort;
+    private volatile IOServerHandling                  ioServerHandling;
+    private          SocketOptions                     socketOptions;
+    private          int                               serverSoTimeout;
+    private          int                               connectionSoTimeout;
+    private          ServerMode                        serverMode;
+    private          int                               eventLoopThreads;
+    private          ServerEventLoopGroup              eventLoopGroup;
+    private          int                               handlerThreads;
+    private          int                               maxPendingMessages;
+    private          boolean                           batchReceive;
+    private          ExecutorService                   handlerExecutor;
+    private          ThreadFactory                     threadFactory;
+    private          Protocol                          protocol;
+    private          int                               writeBufferSize;
+    private          FlushPolicy                       flushPolicy;
+    private          long                              flushInterval;
+    private          int                               outboundQueueCapacity;
+    private          long                              outboundLowWatermark;
+    private          long                              outboundHighWatermark;
+    private          long                              heartbeatInterval;
+    private          long                              idleTimeout;
+    private          long                              sessionTimeout;
+    private          int                               replayBufferCapacity;
+    private final    Map<Long, ServerClientConnection> sessions;
+    private final    SecureRandom                      secureRandom;
+    private          boolean                           datagrams;
+    private          boolean                           dropStaleDatagrams;
+    private          DatagramTransport                 datagramTransport;
+    private final    Map<Long, ServerClientConnection> datagramTokens;
+    private          Compression                       compression;
+    private          int                               compressionThreshold;
+    private          BufferPool                        bufferPool;
+    private          CodecRegistry                     codecRegistry;
+    private final    NetworkMetrics                    metrics;
+    private          boolean                           jmxEnabled;
 
 
     /**
@@ -34,11 +99,33 @@ public final class Server {
         setDebugMode(debugMode);
         setAutoStartListening(autoStartListening);
         this.clientListeningHandler = new ClientListeningHandler(this);
-        this.serverClientMatrix     = new HashSet<>();
-        this.reuseAddress           = true;
-        this.receiveBufferSize      = 1024;
+        this.serverClientMatrix     = new ConnectionRegistry();
+        this.serverSockets          = new ArrayList<>();
+        this.acceptorThreads        = 1;
+        this.socketOptions          = new SocketOptions();
         this.serverSoTimeout        = -1;
         this.connectionSoTimeout    = -1;
+        this.serverMode             = ServerMode.BLOCKING;
+        this.eventLoopThreads       = Runtime.getRuntime().availableProcessors();
+        this.maxPendingMessages     = 1024;
+        this.threadFactory          = Thread::new;
+        this.protocol               = Protocol.SYNC;
+        this.writeBufferSize        = 8192;
+        this.flushPolicy            = FlushPolicy.PER_MESSAGE;
+        this.flushInterval          = 1;
+        this.outboundQueueCapacity  = 4096;
+        this.outboundLowWatermark   = 512 * 1024;
+        this.outboundHighWatermark  = 1024 * 1024;
+        this.compression            = Compression.NONE;
+        this.compressionThreshold   = 1024;
+        this.replayBufferCapacity   = 1024;
+        this.sessions               = new ConcurrentHashMap<>();
+        this.secureRandom           = new SecureRandom();
+        this.datagramTokens         = new ConcurrentHashMap<>();
+        this.bufferPool             = BufferPool.getDefault();
+        this.codecRegistry          = new CodecRegistry();
+        this.metrics                = new NetworkMetrics();
+        this.metrics.setGauges(this.serverClientMatrix::size, this::getQueuedMessages);
     }
 
     /**
@@ -46,16 +133,25 @@ public final class Server {
      */
     public void initialize() {
         if (debugMode()) print("Initializing Server");
+        if (debugMode()) getBufferPool().setLeakDetection(true);
         initializeServerSocket();
         initializeServerSettings();
+        if (isDatagrams()) initializeDatagramTransport();
+        if (getServerMode() == ServerMode.NIO) initializeEventLoopGroup();
+        if (getHandlerThreads() > 0) initializeHandlerExecutor();
+        if (isJmxEnabled()) registerMetrics();
         if (isAutoStartListening()) getClientListeningHandler().startListening();
     }
 
+    /**
+     * Applies the settings of the server sockets that can be changed once they are bound. The socket options are
+     * applied before the server sockets are bound.
+     */
     public void initializeServerSettings() {
         try {
-            if (getServerSoTimeout() > 0) serverSocket.setSoTimeout(getServerSoTimeout());
-            if (getServerSoTimeout() > 0) serverSocket.setReceiveBufferSize(receiveBufferSize);
-            serverSocket.setReuseAddress(reuseAddress);
+            for (final ServerSocket serverSocket : getServerSockets()) {
+                if (getServerSoTimeout() > 0) serverSocket.setSoTimeout(getServerSoTimeout());
+            }
         } catch (final SocketException exception) {
             warning("Could not set server settings");
             exception.printStackTrace();
@@ -63,27 +159,336 @@ public final class Server {
     }
 
     /**
-     * Initializes the server socket.
+     * Initializes the server socket, or one server socket per acceptor thread when `reusePort` is enabled and
+     * supported by the platform.
      */
     private void initializeServerSocket() {
         try {
             if (debugMode()) print("Initializing Server Socket on port: '" + getPort() + "'");
-            this.serverSocket = new ServerSocket(getPort());
+            this.serverSocket = openServerSocket(getPort(), isReusePort() && getAcceptorThreads() > 1);
+            this.serverSockets.add(this.serverSocket);
+            if (!isReusePort() || getAcceptorThreads() <= 1) return;
+            if (!this.serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                warning("SO_REUSEPORT is not supported, sharing a single server socket between the acceptor threads");
+                return;
+            }
+            for (int i = 1; i < getAcceptorThreads(); i++) {
+                this.serverSockets.add(openServerSocket(this.serverSocket.getLocalPort(), true));
+            }
         } catch (final IOException exception) {
             warning("Could not create server socket for port: '" + getPort() + "'");
             exception.printStackTrace();
         }
     }
 
-    public void shutdown() {
+    /**
+     * Opens a server socket, applies the socket options and binds it with the configured backlog.
+     *
+     * @param port      the port to bind to
+     * @param reusePort whether to enable `SO_REUSEPORT`, if supported, so further server sockets can bind the same port
+     * @return the bound server socket
+     * @throws IOException if the server socket could not be opened or bound
+     */
+    private ServerSocket openServerSocket(final int port, final boolean reusePort) throws IOException {
+        final ServerSocket serverSocket = getServerMode() == ServerMode.NIO ? ServerSocketChannel.open().socket() : new ServerSocket();
+        if (reusePort && serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        getSocketOptions().configure(serverSocket);
+        serverSocket.bind(new InetSocketAddress(port), getAcceptBacklog());
+        return serverSocket;
+    }
+
+    /**
+     * Binds the datagram channel to the port of the server socket, and starts the thread receiving the datagrams of
+     * the clients.
+     */
+    private void initializeDatagramTransport() {
+        if (getProtocol() != Protocol.FRAMED) {
+            warning("Datagrams require Protocol.FRAMED");
+            return;
+        }
+        if (getServerSocket() == null) return;
+        try {
+            if (debugMode()) print("Initializing datagram channel on port: '" + getServerSocket().getLocalPort() + "'");
+            final DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.bind(new InetSocketAddress(getServerSocket().getLocalPort()));
+            this.datagramTransport = new DatagramTransport(datagramChannel, this::datagramReceived, exception -> {
+                warning("Could not receive datagram");
+                exception.printStackTrace();
+            });
+            this.datagramTransport.start(getThreadFactory(), "Server-Datagram-Thread");
+        } catch (final IOException exception) {
+            warning("Could not create datagram channel for port: '" + getServerSocket().getLocalPort() + "'");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Hands a received datagram to the connection its token belongs to. Datagrams with an unknown token, such as those
+     * of a closed connection, are dropped.
+     *
+     * @param token    the token of the connection
+     * @param sequence the sequence number of the datagram
+     * @param frame    the frame of the datagram
+     * @param sender   the address the datagram was sent from
+     */
+    private void datagramReceived(final long token, final int sequence, final Frame frame, final SocketAddress sender) {
+        final ServerClientConnection serverClientConnection = this.datagramTokens.get(token);
+        if (serverClientConnection != null) serverClientConnection.datagram(sequence, frame, sender);
+    }
+
+    /**
+     * Initializes and starts the event loops driving the client connections in `ServerMode.NIO`.
+     */
+    private void initializeEventLoopGroup() {
         try {
-            getServerSocket().close();
+            if (debugMode()) print("Initializing " + getEventLoopThreads() + " event loop(s)");
+            this.eventLoopGroup = new ServerEventLoopGroup(this, getEventLoopThreads());
+            getEventLoopGroup().start();
         } catch (final IOException exception) {
-            warning("Could not close server socket");
+            warning("Could not create event loops");
             exception.printStackTrace();
         }
     }
 
+    /**
+     * Initializes the worker threads running the handler for the messages of the clients.
+     */
+    private void initializeHandlerExecutor() {
+        if (debugMode()) print("Initializing " + getHandlerThreads() + " handler thread(s)");
+        final AtomicInteger index = new AtomicInteger();
+        this.handlerExecutor = Executors.newFixedThreadPool(getHandlerThreads(), runnable -> {
+            final Thread thread = getThreadFactory().newThread(runnable);
+            thread.setName("Server-Handler-" + index.getAndIncrement());
+            return thread;
+        });
+    }
+
+    /**
+     * Exports the metrics of the server over JMX, named after the port of the server.
+     */
+    private void registerMetrics() {
+        try {
+            getMetrics().register("me.bredo.network:type=Server,port=" + getPort());
+        } catch (final JMException exception) {
+            warning("Could not register server metrics with JMX");
+            exception.printStackTrace();
+        }
+    }
+
+    public void shutdown() {
+        if (getEventLoopGroup() != null) getEventLoopGroup().shutdown();
+        if (this.handlerExecutor != null) this.handlerExecutor.shutdown();
+        if (this.datagramTransport != null) this.datagramTransport.stop();
+        this.datagramTokens.clear();
+        try {
+            getMetrics().unregister();
+        } catch (final JMException exception) {
+            warning("Could not unregister server metrics from JMX");
+            exception.printStackTrace();
+        }
+        for (final ServerSocket serverSocket : getServerSockets()) {
+            try {
+                serverSocket.close();
+            } catch (final IOException exception) {
+                warning("Could not close server socket");
+                exception.printStackTrace();
+            }
+        }
+        getClientListeningHandler().stopListening();
+        for (final ServerClientConnection serverClientConnection : this.sessions.values()) serverClientConnection.closeSession();
+        this.sessions.clear();
+    }
+
+    /**
+     * Registers a new session owned by the given connection, under a random id that is not guessable by other clients.
+     *
+     * @param owner the connection of the session
+     * @return the id of the session, never 0
+     */
+    long newSession(final ServerClientConnection owner) {
+        while (true) {
+            final long id = this.secureRandom.nextLong();
+            if (id != 0 && this.sessions.putIfAbsent(id, owner) == null) return id;
+        }
+    }
+
+    /**
+     * Registers the token a connection receives datagrams with, random like a session id so that other clients can
+     * neither guess nor spoof it.
+     *
+     * @param owner the connection receiving the datagrams
+     * @return the token, never 0
+     */
+    long newDatagramToken(final ServerClientConnection owner) {
+        while (true) {
+            final long token = this.secureRandom.nextLong();
+            if (token != 0 && this.datagramTokens.putIfAbsent(token, owner) == null) return token;
+        }
+    }
+
+    /**
+     * Removes the token of a closed connection, so that its datagrams are dropped.
+     *
+     * @param token the token of the connection
+     * @param owner the connection
+     */
+    void removeDatagramToken(final long token, final ServerClientConnection owner) {
+        this.datagramTokens.remove(token, owner);
+    }
+
+    /**
+     * Returns the connection owning a session.
+     *
+     * @param id the id of the session
+     * @return the connection owning the session, or null if no session with the id exists or it expired
+     */
+    ServerClientConnection getSessionOwner(final long id) {
+        return this.sessions.get(id);
+    }
+
+    /**
+     * Hands a session over to the connection resuming it, unless it expired in the meantime.
+     *
+     * @param id       the id of the session
+     * @param previous the connection owning the session so far
+     * @param owner    the connection resuming the session
+     * @return true if the session was handed over, false if it is no longer owned by the previous connection
+     */
+    boolean takeOverSession(final long id, final ServerClientConnection previous, final ServerClientConnection owner) {
+        return this.sessions.replace(id, previous, owner);
+    }
+
+    /**
+     * Removes a session that could not be resumed.
+     *
+     * @param id    the id of the session
+     * @param owner the connection owning the session
+     */
+    void removeSession(final long id, final ServerClientConnection owner) {
+        this.sessions.remove(id, owner);
+    }
+
+    /**
+     * Closes a session and releases the messages kept for it once the session timeout elapsed, unless a new connection
+     * resumed it before.
+     *
+     * @param owner   the lost connection owning the session
+     * @param session the session of the connection
+     */
+    void expireSession(final ServerClientConnection owner, final Session session) {
+        HashedWheelTimer.getDefault().newTimeout(() -> {
+            if (this.sessions.remove(session.getId(), owner)) owner.closeSession();
+        }, getSessionTimeout(), TimeUnit.MILLISECONDS, this::timeoutFailed);
+    }
+
+    /**
+     * Returns the number of sessions, whether their connection is open or waiting to be resumed.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Queues a message for every connected client, when using `Protocol.FRAMED`.
+     *
+     * @param type    the type id of the message, must not be negative
+     * @param payload the payload of the message
+     * @return the number of clients the message was queued for
+     */
+    public int broadcast(final int type, final byte[] payload) {
+        return broadcast(type, payload, getServerClientMatrix(), serverClientConnection -> true);
+    }
+
+    /**
+     * Queues a message for every connected client accepted by the filter, when using `Protocol.FRAMED`.
+     *
+     * @param type    the type id of the message, must not be negative
+     * @param payload the payload of the message
+     * @param filter  decides which clients receive the message
+     * @return the number of clients the message was queued for
+     */
+    public int broadcast(final int type, final byte[] payload, final Predicate<ServerClientConnection> filter) {
+        return broadcast(type, payload, getServerClientMatrix(), filter);
+    }
+
+    /**
+     * Queues a message for a group of clients, when using `Protocol.FRAMED`.
+     *
+     * @param type    the type id of the message, must not be negative
+     * @param payload the payload of the message
+     * @param group   the clients receiving the message
+     * @return the number of clients the message was queued for
+     */
+    public int broadcast(final int type, final byte[] payload, final Iterable<ServerClientConnection> group) {
+        return broadcast(type, payload, group, serverClientConnection -> true);
+    }
+
+    /**
+     * Queues a message for every client of a group accepted by the filter, when using `Protocol.FRAMED`.
+     * <p>
+     * The message is encoded once into a single pooled buffer shared by all receiving connections, which only hold
+     * their own view of it. The buffer returns to the pool once every receiver has written it. Clients that are
+     * disconnected or whose outbound queue is full are skipped.
+     * With compression, the message is compressed at most once as well, and the compressed buffer is shared by every
+     * receiver that negotiated compression.
+     * </p>
+     *
+     * @param type    the type id of the message, must not be negative
+     * @param payload the payload of the message
+     * @param group   the clients that may receive the message
+     * @param filter  decides which clients of the group receive the message
+     * @return the number of clients the message was queued for
+     */
+    public int broadcast(final int type, final byte[] payload, final Iterable<ServerClientConnection> group, final Predicate<ServerClientConnection> filter) {
+        if (getProtocol() != Protocol.FRAMED) throw new IllegalStateException("Broadcasting messages requires Protocol.FRAMED");
+        if (type < 0) throw new IllegalArgumentException("Negative message types are reserved: " + type);
+        final PooledBuffer frame = FrameCodec.encode(getBufferPool(), type, (byte) 0, payload, 0, payload.length);
+        PooledBuffer compressed = null;
+        boolean compressionTried = false;
+        int receivers = 0;
+        try {
+            for (final ServerClientConnection serverClientConnection : group) {
+                if (!serverClientConnection.isConnected() || !filter.test(serverClientConnection)) continue;
+                PooledBuffer shared = frame;
+                if (serverClientConnection.getFrameCompressor().accepts(payload.length)) {
+                    if (!compressionTried) {
+                        compressed = FrameCompressor.compress(getBufferPool(), getCompression(), frame);
+                        compressionTried = true;
+                    }
+                    if (compressed != null) shared = compressed;
+                }
+                final PooledBuffer view = shared.duplicate();
+                if (serverClientConnection.sendFrame(view)) {
+                    receivers++;
+                } else {
+                    view.release();
+                }
+            }
+        } finally {
+            frame.release();
+            if (compressed != null) compressed.release();
+        }
+        if (debugMode()) print("Broadcast message of type " + type + " to " + receivers + " client(s)");
+        return receivers;
+    }
+
+    /**
+     * Returns the number of sent messages waiting to be written, summed over every client.
+     *
+     * @return the number of queued messages
+     */
+    public long getQueuedMessages() {
+        long queuedMessages = 0;
+        for (final ServerClientConnection serverClientConnection : getServerClientMatrix().snapshot()) {
+            queuedMessages += serverClientConnection.getQueuedMessages();
+        }
+        return queuedMessages;
+    }
+
     /**
      * Returns whether the server is running.
      *
@@ -111,6 +516,16 @@ public final class Server {
         System.err.println("[Server]: " + message.toString());
     }
 
+    /**
+     * Reports a task scheduled by the server on the `HashedWheelTimer` that failed.
+     *
+     * @param failure the exception or error thrown by the task
+     */
+    void timeoutFailed(final Throwable failure) {
+        warning("A timer task failed: " + failure);
+        failure.printStackTrace();
+    }
+
     /**
      * Returns whether the server is in debug mode.
      *
@@ -156,6 +571,76 @@ public final class Server {
         return this.serverSocket;
     }
 
+    /**
+     * Returns the server sockets the acceptor threads listen on. Holds a single server socket unless `reusePort` is
+     * enabled and supported by the platform.
+     *
+     * @return the server sockets of the server
+     */
+    public List<ServerSocket> getServerSockets() {
+        return Collections.unmodifiableList(this.serverSockets);
+    }
+
+    /**
+     * Returns the number of threads accepting incoming client connections
+     *
+     * @return the number of acceptor threads
+     */
+    public int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    /**
+     * Sets the number of threads accepting incoming client connections, each handing the accepted sockets off to be
+     * set up elsewhere. The threads share the server socket, unless `reusePort` is enabled. Must be called before
+     * `initialize()`.
+     *
+     * @param acceptorThreads the number of acceptor threads
+     */
+    public void setAcceptorThreads(final int acceptorThreads) {
+        this.acceptorThreads = acceptorThreads;
+    }
+
+    /**
+     * Returns the maximum number of pending connections queued by the server socket
+     *
+     * @return the accept backlog
+     */
+    public int getAcceptBacklog() {
+        return socketOptions.getBacklog();
+    }
+
+    /**
+     * Sets the maximum number of pending connections queued by the server socket, capped by the operating system
+     * (`net.core.somaxconn` on Linux). Values of 0 or less use the platform default. Must be called before
+     * `initialize()`.
+     *
+     * @param acceptBacklog the accept backlog
+     */
+    public void setAcceptBacklog(final int acceptBacklog) {
+        this.socketOptions.setBacklog(acceptBacklog);
+    }
+
+    /**
+     * Returns whether every acceptor thread listens on its own server socket bound with `SO_REUSEPORT`
+     *
+     * @return whether `SO_REUSEPORT` listeners are used
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Sets whether every acceptor thread listens on its own server socket bound with `SO_REUSEPORT`, letting the
+     * kernel spread incoming connections over the listeners instead of the threads contending for a single one. Falls
+     * back to a shared server socket where `SO_REUSEPORT` is not supported. Must be called before `initialize()`.
+     *
+     * @param reusePort whether to use `SO_REUSEPORT` listeners
+     */
+    public void setReusePort(final boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
     /**
      * Returns the instance of the IOServerHandling interface used by the server
      *
@@ -184,11 +669,14 @@ public final class Server {
     }
 
     /**
-     * Returns the HashSet of ServerClientConnection objects representing the clients connected to the server
+     * Returns the registry of ServerClientConnection objects representing the clients connected to the server.
+     * The registry is safe to use from any thread and indexes the clients by connection id and remote address.
+     * It replaces the `HashSet` returned by earlier versions: iterate it, or use `ConnectionRegistry.snapshot()` or
+     * `ConnectionRegistry.contains` where the set was used.
      *
-     * @return the HashSet of ServerClientConnection objects representing the clients connected to the server
+     * @return the registry of ServerClientConnection objects representing the clients connected to the server
      */
-    public HashSet<ServerClientConnection> getServerClientMatrix() {
+    public ConnectionRegistry getServerClientMatrix() {
         return this.serverClientMatrix;
     }
 
@@ -200,20 +688,51 @@ public final class Server {
         this.autoStartListening = autoStartListening;
     }
 
+    /**
+     * Returns the socket options of the server socket and the client connections
+     *
+     * @return the socket options
+     */
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    /**
+     * Sets the socket options of the server socket and the client connections, including the sizes of the receive
+     * buffers of the connections. Must be called before `initialize()`; connections accepted afterwards use the
+     * options at the time they are accepted.
+     *
+     * @param socketOptions the socket options
+     */
+    public void setSocketOptions(final SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
     public boolean isReuseAddress() {
-        return reuseAddress;
+        return socketOptions.isReuseAddress();
     }
 
     public void setReuseAddress(final boolean reuseAddress) {
-        this.reuseAddress = reuseAddress;
+        this.socketOptions.setReuseAddress(reuseAddress);
     }
 
+    /**
+     * Returns the size of the kernel receive buffer of the server socket and the client connections
+     *
+     * @return the size in bytes, or 0 to keep the default of the operating system
+     */
     public int getReceiveBufferSize() {
-        return receiveBufferSize;
+        return socketOptions.getReceiveBufferSize();
     }
 
+    /**
+     * Sets the size of the kernel receive buffer of the server socket and the client connections (`SO_RCVBUF`). Must
+     * be called before `initialize()`, since accepted connections inherit it from the server socket.
+     *
+     * @param receiveBufferSize the size in bytes, or 0 to keep the default of the operating system
+     */
     public void setReceiveBufferSize(final int receiveBufferSize) {
-        this.receiveBufferSize = receiveBufferSize;
+        this.socketOptions.setReceiveBufferSize(receiveBufferSize);
     }
 
     public int getServerSoTimeout() {
@@ -233,10 +752,557 @@ public final class Server {
     }
 
     public boolean isNoTcpDelay() {
-        return noTcpDelay;
+        return socketOptions.isTcpNoDelay();
     }
 
     public void setNoTcpDelay(final boolean noTcpDelay) {
-        this.noTcpDelay = noTcpDelay;
+        this.socketOptions.setTcpNoDelay(noTcpDelay);
+    }
+
+    /**
+     * Returns the engine used to drive the client connections
+     *
+     * @return the engine used to drive the client connections
+     */
+    public ServerMode getServerMode() {
+        return serverMode;
+    }
+
+    /**
+     * Sets the engine used to drive the client connections. Must be called before `initialize()`.
+     *
+     * @param serverMode the engine used to drive the client connections
+     */
+    public void setServerMode(final ServerMode serverMode) {
+        this.serverMode = serverMode;
+    }
+
+    /**
+     * Returns the number of event loop threads used in `ServerMode.NIO`
+     *
+     * @return the number of event loop threads
+     */
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Sets the number of event loop threads used in `ServerMode.NIO`. Must be called before `initialize()`.
+     *
+     * @param eventLoopThreads the number of event loop threads
+     */
+    public void setEventLoopThreads(final int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    /**
+     * Returns the number of worker threads running the handler for the messages of the clients
+     *
+     * @return the number of handler threads, or 0 if the handler runs on the thread reading the connection
+     */
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    /**
+     * Sets the number of worker threads running the handler for the messages of the clients, when using
+     * `Protocol.FRAMED`. Must be called before `initialize()`.
+     * <p>
+     * By default the handler runs on the thread reading the connection, so a slow handler stalls its client, and in
+     * `ServerMode.NIO` every client of the same event loop. With handler threads, received messages are copied and
+     * handed to the workers instead, in order per connection, while the reading thread goes on with the socket.
+     * Messages of different clients are handled concurrently. Sending from the handler is unchanged, the messages are
+     * written by the writer or event loop of the connection. `IOServerHandling.inputStream` of `Protocol.SYNC` reads
+     * the socket itself and always runs on the reading thread.
+     * </p>
+     *
+     * @param handlerThreads the number of handler threads, or 0 to run the handler on the thread reading the connection
+     */
+    public void setHandlerThreads(final int handlerThreads) {
+        this.handlerThreads = handlerThreads;
+    }
+
+    /**
+     * Returns the number of received messages of a connection waiting for a handler thread, at which reading the
+     * connection is paused
+     *
+     * @return the maximum number of pending messages per connection
+     */
+    public int getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+    /**
+     * Sets the number of received messages of a connection waiting for a handler thread, at which reading the
+     * connection is paused until half of them were handled. Bounds the memory held for a client sending faster than
+     * its messages are handled, which is slowed down by TCP instead.
+     *
+     * @param maxPendingMessages the maximum number of pending messages per connection
+     */
+    public void setMaxPendingMessages(final int maxPendingMessages) {
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    /**
+     * Returns whether the messages received from a client in one read are handed to the handler together.
+     *
+     * @return whether received messages are batched
+     */
+    public boolean isBatchReceive() {
+        return batchReceive;
+    }
+
+    /**
+     * Sets whether the messages received from a client in one read are handed to the handler together, when using
+     * `Protocol.FRAMED`. Must be called before `initialize()`.
+     * <p>
+     * Every complete message in the receive buffer of a connection is collected into a `FrameBatch`, and handed to
+     * `IOServerHandling.messages` once the buffer holds no further complete message, so a handler can amortize work
+     * over many messages. The batch points into the receive buffer, without copying the messages. With handler
+     * threads, the batch is copied at once and handled by a worker, and counts as a single pending message.
+     * </p>
+     *
+     * @param batchReceive whether received messages are batched
+     */
+    public void setBatchReceive(final boolean batchReceive) {
+        this.batchReceive = batchReceive;
+    }
+
+    /**
+     * Returns the executor of the worker threads running the handler.
+     *
+     * @return the handler executor, or null if the handler runs on the thread reading the connection
+     */
+    ExecutorService getHandlerExecutor() {
+        return this.handlerExecutor;
+    }
+
+    /**
+     * Returns the event loops driving the client connections, or null when not running in `ServerMode.NIO`
+     *
+     * @return the event loops driving the client connections
+     */
+    public ServerEventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Returns the factory creating the client listening thread and the threads of blocking client connections
+     *
+     * @return the factory creating the listening and connection threads
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory creating the client listening thread and the threads of blocking client connections.
+     * Defaults to platform threads; on Java 21 and later `Thread.ofVirtual().factory()` runs every connection on a
+     * virtual thread while keeping the blocking `IOServerHandling` model. Must be called before `initialize()`.
+     *
+     * @param threadFactory the factory creating the listening and connection threads
+     */
+    public void setThreadFactory(final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Returns the wire protocol spoken with the clients
+     *
+     * @return the wire protocol spoken with the clients
+     */
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Sets the wire protocol spoken with the clients. The clients must use the same protocol.
+     * Must be called before `initialize()`.
+     *
+     * @param protocol the wire protocol spoken with the clients
+     */
+    public void setProtocol(final Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Returns the size in bytes of the write buffer of every client connection
+     *
+     * @return the size of the write buffer
+     */
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * Sets the size in bytes of the write buffer of every client connection. Writes of the handler and sent messages
+     * are collected in this buffer, so that small writes share a single write call.
+     *
+     * @param writeBufferSize the size of the write buffer
+     */
+    public void setWriteBufferSize(final int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    /**
+     * Returns the policy deciding when sent messages are flushed to the clients
+     *
+     * @return the flush policy
+     */
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Sets the policy deciding when sent messages are flushed to the clients, when using `Protocol.FRAMED`.
+     * In `ServerMode.NIO` every policy but `FlushPolicy.PER_MESSAGE` flushes once per event loop iteration.
+     *
+     * @param flushPolicy the flush policy
+     */
+    public void setFlushPolicy(final FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Returns the delay in milliseconds used by the delayed flush policies
+     *
+     * @return the flush interval in milliseconds
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the delay in milliseconds used by the delayed flush policies.
+     * The interval only applies in `ServerMode.BLOCKING`. In `ServerMode.NIO` the delayed policies flush once per event
+     * loop iteration instead, and the interval has no effect.
+     *
+     * @param flushInterval the flush interval in milliseconds
+     */
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Returns the maximum number of sent messages waiting to be written to a single client
+     *
+     * @return the capacity of the outbound queue of every client connection
+     */
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of sent messages waiting to be written to a single client. Once the queue of a
+     * connection is full, `send` refuses further messages until the writer caught up.
+     *
+     * @param outboundQueueCapacity the capacity of the outbound queue of every client connection
+     */
+    public void setOutboundQueueCapacity(final int outboundQueueCapacity) {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    /**
+     * Returns the number of queued bytes at or below which a client connection accepts messages again
+     *
+     * @return the low watermark of the outbound queue of every client connection in bytes
+     */
+    public long getOutboundLowWatermark() {
+        return outboundLowWatermark;
+    }
+
+    /**
+     * Sets the number of queued bytes at or below which a client connection that exceeded its high watermark accepts
+     * messages again
+     *
+     * @param outboundLowWatermark the low watermark of the outbound queue of every client connection in bytes
+     */
+    public void setOutboundLowWatermark(final long outboundLowWatermark) {
+        this.outboundLowWatermark = outboundLowWatermark;
+    }
+
+    /**
+     * Returns the number of queued bytes above which sending to a client connection blocks
+     *
+     * @return the high watermark of the outbound queue of every client connection in bytes, or 0 if sending never
+     * blocks
+     */
+    public long getOutboundHighWatermark() {
+        return outboundHighWatermark;
+    }
+
+    /**
+     * Sets the number of queued bytes above which sending to a client connection blocks. Once the messages waiting for
+     * a slow client exceed the high watermark, `send` blocks the calling thread until the writer drained them down to
+     * the low watermark, which keeps the memory held for the client bounded. Handlers running on an event loop are
+     * never blocked; they can check `ServerClientConnection.isWritable()` and pause their own connection instead.
+     * Must be set before the server is initialized.
+     *
+     * @param outboundHighWatermark the high watermark of the outbound queue of every client connection in bytes, or 0
+     *                              to never block
+     */
+    public void setOutboundHighWatermark(final long outboundHighWatermark) {
+        this.outboundHighWatermark = outboundHighWatermark;
+    }
+
+    /**
+     * Creates the outbound queue of a client connection, bounded by the capacity and watermarks of the server
+     *
+     * @return the outbound queue
+     */
+    OutboundQueue createOutboundQueue() {
+        if (getOutboundHighWatermark() <= 0) return new OutboundQueue(getOutboundQueueCapacity());
+        return new OutboundQueue(getOutboundQueueCapacity(), getOutboundLowWatermark(), getOutboundHighWatermark());
+    }
+
+    /**
+     * Returns the idle time after which a heartbeat is sent to a client, when using `Protocol.FRAMED`.
+     *
+     * @return the heartbeat interval in milliseconds, or 0 if no heartbeats are sent
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Sets the idle time after which a heartbeat is sent to a client, when using `Protocol.FRAMED`. A client whose
+     * connection has nothing to say for that long receives an empty control frame, which is never handed to its
+     * handler but keeps its read timeout from expiring. Must be set before the server is initialized.
+     *
+     * @param heartbeatInterval the heartbeat interval in milliseconds, or 0 to send no heartbeats
+     */
+    public void setHeartbeatInterval(final long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Returns the time after which an idle or unresponsive connection is closed.
+     *
+     * @return the idle timeout in milliseconds, or 0 if connections are never closed for being idle
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time after which an idle or unresponsive connection is closed. A connection is closed once nothing was
+     * read from the client for that long, or once messages are waiting for it and nothing could be written to it for
+     * that long, which also frees a half-open connection whose client vanished without closing it. Clients using
+     * `Protocol.FRAMED` should send heartbeats more often. Connections are checked on the shared
+     * `HashedWheelTimer` every half of the timeout, so a connection is closed within one and a half timeouts. Must be
+     * set before the server is initialized.
+     *
+     * @param idleTimeout the idle timeout in milliseconds, or 0 to never close connections for being idle
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the time a session is kept after its connection was lost, waiting for the client to resume it.
+     *
+     * @return the session timeout in milliseconds, or 0 if sessions are disabled
+     */
+    public long getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets the time a session is kept after its connection was lost, waiting for the client to resume it, when using
+     * `Protocol.FRAMED`. Enables resumable sessions for clients with `Client.setSessionResumption`: messages sent to
+     * such a client are kept until it acknowledged them, and a client reconnecting within the timeout takes over the
+     * session, the user data of its previous connection, and every message it did not receive yet.
+     * `IOServerHandling.sessionResumed` is called once it did. Files cannot be sent on a resumable session. A client
+     * is only added to `getServerClientMatrix` once it started or resumed its session, so broadcasts reach it after the
+     * messages it did not receive yet. Must be set before the server is initialized.
+     *
+     * @param sessionTimeout the session timeout in milliseconds, or 0 to disable sessions
+     */
+    public void setSessionTimeout(final long sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Returns the maximum number of messages kept per session until the client acknowledged them.
+     *
+     * @return the capacity of the replay buffer of a session
+     */
+    public int getReplayBufferCapacity() {
+        return replayBufferCapacity;
+    }
+
+    /**
+     * Sets the maximum number of messages kept per session until the client acknowledged them. Once the buffer is
+     * full, `send` refuses further messages like with a full outbound queue. Should be below the outbound queue
+     * capacity, so that all kept messages can be queued again when the session is resumed.
+     *
+     * @param replayBufferCapacity the capacity of the replay buffer of a session
+     */
+    public void setReplayBufferCapacity(final int replayBufferCapacity) {
+        this.replayBufferCapacity = replayBufferCapacity;
+    }
+
+    /**
+     * Returns whether the server exchanges datagrams with its clients besides their connections.
+     *
+     * @return whether datagrams are enabled
+     */
+    public boolean isDatagrams() {
+        return datagrams;
+    }
+
+    /**
+     * Sets whether the server exchanges datagrams with its clients besides their connections, when using
+     * `Protocol.FRAMED`. Must be set before the server is initialized.
+     * <p>
+     * The server binds a datagram channel to the port of its server socket, and offers a random token to every client
+     * that enabled datagrams with `Client.setDatagrams`. Datagrams of a client are handed to the same
+     * `IOServerHandling` as the messages of its connection, flagged with `Frame.FLAG_DATAGRAM`, and are sent to it with
+     * `ServerClientConnection.sendDatagram`. Datagrams suit frequent, small messages that are outdated by the next one,
+     * such as position updates: they may be lost, duplicated or reordered, but a lost datagram does not hold back the
+     * ones after it, as a lost segment of the connection does. With handler threads, datagrams are handled in order
+     * with the messages of the connection; otherwise they are handled on the datagram thread of the server,
+     * concurrently with them.
+     * </p>
+     *
+     * @param datagrams whether datagrams are enabled
+     */
+    public void setDatagrams(final boolean datagrams) {
+        this.datagrams = datagrams;
+    }
+
+    /**
+     * Returns whether datagrams of a client arriving after a newer one are dropped.
+     *
+     * @return whether stale datagrams are dropped
+     */
+    public boolean isDropStaleDatagrams() {
+        return dropStaleDatagrams;
+    }
+
+    /**
+     * Sets whether datagrams of a client arriving after a newer one are dropped, by their sequence number, instead of
+     * being handed to the handler out of order. Duplicates are dropped as well. Suits messages that each replace the
+     * previous one, such as the state of an entity.
+     *
+     * @param dropStaleDatagrams whether stale datagrams are dropped
+     */
+    public void setDropStaleDatagrams(final boolean dropStaleDatagrams) {
+        this.dropStaleDatagrams = dropStaleDatagrams;
+    }
+
+    /**
+     * Returns the transport the datagrams of the clients are exchanged on.
+     *
+     * @return the datagram transport, or null if datagrams are disabled or the server was not initialized
+     */
+    DatagramTransport getDatagramTransport() {
+        return this.datagramTransport;
+    }
+
+    /**
+     * Returns the algorithm messages to clients are compressed with, when using `Protocol.FRAMED`.
+     *
+     * @return the compression of the server
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the algorithm messages to clients are compressed with, when using `Protocol.FRAMED`. A connection only
+     * compresses once its client announced that it can decompress the algorithm, and only messages of at least the
+     * compression threshold. Compressed messages from clients are decompressed regardless of this setting. Must be
+     * set before the server is initialized.
+     *
+     * @param compression the compression of the server, or `Compression.NONE` to send every message uncompressed
+     */
+    public void setCompression(final Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the smallest payload size that is compressed
+     *
+     * @return the compression threshold in bytes
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the smallest payload size that is compressed. Smaller messages are always sent as they are, since
+     * compressing them costs more time than it saves bandwidth. Must be set before the server is initialized.
+     *
+     * @param compressionThreshold the compression threshold in bytes
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Returns the pool the buffers of the client connections are allocated from.
+     *
+     * @return the buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the pool the buffers of the client connections are allocated from. Must be set before the server is
+     * initialized.
+     *
+     * @param bufferPool the buffer pool
+     */
+    public void setBufferPool(final BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Returns the codecs messages sent with `ServerClientConnection.send(Object)` are encoded with, and received frames
+     * of a registered type are decoded with.
+     *
+     * @return the codec registry
+     */
+    public CodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    /**
+     * Sets the codecs messages are encoded and decoded with. A registry may be shared between servers and clients.
+     *
+     * @param codecRegistry the codec registry
+     */
+    public void setCodecRegistry(final CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+    }
+
+    /**
+     * Returns the metrics of the server, summed over all client connections.
+     *
+     * @return the server metrics
+     */
+    public NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns whether the metrics of the server are exported over JMX.
+     *
+     * @return whether JMX export is enabled
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Sets whether the metrics of the server are exported over JMX as `me.bredo.network:type=Server,port=<port>`.
+     * Must be set before the server is initialized.
+     *
+     * @param jmxEnabled whether JMX export is enabled
+     */
+    public void setJmxEnabled(final boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
     }
 }
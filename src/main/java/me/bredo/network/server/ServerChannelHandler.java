@@ -0,0 +1,461 @@
+package me.bredo.network.server;
+
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.protocol.ByteBufferInputStream;
+import me.bredo.network.protocol.FileRegion;
+import me.bredo.network.protocol.FlushPolicy;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameCodec;
+import me.bredo.network.protocol.OutboundQueue;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.ReceiveBufferSizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives a single `ServerClientConnection` on a `ServerEventLoop` when the server runs in `ServerMode.NIO`.
+ * <p>
+ * The handler speaks the same protocol as the blocking connection thread: every sync byte received from the client
+ * is followed by a call to `IOServerHandling.inputStream`, which is answered by a sync byte and a call to
+ * `IOServerHandling.outputStream`. The input is buffered until the handler can read its message completely, and the
+ * output is queued until the socket accepts it. With `Protocol.FRAMED` every complete frame in the input is handed
+ * to `IOServerHandling.message` instead, and frames sent through the connection are put into an `OutboundQueue`
+ * drained by the event loop.
+ * Unless the flush policy is `FlushPolicy.PER_MESSAGE`, queued output is written once at the end of the event loop
+ * iteration, so that all frames produced during the iteration share a single gathering write.
+ * The inbound buffer and all queued output are pooled buffers of the server's `BufferPool`, and are released when the
+ * connection is closed.
+ * While the connection is paused the channel is not registered for reading, so that the client fills the TCP window
+ * and is slowed down by the kernel, and messages already buffered are only handed on once it is resumed.
+ * All methods except `send` and `flush` are called on the event loop thread only.
+ * </p>
+ */
+final class ServerChannelHandler {
+
+    private static final int    INITIAL_BUFFER_SIZE = 1024;
+    private static final byte[] EMPTY               = new byte[0];
+
+    private final ServerClientConnection serverClientConnection;
+    private final SocketChannel          socketChannel;
+    private final ByteBufferInputStream  byteBufferInputStream;
+    private final DataInputStream        dataInputStream;
+    private final ByteArrayOutputStream  byteArrayOutputStream;
+    private final DataOutputStream       dataOutputStream;
+    private final Queue<Object>          outbound;
+    private final OutboundQueue          outboundQueue;
+    private final AtomicBoolean          sendScheduled;
+    private final ByteBuffer[]           gather;
+    private final Frame                  frame;
+    private final ReceiveBufferSizer     receiveBufferSizer;
+    private       PooledBuffer           inbound;
+    private final ServerEventLoop        eventLoop;
+    private       SelectionKey           selectionKey;
+    private       boolean                flushPending;
+    private       long                   lastWrite;
+
+    /**
+     * Creates a new ServerChannelHandler instance.
+     *
+     * @param serverClientConnection the connection driven by this handler.
+     * @param socketChannel          the channel of the connection.
+     * @param eventLoop              the event loop the channel is registered with once the connection is started.
+     */
+    ServerChannelHandler(final ServerClientConnection serverClientConnection, final SocketChannel socketChannel, final ServerEventLoop eventLoop) {
+        this.serverClientConnection = serverClientConnection;
+        this.socketChannel          = socketChannel;
+        this.eventLoop              = eventLoop;
+        this.receiveBufferSizer     = serverClientConnection.getServer().getSocketOptions().newReceiveBufferSizer();
+        this.inbound                = serverClientConnection.getServer().getBufferPool().allocate(this.receiveBufferSizer.getSize());
+        this.byteBufferInputStream  = new ByteBufferInputStream(this.inbound.getByteBuffer());
+        this.dataInputStream        = new DataInputStream(this.byteBufferInputStream);
+        this.byteArrayOutputStream  = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        this.dataOutputStream       = new DataOutputStream(this.byteArrayOutputStream);
+        this.outbound               = new ArrayDeque<>();
+        this.outboundQueue          = serverClientConnection.getServer().createOutboundQueue();
+        this.sendScheduled          = new AtomicBoolean();
+        this.gather                 = new ByteBuffer[64];
+        this.frame                  = new Frame(0, (byte) 0, this.inbound.getByteBuffer());
+        this.lastWrite              = System.nanoTime();
+    }
+
+    /**
+     * Switches the channel to non-blocking mode and registers it for reading, then writes the output that was queued
+     * before the registration.
+     *
+     * @param selector the selector of the event loop.
+     */
+    void register(final Selector selector) {
+        try {
+            this.socketChannel.configureBlocking(false);
+            this.selectionKey = this.socketChannel.register(selector, this.serverClientConnection.isReadingPaused() ? 0 : SelectionKey.OP_READ, this);
+            if (!this.outboundQueue.isEmpty() || !this.outbound.isEmpty()) sent();
+        } catch (final IOException exception) {
+            getServer().warning("Could not register Client[" + this.serverClientConnection.getIP() + "] with event loop");
+            exception.printStackTrace();
+            this.serverClientConnection.stopConnection();
+        }
+    }
+
+    /**
+     * Queues an encoded frame for writing. Can be called from any thread; frames queued from other threads wake up the
+     * event loop once for the whole batch.
+     *
+     * @param frame the encoded frame, released once it was written.
+     * @return true if the frame was queued, false if the outbound queue is full or the connection is closed.
+     */
+    boolean send(final PooledBuffer frame) {
+        if (!this.outboundQueue.offer(frame)) return false;
+        queued();
+        return true;
+    }
+
+    /**
+     * Queues a file region for writing. Can be called from any thread.
+     *
+     * @param fileRegion the file region, released once it was written.
+     * @return true if the region was queued, false if the outbound queue is full or the connection is closed.
+     */
+    boolean send(final FileRegion fileRegion) {
+        if (!this.outboundQueue.offer(fileRegion)) return false;
+        queued();
+        return true;
+    }
+
+    /**
+     * Schedules the output queued by `send`. Output queued from other threads wakes up the event loop once for the
+     * whole batch. Output queued before the channel is registered is written by the registration task.
+     */
+    private void queued() {
+        if (this.eventLoop.inEventLoop()) {
+            sent();
+        } else if (this.sendScheduled.compareAndSet(false, true)) {
+            this.eventLoop.execute(() -> {
+                this.sendScheduled.set(false);
+                sent();
+            });
+        }
+    }
+
+    /**
+     * Writes the queued frames either at once or at the end of the event loop iteration.
+     */
+    private void sent() {
+        if (getServer().getFlushPolicy() == FlushPolicy.PER_MESSAGE) {
+            flush();
+        } else if (!this.flushPending) {
+            this.flushPending = true;
+            this.eventLoop.flushLater(this);
+        }
+    }
+
+    /**
+     * Writes as much queued output as the channel accepts. Can be called from any thread, and does nothing until the
+     * channel is registered.
+     */
+    void flush() {
+        if (!this.eventLoop.inEventLoop()) {
+            this.eventLoop.execute(this::flush);
+            return;
+        }
+        this.flushPending = false;
+        if (this.selectionKey == null) return;
+        try {
+            write();
+        } catch (final IOException exception) {
+            getServer().warning("Lost connection to Client[" + this.serverClientConnection.getIP() + "]");
+            exception.printStackTrace();
+            this.serverClientConnection.stopConnection();
+        }
+    }
+
+    /**
+     * Sends a heartbeat to the client if nothing was written to it for the heartbeat interval, when using
+     * `Protocol.FRAMED`.
+     *
+     * @param now               the current time in nanoseconds.
+     * @param heartbeatInterval the heartbeat interval in nanoseconds.
+     */
+    void heartbeat(final long now, final long heartbeatInterval) {
+        if (getServer().getProtocol() != Protocol.FRAMED || now - this.lastWrite < heartbeatInterval) return;
+        final PooledBuffer heartbeat = FrameCodec.encode(getServer().getBufferPool(), FrameCodec.HEARTBEAT_TYPE, (byte) 0, EMPTY, 0, 0);
+        if (!send(heartbeat)) heartbeat.release();
+        flush();
+    }
+
+    /**
+     * Applies a pause or resume of the connection on the event loop. Can be called from any thread. Reading is stopped
+     * or restarted, and a resumed connection hands on the messages that were left in the inbound buffer.
+     */
+    void pausedChanged() {
+        this.eventLoop.execute(() -> {
+            if (this.inbound == null || this.selectionKey == null) return;
+            try {
+                if (!this.serverClientConnection.isReadingPaused()) {
+                    final ByteBuffer buffer = this.inbound.getByteBuffer();
+                    buffer.flip();
+                    process();
+                    buffer.compact();
+                }
+                write();
+            } catch (final IOException | RuntimeException exception) {
+                getServer().warning("Lost connection to Client[" + this.serverClientConnection.getIP() + "]");
+                exception.printStackTrace();
+                this.serverClientConnection.stopConnection();
+            }
+        });
+    }
+
+    /**
+     * Handles the readiness of the channel reported by the selector.
+     *
+     * @param selectionKey the selected key of the channel.
+     */
+    void handle(final SelectionKey selectionKey) {
+        try {
+            if (selectionKey.isValid() && selectionKey.isReadable()) read();
+            if (selectionKey.isValid() && selectionKey.isWritable()) write();
+        } catch (final IOException | RuntimeException exception) {
+            getServer().warning("Lost connection to Client[" + this.serverClientConnection.getIP() + "]");
+            exception.printStackTrace();
+            this.serverClientConnection.stopConnection();
+        }
+    }
+
+    /**
+     * Reads the available bytes from the channel and hands every complete message to the handler.
+     *
+     * @throws IOException if there is an error reading from the channel or in the handler.
+     */
+    private void read() throws IOException {
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        final int read = this.socketChannel.read(buffer);
+        if (read < 0) {
+            this.serverClientConnection.stopConnection();
+            return;
+        }
+        this.serverClientConnection.getMetrics().bytesRead(read);
+        this.receiveBufferSizer.record(read, !buffer.hasRemaining());
+        buffer.flip();
+        process();
+        buffer.compact();
+        resizeInbound();
+        write();
+    }
+
+    /**
+     * Runs the handler for every message in the inbound buffer, and rolls the buffer back to the start of a message
+     * the handler could not read completely.
+     *
+     * @throws IOException if there is an error in the handler.
+     */
+    private void process() throws IOException {
+        if (getServer().getProtocol() == Protocol.FRAMED) {
+            processFrames();
+            return;
+        }
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        while (buffer.hasRemaining() && this.serverClientConnection.isConnected() && !this.serverClientConnection.isReadingPaused()) {
+            final int mark = buffer.position();
+            try {
+                inputStream();
+            } catch (final EOFException exception) {
+                buffer.position(mark);
+                break;
+            }
+            outputStream();
+        }
+        if (this.byteArrayOutputStream.size() == 0) return;
+        this.outbound.add(PooledBuffer.wrap(ByteBuffer.wrap(this.byteArrayOutputStream.toByteArray())));
+        this.byteArrayOutputStream.reset();
+    }
+
+    /**
+     * Hands every complete frame in the inbound buffer to the handler. The same frame object is reused for every
+     * message, and the batch of messages the server may collect is handed on before the buffer is compacted.
+     *
+     * @throws IOException if a frame is invalid or there is an error in the handler.
+     */
+    private void processFrames() throws IOException {
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        while (this.serverClientConnection.isConnected() && !this.serverClientConnection.isReadingPaused() && FrameCodec.decode(buffer, this.frame) != null) {
+            this.serverClientConnection.message(this.frame);
+        }
+        this.serverClientConnection.messagesRead();
+    }
+
+    /**
+     * Handles incoming data from the inbound buffer.
+     *
+     * @throws IOException if there is an error reading from the buffer.
+     */
+    private void inputStream() throws IOException {
+        this.dataInputStream.readByte();
+        if (getServer().getIoServerHandling() != null) {
+            final long start = System.nanoTime();
+            getServer().getIoServerHandling().inputStream(this.dataInputStream, this.serverClientConnection);
+            this.serverClientConnection.getMetrics().inputStreamHandled(System.nanoTime() - start);
+        }
+        this.serverClientConnection.getMetrics().messageReceived();
+    }
+
+    /**
+     * Writes outgoing data to the outbound buffer.
+     *
+     * @throws IOException if there is an error writing to the buffer.
+     */
+    private void outputStream() throws IOException {
+        this.dataOutputStream.writeByte((byte) (0));
+        this.serverClientConnection.getMetrics().messageSent();
+        if (getServer().getIoServerHandling() == null) return;
+        final long start = System.nanoTime();
+        getServer().getIoServerHandling().outputStream(this.dataOutputStream, this.serverClientConnection);
+        this.serverClientConnection.getMetrics().outputStreamHandled(System.nanoTime() - start);
+    }
+
+    /**
+     * Writes as much of the queued output as the channel accepts with gathering writes, and only keeps the channel
+     * registered for writing while output is left. Frames stay in the outbound queue until they are about to be
+     * written, so that the queue bounds the output waiting for a slow client. File regions are handed to the channel
+     * with `FileChannel.transferTo` once every frame queued before them was written. The channel stays registered for
+     * reading unless the connection is paused.
+     *
+     * @throws IOException if there is an error writing to the channel or reading a file.
+     */
+    private void write() throws IOException {
+        if (!this.serverClientConnection.isConnected()) return;
+        while (true) {
+            Object element;
+            while (this.outbound.size() < this.gather.length && (element = this.outboundQueue.poll()) != null) this.outbound.add(element);
+            if (this.outbound.isEmpty()) break;
+            if (this.outbound.peek() instanceof FileRegion) {
+                final FileRegion fileRegion = (FileRegion) this.outbound.peek();
+                final long bytes = fileRegion.transferTo(this.socketChannel);
+                this.serverClientConnection.getMetrics().bytesWritten(bytes);
+                if (bytes > 0) this.lastWrite = System.nanoTime();
+                if (!fileRegion.isDone()) break;
+                this.outbound.poll();
+                fileRegion.release();
+                continue;
+            }
+            int count = 0;
+            for (final Object buffer : this.outbound) {
+                if (count == this.gather.length || buffer instanceof FileRegion) break;
+                this.gather[count++] = ((PooledBuffer) buffer).getByteBuffer();
+            }
+            final long bytes = this.socketChannel.write(this.gather, 0, count);
+            this.serverClientConnection.getMetrics().bytesWritten(bytes);
+            if (bytes > 0) this.lastWrite = System.nanoTime();
+            int written = 0;
+            while (written < count && !this.gather[written].hasRemaining()) {
+                ((PooledBuffer) this.outbound.poll()).release();
+                written++;
+            }
+            Arrays.fill(this.gather, 0, count, null);
+            if (written < count) break;
+        }
+        final int reading = this.serverClientConnection.isReadingPaused() ? 0 : SelectionKey.OP_READ;
+        setInterest(this.outbound.isEmpty() && this.outboundQueue.isEmpty() ? reading : reading | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Resizes the inbound buffer to the capacity the receive buffer sizer asks for, or to fit a single message that
+     * does not fit into it, and releases the old buffer. The size of a pending frame is known from its header, while
+     * a buffer holding part of a message of `Protocol.SYNC` is never shrunk.
+     */
+    private void resizeInbound() {
+        final ByteBuffer buffer = this.inbound.getByteBuffer();
+        final int pending = buffer.position();
+        final int required = getServer().getProtocol() == Protocol.FRAMED && pending >= FrameCodec.HEADER_SIZE ? FrameCodec.HEADER_SIZE + buffer.getInt(0) : 0;
+        final int capacity = this.receiveBufferSizer.capacity(buffer.capacity(), pending, required);
+        if (capacity == buffer.capacity()) return;
+        final PooledBuffer resized = getServer().getBufferPool().allocate(capacity);
+        resized.getByteBuffer().put(buffer.flip());
+        this.inbound.release();
+        this.inbound = resized;
+        this.byteBufferInputStream.setByteBuffer(resized.getByteBuffer());
+    }
+
+    /**
+     * Releases the buffers of this handler once the connection is closed. Can be called from any thread; the buffers
+     * are released on the event loop after the current event is handled, since the handler may still be reading them.
+     */
+    void close() {
+        this.outboundQueue.close();
+        if (this.eventLoop.isRunning()) {
+            this.eventLoop.execute(this::release);
+        } else {
+            release();
+        }
+    }
+
+    /**
+     * Releases the inbound buffer and every frame waiting to be written.
+     */
+    private void release() {
+        if (this.inbound == null) return;
+        this.inbound.release();
+        this.inbound = null;
+        Object element;
+        while ((element = this.outbound.poll()) != null) {
+            OutboundQueue.release(element);
+        }
+        this.outboundQueue.clear();
+    }
+
+    /**
+     * Updates the operations the selector watches for.
+     *
+     * @param interestOps the operations to watch for.
+     */
+    private void setInterest(final int interestOps) {
+        if (this.selectionKey.isValid() && this.selectionKey.interestOps() != interestOps) this.selectionKey.interestOps(interestOps);
+    }
+
+    /**
+     * Returns the queue of frames waiting to be written.
+     *
+     * @return the outbound queue.
+     */
+    OutboundQueue getOutboundQueue() {
+        return this.outboundQueue;
+    }
+
+    /**
+     * Returns the event loop this handler is registered with.
+     *
+     * @return the event loop.
+     */
+    ServerEventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+
+    /**
+     * Returns the server object associated with this handler.
+     *
+     * @return The server object.
+     */
+    Server getServer() {
+        return this.serverClientConnection.getServer();
+    }
+
+    /**
+     * Returns the connection driven by this handler.
+     *
+     * @return The connection.
+     */
+    ServerClientConnection getServerClientConnection() {
+        return this.serverClientConnection;
+    }
+}
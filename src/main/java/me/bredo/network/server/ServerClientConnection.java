@@ -1,11 +1,40 @@
 package me.bredo.network.server;
 
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.codec.BinaryReader;
+import me.bredo.network.metrics.ConnectionMetrics;
+import me.bredo.network.metrics.MeteredInputStream;
+import me.bredo.network.metrics.MeteredOutputStream;
+import me.bredo.network.protocol.DatagramCodec;
+import me.bredo.network.protocol.DatagramTransport;
+import me.bredo.network.protocol.FileRegion;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameBatch;
+import me.bredo.network.protocol.FrameCodec;
+import me.bredo.network.protocol.FrameCompressor;
+import me.bredo.network.protocol.FrameReader;
+import me.bredo.network.protocol.FrameWriter;
+import me.bredo.network.protocol.HashedWheelTimer;
+import me.bredo.network.protocol.OutboundQueue;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.Session;
+
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents a single connection to a client in a server.
@@ -14,13 +43,40 @@ public final class ServerClientConnection {
 
     private final Server server;
     private final Socket socket;
-    private boolean paused;
+    private final long id;
+    private final SocketAddress remoteAddress;
+    private volatile boolean paused;
+    private volatile boolean backlogged;
     private final Thread thread;
+    private final ServerChannelHandler channelHandler;
+    private volatile FrameWriter frameWriter;
+    private final ConnectionMetrics metrics;
+    private final BinaryReader binaryReader;
+    private final FrameCompressor frameCompressor;
+    private volatile Session session;
+    private final SerialExecutor handlerExecutor;
+    private final FrameBatch frameBatch;
+    private volatile HashedWheelTimer.Timeout idleCheck;
+    private long lastBytesIn;
+    private long lastBytesOut;
+    private long lastRead;
+    private long lastWritten;
+    private volatile long datagramToken;
+    private volatile SocketAddress datagramAddress;
+    private final AtomicInteger datagramSequence;
+    private final BinaryReader datagramReader;
+    private int lastDatagramSequence;
+    private boolean datagramReceived;
+    private volatile long droppedDatagrams;
 
     public final HashMap<String, Object> userData;
 
     /**
      * Creates a new ServerClientConnection instance.
+     * <p>
+     * The connection thread is created by the thread factory of the server. In `ServerMode.NIO` the connection is
+     * driven by an event loop of the server and gets no thread of its own.
+     * </p>
      *
      * @param server the server instance.
      * @param socket the socket for this connection.
@@ -28,7 +84,23 @@ public final class ServerClientConnection {
     public ServerClientConnection(final Server server, final Socket socket) {
         this.server = server;
         this.socket = socket;
-        this.thread = new Thread(this::connection, "Client[" + getIP() + "]");
+        this.id = server.getServerClientMatrix().nextConnectionId();
+        this.remoteAddress = socket.getRemoteSocketAddress();
+        this.metrics = new ConnectionMetrics(server.getMetrics());
+        this.binaryReader = new BinaryReader();
+        this.frameCompressor = new FrameCompressor(server.getCompression(), server.getCompressionThreshold());
+        this.handlerExecutor = server.getHandlerExecutor() == null ? null : new SerialExecutor(server.getHandlerExecutor());
+        this.frameBatch = server.isBatchReceive() ? new FrameBatch() : null;
+        this.datagramSequence = new AtomicInteger();
+        this.datagramReader = new BinaryReader();
+        if (server.getServerMode() == ServerMode.NIO && socket.getChannel() != null) {
+            this.thread = null;
+            this.channelHandler = new ServerChannelHandler(this, socket.getChannel(), server.getEventLoopGroup().next());
+        } else {
+            this.thread = server.getThreadFactory().newThread(this::connection);
+            this.thread.setName("Client[" + getIP() + "]");
+            this.channelHandler = null;
+        }
         this.userData = new HashMap<>();
     }
 
@@ -36,14 +108,20 @@ public final class ServerClientConnection {
      * Establishes the connection and handles incoming and outgoing data.
      */
     public void connection() {
+        if (getServer().getProtocol() == Protocol.FRAMED) {
+            framedConnection();
+            return;
+        }
         try {
-            final DataOutputStream dataOutputStream = new DataOutputStream(getSocket().getOutputStream());
-            final DataInputStream dataInputStream = new DataInputStream(getSocket().getInputStream());
+            final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new MeteredOutputStream(getSocket().getOutputStream(), this.metrics), getServer().getWriteBufferSize()));
+            final DataInputStream dataInputStream = new DataInputStream(new MeteredInputStream(getSocket().getInputStream(), this.metrics));
 
             while (isConnected()) {
                 try {
+                    awaitResume();
                     inputStream(dataInputStream);
                     outputStream(dataOutputStream);
+                    dataOutputStream.flush();
                 } catch (final IOException exception) {
                     getServer().warning("Lost connection to server");
                     exception.printStackTrace();
@@ -57,6 +135,811 @@ public final class ServerClientConnection {
         }
     }
 
+    /**
+     * Receives frames and hands them to the handler until the connection is closed, when using `Protocol.FRAMED`.
+     */
+    private void framedConnection() {
+        try {
+            final FrameReader frameReader = new FrameReader(new MeteredInputStream(getSocket().getInputStream(), this.metrics), getServer().getSocketOptions().newReceiveBufferSizer());
+
+            while (isConnected()) {
+                try {
+                    awaitResume();
+                    Frame frame = frameReader.poll();
+                    if (frame == null) {
+                        messagesRead();
+                        frame = frameReader.read();
+                    }
+                    message(frame);
+                } catch (final IOException | RuntimeException exception) {
+                    getServer().warning("Lost connection to server");
+                    exception.printStackTrace();
+                    stopConnection();
+                }
+            }
+
+        } catch (final IOException exception) {
+            getServer().warning("Could not create IO stream for client[" + getIP() + "]");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Parks the connection thread while the connection is paused or backlogged, so that nothing is read from the
+     * socket and the client is slowed down once the TCP window is full.
+     */
+    private void awaitResume() {
+        while (isReadingPaused() && isConnected()) {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Hands a received frame to the handler, decompressed and decoded if a codec is registered for its type. Control
+     * frames of the protocol are handled by the connection and not handed on. With handler threads, a copy of the
+     * frame is handled by a worker instead. When the server batches received messages, plain frames are collected
+     * until `messagesRead` hands them on together, and are handed on before any frame that is not.
+     *
+     * @param received the received frame.
+     * @throws IOException if the frame could not be decompressed or decoded, or there is an error in the handler.
+     */
+    void message(final Frame received) throws IOException {
+        if (received.getType() < 0) {
+            control(received);
+            return;
+        }
+        if (usesSession() && !sessionReceived()) return;
+        this.metrics.messageReceived();
+        final IOServerHandling ioServerHandling = getServer().getIoServerHandling();
+        if (ioServerHandling == null) return;
+        if (this.frameBatch != null) {
+            if (!received.isCompressed() && !received.isRequest() && !getServer().getCodecRegistry().isRegistered(received.getType())) {
+                this.frameBatch.add(received);
+                return;
+            }
+            messagesRead();
+        }
+        final Frame frame = this.frameCompressor.decompress(received);
+        if (this.handlerExecutor != null) {
+            dispatch(frame.copy());
+            return;
+        }
+        handle(ioServerHandling, frame, this.binaryReader);
+    }
+
+    /**
+     * Hands the messages collected since the last call to the handler as one batch, when the server batches received
+     * messages. Called by the reading thread once no complete message is left in its receive buffer, and before a
+     * message that is not batched, so the buffer the batch points into is still unchanged. With handler threads, a
+     * copy of the batch is handled by a worker instead.
+     *
+     * @throws IOException if there is an error in the handler.
+     */
+    void messagesRead() throws IOException {
+        final FrameBatch frameBatch = this.frameBatch;
+        if (frameBatch == null || frameBatch.isEmpty()) return;
+        try {
+            final IOServerHandling ioServerHandling = getServer().getIoServerHandling();
+            if (ioServerHandling == null) return;
+            if (this.handlerExecutor != null) {
+                dispatch(frameBatch.copy());
+                return;
+            }
+            handle(ioServerHandling, frameBatch);
+        } finally {
+            frameBatch.clear();
+        }
+    }
+
+    /**
+     * Hands a datagram of the client to the handler like a received message, on the datagram thread of the server.
+     * <p>
+     * Datagrams arriving after a newer one are dropped if the server drops stale datagrams, and so are datagrams
+     * arriving while reading the connection is backlogged, since their sender does not wait for them. The newest
+     * datagram tells the address datagrams are sent to. Empty `FrameCodec.HEARTBEAT_TYPE` datagrams, which the client
+     * sends until one came back, are answered and not handed on.
+     * </p>
+     *
+     * @param sequence the sequence number of the datagram.
+     * @param received the frame of the datagram.
+     * @param sender   the address the datagram was sent from.
+     */
+    void datagram(final int sequence, final Frame received, final SocketAddress sender) {
+        if (!isConnected()) return;
+        if (!this.datagramReceived || DatagramCodec.isNewer(sequence, this.lastDatagramSequence)) {
+            this.datagramReceived     = true;
+            this.lastDatagramSequence = sequence;
+            this.datagramAddress      = sender;
+        } else if (getServer().isDropStaleDatagrams()) {
+            this.droppedDatagrams++;
+            return;
+        }
+        if (received.getType() == FrameCodec.HEARTBEAT_TYPE) {
+            try {
+                sendDatagram(DatagramCodec.heartbeat(getServer().getBufferPool(), this.datagramToken, this.datagramSequence.incrementAndGet()), sender);
+            } catch (final IOException exception) {
+                getServer().warning("Could not send datagram to Client[" + getIP() + "]");
+                exception.printStackTrace();
+            }
+            return;
+        }
+        try {
+            final IOServerHandling ioServerHandling = getServer().getIoServerHandling();
+            if (received.getType() < 0 || received.isCompressed() || ioServerHandling == null) return;
+            if (this.backlogged) {
+                this.droppedDatagrams++;
+                return;
+            }
+            this.metrics.messageReceived();
+            if (this.handlerExecutor != null) {
+                dispatch(received.copy());
+                return;
+            }
+            handle(ioServerHandling, received, this.datagramReader);
+        } catch (final IOException | RuntimeException exception) {
+            getServer().warning("Lost connection to Client[" + getIP() + "]");
+            exception.printStackTrace();
+            stopConnection();
+        }
+    }
+
+    /**
+     * Hands a frame to a handler thread, and pauses reading the connection while too many of its messages are waiting
+     * for one.
+     *
+     * @param frame the decompressed frame, owned by the handler thread.
+     */
+    private void dispatch(final Frame frame) {
+        dispatch(ioServerHandling -> handle(ioServerHandling, frame, this.binaryReader));
+    }
+
+    /**
+     * Hands a batch of messages to a handler thread, and pauses reading the connection while too many of its batches
+     * are waiting for one.
+     *
+     * @param frameBatch the batch, owned by the handler thread.
+     */
+    private void dispatch(final FrameBatch frameBatch) {
+        dispatch(ioServerHandling -> handle(ioServerHandling, frameBatch));
+    }
+
+    /**
+     * Runs the handler on a handler thread, in order with the other messages of the connection, and pauses reading the
+     * connection while too many of them are waiting for one.
+     *
+     * @param task the task calling the handler.
+     */
+    private void dispatch(final HandlerTask task) {
+        this.handlerExecutor.execute(() -> {
+            final IOServerHandling ioServerHandling = getServer().getIoServerHandling();
+            try {
+                if (ioServerHandling != null) task.run(ioServerHandling);
+            } catch (final IOException | RuntimeException exception) {
+                getServer().warning("Lost connection to Client[" + getIP() + "]");
+                exception.printStackTrace();
+                stopConnection();
+            }
+            if (this.backlogged && this.handlerExecutor.getPending() - 1 <= getServer().getMaxPendingMessages() / 2) setBacklogged(false);
+        });
+        if (this.handlerExecutor.getPending() < getServer().getMaxPendingMessages()) return;
+        setBacklogged(true);
+        if (this.handlerExecutor.getPending() < getServer().getMaxPendingMessages()) setBacklogged(false);
+    }
+
+    /**
+     * Decodes a frame if a codec is registered for its type, and hands it to the handler.
+     *
+     * @param ioServerHandling the handler of the server.
+     * @param frame            the decompressed frame.
+     * @param binaryReader     the reader of the thread handling the frame.
+     * @throws IOException if the frame could not be decoded, or there is an error in the handler.
+     */
+    private void handle(final IOServerHandling ioServerHandling, final Frame frame, final BinaryReader binaryReader) throws IOException {
+        final long start = System.nanoTime();
+        final Object message = getServer().getCodecRegistry().decode(frame, binaryReader);
+        if (message != null && frame.isRequest()) {
+            ioServerHandling.request(message, frame.getStreamId(), this);
+        } else if (message != null) {
+            ioServerHandling.decoded(message, this);
+        } else {
+            ioServerHandling.message(frame, this);
+        }
+        this.metrics.messageHandled(System.nanoTime() - start);
+    }
+
+    /**
+     * Hands a batch of messages to the handler.
+     *
+     * @param ioServerHandling the handler of the server.
+     * @param frameBatch       the batch of messages.
+     * @throws IOException if there is an error in the handler.
+     */
+    private void handle(final IOServerHandling ioServerHandling, final FrameBatch frameBatch) throws IOException {
+        final int messages = frameBatch.size();
+        final long start = System.nanoTime();
+        ioServerHandling.messages(frameBatch, this);
+        this.metrics.messagesHandled(System.nanoTime() - start, messages);
+    }
+
+    /**
+     * Returns whether the connection is added to the registry of the server only once the client answered the
+     * handshake, because sessions are enabled. Until the session of a resuming client is answered and the messages it
+     * did not receive yet are queued, a broadcast must neither overtake them nor bypass the session.
+     *
+     * @return true if the connection is registered after the handshake, false if it is registered when accepted.
+     */
+    boolean registersAfterHandshake() {
+        return getServer().getProtocol() == Protocol.FRAMED && getServer().getSessionTimeout() > 0;
+    }
+
+    /**
+     * Adds the connection to the registry of the server, unless it was closed in the meantime.
+     */
+    void register() {
+        getServer().getServerClientMatrix().add(this);
+        if (!isConnected()) getServer().getServerClientMatrix().remove(this);
+    }
+
+    /**
+     * Returns whether the messages of the client are sent on a session, because both ends enabled sessions.
+     *
+     * @return true if the client resumes its session, false otherwise.
+     */
+    private boolean usesSession() {
+        return this.session != null || getServer().getSessionTimeout() > 0 && (this.frameCompressor.getPeerFeatures() & FrameCodec.FEATURE_SESSIONS) != 0;
+    }
+
+    /**
+     * Counts a message received on the session, and acknowledges the received messages once they are due. Messages
+     * still read after the session was suspended or taken over by a new connection are dropped, since the client
+     * sends them again once the session is resumed.
+     *
+     * @return true if the message is handed on, false if it is dropped.
+     */
+    private boolean sessionReceived() {
+        final Session session = this.session;
+        if (session == null) return false;
+        final PooledBuffer ack;
+        synchronized (session) {
+            if (this.session != session || !session.isEstablished()) return false;
+            if (!session.received()) return true;
+            ack = session.acknowledgement(getServer().getBufferPool());
+        }
+        if (!queueFrame(ack)) ack.release();
+        return true;
+    }
+
+    /**
+     * Handles a control frame of the protocol.
+     *
+     * @param frame the received control frame.
+     * @throws IOException if the messages of a resumed session could not be queued again.
+     */
+    private void control(final Frame frame) throws IOException {
+        switch (frame.getType()) {
+            case FrameCodec.HELLO_TYPE:
+                this.frameCompressor.helloReceived(frame);
+                if ((this.frameCompressor.getPeerFeatures() & FrameCodec.FEATURE_DATAGRAMS) != 0) offerDatagrams();
+                if (registersAfterHandshake() && (this.frameCompressor.getPeerFeatures() & FrameCodec.FEATURE_SESSIONS) == 0) register();
+                break;
+            case FrameCodec.RESUME_TYPE:
+                resume(frame);
+                if (registersAfterHandshake()) register();
+                break;
+            case FrameCodec.ACK_TYPE:
+                final Session session = this.session;
+                if (session != null) session.acknowledged(frame);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Hands the client the token of this connection and the port of the datagram channel, once its hello announced
+     * that it exchanges datagrams, when datagrams are enabled.
+     */
+    private void offerDatagrams() {
+        final DatagramTransport datagramTransport = getServer().getDatagramTransport();
+        if (datagramTransport == null || this.datagramToken != 0) return;
+        this.datagramToken = getServer().newDatagramToken(this);
+        if (!isConnected()) getServer().removeDatagramToken(this.datagramToken, this);
+        final PooledBuffer offer = DatagramCodec.offer(getServer().getBufferPool(), this.datagramToken, datagramTransport.getLocalPort());
+        if (!queueFrame(offer)) offer.release();
+    }
+
+    /**
+     * Starts or resumes the session of this connection, as asked for by the client, when sessions are enabled. A
+     * session that expired, or whose messages do not match what the client received, is replaced by a new one.
+     *
+     * @param frame the `FrameCodec.RESUME_TYPE` frame of the client.
+     * @throws IOException if the messages of the resumed session could not be queued again.
+     */
+    private void resume(final Frame frame) throws IOException {
+        if (getServer().getSessionTimeout() <= 0 || this.session != null || frame.getPayloadSize() < 2 * Long.BYTES) return;
+        final long id = frame.getSource().getLong(frame.getOffset());
+        final long received = frame.getSource().getLong(frame.getOffset() + Long.BYTES);
+        final ServerClientConnection previous = id != 0 ? getServer().getSessionOwner(id) : null;
+        final Session previousSession = previous != null ? previous.session : null;
+        if (previousSession != null && takeOver(previous, previousSession, received)) {
+            if (getServer().debugMode()) getServer().print("Resumed session of Client[" + getIP() + "]");
+            this.userData.putAll(previous.userData);
+            if (previous.isConnected()) previous.stopConnection();
+            final IOServerHandling ioServerHandling = getServer().getIoServerHandling();
+            if (ioServerHandling != null) ioServerHandling.sessionResumed(previous, this);
+            return;
+        }
+        final Session session = new Session(0, getServer().getReplayBufferCapacity());
+        session.setId(getServer().newSession(this));
+        synchronized (session) {
+            session.resume(0);
+            final PooledBuffer resumption = session.resumption(getServer().getBufferPool(), false);
+            if (!queueFrame(resumption)) resumption.release();
+            this.session = session;
+        }
+    }
+
+    /**
+     * Takes over the session of a previous connection of the client, and queues the messages the client did not
+     * receive yet after the answer to its resumption.
+     *
+     * @param previous the connection owning the session so far.
+     * @param session  the session of the previous connection.
+     * @param received the number of messages the client received on the session.
+     * @return true if the session was resumed, false if it expired or does not match what the client received.
+     * @throws IOException if the messages of the session could not be queued again.
+     */
+    private boolean takeOver(final ServerClientConnection previous, final Session session, final long received) throws IOException {
+        synchronized (session) {
+            if (previous.session != session || !getServer().takeOverSession(session.getId(), previous, this)) return false;
+            previous.session = null;
+            final List<PooledBuffer> frames = session.resume(received);
+            if (frames == null) {
+                getServer().removeSession(session.getId(), this);
+                session.close();
+                return false;
+            }
+            this.session = session;
+            final PooledBuffer resumption = session.resumption(getServer().getBufferPool(), true);
+            if (!queueFrame(resumption)) resumption.release();
+            for (int i = 0; i < frames.size(); i++) {
+                if (queueFrame(frames.get(i))) continue;
+                for (int j = i; j < frames.size(); j++) frames.get(j).release();
+                throw new IOException("Outbound queue to Client[" + getIP() + "] is full");
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Closes the session of this connection and releases the messages kept for it.
+     */
+    void closeSession() {
+        final Session session = this.session;
+        this.session = null;
+        if (session != null) session.close();
+    }
+
+    /**
+     * Queues a message for the client, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The message is written by the writer of the connection, which batches all queued messages into as few writes
+     * as possible. The caller does not wait for the message to be written, but is blocked while the messages waiting
+     * for the client exceed the high watermark of the server, unless it runs on an event loop.
+     * </p>
+     *
+     * @param type    the type id of the message, must not be negative.
+     * @param payload the payload of the message.
+     * @return true if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean send(final int type, final byte[] payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getServer().getBufferPool(), type, (byte) 0, payload, 0, payload.length));
+    }
+
+    /**
+     * Queues a message for the client, encoded by the codec registered for its class, when using `Protocol.FRAMED`.
+     * Can be called from any thread.
+     * <p>
+     * The message is encoded straight into a pooled buffer, without an intermediate payload array, and is sent as a
+     * frame of the type id its codec is registered for.
+     * </p>
+     *
+     * @param message the message to send.
+     * @return true if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message.
+     */
+    public boolean send(final Object message) throws IOException {
+        checkSend(getServer().getCodecRegistry().getType(message.getClass()));
+        return sendEncoded(getServer().getCodecRegistry().encode(getServer().getBufferPool(), message));
+    }
+
+    /**
+     * Queues a message for the client, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The payload is copied into a pooled buffer together with the frame header, so the given buffer, which may be
+     * direct, is neither consumed nor kept.
+     * </p>
+     *
+     * @param type    the type id of the message, must not be negative.
+     * @param payload the payload of the message, between its position and limit.
+     * @return true if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean send(final int type, final ByteBuffer payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getServer().getBufferPool(), type, (byte) 0, payload));
+    }
+
+    /**
+     * Queues a message for the client on a logical channel, when using `Protocol.FRAMED`. Can be called from any
+     * thread.
+     * <p>
+     * Answer a frame with the stream id it was received with, `Frame.getStreamId()`, so the answer reaches the channel
+     * that sent it instead of the handler of the client.
+     * </p>
+     *
+     * @param streamId the stream id of the channel, or 0 to send on none.
+     * @param type     the type id of the message, must not be negative.
+     * @param payload  the payload of the message.
+     * @return true if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean sendOnStream(final int streamId, final int type, final byte[] payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getServer().getBufferPool(), type, (byte) 0, streamId, payload, 0, payload.length));
+    }
+
+    /**
+     * Queues a message for the client on a logical channel, when using `Protocol.FRAMED`. Can be called from any
+     * thread. The given buffer is neither consumed nor kept.
+     *
+     * @param streamId the stream id of the channel, or 0 to send on none.
+     * @param type     the type id of the message, must not be negative.
+     * @param payload  the payload of the message, between its position and limit.
+     * @return true if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean sendOnStream(final int streamId, final int type, final ByteBuffer payload) throws IOException {
+        checkSend(type);
+        return sendEncoded(FrameCodec.encode(getServer().getBufferPool(), type, (byte) 0, streamId, payload));
+    }
+
+    /**
+     * Queues a message for the client on a logical channel, encoded by the codec registered for its class, when using
+     * `Protocol.FRAMED`. Can be called from any thread.
+     *
+     * @param streamId the stream id of the channel, or 0 to send on none.
+     * @param message  the message to send.
+     * @return true if the message was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message.
+     */
+    public boolean sendOnStream(final int streamId, final Object message) throws IOException {
+        checkSend(getServer().getCodecRegistry().getType(message.getClass()));
+        return sendEncoded(getServer().getCodecRegistry().encode(getServer().getBufferPool(), message, streamId));
+    }
+
+    /**
+     * Queues the response to a request of the client, when using `Protocol.FRAMED`. Can be called from any thread, so
+     * a request can be answered after its handler returned.
+     *
+     * @param correlationId the correlation id of the request, `Frame.getStreamId()` of the request frame.
+     * @param type          the type id of the response, must not be negative.
+     * @param payload       the payload of the response.
+     * @return true if the response was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean reply(final int correlationId, final int type, final byte[] payload) throws IOException {
+        checkReply(correlationId, type);
+        return sendEncoded(FrameCodec.encode(getServer().getBufferPool(), type, Frame.FLAG_RESPONSE, correlationId, payload, 0, payload.length));
+    }
+
+    /**
+     * Queues the response to a request of the client, encoded by the codec registered for its class, when using
+     * `Protocol.FRAMED`. Can be called from any thread, so a request can be answered after its handler returned.
+     *
+     * @param correlationId the correlation id of the request, as handed to `IOServerHandling.request`.
+     * @param message       the response to send.
+     * @return true if the response was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message.
+     */
+    public boolean reply(final int correlationId, final Object message) throws IOException {
+        checkReply(correlationId, getServer().getCodecRegistry().getType(message.getClass()));
+        return sendEncoded(getServer().getCodecRegistry().encode(getServer().getBufferPool(), message, Frame.FLAG_RESPONSE, correlationId));
+    }
+
+    /**
+     * Queues the response to a received request, when using `Protocol.FRAMED`. Must be called while the request frame
+     * is still valid, in its handler; use the correlation id to answer later.
+     *
+     * @param request the request frame.
+     * @param type    the type id of the response, must not be negative.
+     * @param payload the payload of the response.
+     * @return true if the response was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     * @throws IllegalArgumentException if the frame is not a request.
+     */
+    public boolean reply(final Frame request, final int type, final byte[] payload) throws IOException {
+        if (!request.isRequest()) throw new IllegalArgumentException("Frame of type " + request.getType() + " is not a request");
+        return reply(request.getStreamId(), type, payload);
+    }
+
+    /**
+     * Checks that a response can be sent through this connection.
+     *
+     * @param correlationId the correlation id of the request.
+     * @param type          the type id of the response.
+     * @throws IOException if the connection is closed.
+     */
+    private void checkReply(final int correlationId, final int type) throws IOException {
+        if (correlationId == 0) throw new IllegalArgumentException("Invalid correlation id: " + correlationId);
+        checkSend(type);
+    }
+
+    /**
+     * Sends a message to the client as a datagram, when datagrams are enabled. Can be called from any thread.
+     * <p>
+     * The datagram is handed to the kernel right away, and may be lost, duplicated or reordered; it is not kept for a
+     * resumable session either. Datagrams can be sent once the client sent its first datagram, which tells the
+     * address it receives them on. Keep the payload below the MTU of the path, around 1400 bytes.
+     * </p>
+     *
+     * @param type    the type id of the message, must not be negative.
+     * @param payload the payload of the message, at most `DatagramCodec.MAX_PAYLOAD_SIZE` bytes.
+     * @return true if the datagram was sent, false if datagrams are disabled or the client did not send one yet.
+     * @throws IOException if the connection is closed or the datagram could not be sent.
+     */
+    public boolean sendDatagram(final int type, final byte[] payload) throws IOException {
+        final SocketAddress address = checkDatagram(type);
+        if (address == null) return false;
+        sendDatagram(DatagramCodec.encode(getServer().getBufferPool(), this.datagramToken, this.datagramSequence.incrementAndGet(), type, payload, 0, payload.length), address);
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Sends a message to the client as a datagram, encoded by the codec registered for its class, when datagrams are
+     * enabled. Can be called from any thread.
+     *
+     * @param message the message to send.
+     * @return true if the datagram was sent, false if datagrams are disabled or the client did not send one yet.
+     * @throws IOException if the connection is closed or the datagram could not be sent.
+     * @throws IllegalArgumentException if no codec is registered for the class of the message, or it does not fit into
+     *                                  a datagram.
+     */
+    public boolean sendDatagram(final Object message) throws IOException {
+        final SocketAddress address = checkDatagram(getServer().getCodecRegistry().getType(message.getClass()));
+        if (address == null) return false;
+        final PooledBuffer frame = getServer().getCodecRegistry().encode(getServer().getBufferPool(), message);
+        final PooledBuffer datagram;
+        try {
+            datagram = DatagramCodec.encode(getServer().getBufferPool(), this.datagramToken, this.datagramSequence.incrementAndGet(), frame);
+        } finally {
+            frame.release();
+        }
+        sendDatagram(datagram, address);
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Checks that a datagram of the given type can be sent to the client.
+     *
+     * @param type the type id of the message.
+     * @return the address the client receives datagrams on, or null if it is not known yet.
+     * @throws IOException if the connection is closed.
+     */
+    private SocketAddress checkDatagram(final int type) throws IOException {
+        if (type < 0) throw new IllegalArgumentException("Negative message types are reserved: " + type);
+        if (!isConnected()) throw new IOException("Connection to Client[" + getIP() + "] is closed");
+        return getServer().getDatagramTransport() == null ? null : this.datagramAddress;
+    }
+
+    /**
+     * Sends an encoded datagram on the datagram channel of the server.
+     *
+     * @param datagram the encoded datagram, released once it was sent.
+     * @param address  the address the client receives datagrams on.
+     * @throws IOException if the datagram could not be sent.
+     */
+    private void sendDatagram(final PooledBuffer datagram, final SocketAddress address) throws IOException {
+        final DatagramTransport datagramTransport = getServer().getDatagramTransport();
+        if (datagramTransport == null) {
+            datagram.release();
+            return;
+        }
+        datagramTransport.send(datagram, address);
+    }
+
+    /**
+     * Queues a whole file for the client, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The file is sent as a sequence of frames of the given type, all but the last flagged with
+     * `Frame.FLAG_CONTINUED`, and is closed once it was sent. In `ServerMode.NIO` the file is handed to the socket
+     * with `FileChannel.transferTo`, without copying its content through the heap.
+     * </p>
+     *
+     * @param type the type id of the frames, must not be negative.
+     * @param path the file to send.
+     * @return true if the file was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed or the file could not be opened.
+     * @throws IllegalStateException if the client resumes its session, since files cannot be sent again.
+     */
+    public boolean sendFile(final int type, final Path path) throws IOException {
+        checkSend(type);
+        final FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        return sendRegion(new FileRegion(type, fileChannel, 0, fileChannel.size(), true));
+    }
+
+    /**
+     * Queues a part of a file for the client, when using `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The region is sent like `sendFile(int, Path)`, but the file stays open and must not be closed before the region
+     * was written.
+     * </p>
+     *
+     * @param type        the type id of the frames, must not be negative.
+     * @param fileChannel the file to send.
+     * @param position    the position of the region within the file.
+     * @param count       the number of bytes to send.
+     * @return true if the region was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean sendFile(final int type, final FileChannel fileChannel, final long position, final long count) throws IOException {
+        checkSend(type);
+        return sendRegion(new FileRegion(type, fileChannel, position, count, false));
+    }
+
+    /**
+     * Queues a memory-mapped segment of a file, or any other large buffer, for the client, when using
+     * `Protocol.FRAMED`. Can be called from any thread.
+     * <p>
+     * The buffer is written to the socket directly instead of being copied into a pooled buffer first, and is split
+     * into frames like `sendFile(int, Path)`. It is not consumed, and must not be modified before it was written.
+     * </p>
+     *
+     * @param type         the type id of the frames, must not be negative.
+     * @param mappedBuffer the buffer to send, between its position and limit.
+     * @return true if the buffer was queued, false if the outbound queue of the connection is full.
+     * @throws IOException if the connection is closed.
+     */
+    public boolean sendMapped(final int type, final ByteBuffer mappedBuffer) throws IOException {
+        checkSend(type);
+        return sendRegion(new FileRegion(type, mappedBuffer));
+    }
+
+    /**
+     * Checks that a message of the given type can be sent through this connection, and waits while the outbound queue
+     * is above its high watermark. Threads of the event loops are never blocked.
+     *
+     * @param type the type id of the message.
+     * @throws IOException if the connection is closed.
+     */
+    private void checkSend(final int type) throws IOException {
+        if (getServer().getProtocol() != Protocol.FRAMED) throw new IllegalStateException("Sending messages requires Protocol.FRAMED");
+        if (type < 0) throw new IllegalArgumentException("Negative message types are reserved: " + type);
+        final Session session = this.session;
+        if (!isConnected() && (session == null || session.isClosed())) throw new IOException("Connection to Client[" + getIP() + "] is closed");
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        if (outboundQueue == null || this.channelHandler != null && getServer().getEventLoopGroup().inEventLoop()) return;
+        outboundQueue.awaitWritable();
+    }
+
+    /**
+     * Queues a file region, and releases it if it could not be queued.
+     *
+     * @param fileRegion the file region.
+     * @return true if the region was queued, false if the outbound queue of the connection is full.
+     */
+    private boolean sendRegion(final FileRegion fileRegion) {
+        if (this.session != null) {
+            fileRegion.release();
+            throw new IllegalStateException("Files cannot be sent on a resumable session");
+        }
+        final boolean queued;
+        if (this.channelHandler != null) {
+            queued = this.channelHandler.send(fileRegion);
+        } else {
+            final FrameWriter frameWriter = this.frameWriter;
+            queued = frameWriter != null && frameWriter.send(fileRegion);
+        }
+        if (!queued) {
+            fileRegion.release();
+            return false;
+        }
+        this.metrics.messageSent();
+        return true;
+    }
+
+    /**
+     * Queues an encoded frame owned by the caller, compressed if it is large enough, and releases it if it could not be
+     * queued.
+     *
+     * @param encoded the encoded frame.
+     * @return true if the frame was queued, false if the outbound queue of the connection is full.
+     */
+    private boolean sendEncoded(final PooledBuffer encoded) {
+        final PooledBuffer frame = this.frameCompressor.compress(getServer().getBufferPool(), encoded);
+        if (sendFrame(frame)) return true;
+        frame.release();
+        return false;
+    }
+
+    /**
+     * Queues the hello frame announcing the features of this connection, when using `Protocol.FRAMED`.
+     */
+    private void sendHello() {
+        int features = getServer().getSessionTimeout() > 0 ? FrameCodec.FEATURE_SESSIONS : 0;
+        if (getServer().getDatagramTransport() != null) features |= FrameCodec.FEATURE_DATAGRAMS;
+        final PooledBuffer hello = this.frameCompressor.hello(getServer().getBufferPool(), features);
+        if (!queueFrame(hello)) hello.release();
+    }
+
+    /**
+     * Sends an encoded frame to the client, through the session of the connection if it has one. The frame may be a
+     * duplicate sharing its content with other connections, and is released once it was written and, on a session,
+     * acknowledged. A frame that was not queued still belongs to the caller. While the session waits to be resumed the
+     * frame is only kept, and written once it is.
+     *
+     * @param frame the encoded frame, with its own position and limit.
+     * @return true if the frame was queued, false if the outbound queue or replay buffer of the connection is full or
+     * it is closed.
+     */
+    boolean sendFrame(final PooledBuffer frame) {
+        final Session session = this.session;
+        final boolean queued;
+        if (session == null) {
+            queued = queueFrame(frame);
+        } else {
+            synchronized (session) {
+                queued = this.session != session || session.isClosed() ? queueFrame(frame) : session.send(frame, this::queueFrame);
+            }
+        }
+        if (queued) this.metrics.messageSent();
+        return queued;
+    }
+
+    /**
+     * Queues an encoded frame with the writer or the event loop driving the connection.
+     *
+     * @param frame the encoded frame, released once it was written.
+     * @return true if the frame was queued, false if the outbound queue of the connection is full or it is closed.
+     */
+    private boolean queueFrame(final PooledBuffer frame) {
+        if (this.channelHandler != null) return this.channelHandler.send(frame);
+        final FrameWriter frameWriter = this.frameWriter;
+        return frameWriter != null && frameWriter.send(frame);
+    }
+
+    /**
+     * Flushes the messages written so far to the client, regardless of the flush policy of the server.
+     *
+     * @throws IOException if there is an error writing to the socket.
+     */
+    public void flush() throws IOException {
+        if (this.channelHandler != null) {
+            this.channelHandler.flush();
+            return;
+        }
+        if (this.frameWriter != null) this.frameWriter.flush();
+    }
+
+    /**
+     * Closes the connection once its writer could not write to the socket.
+     *
+     * @param exception the exception thrown by the socket.
+     */
+    private void writeFailed(final IOException exception) {
+        if (!isConnected()) return;
+        getServer().warning("Lost connection to Client[" + getIP() + "]");
+        exception.printStackTrace();
+        stopConnection();
+    }
+
     /**
      * Handles incoming data from the input stream.
      *
@@ -65,8 +948,11 @@ public final class ServerClientConnection {
      */
     private void inputStream(final DataInputStream dataInputStream) throws IOException {
         dataInputStream.readByte();
+        this.metrics.messageReceived();
         if (getServer().getIoServerHandling() == null) return;
+        final long start = System.nanoTime();
         getServer().getIoServerHandling().inputStream(dataInputStream, this);
+        this.metrics.inputStreamHandled(System.nanoTime() - start);
     }
 
     /**
@@ -77,8 +963,11 @@ public final class ServerClientConnection {
      */
     private void outputStream(final DataOutputStream dataOutputStream) throws IOException {
         dataOutputStream.writeByte((byte) (0));
+        this.metrics.messageSent();
         if (getServer().getIoServerHandling() == null) return;
+        final long start = System.nanoTime();
         getServer().getIoServerHandling().outputStream(dataOutputStream, this);
+        this.metrics.outputStreamHandled(System.nanoTime() - start);
     }
 
     /**
@@ -95,6 +984,27 @@ public final class ServerClientConnection {
      */
     public void startConnection() {
         if (getServer().debugMode()) getServer().print("Starting connection for Client[" + getIP() + "]");
+        if (getServer().getIdleTimeout() > 0) {
+            this.lastRead    = System.nanoTime();
+            this.lastWritten = this.lastRead;
+            scheduleIdleCheck();
+        }
+        if (this.channelHandler != null) {
+            this.channelHandler.getEventLoop().register(this.channelHandler);
+            if (getServer().getProtocol() == Protocol.FRAMED) sendHello();
+            return;
+        }
+        if (getServer().getProtocol() == Protocol.FRAMED) {
+            try {
+                this.frameWriter = new FrameWriter(new MeteredOutputStream(getSocket().getOutputStream(), this.metrics), getServer().createOutboundQueue(), getServer().getWriteBufferSize(),
+                        getServer().getFlushPolicy(), getServer().getFlushInterval(), getServer().getHeartbeatInterval(), this::writeFailed);
+                this.frameWriter.start(getServer().getThreadFactory(), "Client[" + getIP() + "]-Writer");
+                sendHello();
+            } catch (final IOException exception) {
+                getServer().warning("Could not create IO stream for client[" + getIP() + "]");
+                exception.printStackTrace();
+            }
+        }
         getThread().start();
     }
 
@@ -108,7 +1018,63 @@ public final class ServerClientConnection {
     public void stopConnection() {
         if (getServer().debugMode()) getServer().print("Stopping connection for Client[" + getIP() + "]");
         getServer().getServerClientMatrix().remove(this);
+        if (this.frameWriter != null) this.frameWriter.stop();
+        if (this.channelHandler != null) this.channelHandler.close();
         closeConnection();
+        if (this.thread != null) LockSupport.unpark(this.thread);
+        final HashedWheelTimer.Timeout idleCheck = this.idleCheck;
+        if (idleCheck != null) idleCheck.cancel();
+        if (this.datagramToken != 0) getServer().removeDatagramToken(this.datagramToken, this);
+        suspendSession();
+    }
+
+    /**
+     * Schedules the next check whether the connection is idle, after half of the idle timeout.
+     */
+    private void scheduleIdleCheck() {
+        this.idleCheck = HashedWheelTimer.getDefault().newTimeout(this::checkIdle, Math.max(getServer().getIdleTimeout() / 2, 1), TimeUnit.MILLISECONDS, getServer()::timeoutFailed);
+        if (!isConnected()) this.idleCheck.cancel();
+    }
+
+    /**
+     * Closes the connection if nothing was read from the client for the idle timeout, or if messages are waiting for
+     * the client and nothing could be written to it for as long. Runs on the timer thread, and tells progress from the
+     * byte counters of the connection, so reading and writing pay nothing for it.
+     */
+    private void checkIdle() {
+        if (!isConnected()) return;
+        final long now = System.nanoTime();
+        final long bytesIn = this.metrics.getBytesIn();
+        final long bytesOut = this.metrics.getBytesOut();
+        if (bytesIn != this.lastBytesIn) {
+            this.lastBytesIn = bytesIn;
+            this.lastRead    = now;
+        }
+        if (bytesOut != this.lastBytesOut || getQueuedMessages() == 0) {
+            this.lastBytesOut = bytesOut;
+            this.lastWritten  = now;
+        }
+        final long idleTimeout = TimeUnit.MILLISECONDS.toNanos(getServer().getIdleTimeout());
+        if (now - this.lastRead < idleTimeout && now - this.lastWritten < idleTimeout) {
+            scheduleIdleCheck();
+            return;
+        }
+        getServer().warning("Closing " + (now - this.lastRead >= idleTimeout ? "idle" : "unresponsive") + " connection to Client[" + getIP() + "]");
+        stopConnection();
+    }
+
+    /**
+     * Suspends the session of this connection once it was lost, and schedules its expiry. Messages sent until the
+     * client resumed the session are kept for it.
+     */
+    private void suspendSession() {
+        final Session session = this.session;
+        if (session == null) return;
+        synchronized (session) {
+            if (this.session != session) return;
+            session.suspend();
+        }
+        getServer().expireSession(this, session);
     }
 
     /**
@@ -127,8 +1093,26 @@ public final class ServerClientConnection {
     }
 
     /**
-     * Pauses or unpauses the connection for the client.
+     * Pauses reading the connection while too many of its messages are waiting for a handler thread, or resumes it once
+     * they were handled. Independent of `pauseConnection`.
+     *
+     * @param backlogged true to pause reading, false to resume it.
+     */
+    private void setBacklogged(final boolean backlogged) {
+        this.backlogged = backlogged;
+        if (this.channelHandler != null) {
+            this.channelHandler.pausedChanged();
+        } else if (!backlogged && this.thread != null) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    /**
+     * Pauses or unpauses the connection for the client. Can be called from any thread, including the handler.
      * <p>
+     * While paused, nothing is read from the socket and no further messages are handed to the handler. The client can
+     * keep sending until the TCP window is full, and is then slowed down by the kernel, so a slow consumer throttles a
+     * fast producer without buffering its messages. Messages sent to the client are still written.
      * If debug mode is enabled, a message is printed to indicate if the connection is being paused or unpaused.
      * </p>
      *
@@ -137,6 +1121,20 @@ public final class ServerClientConnection {
     public void pauseConnection(final boolean pause) {
         this.paused = pause;
         if (getServer().debugMode()) getServer().print((pause ? "Pausing" : "UnPausing") + " connection for Client[" + getIP() + "] ");
+        if (this.channelHandler != null) {
+            this.channelHandler.pausedChanged();
+        } else if (!pause && this.thread != null) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    /**
+     * Returns the compressor of this connection.
+     *
+     * @return The frame compressor.
+     */
+    FrameCompressor getFrameCompressor() {
+        return this.frameCompressor;
     }
 
     /**
@@ -148,6 +1146,95 @@ public final class ServerClientConnection {
         return getSocket().getInetAddress();
     }
 
+    /**
+     * Returns the id of this connection, unique within its server.
+     *
+     * @return The id of this connection.
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the metrics of this connection.
+     *
+     * @return the connection metrics.
+     */
+    public ConnectionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns whether datagrams can be sent to the client, because it sent one and told the address it receives them
+     * on.
+     *
+     * @return True if datagrams can be sent, false otherwise.
+     */
+    public boolean isDatagramReady() {
+        return this.datagramAddress != null && getServer().getDatagramTransport() != null;
+    }
+
+    /**
+     * Returns the token the client sends its datagrams with.
+     *
+     * @return the token, or 0 if datagrams were not offered to the client.
+     */
+    long getDatagramToken() {
+        return this.datagramToken;
+    }
+
+    /**
+     * Returns the number of datagrams of the client that were dropped, because they were stale or reading the
+     * connection was backlogged.
+     *
+     * @return the number of dropped datagrams.
+     */
+    public long getDroppedDatagrams() {
+        return this.droppedDatagrams;
+    }
+
+    /**
+     * Returns the number of sent messages waiting to be written to the client.
+     *
+     * @return the number of queued messages.
+     */
+    public int getQueuedMessages() {
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        return outboundQueue == null ? 0 : outboundQueue.size();
+    }
+
+    /**
+     * Returns whether messages can be sent to the client without waiting, because the messages already waiting for it
+     * are below the high watermark of the server. Handlers running on an event loop, which are never blocked by
+     * `send`, can check this and pause their own connection until the client caught up.
+     *
+     * @return True if the connection is writable, false otherwise.
+     */
+    public boolean isWritable() {
+        final OutboundQueue outboundQueue = getOutboundQueue();
+        return outboundQueue == null || outboundQueue.isWritable();
+    }
+
+    /**
+     * Returns the queue of messages waiting to be written to the client.
+     *
+     * @return The outbound queue, or null if the connection does not use `Protocol.FRAMED` or was not started.
+     */
+    private OutboundQueue getOutboundQueue() {
+        if (this.channelHandler != null) return this.channelHandler.getOutboundQueue();
+        final FrameWriter frameWriter = this.frameWriter;
+        return frameWriter == null ? null : frameWriter.getOutboundQueue();
+    }
+
+    /**
+     * Returns the remote address of the client.
+     *
+     * @return The remote address of the client, or null if the socket was not connected.
+     */
+    public SocketAddress getRemoteAddress() {
+        return this.remoteAddress;
+    }
+
     /**
      * Returns whether the connection for the client is paused or not.
      *
@@ -157,6 +1244,16 @@ public final class ServerClientConnection {
         return this.paused;
     }
 
+    /**
+     * Returns whether reading the connection is paused, either by `pauseConnection` or because too many of its
+     * messages are waiting for a handler thread.
+     *
+     * @return True if nothing is read from the client, false otherwise.
+     */
+    boolean isReadingPaused() {
+        return this.paused || this.backlogged;
+    }
+
     /**
      * Returns the server object associated with this client connection.
      *
@@ -178,10 +1275,25 @@ public final class ServerClientConnection {
     /**
      * Returns the thread object associated with this client connection.
      *
-     * @return The thread object.
+     * @return The thread object, or null if the connection is driven by an event loop.
      */
     public Thread getThread() {
         return thread;
     }
 
+    /**
+     * Calls the handler for received messages on a handler thread.
+     */
+    @FunctionalInterface
+    private interface HandlerTask {
+
+        /**
+         * Calls the handler.
+         *
+         * @param ioServerHandling the handler of the server.
+         * @throws IOException if there is an error in the handler.
+         */
+        void run(IOServerHandling ioServerHandling) throws IOException;
+    }
+
 }
@@ -0,0 +1,247 @@
+package me.bredo.network.server;
+
+import me.bredo.network.buffer.BufferPool;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single thread of the NIO server engine.
+ * <p>
+ * Each event loop owns one `Selector` and drives any number of non-blocking client connections registered with it.
+ * Work submitted from other threads is queued and executed by the loop between two selections, so the state of a
+ * connection is only ever touched by the thread of its event loop.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ServerEventLoop {
+
+    private final    Server                      server;
+    private final    Selector                    selector;
+    private final    Thread                      thread;
+    private final    Queue<Runnable>             tasks;
+    private final    Queue<ServerChannelHandler> pendingFlushes;
+    private volatile boolean                     running;
+    private          long                        nextHeartbeatCheck;
+
+    /**
+     * Creates a new ServerEventLoop instance.
+     *
+     * @param server the server instance, whose thread factory creates the event loop thread.
+     * @param name   the name of the event loop thread.
+     * @throws IOException if the selector could not be opened.
+     */
+    public ServerEventLoop(final Server server, final String name) throws IOException {
+        this.server         = server;
+        this.selector       = Selector.open();
+        this.thread         = server.getThreadFactory().newThread(this::loop);
+        this.thread.setName(name);
+        this.tasks          = new ConcurrentLinkedQueue<>();
+        this.pendingFlushes = new ArrayDeque<>();
+    }
+
+    /**
+     * Starts the event loop thread.
+     */
+    public void start() {
+        if (getServer().debugMode()) getServer().print("Starting event loop '" + getThread().getName() + "'");
+        this.running = true;
+        getThread().start();
+    }
+
+    /**
+     * Stops the event loop. All connections still registered with it are closed by the loop thread before it exits.
+     */
+    public void shutdown() {
+        if (getServer().debugMode()) getServer().print("Stopping event loop '" + getThread().getName() + "'");
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    /**
+     * Queues a task to be executed on the event loop thread.
+     *
+     * @param task the task to execute.
+     */
+    public void execute(final Runnable task) {
+        this.tasks.add(task);
+        if (!inEventLoop()) this.selector.wakeup();
+    }
+
+    /**
+     * Returns whether the calling thread is the thread of this event loop.
+     *
+     * @return true if called from the event loop thread, false otherwise.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == getThread();
+    }
+
+    /**
+     * Returns whether the event loop is running and still executes queued tasks.
+     *
+     * @return true if the event loop is running, false otherwise.
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Registers the channel of a client connection with this event loop.
+     *
+     * @param serverChannelHandler the handler of the connection to register.
+     */
+    void register(final ServerChannelHandler serverChannelHandler) {
+        execute(() -> serverChannelHandler.register(this.selector));
+    }
+
+    /**
+     * The method that is executed in the thread to continuously select and dispatch ready connections.
+     */
+    private void loop() {
+        BufferPool.enableThreadCache();
+        final long heartbeatInterval = TimeUnit.MILLISECONDS.toNanos(getServer().getHeartbeatInterval());
+        this.nextHeartbeatCheck = System.nanoTime() + heartbeatInterval / 2;
+        while (this.running) {
+            try {
+                select(heartbeatInterval);
+                runTasks();
+                processSelectedKeys();
+                flushPending();
+                if (heartbeatInterval > 0) heartbeats(heartbeatInterval);
+            } catch (final IOException exception) {
+                getServer().warning("Event loop '" + getThread().getName() + "' could not select");
+                exception.printStackTrace();
+            }
+        }
+        closeConnections();
+        BufferPool.releaseThreadCache();
+    }
+
+    /**
+     * Waits for ready connections or queued tasks, but with heartbeats never longer than until the next heartbeat
+     * check is due. Tasks queued by the loop thread itself, such as releasing a connection closed while handling it,
+     * do not wake up the selector, so the loop only polls while such tasks are waiting.
+     *
+     * @param heartbeatInterval the heartbeat interval in nanoseconds, or 0 if no heartbeats are sent.
+     * @throws IOException if the selector fails.
+     */
+    private void select(final long heartbeatInterval) throws IOException {
+        if (!this.tasks.isEmpty()) {
+            this.selector.selectNow();
+            return;
+        }
+        if (heartbeatInterval <= 0) {
+            this.selector.select();
+            return;
+        }
+        final long timeout = TimeUnit.NANOSECONDS.toMillis(this.nextHeartbeatCheck - System.nanoTime());
+        if (timeout > 0) {
+            this.selector.select(timeout);
+        } else {
+            this.selector.selectNow();
+        }
+    }
+
+    /**
+     * Lets every connection send a heartbeat if it was idle for the heartbeat interval. Connections are checked twice
+     * per interval, so an idle connection sends its heartbeat at most one and a half intervals after its last write.
+     *
+     * @param heartbeatInterval the heartbeat interval in nanoseconds.
+     */
+    private void heartbeats(final long heartbeatInterval) {
+        final long now = System.nanoTime();
+        if (now - this.nextHeartbeatCheck < 0) return;
+        this.nextHeartbeatCheck = now + heartbeatInterval / 2;
+        for (final SelectionKey selectionKey : this.selector.keys()) {
+            ((ServerChannelHandler) selectionKey.attachment()).heartbeat(now, heartbeatInterval);
+        }
+    }
+
+    /**
+     * Marks a connection to be flushed at the end of the current loop iteration, so that all output produced during the
+     * iteration is written together. Must be called on the event loop thread.
+     *
+     * @param serverChannelHandler the handler of the connection to flush.
+     */
+    void flushLater(final ServerChannelHandler serverChannelHandler) {
+        this.pendingFlushes.add(serverChannelHandler);
+    }
+
+    /**
+     * Flushes every connection that produced output during the current loop iteration.
+     */
+    private void flushPending() {
+        ServerChannelHandler serverChannelHandler;
+        while ((serverChannelHandler = this.pendingFlushes.poll()) != null) serverChannelHandler.flush();
+    }
+
+    /**
+     * Executes all tasks queued since the last selection.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (final RuntimeException exception) {
+                getServer().warning("Event loop '" + getThread().getName() + "' could not run task");
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Dispatches every selected key to the handler of its connection.
+     */
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            final SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+            ((ServerChannelHandler) selectionKey.attachment()).handle(selectionKey);
+        }
+    }
+
+    /**
+     * Closes every connection still registered with this event loop, runs the tasks left behind by closing them, and
+     * closes the selector itself.
+     */
+    private void closeConnections() {
+        for (final SelectionKey selectionKey : this.selector.keys()) {
+            ((ServerChannelHandler) selectionKey.attachment()).getServerClientConnection().stopConnection();
+        }
+        runTasks();
+        try {
+            this.selector.close();
+        } catch (final IOException exception) {
+            getServer().warning("Could not close selector of event loop '" + getThread().getName() + "'");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the server object associated with this event loop.
+     *
+     * @return The server object.
+     */
+    public Server getServer() {
+        return this.server;
+    }
+
+    /**
+     * Returns the thread object associated with this event loop.
+     *
+     * @return The thread object.
+     */
+    public Thread getThread() {
+        return this.thread;
+    }
+}
@@ -0,0 +1,89 @@
+package me.bredo.network.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool of `ServerEventLoop`s used by a server running in `ServerMode.NIO`.
+ * <p>
+ * New connections are spread over the event loops in round-robin order.
+ * </p>
+ *
+ * @author bredo
+ */
+public final class ServerEventLoopGroup {
+
+    private final Server            server;
+    private final ServerEventLoop[] eventLoops;
+    private final AtomicInteger     index;
+
+    /**
+     * Creates a new ServerEventLoopGroup instance.
+     *
+     * @param server  the server instance.
+     * @param threads the number of event loops in the group.
+     * @throws IOException if the selector of an event loop could not be opened.
+     */
+    public ServerEventLoopGroup(final Server server, final int threads) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("An event loop group needs at least one thread");
+        this.server     = server;
+        this.eventLoops = new ServerEventLoop[threads];
+        this.index      = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            this.eventLoops[i] = new ServerEventLoop(server, "Server-EventLoop-" + i);
+        }
+    }
+
+    /**
+     * Starts every event loop of the group.
+     */
+    public void start() {
+        for (final ServerEventLoop eventLoop : this.eventLoops) eventLoop.start();
+    }
+
+    /**
+     * Stops every event loop of the group.
+     */
+    public void shutdown() {
+        for (final ServerEventLoop eventLoop : this.eventLoops) eventLoop.shutdown();
+    }
+
+    /**
+     * Returns the event loop the next connection should be registered with.
+     *
+     * @return the next event loop.
+     */
+    public ServerEventLoop next() {
+        return this.eventLoops[Math.floorMod(this.index.getAndIncrement(), this.eventLoops.length)];
+    }
+
+    /**
+     * Returns whether the calling thread is the thread of any event loop of this group.
+     *
+     * @return true if called from an event loop thread, false otherwise.
+     */
+    public boolean inEventLoop() {
+        for (final ServerEventLoop eventLoop : this.eventLoops) {
+            if (eventLoop.inEventLoop()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the server object associated with this event loop group.
+     *
+     * @return The server object.
+     */
+    public Server getServer() {
+        return this.server;
+    }
+
+    /**
+     * Returns the event loops of this group.
+     *
+     * @return the event loops of this group.
+     */
+    public ServerEventLoop[] getEventLoops() {
+        return this.eventLoops;
+    }
+}
@@ -0,0 +1,27 @@
+package me.bredo.network.server;
+
+/**
+ * The engine a `Server` uses to drive its client connections.
+ *
+ * @author bredo
+ */
+public enum ServerMode {
+
+    /**
+     * Every accepted client gets its own thread, which blocks on the socket streams.
+     * This is the classic model and the default.
+     */
+    BLOCKING,
+
+    /**
+     * Accepted clients are switched to non-blocking `SocketChannel`s and shared between a small pool of
+     * `ServerEventLoop` threads, each driving many connections through a `Selector`.
+     * <p>
+     * The `IOServerHandling` callbacks run on the event loop thread and must therefore never block.
+     * Input is only handed to the handler once bytes are available; when the handler reads past the bytes
+     * received so far, the read is rolled back and `inputStream` is called again with the same data once more
+     * bytes have arrived. Handlers should therefore read their complete message before acting on it.
+     * </p>
+     */
+    NIO
+}
@@ -0,0 +1,165 @@
+package me.bredo.network.protocol;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the expiry, cancellation and accounting of `HashedWheelTimer`, on a small wheel of 8 ticks of 10 milliseconds,
+ * so that a single turn of the wheel takes 80 milliseconds.
+ *
+ * @author bredo
+ */
+class HashedWheelTimerTest {
+
+    private static final long TICK  = 10;
+    private static final int  TICKS = 8;
+    private static final long AWAIT = 5000;
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void setUp() {
+        this.timer = new HashedWheelTimer(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }, "Test-Timer", TICK, TICKS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.timer.stop();
+    }
+
+    @Test
+    void expiresTimeoutsInDeadlineOrder() throws InterruptedException {
+        final List<Integer> expired = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        for (final int delay : new int[]{50, 10, 30}) {
+            this.timer.newTimeout(() -> {
+                expired.add(delay);
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(latch.await(AWAIT, TimeUnit.MILLISECONDS));
+        assertEquals(List.of(10, 30, 50), expired);
+    }
+
+    @Test
+    void doesNotExpireBeforeItsDeadline() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final HashedWheelTimer.Timeout timeout = this.timer.newTimeout(latch::countDown, 35, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(AWAIT, TimeUnit.MILLISECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 35);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void expiresDeadlinesSeveralTurnsAhead() throws InterruptedException {
+        final List<String> expired = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final long start = System.nanoTime();
+        final long delay = 3 * TICK * TICKS + 2 * TICK;
+        this.timer.newTimeout(() -> {
+            expired.add("far");
+            latch.countDown();
+        }, delay, TimeUnit.MILLISECONDS);
+        this.timer.newTimeout(() -> {
+            expired.add("near");
+            latch.countDown();
+        }, 2 * TICK, TimeUnit.MILLISECONDS);
+        Thread.sleep(TICK * TICKS);
+        assertEquals(List.of("near"), expired);
+        assertTrue(latch.await(AWAIT, TimeUnit.MILLISECONDS));
+        assertEquals(List.of("near", "far"), expired);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= delay);
+    }
+
+    @Test
+    void cancelBeforeTransferSkipsTheTask() throws InterruptedException {
+        final AtomicBoolean ran = new AtomicBoolean();
+        final HashedWheelTimer.Timeout timeout = this.timer.newTimeout(() -> ran.set(true), 3 * TICK, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+        awaitPendingTimeouts(0);
+        Thread.sleep(6 * TICK);
+        assertFalse(ran.get());
+        assertEquals(0, this.timer.getPendingTimeouts());
+    }
+
+    @Test
+    void cancelAfterTransferSkipsTheTask() throws InterruptedException {
+        final AtomicBoolean ran = new AtomicBoolean();
+        final HashedWheelTimer.Timeout timeout = this.timer.newTimeout(() -> ran.set(true), 2 * TICK * TICKS, TimeUnit.MILLISECONDS);
+        Thread.sleep(5 * TICK);
+        assertEquals(1, this.timer.getPendingTimeouts());
+        assertTrue(timeout.cancel());
+        awaitPendingTimeouts(0);
+        Thread.sleep(3 * TICK * TICKS);
+        assertFalse(ran.get());
+        assertFalse(timeout.isExpired());
+        assertEquals(0, this.timer.getPendingTimeouts());
+    }
+
+    @Test
+    void countsEveryTimeoutOnceWhetherExpiredOrCancelled() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final HashedWheelTimer.Timeout cancelledEarly = this.timer.newTimeout(() -> {
+        }, 4 * TICK, TimeUnit.MILLISECONDS);
+        final HashedWheelTimer.Timeout cancelledLate = this.timer.newTimeout(() -> {
+        }, TICK * TICKS, TimeUnit.MILLISECONDS);
+        this.timer.newTimeout(latch::countDown, TICK, TimeUnit.MILLISECONDS);
+        this.timer.newTimeout(latch::countDown, 3 * TICK, TimeUnit.MILLISECONDS);
+        assertEquals(4, this.timer.getPendingTimeouts());
+        cancelledEarly.cancel();
+        assertTrue(latch.await(AWAIT, TimeUnit.MILLISECONDS));
+        cancelledLate.cancel();
+        awaitPendingTimeouts(0);
+        Thread.sleep(2 * TICK * TICKS);
+        assertEquals(0, this.timer.getPendingTimeouts());
+    }
+
+    @Test
+    void survivesFailingTasks() throws InterruptedException {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Error error = new AssertionError("failed on purpose");
+        this.timer.newTimeout(() -> {
+            throw error;
+        }, TICK, TimeUnit.MILLISECONDS, failure::set);
+        this.timer.newTimeout(latch::countDown, 3 * TICK, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(AWAIT, TimeUnit.MILLISECONDS));
+        assertSame(error, failure.get());
+        assertEquals(0, this.timer.getPendingTimeouts());
+    }
+
+    /**
+     * Waits until the timer counts the given number of pending timeouts.
+     *
+     * @param expected the number of pending timeouts to wait for.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void awaitPendingTimeouts(final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AWAIT);
+        while (this.timer.getPendingTimeouts() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, this.timer.getPendingTimeouts());
+    }
+}
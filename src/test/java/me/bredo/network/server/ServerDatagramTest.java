@@ -0,0 +1,208 @@
+package me.bredo.network.server;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.client.Client;
+import me.bredo.network.client.ClientConnection;
+import me.bredo.network.client.IOClientHandling;
+import me.bredo.network.protocol.DatagramCodec;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.Protocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the datagrams a server and a client exchange besides their connection, over the loopback interface.
+ *
+ * @author bredo
+ */
+class ServerDatagramTest {
+
+    private static final int  TYPE  = 1;
+    private static final long AWAIT = 5000;
+
+    private final List<String> serverReceived = new CopyOnWriteArrayList<>();
+    private final List<String> clientReceived = new CopyOnWriteArrayList<>();
+
+    private Server                 server;
+    private Client                 client;
+    private ServerClientConnection serverClientConnection;
+    private DatagramChannel        datagramChannel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.server = new Server(0, false, true);
+        this.server.setProtocol(Protocol.FRAMED);
+        this.server.setDatagrams(true);
+        this.server.setDropStaleDatagrams(true);
+        this.server.setIoServerHandling(new ServerHandling());
+        this.server.initialize();
+
+        final int port = this.server.getServerSocket().getLocalPort();
+        this.client = new Client("127.0.0.1", port, false);
+        this.client.setProtocol(Protocol.FRAMED);
+        this.client.setDatagrams(true);
+        this.client.setIoClientHandling(new ClientHandling());
+        this.client.initialize();
+
+        final SocketAddress clientAddress = this.client.getClientConnection().getSocket().getLocalSocketAddress();
+        await(() -> this.server.getServerClientMatrix().get(clientAddress) != null);
+        this.serverClientConnection = this.server.getServerClientMatrix().get(clientAddress);
+        this.datagramChannel = DatagramChannel.open();
+        this.datagramChannel.connect(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        this.datagramChannel.close();
+        this.client.getClientConnection().stopConnection();
+        this.server.shutdown();
+    }
+
+    @Test
+    void offersDatagramsAndRegistersTheClient() throws IOException {
+        awaitRegistration();
+        assertNotEquals(0, this.serverClientConnection.getDatagramToken());
+
+        assertTrue(this.client.getClientConnection().sendDatagram(TYPE, bytes("ping")));
+        await(() -> this.serverReceived.contains("ping"));
+        assertTrue(this.serverClientConnection.sendDatagram(TYPE, bytes("pong")));
+        await(() -> this.clientReceived.contains("pong"));
+    }
+
+    @Test
+    void dropsStaleAndDuplicateDatagrams() throws IOException {
+        awaitRegistration();
+        final long token = this.serverClientConnection.getDatagramToken();
+
+        send(token, 1000, "first");
+        await(() -> this.serverReceived.contains("first"));
+        final long dropped = this.serverClientConnection.getDroppedDatagrams();
+
+        send(token, 999, "stale");
+        send(token, 1000, "duplicate");
+        send(token, 1001, "newer");
+        await(() -> this.serverReceived.contains("newer"));
+        assertEquals(List.of("first", "newer"), this.serverReceived);
+        assertEquals(dropped + 2, this.serverClientConnection.getDroppedDatagrams());
+    }
+
+    @Test
+    void ignoresDatagramsWithAnUnknownToken() throws IOException {
+        awaitRegistration();
+        final long token = this.serverClientConnection.getDatagramToken();
+
+        send(token + 1, 1000, "unknown");
+        send(0, 1001, "none");
+        send(token, 1002, "known");
+        await(() -> this.serverReceived.contains("known"));
+        assertEquals(List.of("known"), this.serverReceived);
+    }
+
+    /**
+     * Waits until the client registered its datagram address with the server.
+     */
+    private void awaitRegistration() {
+        await(() -> this.client.getClientConnection().isDatagramReady() && this.serverClientConnection.isDatagramReady());
+    }
+
+    /**
+     * Sends a datagram to the server from a channel of the test, bypassing the client.
+     *
+     * @param token    the token of the datagram.
+     * @param sequence the sequence number of the datagram.
+     * @param payload  the payload of the datagram.
+     * @throws IOException if the datagram could not be sent.
+     */
+    private void send(final long token, final int sequence, final String payload) throws IOException {
+        final byte[] bytes = bytes(payload);
+        final PooledBuffer datagram = DatagramCodec.encode(BufferPool.getDefault(), token, sequence, TYPE, bytes, 0, bytes.length);
+        try {
+            this.datagramChannel.write(datagram.getByteBuffer());
+        } finally {
+            datagram.release();
+        }
+    }
+
+    /**
+     * Waits until a condition holds, checking it every millisecond, and fails the test if it does not within `AWAIT`
+     * milliseconds.
+     *
+     * @param condition the condition to wait for.
+     */
+    private static void await(final BooleanSupplier condition) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AWAIT);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+            try {
+                Thread.sleep(1);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError("Interrupted while waiting", exception);
+            }
+        }
+    }
+
+    private static byte[] bytes(final String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(final Frame frame) {
+        return new String(frame.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records the datagrams received by the server.
+     */
+    private final class ServerHandling implements IOServerHandling {
+
+        @Override
+        public void inputStream(final DataInputStream dataInputStream, final ServerClientConnection serverClientConnection) {
+        }
+
+        @Override
+        public void outputStream(final DataOutputStream dataOutputStream, final ServerClientConnection serverClientConnection) {
+        }
+
+        @Override
+        public void message(final Frame frame, final ServerClientConnection serverClientConnection) {
+            if (frame.isDatagram()) ServerDatagramTest.this.serverReceived.add(string(frame));
+        }
+    }
+
+    /**
+     * Records the datagrams received by the client.
+     */
+    private final class ClientHandling implements IOClientHandling {
+
+        @Override
+        public void inputStream(final DataInputStream dataInputStream, final ClientConnection clientConnection) {
+        }
+
+        @Override
+        public void outputStream(final DataOutputStream dataOutputStream, final ClientConnection clientConnection) {
+        }
+
+        @Override
+        public void message(final Frame frame, final ClientConnection clientConnection) {
+            if (frame.isDatagram()) ServerDatagramTest.this.clientReceived.add(string(frame));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package me.bredo.network.server;
+
+import me.bredo.network.buffer.BufferPool;
+import me.bredo.network.buffer.PooledBuffer;
+import me.bredo.network.protocol.Compression;
+import me.bredo.network.protocol.Frame;
+import me.bredo.network.protocol.FrameCodec;
+import me.bredo.network.protocol.FrameCompressor;
+import me.bredo.network.protocol.FrameReader;
+import me.bredo.network.protocol.Protocol;
+import me.bredo.network.protocol.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests how a server resumes the session of a reconnecting client, speaking the protocol over plain sockets so that
+ * the test decides when each frame of the handshake is sent.
+ *
+ * @author bredo
+ */
+class ServerSessionTest {
+
+    private static final int  TYPE     = 1;
+    private static final int  CAPACITY = 64;
+    private static final long AWAIT    = 5000;
+
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private Server server;
+
+    @BeforeEach
+    void setUp() {
+        this.server = new Server(0, false, true);
+        this.server.setProtocol(Protocol.FRAMED);
+        this.server.setSessionTimeout(AWAIT);
+        this.server.initialize();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final Socket socket : this.sockets) socket.close();
+        this.server.shutdown();
+    }
+
+    @Test
+    void registersTheClientOnceItStartedItsSession() throws IOException {
+        final Socket socket = connect();
+        final FrameReader frameReader = new FrameReader(socket.getInputStream());
+        assertEquals("hello", next(frameReader));
+        write(socket, hello());
+        assertEquals(0, this.server.broadcast(TYPE, bytes("early")));
+
+        write(socket, new Session(0, CAPACITY).resumption(BufferPool.getDefault(), false));
+        assertEquals("resume", next(frameReader));
+        await(() -> this.server.getServerClientMatrix().size() == 1);
+        assertEquals(1, this.server.broadcast(TYPE, bytes("first")));
+        assertEquals("first", next(frameReader));
+    }
+
+    @Test
+    void replaysMissedMessagesBeforeBroadcastsWhileResuming() throws IOException {
+        final Socket first = connect();
+        final FrameReader firstReader = new FrameReader(first.getInputStream());
+        assertEquals("hello", next(firstReader));
+        write(first, hello());
+        write(first, new Session(0, CAPACITY).resumption(BufferPool.getDefault(), false));
+        final Frame started = firstReader.read();
+        assertEquals(FrameCodec.RESUME_TYPE, started.getType());
+        final long id = started.getSource().getLong(started.getOffset());
+        await(() -> this.server.getServerClientMatrix().size() == 1);
+        assertEquals(1, this.server.broadcast(TYPE, bytes("missed")));
+        assertEquals("missed", next(firstReader));
+        first.close();
+        await(() -> this.server.getServerClientMatrix().isEmpty());
+
+        final Socket second = connect();
+        final FrameReader secondReader = new FrameReader(second.getInputStream());
+        assertEquals("hello", next(secondReader));
+        write(second, hello());
+        assertEquals(0, this.server.broadcast(TYPE, bytes("resuming")));
+
+        write(second, new Session(id, CAPACITY).resumption(BufferPool.getDefault(), false));
+        final List<String> received = new ArrayList<>();
+        received.add(next(secondReader));
+        received.add(next(secondReader));
+        await(() -> this.server.getServerClientMatrix().size() == 1);
+        assertEquals(1, this.server.broadcast(TYPE, bytes("resumed")));
+        received.add(next(secondReader));
+        assertEquals(List.of("resume", "missed", "resumed"), received);
+    }
+
+    /**
+     * Connects a socket to the server, which is closed after the test.
+     *
+     * @return the connected socket.
+     * @throws IOException if the socket could not connect.
+     */
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", this.server.getServerSocket().getLocalPort());
+        socket.setSoTimeout((int) AWAIT);
+        this.sockets.add(socket);
+        return socket;
+    }
+
+    /**
+     * Encodes the hello frame of a client supporting sessions.
+     *
+     * @return the encoded hello frame.
+     */
+    private static PooledBuffer hello() {
+        return new FrameCompressor(Compression.NONE, Integer.MAX_VALUE).hello(BufferPool.getDefault(), FrameCodec.FEATURE_SESSIONS);
+    }
+
+    /**
+     * Writes an encoded frame to a socket and releases it.
+     *
+     * @param socket the socket to write to.
+     * @param frame  the encoded frame.
+     * @throws IOException if the frame could not be written.
+     */
+    private static void write(final Socket socket, final PooledBuffer frame) throws IOException {
+        try {
+            final ByteBuffer buffer = frame.getByteBuffer();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            socket.getOutputStream().write(bytes);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Reads the next frame that is not a heartbeat, and describes it by its payload, or by its kind for control frames.
+     *
+     * @param frameReader the reader of the socket.
+     * @return the payload of the frame, or "hello", "resume" or "control" for control frames.
+     * @throws IOException if no frame could be read.
+     */
+    private static String next(final FrameReader frameReader) throws IOException {
+        Frame frame;
+        do {
+            frame = frameReader.read();
+        } while (frame.getType() == FrameCodec.HEARTBEAT_TYPE);
+        switch (frame.getType()) {
+            case FrameCodec.HELLO_TYPE:
+                return "hello";
+            case FrameCodec.RESUME_TYPE:
+                return "resume";
+            default:
+                return frame.getType() < 0 ? "control" : new String(frame.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Waits until a condition holds, checking it every millisecond, and fails the test if it does not within `AWAIT`
+     * milliseconds.
+     *
+     * @param condition the condition to wait for.
+     */
+    private static void await(final BooleanSupplier condition) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AWAIT);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+            try {
+                Thread.sleep(1);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError("Interrupted while waiting", exception);
+            }
+        }
+    }
+
+    private static byte[] bytes(final String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+}